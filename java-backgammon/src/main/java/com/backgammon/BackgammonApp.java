@@ -1,5 +1,6 @@
 package com.backgammon;
 
+import com.backgammon.cli.CommandLine;
 import com.backgammon.view.SwingGameView;
 
 import javax.swing.*;
@@ -9,9 +10,21 @@ import javax.swing.*;
  */
 public class BackgammonApp {
     /**
-     * Main method to start the application
+     * Main method to start the application. With arguments, runs a headless
+     * {@link CommandLine} subcommand instead of the graphical game.
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // Swing is only referenced from startGui(), so batch runs never load it
+            System.exit(new CommandLine(System.out, System.err).run(args, System.in));
+        }
+        startGui();
+    }
+    
+    /**
+     * Start the graphical game
+     */
+    private static void startGui() {
         // Set the look and feel to the system look and feel
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,532 @@
+package com.backgammon.analysis;
+
+import com.backgammon.cli.JsonLine;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.EvaluationCache;
+import com.backgammon.model.ExpectiminimaxSearch;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameRecord;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayGenerator;
+import com.backgammon.model.PlayerColor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Analyzes archives of recorded games with the engine.
+ *
+ * Games are read from {@link GameRecord} files and pass through four stages, each
+ * connected to the next by a bounded queue: parse, replay through {@link GameLogic},
+ * evaluate (on several threads), and aggregate. A full queue blocks the stage feeding
+ * it, so memory stays flat however large the archive is.
+ *
+ * Every turn is evaluated twice over. The roll's luck is the value of the best play
+ * with the roll rolled, less the average over all 21 rolls. The checker play's error
+ * is the value of the best play less the value of the play made; errors of at least
+ * the blunder threshold are reported one per line as they are found. At the end one
+ * line per player gives their games, error rate, equity lost and luck.
+ *
+ * Usage: {@code ArchiveAnalyzer [--depth N] [--threads N] [--blunder X] FILE...}
+ */
+public class ArchiveAnalyzer {
+    // Checker plays losing at least this much equity count as errors
+    public static final double ERROR_THRESHOLD = 0.02;
+    
+    // Checker plays losing at least this much equity are reported as blunders
+    public static final double DEFAULT_BLUNDER_THRESHOLD = 0.08;
+    
+    // Games waiting between two stages
+    private static final int QUEUE_CAPACITY = 16;
+    
+    // Passed down the pipeline after the last game
+    private static final Game END = new Game(-1, null, null);
+    
+    private final int plies;
+    private final int threads;
+    private final double blunderThreshold;
+    private final PrintStream out;
+    
+    // First failure of any stage; the other stages stop when it is set
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    
+    // Totals of the last run
+    private long games;
+    private long invalidGames;
+    private long turns;
+    
+    /**
+     * A game on its way through the pipeline
+     */
+    private static final class Game {
+        private final long index;
+        private final GameRecord record;
+        private String error;
+        
+        // Filled in by the replay stage: the position before each turn's roll and after its
+        // moves, in the compact Board.toArray() form so queued games stay small
+        private final List<int[]> before = new ArrayList<>();
+        private final List<int[]> after = new ArrayList<>();
+        
+        // Filled in by the evaluate stage, one per turn
+        private double[] luck;
+        private double[] errors;
+        private List<List<Move>> bestPlays;
+        private boolean[] forced;
+        
+        Game(long index, GameRecord record, String error) {
+            this.index = index;
+            this.record = record;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * Running totals for one player
+     */
+    private static final class PlayerStats {
+        private long games;
+        private long wins;
+        private long decisions;
+        private long errors;
+        private long blunders;
+        private double equityLost;
+        private double luck;
+    }
+    
+    /**
+     * Create an analyzer
+     * @param plies the search depth used to value plays
+     * @param threads the number of evaluation threads
+     * @param blunderThreshold the equity loss from which a play is reported as a blunder
+     * @param out the stream for result records
+     */
+    public ArchiveAnalyzer(int plies, int threads, double blunderThreshold, PrintStream out) {
+        if (plies < 1 || threads < 1) {
+            throw new IllegalArgumentException("Depth and threads must be at least 1");
+        }
+        this.plies = plies;
+        this.threads = threads;
+        this.blunderThreshold = blunderThreshold;
+        this.out = out;
+    }
+    
+    /**
+     * Analyze every game in the given archives, writing blunders as they are found and
+     * the player totals at the end
+     * @param files the archive files, one game record per line
+     * @throws IOException if an archive cannot be read
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void run(List<Path> files) throws IOException, InterruptedException {
+        BlockingQueue<Game> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Game> replayed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Game> evaluated = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        long start = System.nanoTime();
+        
+        List<Thread> stages = new ArrayList<>();
+        stages.add(stage("archive-parse", () -> parse(files, parsed)));
+        stages.add(stage("archive-replay", () -> replay(parsed, replayed)));
+        for (int i = 0; i < threads; i++) {
+            stages.add(stage("archive-evaluate-" + i, () -> evaluate(replayed, evaluated)));
+        }
+        for (Thread stage : stages) {
+            stage.start();
+        }
+        
+        try {
+            aggregate(evaluated);
+        } finally {
+            for (Thread stage : stages) {
+                stage.interrupt();
+            }
+        }
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Archive analysis failed", error);
+        }
+        
+        long nanos = System.nanoTime() - start;
+        emit(new JsonLine()
+            .put("type", "summary")
+            .put("games", games)
+            .put("invalid", invalidGames)
+            .put("turns", turns)
+            .put("millis", nanos / 1e6)
+            .put("gamesPerSecond", games * 1e9 / nanos));
+    }
+    
+    /**
+     * Stage body that may be interrupted or fail
+     */
+    private interface StageBody {
+        void run() throws Exception;
+    }
+    
+    /**
+     * Create the thread of a stage; a failure is recorded and stops the pipeline
+     * @param name the thread name
+     * @param body the stage body
+     * @return the thread, not yet started
+     */
+    private Thread stage(String name, StageBody body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // The pipeline is shutting down
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+    
+    /**
+     * Parse stage: read the archives line by line. Lines that are not valid records are
+     * passed on with their error so they are counted.
+     * @param files the archive files
+     * @param output the parsed games
+     * @throws IOException if an archive cannot be read
+     * @throws InterruptedException if the pipeline is shutting down
+     */
+    private void parse(List<Path> files, BlockingQueue<Game> output) throws IOException, InterruptedException {
+        long index = 0;
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    index++;
+                    try {
+                        output.put(new Game(index, GameRecord.parse(line), null));
+                    } catch (IllegalArgumentException e) {
+                        output.put(new Game(index, null, e.getMessage()));
+                    }
+                }
+            }
+        }
+        output.put(END);
+    }
+    
+    /**
+     * Replay stage: play each game through the rules, keeping the position before and
+     * after every turn. Games with an illegal move are passed on with their error.
+     * @param input the parsed games
+     * @param output the replayed games
+     * @throws InterruptedException if the pipeline is shutting down
+     */
+    private void replay(BlockingQueue<Game> input, BlockingQueue<Game> output) throws InterruptedException {
+        Game game;
+        while ((game = input.take()) != END) {
+            if (game.error == null) {
+                game.error = replay(game);
+            }
+            output.put(game);
+        }
+        for (int i = 0; i < threads; i++) {
+            output.put(END);
+        }
+    }
+    
+    /**
+     * Replay one game
+     * @param game the game
+     * @return null if the game is legal, otherwise what is wrong with it
+     */
+    private static String replay(Game game) {
+        GameLogic logic = new GameLogic(new Board(), PlayerColor.WHITE, new Dice());
+        List<GameRecord.Turn> turns = game.record.getTurns();
+        for (int t = 0; t < turns.size(); t++) {
+            GameRecord.Turn turn = turns.get(t);
+            if (logic.getGameState() != GameState.PLAYING || logic.getCurrentPlayer() != turn.getPlayer()) {
+                return "Turn " + (t + 1) + " is out of order";
+            }
+            game.before.add(logic.getBoard().toArray());
+            logic.rollDice(turn.getDie1(), turn.getDie2());
+            for (Move move : turn.getMoves()) {
+                if (logic.getCurrentPlayer() != turn.getPlayer() || !logic.makeMove(move)) {
+                    return "Illegal move " + move.getFrom() + "/" + move.getTo() + " in turn " + (t + 1);
+                }
+            }
+            if (logic.getGameState() == GameState.PLAYING && logic.getCurrentPlayer() == turn.getPlayer()) {
+                return "Turn " + (t + 1) + " does not use all the dice it can";
+            }
+            game.after.add(logic.getBoard().toArray());
+        }
+        if (game.record.getWinner() != logic.getWinner()) {
+            return "Recorded winner does not match the game";
+        }
+        return null;
+    }
+    
+    /**
+     * Evaluate stage: value every roll and checker play of each game
+     * @param input the replayed games
+     * @param output the evaluated games
+     * @throws InterruptedException if the pipeline is shutting down
+     */
+    private void evaluate(BlockingQueue<Game> input, BlockingQueue<Game> output) throws InterruptedException {
+        // Searches are not thread-safe, so each evaluation thread has its own
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch(plies);
+        search.setCache(EvaluationCache.getDefault());
+        PlayGenerator playGenerator = new PlayGenerator();
+        Dice[] rolls = new Dice[21];
+        double[] probabilities = new double[21];
+        int r = 0;
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = die1; die2 <= 6; die2++) {
+                rolls[r] = new Dice();
+                rolls[r].setValues(die1, die2);
+                probabilities[r] = die1 == die2 ? 1.0 / 36 : 2.0 / 36;
+                r++;
+            }
+        }
+        
+        Game game;
+        while ((game = input.take()) != END) {
+            if (game.error == null) {
+                evaluate(game, search, playGenerator, rolls, probabilities);
+            }
+            output.put(game);
+        }
+        output.put(END);
+    }
+    
+    /**
+     * Evaluate one game
+     * @param game the replayed game
+     * @param search the search to value plays with
+     * @param playGenerator the generator used to spot forced plays
+     * @param rolls the 21 distinct rolls
+     * @param probabilities the probability of each roll
+     */
+    private static void evaluate(Game game, ExpectiminimaxSearch search, PlayGenerator playGenerator, Dice[] rolls,
+                                 double[] probabilities) {
+        List<GameRecord.Turn> turns = game.record.getTurns();
+        game.luck = new double[turns.size()];
+        game.errors = new double[turns.size()];
+        game.bestPlays = new ArrayList<>(turns.size());
+        game.forced = new boolean[turns.size()];
+        for (int t = 0; t < turns.size(); t++) {
+            GameRecord.Turn turn = turns.get(t);
+            Board before = Board.fromArray(game.before.get(t));
+            Board after = Board.fromArray(game.after.get(t));
+            PlayerColor color = turn.getPlayer();
+            
+            // Luck: the best value with this roll against the average over all rolls
+            int rolled = rollIndex(turn.getDie1(), turn.getDie2());
+            Play best = null;
+            double bestValue = 0;
+            double average = 0;
+            for (int r = 0; r < rolls.length; r++) {
+                Play play = search.search(before, color, rolls[r]);
+                average += probabilities[r] * search.getValue();
+                if (r == rolled) {
+                    best = play;
+                    bestValue = search.getValue();
+                }
+            }
+            game.luck[t] = bestValue - average;
+            
+            // Error: the best play against the play made
+            game.bestPlays.add(best.getMoves());
+            game.forced[t] = playGenerator.generate(color, before, rolls[rolled]).size() <= 1;
+            double playedValue = best.getResult().positionHash() == after.positionHash()
+                ? bestValue : search.evaluatePlay(after, color);
+            game.errors[t] = Math.max(0, bestValue - playedValue);
+        }
+    }
+    
+    /**
+     * Get the index of a roll in the list of 21 distinct rolls
+     * @param die1 the value of one die
+     * @param die2 the value of the other die
+     * @return the index, with rolls ordered by low die, then high die
+     */
+    private static int rollIndex(int die1, int die2) {
+        int low = Math.min(die1, die2);
+        int high = Math.max(die1, die2);
+        // Rolls with a lower low die come first: 6 + 5 + ... of them
+        return (low - 1) * (14 - low) / 2 + (high - low);
+    }
+    
+    /**
+     * Aggregate stage: add up each player's results, writing blunders and invalid games
+     * as they arrive
+     * @param input the evaluated games
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    private void aggregate(BlockingQueue<Game> input) throws InterruptedException {
+        Map<String, PlayerStats> players = new TreeMap<>();
+        int finished = 0;
+        while (finished < threads) {
+            Game game = input.poll(100, TimeUnit.MILLISECONDS);
+            if (game == null) {
+                if (failure.get() != null) {
+                    return;
+                }
+                continue;
+            }
+            if (game == END) {
+                finished++;
+                continue;
+            }
+            
+            games++;
+            if (game.error != null) {
+                invalidGames++;
+                emit(new JsonLine().put("type", "invalid").put("game", game.index).put("error", game.error));
+                continue;
+            }
+            
+            GameRecord record = game.record;
+            for (PlayerColor color : PlayerColor.values()) {
+                PlayerStats stats = players.computeIfAbsent(playerName(record, color), name -> new PlayerStats());
+                stats.games++;
+                if (record.getWinner() == color) {
+                    stats.wins++;
+                }
+            }
+            
+            List<GameRecord.Turn> gameTurns = record.getTurns();
+            for (int t = 0; t < gameTurns.size(); t++) {
+                GameRecord.Turn turn = gameTurns.get(t);
+                String name = playerName(record, turn.getPlayer());
+                PlayerStats stats = players.get(name);
+                stats.luck += game.luck[t];
+                turns++;
+                if (game.forced[t]) {
+                    continue;
+                }
+                
+                double error = game.errors[t];
+                stats.decisions++;
+                stats.equityLost += error;
+                if (error >= ERROR_THRESHOLD) {
+                    stats.errors++;
+                }
+                if (error >= blunderThreshold) {
+                    stats.blunders++;
+                    emit(new JsonLine()
+                        .put("type", "blunder")
+                        .put("game", game.index)
+                        .put("turn", t + 1)
+                        .put("player", name)
+                        .put("position", Board.fromArray(game.before.get(t)).toPositionId())
+                        .put("onRoll", turn.getPlayer() == PlayerColor.WHITE ? "white" : "black")
+                        .put("dice", "" + turn.getDie1() + turn.getDie2())
+                        .put("played", turn.getMoves())
+                        .put("best", game.bestPlays.get(t))
+                        .put("error", error));
+                }
+            }
+        }
+        
+        for (Map.Entry<String, PlayerStats> entry : players.entrySet()) {
+            PlayerStats stats = entry.getValue();
+            emit(new JsonLine()
+                .put("type", "player")
+                .put("name", entry.getKey())
+                .put("games", stats.games)
+                .put("wins", stats.wins)
+                .put("decisions", stats.decisions)
+                .put("errors", stats.errors)
+                .put("blunders", stats.blunders)
+                .put("errorRate", stats.decisions == 0 ? 0 : (double) stats.errors / stats.decisions)
+                .put("equityLostPerDecision", stats.decisions == 0 ? 0 : stats.equityLost / stats.decisions)
+                .put("luckPerGame", stats.luck / stats.games));
+        }
+    }
+    
+    /**
+     * Get the name results are recorded under for a player
+     * @param record the game record
+     * @param color the player color
+     * @return the recorded name, or the color if none
+     */
+    private static String playerName(GameRecord record, PlayerColor color) {
+        String name = record.getName(color);
+        return name != null ? name : color == PlayerColor.WHITE ? "white" : "black";
+    }
+    
+    /**
+     * Write a record and flush it so readers see it at once
+     * @param line the record
+     */
+    private void emit(JsonLine line) {
+        out.println(line);
+        out.flush();
+    }
+    
+    /**
+     * Get the number of games read by the last run, including invalid ones
+     * @return the game count
+     */
+    public long getGames() {
+        return games;
+    }
+    
+    /**
+     * Get the number of games of the last run that were not valid records or legal games
+     * @return the invalid game count
+     */
+    public long getInvalidGames() {
+        return invalidGames;
+    }
+    
+    /**
+     * Run the analyzer
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int plies = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double blunder = DEFAULT_BLUNDER_THRESHOLD;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--depth":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--blunder":
+                    blunder = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Usage: ArchiveAnalyzer [--depth N] [--threads N] [--blunder X] FILE...");
+        }
+        new ArchiveAnalyzer(plies, threads, blunder, System.out).run(files);
+    }
+}
\ No newline at end of file
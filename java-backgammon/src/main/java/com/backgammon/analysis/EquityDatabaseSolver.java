@@ -0,0 +1,490 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.EquityDatabase;
+import com.backgammon.model.Variant;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves every position of a variant with few checkers exactly and writes the
+ * {@link EquityDatabase}.
+ *
+ * Hits make backgammon positions recur, so the equities cannot be filled in by a
+ * single pass in pip order as a bearoff database can. Instead the whole table is
+ * improved by value iteration until no equity changes by more than a tolerance: each
+ * position's equity becomes the average over the 21 rolls of the best play's result,
+ * which is a win or minus the opponent's equity after it.
+ *
+ * Each sweep reads only the previous sweep's table and writes the new equities into a
+ * second one, which then takes its place. No position's new value depends on the order
+ * in which positions are updated, so a given tolerance always produces the same table,
+ * iteration count and residual, whatever the number of threads.
+ *
+ * A sweep goes through the table one side not on roll at a time, sharing them out
+ * among threads in chunks. Unless a checker is hit, every play's result is then read
+ * from the same row of the table, which stays in the cache.
+ *
+ * Plays follow the rules of {@link com.backgammon.model.MoveValidator}: the player
+ * moves one checker at a time while a die can be played, any order of the dice is
+ * allowed, and a checker is only borne off with the exact die.
+ *
+ * Usage: {@code EquityDatabaseSolver [--variant NAME] [--threads N] [--tolerance X]
+ * [--max-iterations N] [--output FILE]}
+ */
+public class EquityDatabaseSolver {
+    // Sides not on roll per unit of work handed to a thread
+    private static final int CHUNK = 16;
+    
+    private final int checkers;
+    private final int sideCount;
+    private final int threads;
+    
+    // Distances of every side's checkers, by rank, in non-decreasing order
+    private final int[][] sides;
+    
+    // Rank of every side by its distances in any order, packed five bits per checker
+    private final int[] ranks;
+    
+    // Equity of every position for the side on roll as of the last sweep, and the
+    // table the current sweep writes; they swap after every sweep
+    private float[] equities;
+    private float[] updated;
+    
+    // Whether each position can occur: no point holds checkers of both sides, and
+    // neither side has borne off all its checkers
+    private final boolean[] playable;
+    
+    private int iterations;
+    private double residual;
+    
+    /**
+     * Create a solver
+     * @param checkers the number of checkers per side
+     * @param threads the number of threads
+     */
+    public EquityDatabaseSolver(int checkers, int threads) {
+        if (checkers < 1 || checkers > EquityDatabase.MAX_CHECKERS) {
+            throw new IllegalArgumentException("Only variants with up to " + EquityDatabase.MAX_CHECKERS
+                + " checkers can be solved, not " + checkers);
+        }
+        this.checkers = checkers;
+        this.sideCount = EquityDatabase.sideCount(checkers);
+        this.threads = threads;
+        this.sides = new int[sideCount][checkers];
+        for (int rank = 0; rank < sideCount; rank++) {
+            EquityDatabase.unrankSide(rank, sides[rank]);
+        }
+        this.ranks = new int[1 << (5 * checkers)];
+        int[] distances = new int[checkers];
+        for (int key = 0; key < ranks.length; key++) {
+            for (int i = 0; i < checkers; i++) {
+                distances[i] = (key >>> (5 * i)) & 31;
+            }
+            Arrays.sort(distances);
+            ranks[key] = distances[checkers - 1] <= EquityDatabase.BAR_DISTANCE ? EquityDatabase.rankSide(distances) : -1;
+        }
+        this.equities = new float[sideCount * sideCount];
+        this.updated = new float[equities.length];
+        this.playable = new boolean[equities.length];
+        initialize();
+    }
+    
+    /**
+     * Mark the playable positions and give the decided ones their final equities
+     */
+    private void initialize() {
+        for (int me = 0; me < sideCount; me++) {
+            for (int other = 0; other < sideCount; other++) {
+                int index = EquityDatabase.index(me, other, sideCount);
+                if (isOff(sides[me])) {
+                    equities[index] = 1.0f;
+                    updated[index] = 1.0f;
+                } else if (isOff(sides[other])) {
+                    equities[index] = -1.0f;
+                    updated[index] = -1.0f;
+                } else {
+                    playable[index] = !overlaps(sides[me], sides[other]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Iterate until no equity changes by more than the tolerance
+     * @param tolerance the largest change allowed in the last iteration
+     * @param maxIterations the most iterations to run
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void solve(double tolerance, int maxIterations) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            do {
+                long start = System.nanoTime();
+                residual = sweep(executor);
+                iterations++;
+                System.err.printf("iteration %d: residual %.3g in %.1f s%n", iterations, residual,
+                    (System.nanoTime() - start) / 1e9);
+            } while (residual > tolerance && iterations < maxIterations);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Update every playable position once, from the previous sweep's equities
+     * @param executor the threads
+     * @return the largest change made
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private double sweep(ExecutorService executor) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Double>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                Worker worker = new Worker();
+                double largest = 0.0;
+                int from;
+                while ((from = next.getAndAdd(CHUNK)) < sideCount) {
+                    for (int other = from; other < Math.min(from + CHUNK, sideCount); other++) {
+                        largest = Math.max(largest, worker.update(other));
+                    }
+                }
+                return largest;
+            }));
+        }
+        double largest = 0.0;
+        try {
+            for (Future<Double> worker : workers) {
+                largest = Math.max(largest, worker.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Solver thread failed", e.getCause());
+        }
+        
+        // The new equities become the ones the next sweep reads
+        float[] previous = equities;
+        equities = updated;
+        updated = previous;
+        return largest;
+    }
+    
+    /**
+     * One thread's scratch state for searching plays
+     */
+    private final class Worker {
+        // The positions being played over, as checker distances of the side on roll
+        // and of the other side from its own point of view; neither kept sorted
+        private final int[] me = new int[checkers];
+        private final int[] other = new int[checkers];
+        
+        // Rank of the side not on roll, and the number of its checkers hit so far
+        private int otherRank;
+        private int hits;
+        
+        /**
+         * Update every playable position with a given side not on roll
+         * @param otherRank the rank of the side not on roll
+         * @return the largest change made
+         */
+        double update(int otherRank) {
+            double largest = 0.0;
+            this.otherRank = otherRank;
+            for (int meRank = 0; meRank < sideCount; meRank++) {
+                int index = EquityDatabase.index(meRank, otherRank, sideCount);
+                if (!playable[index]) {
+                    continue;
+                }
+                System.arraycopy(sides[meRank], 0, me, 0, checkers);
+                System.arraycopy(sides[otherRank], 0, other, 0, checkers);
+                
+                double total = 0.0;
+                for (int d1 = 1; d1 <= 6; d1++) {
+                    // Nothing is further back than the bar, so a double's best play is never NaN
+                    total += bestFinish(d1, 4, EquityDatabase.BAR_DISTANCE);
+                    for (int d2 = d1 + 1; d2 <= 6; d2++) {
+                        total += 2.0 * bestNonDouble(d1, d2);
+                    }
+                }
+                float equity = (float) (total / 36.0);
+                largest = Math.max(largest, Math.abs(equity - equities[index]));
+                updated[index] = equity;
+            }
+            return largest;
+        }
+        
+        /**
+         * Find the best play of a non-double. Of two moves by different checkers only
+         * the order starting further back is searched; it is legal whenever the other is.
+         * @param d1 the first die
+         * @param d2 the second die
+         * @return the equity of the best play for the side on roll
+         */
+        private double bestNonDouble(int d1, int d2) {
+            double best = Double.NaN;
+            for (int order = 0; order < 2; order++) {
+                int first = order == 0 ? d1 : d2;
+                int second = order == 0 ? d2 : d1;
+                for (int k = 0; k < checkers; k++) {
+                    int from = me[k];
+                    int hit = move(k, first);
+                    if (hit == NO_MOVE) {
+                        continue;
+                    }
+                    double value = isOff(me) ? 1.0 : bestFinish(second, 1, from);
+                    undo(k, from, hit);
+                    if (!Double.isNaN(value) && (Double.isNaN(best) || value > best)) {
+                        best = value;
+                    }
+                }
+            }
+            return Double.isNaN(best) ? result() : best;
+        }
+        
+        /**
+         * Find the best play of the rest of the dice, moving checkers no further back
+         * than the last one moved
+         * @param die the die value
+         * @param remaining the number of moves left
+         * @param maxFrom the furthest distance a checker may be moved from
+         * @return the equity of the best play for the side on roll, or NaN if the play
+         *         could only go on from further back and so is searched in another order
+         */
+        private double bestFinish(int die, int remaining, int maxFrom) {
+            if (remaining == 0) {
+                return result();
+            }
+            double best = Double.NaN;
+            for (int k = 0; k < checkers; k++) {
+                if (me[k] > maxFrom) {
+                    continue;
+                }
+                int from = me[k];
+                int hit = move(k, die);
+                if (hit == NO_MOVE) {
+                    continue;
+                }
+                double value = isOff(me) ? 1.0 : bestFinish(die, remaining - 1, from);
+                undo(k, from, hit);
+                if (!Double.isNaN(value) && (Double.isNaN(best) || value > best)) {
+                    best = value;
+                }
+            }
+            if (Double.isNaN(best)) {
+                return canMove(die, maxFrom) ? Double.NaN : result();
+            }
+            return best;
+        }
+        
+        /**
+         * Check whether a checker further back than a distance can be moved by a die
+         * @param die the die value
+         * @param maxFrom the distance
+         * @return true if such a move is legal
+         */
+        private boolean canMove(int die, int maxFrom) {
+            for (int k = 0; k < checkers; k++) {
+                if (me[k] > maxFrom) {
+                    int from = me[k];
+                    int hit = move(k, die);
+                    if (hit != NO_MOVE) {
+                        undo(k, from, hit);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Move a checker of the side on roll by a die if the move is legal
+         * @param k the checker
+         * @param die the die value
+         * @return the index of the other side's checker hit, {@link #NO_HIT}, or
+         *         {@link #NO_MOVE} if the move is not legal (nothing is changed then)
+         */
+        private int move(int k, int die) {
+            int from = me[k];
+            int to = from - die;
+            if (from == 0 || to < 0) {
+                return NO_MOVE;
+            }
+            
+            // Checkers of the same side on the same point make the same move, so only the first moves
+            int onBar = 0;
+            int outside = 0;
+            for (int j = 0; j < checkers; j++) {
+                if (j < k && me[j] == from) {
+                    return NO_MOVE;
+                }
+                onBar += me[j] == EquityDatabase.BAR_DISTANCE ? 1 : 0;
+                outside += me[j] > 6 ? 1 : 0;
+            }
+            if (onBar > 0 && from != EquityDatabase.BAR_DISTANCE) {
+                return NO_MOVE;
+            }
+            
+            if (to == 0) {
+                // Bearing off needs every checker in the home board
+                if (outside > 0) {
+                    return NO_MOVE;
+                }
+                me[k] = 0;
+                return NO_HIT;
+            }
+            
+            // The destination is at the other side's distance 25 - to
+            int mirrored = EquityDatabase.BAR_DISTANCE - to;
+            int count = 0;
+            int blot = NO_HIT;
+            for (int j = 0; j < checkers; j++) {
+                if (other[j] == mirrored) {
+                    count++;
+                    blot = j;
+                }
+            }
+            if (count > 1) {
+                return NO_MOVE;
+            }
+            me[k] = to;
+            if (blot != NO_HIT) {
+                other[blot] = EquityDatabase.BAR_DISTANCE;
+                hits++;
+            }
+            return blot;
+        }
+        
+        /**
+         * Take back a move
+         * @param k the checker moved
+         * @param from where it came from
+         * @param hit the checker it hit, or {@link #NO_HIT}
+         */
+        private void undo(int k, int from, int hit) {
+            if (hit != NO_HIT) {
+                // The hit checker was where the moved one landed
+                other[hit] = EquityDatabase.BAR_DISTANCE - me[k];
+                hits--;
+            }
+            me[k] = from;
+        }
+        
+        /**
+         * Get the equity for the side on roll once its play is over: minus the other
+         * side's equity, now that it is on roll
+         * @return the equity
+         */
+        private double result() {
+            return -equities[EquityDatabase.index(hits == 0 ? otherRank : rank(other), rank(me), sideCount)];
+        }
+        
+        /**
+         * Rank a side's checkers, which need not be sorted
+         * @param distances the distances
+         * @return the rank
+         */
+        private int rank(int[] distances) {
+            int key = 0;
+            for (int i = 0; i < checkers; i++) {
+                key |= distances[i] << (5 * i);
+            }
+            return ranks[key];
+        }
+    }
+    
+    // Results of Worker.move besides the index of a hit checker
+    private static final int NO_HIT = -1;
+    private static final int NO_MOVE = -2;
+    
+    /**
+     * Check whether a side has borne off every checker
+     * @param distances the side's distances
+     * @return true if every distance is 0
+     */
+    private static boolean isOff(int[] distances) {
+        for (int distance : distances) {
+            if (distance != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Check whether two sides have checkers on the same point
+     * @param me the side on roll
+     * @param other the other side
+     * @return true if they overlap
+     */
+    private static boolean overlaps(int[] me, int[] other) {
+        for (int a : me) {
+            for (int b : other) {
+                if (a >= 1 && a <= 24 && a + b == EquityDatabase.BAR_DISTANCE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Write the solved table
+     * @param path the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        EquityDatabase.write(path, checkers, equities, iterations, residual);
+    }
+    
+    /**
+     * Solve a variant and write its database
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Variant variant = Variant.HYPERGAMMON;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double tolerance = 1e-6;
+        int maxIterations = 1000;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--variant":
+                    variant = Variant.fromName(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                case "--max-iterations":
+                    maxIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (output == null) {
+            output = variant + ".db";
+        }
+        
+        long start = System.nanoTime();
+        EquityDatabaseSolver solver = new EquityDatabaseSolver(variant.getCheckers(), threads);
+        solver.solve(tolerance, maxIterations);
+        solver.write(Paths.get(output));
+        System.out.printf("%s: %d positions per side, %d iterations, residual %.3g, %.1f s, written to %s%n",
+            variant, solver.sideCount, solver.iterations, solver.residual, (System.nanoTime() - start) / 1e9,
+            output);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,398 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.FastMoveGenerator;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.MoveGenerator;
+import com.backgammon.model.MoveValidator;
+import com.backgammon.model.PlayerColor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Differential fuzzer checking a {@link MoveGenerator} against the reference rules of
+ * {@link MoveValidator}.
+ *
+ * Positions are reached by playing random games through {@link GameLogic}, and checked
+ * before every move, so part-used rolls are covered as well as fresh ones. In each
+ * position the candidate's moves must equal {@link MoveValidator#getReferenceMoves}
+ * move for move and in order, and {@link MoveValidator#isValidMove} must accept exactly
+ * those moves among every move of one to six pips from the bar or an occupied point.
+ *
+ * A mismatch is shrunk before it is reported: checkers are borne off and unused dice
+ * dropped for as long as the mismatch remains, leaving a minimal position to debug.
+ * Workers play their own seeded games in parallel, each checking a fixed share of the
+ * positions, so the positions checked and the number of mismatches are reproducible
+ * from the seed and thread count. Only which mismatches are printed, when there are more
+ * than {@link #MAX_REPORTED}, depends on which worker finds them first.
+ *
+ * Usage: {@code MoveGeneratorFuzzer [--positions N] [--threads N] [--seed N] [--generator CLASS]}
+ */
+public class MoveGeneratorFuzzer {
+    // Safety limit on the length of a single game
+    private static final int MAX_TURNS = 1000;
+    
+    // Mismatches reported in full; later ones are only counted
+    private static final int MAX_REPORTED = 20;
+    
+    /**
+     * A position to check: the board as {@link Board#toArray()}, the player on roll and
+     * their unused dice in order
+     */
+    static final class Case {
+        final int[] board;
+        final PlayerColor color;
+        final int[] dice;
+        
+        Case(int[] board, PlayerColor color, int[] dice) {
+            this.board = board;
+            this.color = color;
+            this.dice = dice;
+        }
+        
+        /**
+         * Build dice with exactly this case's unused values
+         * @return the dice
+         */
+        Dice toDice() {
+            Dice result = new Dice();
+            if (dice.length == 1) {
+                // Roll a different second die and use it up
+                int other = dice[0] == 6 ? 5 : 6;
+                result.setValues(dice[0], other);
+                result.useDie(other);
+            } else if (dice.length == 2 && dice[0] != dice[1]) {
+                result.setValues(dice[0], dice[1]);
+            } else {
+                result.setValues(dice[0], dice[0]);
+                for (int i = dice.length; i < 4; i++) {
+                    result.useDie(dice[0]);
+                }
+            }
+            return result;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(Board.fromArray(board).toPositionId());
+            sb.append(color == PlayerColor.WHITE ? " white " : " black ");
+            for (int i = 0; i < dice.length; i++) {
+                sb.append(i > 0 ? "," : "").append(dice[i]);
+            }
+            return sb.toString();
+        }
+    }
+    
+    private final Supplier<MoveGenerator> candidates;
+    private final int threads;
+    private final long seed;
+    
+    // Positions checked, and the shrunk mismatches found, by their shrunk case
+    private final AtomicLong checked;
+    private final AtomicLong mismatches;
+    private final Map<String, String> reported;
+    
+    /**
+     * Create a fuzzer
+     * @param candidates creates the generator under test, one per thread
+     * @param threads the number of worker threads
+     * @param seed the seed of the first worker's games
+     */
+    public MoveGeneratorFuzzer(Supplier<MoveGenerator> candidates, int threads, long seed) {
+        this.candidates = candidates;
+        this.threads = threads;
+        this.seed = seed;
+        this.checked = new AtomicLong();
+        this.mismatches = new AtomicLong();
+        this.reported = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Check a number of positions, split evenly between the workers
+     * @param positions the number of positions to check
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public void run(long positions) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long workerSeed = seed + i;
+            long quota = positions / threads + (i < positions % threads ? 1 : 0);
+            workers.add(executor.submit(() -> fuzz(workerSeed, quota)));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fuzzer worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Play random games, checking every position before each move, until a worker's
+     * share of the positions is checked
+     * @param workerSeed the seed of the games
+     * @param quota the number of positions this worker checks
+     */
+    private void fuzz(long workerSeed, long quota) {
+        Random random = new Random(workerSeed);
+        MoveGenerator candidate = candidates.get();
+        MoveValidator reference = new MoveValidator();
+        long done = 0;
+        
+        while (done < quota) {
+            GameLogic game = new GameLogic(new Board(), random.nextBoolean() ? PlayerColor.WHITE : PlayerColor.BLACK,
+                new Dice(random));
+            for (int turn = 0; turn < MAX_TURNS && game.getGameState() == GameState.PLAYING && done < quota; turn++) {
+                PlayerColor player = game.getCurrentPlayer();
+                game.rollDice();
+                while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player
+                        && done < quota) {
+                    Case position = new Case(game.getBoard().toArray(), player,
+                        toArray(game.getDice().getAvailableValues()));
+                    if (compare(candidate, reference, position) != null) {
+                        report(candidate, reference, position);
+                    }
+                    done++;
+                    
+                    // Play a random move both generators allow; a mismatch may leave none
+                    List<Move> moves = reference.getReferenceMoves(player, game.getBoard(), game.getDice());
+                    moves.retainAll(game.getPossibleMoves());
+                    if (moves.isEmpty() || !game.makeMove(moves.get(random.nextInt(moves.size())))) {
+                        game.endTurn();
+                    }
+                }
+            }
+        }
+        checked.addAndGet(done);
+    }
+    
+    /**
+     * Compare the candidate with the reference in one position
+     * @param candidate the generator under test
+     * @param reference the reference rules
+     * @param position the position
+     * @return a description of the first disagreement, or null if they agree
+     */
+    static String compare(MoveGenerator candidate, MoveValidator reference, Case position) {
+        Board board = Board.fromArray(position.board);
+        PlayerColor color = position.color;
+        Dice dice = position.toDice();
+        
+        List<Move> expected = reference.getReferenceMoves(color, board, dice);
+        List<Move> actual = candidate.generate(color, board.clone(), dice.copy());
+        if (!expected.equals(actual)) {
+            return "generate: expected " + expected + ", got " + actual;
+        }
+        
+        // isValidMove must accept exactly the generated moves among every move of one to
+        // six pips, from the bar or any point, bearing off where the move leaves the board
+        int bar = color == PlayerColor.WHITE ? Board.WHITE_BAR : Board.BLACK_BAR;
+        int home = color == PlayerColor.WHITE ? Board.WHITE_HOME : Board.BLACK_HOME;
+        for (int from = -1; from < 24; from++) {
+            int source = from < 0 ? bar : from;
+            for (int die = 1; die <= 6; die++) {
+                int to;
+                if (source == bar) {
+                    to = color == PlayerColor.WHITE ? 24 - die : die - 1;
+                } else {
+                    to = color == PlayerColor.WHITE ? source - die : source + die;
+                    if (to < 0 || to > 23) {
+                        to = home;
+                    }
+                }
+                boolean valid = reference.isValidMove(source, to, color, board, dice);
+                if (valid != expected.contains(Move.of(source, to))) {
+                    return "isValidMove(" + source + ", " + to + ") is " + valid + " but the move is "
+                        + (valid ? "not generated" : "generated");
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Shrink a mismatch and record it
+     * @param candidate the generator under test
+     * @param reference the reference rules
+     * @param position the mismatching position
+     */
+    private void report(MoveGenerator candidate, MoveValidator reference, Case position) {
+        Case minimal = shrink(candidate, reference, position);
+        String key = minimal.toString();
+        if (reported.size() < MAX_REPORTED || reported.containsKey(key)) {
+            if (reported.putIfAbsent(key, compare(candidate, reference, minimal)) == null) {
+                System.err.println("mismatch at " + position + ", shrunk to " + key);
+            }
+        }
+        mismatches.incrementAndGet();
+    }
+    
+    /**
+     * Shrink a mismatch: bear checkers off and drop unused dice as long as the candidate
+     * and the reference still disagree
+     * @param candidate the generator under test
+     * @param reference the reference rules
+     * @param position the mismatching position
+     * @return a position where no single simplification keeps the mismatch
+     */
+    static Case shrink(MoveGenerator candidate, MoveValidator reference, Case position) {
+        Case current = position;
+        boolean shrunk = true;
+        while (shrunk) {
+            shrunk = false;
+            for (Case simpler : simplifications(current)) {
+                if (compare(candidate, reference, simpler) != null) {
+                    current = simpler;
+                    shrunk = true;
+                    break;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * List the positions one step simpler than a position: with one unused die fewer,
+     * or with one checker taken from a point or the bar and borne off
+     * @param position the position
+     * @return the simpler positions
+     */
+    private static List<Case> simplifications(Case position) {
+        List<Case> simpler = new ArrayList<>();
+        if (position.dice.length > 1) {
+            for (int i = 0; i < position.dice.length; i++) {
+                int[] dice = new int[position.dice.length - 1];
+                for (int j = 0, k = 0; j < position.dice.length; j++) {
+                    if (j != i) {
+                        dice[k++] = position.dice[j];
+                    }
+                }
+                simpler.add(new Case(position.board, position.color, dice));
+            }
+        }
+        
+        for (int i = 0; i < 24; i++) {
+            if (position.board[i] != 0) {
+                int[] board = position.board.clone();
+                boolean white = board[i] > 0;
+                board[i] += white ? -1 : 1;
+                board[white ? Board.ENCODED_WHITE_HOME : Board.ENCODED_BLACK_HOME]++;
+                simpler.add(new Case(board, position.color, position.dice));
+            }
+        }
+        for (int bar : new int[]{Board.ENCODED_WHITE_BAR, Board.ENCODED_BLACK_BAR}) {
+            if (position.board[bar] > 0) {
+                int[] board = position.board.clone();
+                board[bar]--;
+                board[bar == Board.ENCODED_WHITE_BAR ? Board.ENCODED_WHITE_HOME : Board.ENCODED_BLACK_HOME]++;
+                simpler.add(new Case(board, position.color, position.dice));
+            }
+        }
+        return simpler;
+    }
+    
+    /**
+     * Convert dice values to an array
+     * @param values the values
+     * @return the array
+     */
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+    
+    /**
+     * Get the number of positions checked
+     * @return the count
+     */
+    public long getChecked() {
+        return checked.get();
+    }
+    
+    /**
+     * Get the number of mismatching positions found
+     * @return the count
+     */
+    public long getMismatches() {
+        return mismatches.get();
+    }
+    
+    /**
+     * Get the shrunk mismatches, each with its first disagreement
+     * @return the descriptions, by shrunk position
+     */
+    public Map<String, String> getReported() {
+        return reported;
+    }
+    
+    /**
+     * Fuzz a generator, by default {@link FastMoveGenerator}, and exit with 1 if any
+     * mismatch is found
+     */
+    public static void main(String[] args) throws Exception {
+        long positions = 1_000_000L;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1L;
+        String generator = FastMoveGenerator.class.getName();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--positions":
+                    positions = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--generator":
+                    generator = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        Class<? extends MoveGenerator> type = Class.forName(generator).asSubclass(MoveGenerator.class);
+        Supplier<MoveGenerator> candidates = () -> {
+            try {
+                return type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Cannot create " + type.getName(), e);
+            }
+        };
+        
+        MoveGeneratorFuzzer fuzzer = new MoveGeneratorFuzzer(candidates, threads, seed);
+        long start = System.nanoTime();
+        fuzzer.run(positions);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.printf("%s: %d positions in %.1f s (%.0f/s) on %d threads, %d mismatches%n",
+            type.getSimpleName(), fuzzer.getChecked(), seconds, fuzzer.getChecked() / seconds, threads,
+            fuzzer.getMismatches());
+        for (Map.Entry<String, String> entry : fuzzer.getReported().entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+        System.exit(fuzzer.getMismatches() == 0 ? 0 : 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.backgammon.analysis;
+
+import com.backgammon.farm.RolloutFarm;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.Move;
+import com.backgammon.model.OpeningBook;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayGenerator;
+import com.backgammon.model.PlayerColor;
+import com.backgammon.model.Rollout;
+import com.backgammon.model.RolloutResult;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline generator for the {@link OpeningBook}.
+ *
+ * Starting from the initial position, every roll of every book position is analysed
+ * by rolling out each candidate play; the best play is stored and its resulting
+ * position becomes a book position for the next ply.
+ *
+ * Usage: {@code OpeningBookGenerator <output file> [--plies N] [--trials N] [--seed N] [--truncate] [--workers N]}
+ *
+ * With {@code --workers} the rollouts run on a {@link RolloutFarm} of that many worker JVMs.
+ */
+public class OpeningBookGenerator {
+    private final int plies;
+    private final int trials;
+    private final long seed;
+    private final boolean truncateAtRace;
+    private final Rollout rollout;
+    private final PlayGenerator playGenerator;
+    
+    // Runs the rollouts in worker processes when set
+    private RolloutFarm farm;
+    
+    /**
+     * Create a new generator
+     * @param plies the number of plies to cover
+     * @param trials the number of rollout trials per candidate play
+     * @param seed the rollout seed, shared by all candidates of a roll
+     * @param truncateAtRace whether rollouts stop at the first pure race
+     */
+    public OpeningBookGenerator(int plies, int trials, long seed, boolean truncateAtRace) {
+        this.plies = plies;
+        this.trials = trials;
+        this.seed = seed;
+        this.truncateAtRace = truncateAtRace;
+        this.rollout = new Rollout(truncateAtRace);
+        this.playGenerator = new PlayGenerator();
+    }
+    
+    /**
+     * Run the rollouts on a farm of worker processes instead of in this JVM
+     * @param farm the farm, or null to roll out locally
+     */
+    public void setFarm(RolloutFarm farm) {
+        this.farm = farm;
+    }
+    
+    /**
+     * Analyse all book positions
+     * @return the book entries
+     */
+    public Map<OpeningBook.Key, Move> generate() {
+        Map<OpeningBook.Key, Move> entries = new HashMap<>();
+        List<Board> frontier = new ArrayList<>();
+        frontier.add(new Board());
+        PlayerColor player = PlayerColor.WHITE; // White always moves first
+        
+        for (int ply = 1; ply <= plies; ply++) {
+            List<Board> next = new ArrayList<>();
+            for (Board board : frontier) {
+                for (int die1 = 1; die1 <= 6; die1++) {
+                    for (int die2 = die1; die2 <= 6; die2++) {
+                        Dice dice = new Dice();
+                        dice.setValues(die1, die2);
+                        Play best = analyse(board, player, dice);
+                        addEntries(board, player, dice, best, entries);
+                        next.add(best.getResult());
+                    }
+                }
+                System.err.printf("ply %d: %d/%d positions, %d entries%n",
+                    ply, next.size() / 21, frontier.size(), entries.size());
+            }
+            frontier = next;
+            player = player.opposite();
+        }
+        return entries;
+    }
+    
+    /**
+     * Find the best play for a roll by rolling out every candidate
+     * @param board the position
+     * @param player the player to move
+     * @param dice the roll
+     * @return the best play
+     */
+    private Play analyse(Board board, PlayerColor player, Dice dice) {
+        List<Play> plays = playGenerator.generate(player, board, dice);
+        Play best = plays.get(0);
+        if (plays.size() == 1) {
+            return best;
+        }
+        
+        // The opponent is on roll after the play
+        List<RolloutResult> results;
+        if (farm != null) {
+            List<Board> positions = new ArrayList<>();
+            for (Play play : plays) {
+                positions.add(play.getResult());
+            }
+            results = farm.rolloutAll(positions, player.opposite(), trials, seed, truncateAtRace,
+                RolloutFarm.DEFAULT_BATCH_SIZE);
+        } else {
+            results = new ArrayList<>();
+            for (Play play : plays) {
+                results.add(rollout.rollout(play.getResult(), player.opposite(), trials, seed));
+            }
+        }
+        
+        double bestEquity = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < plays.size(); i++) {
+            double equity = -results.get(i).getEquity();
+            if (equity > bestEquity) {
+                bestEquity = equity;
+                best = plays.get(i);
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Store one entry per move of a play
+     * @param board the position before the play
+     * @param player the player making the play
+     * @param dice the roll
+     * @param play the play
+     * @param entries the book entries
+     */
+    private static void addEntries(Board board, PlayerColor player, Dice dice, Play play,
+                                   Map<OpeningBook.Key, Move> entries) {
+        Board step = board.clone();
+        Dice remaining = dice.copy();
+        for (Move move : play.getMoves()) {
+            entries.putIfAbsent(OpeningBook.key(step.positionHash(), remaining.getAvailableKey()), move);
+            remaining.useDie(move.getDieValue(player));
+            step.applyMove(move, player);
+        }
+    }
+    
+    /**
+     * Generate a book and write it to a file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBookGenerator <output file> [--plies N] [--trials N] [--seed N] [--truncate] [--workers N]");
+            System.exit(1);
+        }
+        
+        int plies = 2;
+        int trials = 144;
+        long seed = 1L;
+        boolean truncate = false;
+        int workers = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--trials":
+                    trials = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--truncate":
+                    truncate = true;
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        OpeningBookGenerator generator = new OpeningBookGenerator(plies, trials, seed, truncate);
+        Map<OpeningBook.Key, Move> entries;
+        if (workers > 0) {
+            try (RolloutFarm farm = new RolloutFarm(workers)) {
+                generator.setFarm(farm);
+                entries = generator.generate();
+            }
+        } else {
+            entries = generator.generate();
+        }
+        try (OutputStream out = new FileOutputStream(args[0])) {
+            OpeningBook.write(entries, out);
+        }
+        System.err.println("Wrote " + entries.size() + " entries to " + args[0]);
+    }
+}
\ No newline at end of file
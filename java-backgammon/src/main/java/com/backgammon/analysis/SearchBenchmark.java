@@ -0,0 +1,154 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.AI;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.ExpectiminimaxSearch;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayerColor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares pruned and unpruned expectiminimax search on a fixed suite of positions.
+ *
+ * The suite is taken from a seeded self-play game of the heuristic AI, so it is the
+ * same on every run. Each position is searched both ways at the same depth; the
+ * report lists the nodes visited and time taken, and checks that pruning did not
+ * change the value of the root.
+ *
+ * Usage: {@code SearchBenchmark [--plies N] [--positions N] [--seed N]}
+ */
+public class SearchBenchmark {
+    // Values closer than this are treated as equal
+    private static final double TOLERANCE = 1e-9;
+    
+    /**
+     * A position in the suite: the board, the player to move and their roll
+     */
+    private static class Position {
+        private final Board board;
+        private final PlayerColor color;
+        private final Dice dice;
+        
+        Position(Board board, PlayerColor color, Dice dice) {
+            this.board = board;
+            this.color = color;
+            this.dice = dice;
+        }
+    }
+    
+    /**
+     * Build the position suite from seeded self-play, one position per turn with
+     * contact, skipping the opening turns covered by the book
+     * @param count the number of positions
+     * @param seed the dice seed
+     * @return the positions
+     */
+    static List<Position> createSuite(int count, long seed) {
+        List<Position> suite = new ArrayList<>();
+        Random random = new Random(seed);
+        while (suite.size() < count) {
+            GameLogic game = new GameLogic(new Board(), PlayerColor.WHITE, new Dice(random));
+            AI[] players = {new AI(PlayerColor.WHITE), new AI(PlayerColor.BLACK)};
+            int turn = 0;
+            while (game.getGameState() == GameState.PLAYING && suite.size() < count) {
+                PlayerColor color = game.getCurrentPlayer();
+                game.rollDice();
+                if (game.getCurrentPlayer() != color) {
+                    continue; // No legal move
+                }
+                
+                turn++;
+                if (turn > 4 && game.getBoard().hasContact()) {
+                    suite.add(new Position(game.getBoard().clone(), color, game.getDice().copy()));
+                }
+                
+                AI ai = players[color.ordinal()];
+                while (game.getCurrentPlayer() == color && game.getGameState() == GameState.PLAYING) {
+                    Move move = ai.getBestMove(game.getBoard(), game.getDice());
+                    if (move == null || !game.makeMove(move)) {
+                        game.endTurn();
+                    }
+                }
+            }
+        }
+        return suite;
+    }
+    
+    /**
+     * Run the benchmark
+     */
+    public static void main(String[] args) {
+        int plies = 2;
+        int positions = 12;
+        long seed = 1L;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--positions":
+                    positions = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        List<Position> suite = createSuite(positions, seed);
+        ExpectiminimaxSearch unpruned = new ExpectiminimaxSearch(plies, false);
+        ExpectiminimaxSearch pruned = new ExpectiminimaxSearch(plies, true);
+        
+        // Warm up the JIT and the race evaluator so the first position is not penalised
+        Position first = suite.get(0);
+        unpruned.search(first.board, first.color, first.dice);
+        pruned.search(first.board, first.color, first.dice);
+        
+        System.out.printf("%-4s %-6s %12s %10s %12s %10s %8s %s%n",
+            "#", "roll", "nodes", "ms", "pruned", "ms", "value", "same");
+        long totalNodes = 0;
+        long totalPrunedNodes = 0;
+        long totalNanos = 0;
+        long totalPrunedNanos = 0;
+        int mismatches = 0;
+        for (int i = 0; i < suite.size(); i++) {
+            Position position = suite.get(i);
+            
+            long start = System.nanoTime();
+            unpruned.search(position.board, position.color, position.dice);
+            long nanos = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            Play play = pruned.search(position.board, position.color, position.dice);
+            long prunedNanos = System.nanoTime() - start;
+            
+            boolean same = Math.abs(unpruned.getValue() - pruned.getValue()) < TOLERANCE;
+            if (!same) {
+                mismatches++;
+            }
+            System.out.printf("%-4d %-6s %12d %10.1f %12d %10.1f %8.4f %s%n",
+                i + 1, position.dice.getValues(), unpruned.getNodeCount(), nanos / 1e6,
+                pruned.getNodeCount(), prunedNanos / 1e6, pruned.getValue(), same ? "yes" : "NO " + play);
+            
+            totalNodes += unpruned.getNodeCount();
+            totalPrunedNodes += pruned.getNodeCount();
+            totalNanos += nanos;
+            totalPrunedNanos += prunedNanos;
+        }
+        
+        System.out.printf("%nplies %d, %d positions: unpruned %d nodes in %.1f ms, pruned %d nodes in %.1f ms%n",
+            plies, suite.size(), totalNodes, totalNanos / 1e6, totalPrunedNodes, totalPrunedNanos / 1e6);
+        System.out.printf("nodes saved %.1f%%, time saved %.1f%%, value mismatches %d%n",
+            100.0 * (totalNodes - totalPrunedNodes) / totalNodes,
+            100.0 * (totalNanos - totalPrunedNanos) / totalNanos, mismatches);
+    }
+}
\ No newline at end of file
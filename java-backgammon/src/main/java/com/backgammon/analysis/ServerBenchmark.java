@@ -0,0 +1,313 @@
+package com.backgammon.analysis;
+
+import com.backgammon.metrics.Histogram;
+import com.backgammon.server.EngineServer;
+import com.backgammon.server.JsonReader;
+import com.backgammon.server.SpectatorHub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput and tail latency of the {@link EngineServer} under concurrent
+ * load.
+ *
+ * Each client plays AI-vs-AI games through its own session as fast as it can, one
+ * turn per request or several turns per {@code batch} request, and starts a new game
+ * whenever one ends. Spectators can be added to the first client's session: ones that
+ * read their stream, and stalled ones that never read, to check that neither slows the
+ * players down. Requests made during the warm-up are not counted. Without a URL the
+ * benchmark starts a server in the same JVM.
+ *
+ * Usage: {@code ServerBenchmark [--url URL] [--clients N] [--seconds N] [--warmup N]
+ * [--batch N] [--depth N] [--threads N] [--spectators N] [--stalled N]}
+ */
+public class ServerBenchmark {
+    private final String baseUrl;
+    private final int clients;
+    private final int batch;
+    private final int depth;
+    private final int spectators;
+    private final int stalled;
+    private final HttpClient http;
+    
+    // Latency of each counted request, in nanoseconds
+    private final Histogram latency;
+    
+    // Counted requests, turns played and failed requests
+    private final LongAdder requests;
+    private final LongAdder turns;
+    private final LongAdder errors;
+    
+    // Bytes received by the spectators that read their streams
+    private final LongAdder spectatorBytes;
+    
+    // The first client's session, which the spectators watch
+    private volatile String watchedSession;
+    
+    // Whether requests are being counted yet, and whether the clients should stop
+    private volatile boolean measuring;
+    private volatile boolean stopping;
+    
+    /**
+     * Create a benchmark
+     * @param baseUrl the server's API root, such as {@code http://localhost:8080/api}
+     * @param clients the number of concurrent clients
+     * @param batch the number of AI turns per request; 1 uses the {@code ai} endpoint
+     * @param depth the AI search depth
+     * @param spectators the number of spectators reading the first client's game
+     * @param stalled the number of spectators that connect to it and never read
+     */
+    public ServerBenchmark(String baseUrl, int clients, int batch, int depth, int spectators, int stalled) {
+        this.baseUrl = baseUrl;
+        this.clients = clients;
+        this.batch = batch;
+        this.depth = depth;
+        this.spectators = spectators;
+        this.stalled = stalled;
+        this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        this.latency = new Histogram("request.nanos");
+        this.requests = new LongAdder();
+        this.turns = new LongAdder();
+        this.errors = new LongAdder();
+        this.spectatorBytes = new LongAdder();
+    }
+    
+    /**
+     * Run the clients
+     * @param warmupSeconds the time before requests are counted
+     * @param seconds the time requests are counted for
+     * @throws IOException if a spectator cannot connect
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public void run(int warmupSeconds, int seconds) throws IOException, InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            boolean watched = i == 0;
+            Thread thread = new Thread(() -> playGames(watched), "benchmark-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        
+        List<Socket> stalledSockets = new ArrayList<>();
+        if (spectators + stalled > 0) {
+            while (watchedSession == null) {
+                Thread.sleep(10);
+            }
+            URI watch = URI.create(baseUrl + "/sessions/" + watchedSession + "/watch");
+            for (int i = 0; i < spectators; i++) {
+                // Streams are read asynchronously, so spectators need no threads here
+                http.sendAsync(HttpRequest.newBuilder(watch).build(), HttpResponse.BodyHandlers.ofByteArrayConsumer(
+                    chunk -> chunk.ifPresent(bytes -> {
+                        if (measuring) {
+                            spectatorBytes.add(bytes.length);
+                        }
+                    })));
+            }
+            for (int i = 0; i < stalled; i++) {
+                stalledSockets.add(openStalled(watch));
+            }
+        }
+        
+        Thread.sleep(warmupSeconds * 1000L);
+        measuring = true;
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+        stopping = true;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Socket socket : stalledSockets) {
+            socket.close();
+        }
+    }
+    
+    /**
+     * Request a stream and never read it, so the server's writes eventually block
+     * @param watch the stream's URI
+     * @return the socket
+     * @throws IOException if the request cannot be sent
+     */
+    private static Socket openStalled(URI watch) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress(watch.getHost(), watch.getPort()));
+        String request = "GET " + watch.getPath() + " HTTP/1.1\r\nHost: " + watch.getHost() + "\r\n\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        return socket;
+    }
+    
+    /**
+     * Play game after game through one session until stopped
+     * @param watched whether this is the session the spectators watch
+     */
+    private void playGames(boolean watched) {
+        String session = null;
+        String body = batchBody();
+        while (!stopping) {
+            try {
+                if (session == null) {
+                    session = (String) send("POST", "/sessions", "").get("session");
+                    if (watched) {
+                        watchedSession = session;
+                    }
+                    continue;
+                }
+                
+                long start = System.nanoTime();
+                Map<String, Object> response = batch == 1
+                    ? send("POST", "/sessions/" + session + "/ai", "{\"depth\":" + depth + "}")
+                    : send("POST", "/sessions/" + session + "/batch", body);
+                if (measuring) {
+                    latency.recordSince(start);
+                    requests.increment();
+                    turns.add(batch);
+                }
+                
+                // Start over in the same session once the game is decided
+                @SuppressWarnings("unchecked")
+                Map<String, Object> state = (Map<String, Object>) response.get("state");
+                if (state == null || "ended".equals(state.get("state"))) {
+                    send("POST", "/sessions/" + session + "/reset", "");
+                }
+            } catch (IOException | RuntimeException e) {
+                errors.increment();
+                session = null;
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Build the body of a batch of AI turns
+     * @return the body
+     */
+    private String batchBody() {
+        StringBuilder sb = new StringBuilder("{\"ops\":[");
+        for (int i = 0; i < batch; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"op\":\"ai\",\"depth\":").append(depth).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+    
+    /**
+     * Send a request and parse its response
+     * @param method the HTTP method
+     * @param path the path below the API root
+     * @param body the request body
+     * @return the response object
+     * @throws IOException if the request fails or is refused
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    private Map<String, Object> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .method(method, HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return JsonReader.parseObject(response.body());
+    }
+    
+    /**
+     * Print the results
+     * @param seconds the measured time
+     * @param server the server, if it runs in this JVM
+     */
+    private void report(int seconds, EngineServer server) {
+        System.out.printf("%d clients, %d turn(s) per request, depth %d%n", clients, batch, depth);
+        System.out.printf("%.1f requests/s, %.1f turns/s, %d errors%n",
+            requests.sum() / (double) seconds, turns.sum() / (double) seconds, errors.sum());
+        System.out.printf("latency ms: mean %.2f, p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+            latency.getMean() / 1e6, latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+            latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+        if (spectators + stalled > 0) {
+            System.out.printf("%d spectators received %.1f KB/s; %d stalled", spectators,
+                spectatorBytes.sum() / 1024.0 / seconds, stalled);
+            if (server != null) {
+                SpectatorHub hub = server.getSpectatorHub();
+                System.out.printf(", %d resyncs, %d dropped", hub.getResyncs(), hub.getDropped());
+            }
+            System.out.println();
+        }
+    }
+    
+    /**
+     * Run the benchmark against a server, starting one if no URL is given
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = null;
+        int clients = 16;
+        int seconds = 10;
+        int warmup = 3;
+        int batch = 1;
+        int depth = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int spectators = 0;
+        int stalled = 0;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--clients":
+                    clients = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--spectators":
+                    spectators = Integer.parseInt(args[++i]);
+                    break;
+                case "--stalled":
+                    stalled = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        EngineServer server = null;
+        if (url == null) {
+            server = new EngineServer(0, threads, EngineServer.DEFAULT_QUEUE, EngineServer.DEFAULT_MAX_SESSIONS,
+                SpectatorHub.DEFAULT_MAX_SPECTATORS);
+            server.start();
+            url = "http://localhost:" + server.getPort() + "/api";
+        }
+        
+        ServerBenchmark benchmark = new ServerBenchmark(url, clients, batch, depth, spectators, stalled);
+        benchmark.run(warmup, seconds);
+        benchmark.report(seconds, server);
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
\ No newline at end of file
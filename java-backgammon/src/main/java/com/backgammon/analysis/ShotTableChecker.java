@@ -0,0 +1,169 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayGenerator;
+import com.backgammon.model.PlayerColor;
+import com.backgammon.model.Point;
+import com.backgammon.model.ShotTable;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link ShotTable} against a brute-force count of the shots at every blot.
+ *
+ * Positions are reached by playing random games, and checked before every move. For
+ * each blot, the brute-force count generates every legal play of all 36 rolls for the
+ * opponent with {@link PlayGenerator} and counts the rolls with a play that hits it.
+ * Random games often put checkers on the bar, so blots are also tallied by the number
+ * of the hitter's checkers waiting to enter, to show those cases are covered.
+ *
+ * Usage: {@code ShotTableChecker [--blots N] [--seed N]}
+ */
+public class ShotTableChecker {
+    // Safety limit on the length of a single game
+    private static final int MAX_TURNS = 1000;
+    
+    // Mismatches printed; later ones are only counted
+    private static final int MAX_REPORTED = 20;
+    
+    private final PlayGenerator playGenerator;
+    private final Random random;
+    
+    // Blots checked, by the number of the hitter's checkers on the bar (four or more counted as four)
+    private final long[] checkedByBar;
+    private long mismatches;
+    
+    /**
+     * Create a checker
+     * @param seed the seed of the random games
+     */
+    public ShotTableChecker(long seed) {
+        this.playGenerator = new PlayGenerator();
+        this.random = new Random(seed);
+        this.checkedByBar = new long[5];
+    }
+    
+    /**
+     * Check blots until the given number have been checked
+     * @param blots the number of blots to check
+     */
+    public void run(long blots) {
+        while (getChecked() < blots) {
+            GameLogic game = new GameLogic(new Board(), random.nextBoolean() ? PlayerColor.WHITE : PlayerColor.BLACK,
+                new Dice(random));
+            for (int turn = 0; turn < MAX_TURNS && game.getGameState() == GameState.PLAYING; turn++) {
+                PlayerColor player = game.getCurrentPlayer();
+                game.rollDice();
+                while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player) {
+                    checkBlots(game.getBoard());
+                    List<Move> moves = game.getPossibleMoves();
+                    if (moves.isEmpty() || !game.makeMove(moves.get(random.nextInt(moves.size())))) {
+                        game.endTurn();
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Compare the table with the brute-force count at every blot of a position
+     * @param board the position
+     */
+    private void checkBlots(Board board) {
+        for (int pointIndex = 0; pointIndex < 24; pointIndex++) {
+            Point point = board.getPoint(pointIndex);
+            if (point == null || point.getCount() != 1) {
+                continue;
+            }
+            int onBar = board.getBarCount(point.getColor().opposite());
+            checkedByBar[Math.min(onBar, 4)]++;
+            
+            int expected = bruteForceShots(board, pointIndex);
+            int actual = ShotTable.countShots(board, pointIndex);
+            if (expected != actual && ++mismatches <= MAX_REPORTED) {
+                System.err.printf("mismatch at %s, blot on %d, %d on the bar: expected %d shots, got %d%n",
+                    board.toPositionId(), pointIndex, onBar, expected, actual);
+            }
+        }
+    }
+    
+    /**
+     * Count the rolls with a legal play that hits a blot
+     * @param board the position
+     * @param pointIndex the point holding the blot
+     * @return the number of rolls out of {@link ShotTable#ROLLS} that hit it
+     */
+    private int bruteForceShots(Board board, int pointIndex) {
+        PlayerColor owner = board.getPoint(pointIndex).getColor();
+        int shots = 0;
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = 1; die2 <= 6; die2++) {
+                Dice dice = new Dice();
+                dice.setValues(die1, die2);
+                for (Play play : playGenerator.generate(owner.opposite(), board.clone(), dice)) {
+                    // The owner cannot move in the opponent's turn, so a missing blot was hit
+                    Point after = play.getResult().getPoint(pointIndex);
+                    if (after == null || !after.hasColor(owner)) {
+                        shots++;
+                        break;
+                    }
+                }
+            }
+        }
+        return shots;
+    }
+    
+    /**
+     * Get the number of blots checked
+     * @return the count
+     */
+    public long getChecked() {
+        long checked = 0;
+        for (long count : checkedByBar) {
+            checked += count;
+        }
+        return checked;
+    }
+    
+    /**
+     * Get the number of blots where the table and the brute-force count disagreed
+     * @return the count
+     */
+    public long getMismatches() {
+        return mismatches;
+    }
+    
+    /**
+     * Check the table and exit with 1 if any mismatch is found
+     */
+    public static void main(String[] args) {
+        long blots = 100_000L;
+        long seed = 1L;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--blots":
+                    blots = Long.parseLong(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        ShotTableChecker checker = new ShotTableChecker(seed);
+        checker.run(blots);
+        System.out.printf("%d blots, %d mismatches%n", checker.getChecked(), checker.getMismatches());
+        System.out.printf("by the hitter's checkers on the bar: none %d, one %d, two %d, three %d, four or more %d%n",
+            checker.checkedByBar[0], checker.checkedByBar[1], checker.checkedByBar[2], checker.checkedByBar[3],
+            checker.checkedByBar[4]);
+        System.exit(checker.getMismatches() == 0 ? 0 : 1);
+    }
+}
\ No newline at end of file
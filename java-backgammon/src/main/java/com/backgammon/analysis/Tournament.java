@@ -0,0 +1,350 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.AI;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.PlayerColor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Plays two AI configurations against each other until a sequential probability
+ * ratio test (SPRT) decides which is stronger.
+ *
+ * Games are played in mirrored pairs: both games of a pair use the same dice
+ * sequence, with the configurations swapping sides, so most of the luck of the dice
+ * cancels out. Pairs run in parallel but their results are applied in order, so the
+ * outcome does not depend on the number of threads.
+ *
+ * The test is a normal-approximation SPRT on the pair scores with hypotheses given
+ * in Elo: H0 that A is {@code elo0} stronger than B, H1 that it is {@code elo1} stronger.
+ * A game scores 1 for a win and 0 for a loss, whatever its size, so a gammon counts the
+ * same as a single game. A game cut off at the turn limit scores a half for each side.
+ *
+ * Usage: {@code Tournament [--depthA N] [--depthB N] [--elo0 E] [--elo1 E] [--alpha A]
+ * [--beta B] [--maxGames N] [--threads N] [--seed N]}
+ */
+public class Tournament {
+    // Safety limit on the length of a single game
+    private static final int MAX_TURNS = 1000;
+    
+    // Pairs played before the test may stop, so the variance estimate is meaningful
+    private static final int MIN_PAIRS = 16;
+    
+    // Lower limit on the pair score variance, for runs where every pair scored the same
+    private static final double MIN_VARIANCE = 0.01;
+    
+    /**
+     * The outcome of a tournament
+     */
+    public enum Decision {
+        H0_ACCEPTED,
+        H1_ACCEPTED,
+        INCONCLUSIVE
+    }
+    
+    private final Function<PlayerColor, AI> playerA;
+    private final Function<PlayerColor, AI> playerB;
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+    private final int maxGames;
+    private final int threads;
+    private final long seed;
+    
+    // Running statistics, over pairs; a pair scores A's points in both games divided by 2
+    private long pairs;
+    private double scoreSum;
+    private double scoreSumOfSquares;
+    private double llr;
+    private long elapsedNanos;
+    
+    /**
+     * Create a tournament
+     * @param playerA creates configuration A for a side
+     * @param playerB creates configuration B for a side
+     * @param elo0 the Elo difference of A over B under H0
+     * @param elo1 the Elo difference of A over B under H1
+     * @param alpha the probability of accepting H1 when H0 is true
+     * @param beta the probability of accepting H0 when H1 is true
+     * @param maxGames the number of games after which the test stops undecided
+     * @param threads the number of games played at once
+     * @param seed the seed of the first pair's dice
+     */
+    public Tournament(Function<PlayerColor, AI> playerA, Function<PlayerColor, AI> playerB, double elo0,
+                      double elo1, double alpha, double beta, int maxGames, int threads, long seed) {
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+        this.maxGames = maxGames;
+        this.threads = threads;
+        this.seed = seed;
+    }
+    
+    /**
+     * Play pairs of games until the test decides or the game limit is reached
+     * @return the decision
+     */
+    public Decision run() {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Double>> inFlight = new ArrayDeque<>();
+        long start = System.nanoTime();
+        long nextPair = 0;
+        long maxPairs = Math.max(1, maxGames / 2);
+        Decision decision = Decision.INCONCLUSIVE;
+        
+        try {
+            while (pairs < maxPairs) {
+                // Keep every thread busy, with one pair queued behind each
+                while (inFlight.size() < 2 * threads && nextPair < maxPairs) {
+                    long pairSeed = seed + nextPair++;
+                    inFlight.add(executor.submit(() -> playPair(pairSeed)));
+                }
+                
+                addPair(inFlight.poll().get());
+                if (pairs < MIN_PAIRS) {
+                    continue;
+                }
+                if (llr >= upperBound) {
+                    decision = Decision.H1_ACCEPTED;
+                    break;
+                }
+                if (llr <= lowerBound) {
+                    decision = Decision.H0_ACCEPTED;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tournament game failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            elapsedNanos = System.nanoTime() - start;
+        }
+        return decision;
+    }
+    
+    /**
+     * Play both games of a pair with the same dice
+     * @param pairSeed the seed of the dice
+     * @return A's pair score, from 0 to 1
+     */
+    private double playPair(long pairSeed) {
+        PlayerColor first = playGame(playerA.apply(PlayerColor.WHITE), playerB.apply(PlayerColor.BLACK), pairSeed);
+        PlayerColor second = playGame(playerB.apply(PlayerColor.WHITE), playerA.apply(PlayerColor.BLACK), pairSeed);
+        return (points(first, PlayerColor.WHITE) + points(second, PlayerColor.BLACK)) / 2;
+    }
+    
+    /**
+     * Score a game for one side
+     * @param winner the winner, or null if the game hit the turn limit
+     * @param side the side to score
+     * @return 1 for a win, 0 for a loss, or 0.5 for an unfinished game
+     */
+    static double points(PlayerColor winner, PlayerColor side) {
+        if (winner == null) {
+            return 0.5;
+        }
+        return winner == side ? 1.0 : 0.0;
+    }
+    
+    /**
+     * Play one game from the starting position. The AIs are cut off from the persistent
+     * evaluation cache, so a result never depends on earlier runs or on values another
+     * configuration stored.
+     * @param white the AI playing white
+     * @param black the AI playing black
+     * @param gameSeed the seed of the dice
+     * @return the winner, or null if the game hit the turn limit
+     */
+    static PlayerColor playGame(AI white, AI black, long gameSeed) {
+        white.setEvaluationCache(null);
+        black.setEvaluationCache(null);
+        GameLogic game = new GameLogic(new Board(), PlayerColor.WHITE, new Dice(new Random(gameSeed)));
+        for (int turn = 0; turn < MAX_TURNS && game.getGameState() == GameState.PLAYING; turn++) {
+            PlayerColor player = game.getCurrentPlayer();
+            AI ai = player == PlayerColor.WHITE ? white : black;
+            game.rollDice();
+            
+            while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player) {
+                Move move = ai.getBestMove(game.getBoard(), game.getDice());
+                if (move == null || !game.makeMove(move)) {
+                    game.endTurn();
+                    break;
+                }
+            }
+        }
+        return game.getWinner();
+    }
+    
+    /**
+     * Add a pair result and update the log-likelihood ratio
+     * @param score A's pair score
+     */
+    private void addPair(double score) {
+        pairs++;
+        scoreSum += score;
+        scoreSumOfSquares += score * score;
+        if (pairs < 2) {
+            return;
+        }
+        
+        // Normal approximation: llr = (s1 - s0) / var * (sum - n * (s0 + s1) / 2)
+        double mean = scoreSum / pairs;
+        double variance = Math.max(MIN_VARIANCE, (scoreSumOfSquares - pairs * mean * mean) / (pairs - 1));
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        llr = (s1 - s0) / variance * (scoreSum - pairs * (s0 + s1) / 2);
+    }
+    
+    /**
+     * Convert an Elo difference to an expected score
+     * @param elo the Elo difference
+     * @return the expected score, from 0 to 1
+     */
+    static double expectedScore(double elo) {
+        return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+    }
+    
+    /**
+     * Get the number of games played
+     * @return the game count
+     */
+    public long getGames() {
+        return 2 * pairs;
+    }
+    
+    /**
+     * Get A's mean score per game
+     * @return the score, from 0 to 1
+     */
+    public double getScore() {
+        return pairs == 0 ? 0.5 : scoreSum / pairs;
+    }
+    
+    /**
+     * Get the win-rate difference: the share of games A won minus the share B won, with
+     * unfinished games split evenly. Gammons count as single wins, so this is not an
+     * equity difference.
+     * @return the difference, from -1 to 1
+     */
+    public double getWinRateDifference() {
+        return 2 * getScore() - 1;
+    }
+    
+    /**
+     * Get the standard error of the win-rate difference
+     * @return the standard error, or 0 with fewer than two pairs
+     */
+    public double getWinRateStandardError() {
+        if (pairs < 2) {
+            return 0.0;
+        }
+        double mean = scoreSum / pairs;
+        double variance = Math.max(0.0, (scoreSumOfSquares - pairs * mean * mean) / (pairs - 1));
+        return 2 * Math.sqrt(variance / pairs);
+    }
+    
+    /**
+     * Get the current log-likelihood ratio
+     * @return the ratio
+     */
+    public double getLogLikelihoodRatio() {
+        return llr;
+    }
+    
+    /**
+     * Get the number of games played per second
+     * @return the rate
+     */
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : getGames() / (elapsedNanos / 1e9);
+    }
+    
+    /**
+     * Run a tournament between two search depths
+     */
+    public static void main(String[] args) {
+        int depthA = 2;
+        int depthB = 1;
+        double elo0 = 0;
+        double elo1 = 50;
+        double alpha = 0.05;
+        double beta = 0.05;
+        int maxGames = 2000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1L;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--depthA":
+                    depthA = Integer.parseInt(args[++i]);
+                    break;
+                case "--depthB":
+                    depthB = Integer.parseInt(args[++i]);
+                    break;
+                case "--elo0":
+                    elo0 = Double.parseDouble(args[++i]);
+                    break;
+                case "--elo1":
+                    elo1 = Double.parseDouble(args[++i]);
+                    break;
+                case "--alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "--beta":
+                    beta = Double.parseDouble(args[++i]);
+                    break;
+                case "--maxGames":
+                    maxGames = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        Tournament tournament = new Tournament(withDepth(depthA), withDepth(depthB), elo0, elo1, alpha, beta,
+            maxGames, threads, seed);
+        Decision decision = tournament.run();
+        
+        System.out.printf("A (depth %d) vs B (depth %d): %s after %d games%n",
+            depthA, depthB, decision, tournament.getGames());
+        System.out.printf("score %.3f, win-rate difference %+.3f +/- %.3f, LLR %.2f%n",
+            tournament.getScore(), tournament.getWinRateDifference(),
+            1.96 * tournament.getWinRateStandardError(), tournament.getLogLikelihoodRatio());
+        System.out.printf("%.1f games/s on %d threads%n", tournament.getGamesPerSecond(), threads);
+    }
+    
+    /**
+     * Create a factory for AIs searching to a fixed depth
+     * @param plies the search depth
+     * @return the factory
+     */
+    private static Function<PlayerColor, AI> withDepth(int plies) {
+        return color -> {
+            AI ai = new AI(color);
+            ai.setSearchDepth(plies);
+            return ai;
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,402 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.TwoSidedBearoff;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the {@link TwoSidedBearoff} database by dynamic programming.
+ *
+ * Every play in a bearoff lowers the mover's pip count, so the positions are filled in
+ * order of the two sides' total pip count: each one's chance is the average over the 21
+ * rolls of the best play's result, a win or one minus the opponent's chance after it,
+ * and all of those have a lower total. The only exception is a roll that cannot be
+ * played at all, as when 6-6 leaves a lone checker on the ace point; then the same two
+ * sides are on roll in turn, so a position and its mirror image are solved together
+ * from a pair of linear equations. The positions of one total are independent of each
+ * other and are shared out among threads.
+ *
+ * Plays follow the rules of {@link com.backgammon.model.MoveValidator}: the player moves
+ * one checker at a time while a die can be played, any order of the dice is allowed,
+ * and a checker is only borne off with the exact die.
+ *
+ * Usage: {@code TwoSidedBearoffGenerator [--points N] [--checkers N] [--threads N]
+ * [--output FILE]}
+ */
+public class TwoSidedBearoffGenerator {
+    // Number of distinct rolls
+    private static final int ROLLS = 21;
+    
+    private final int points;
+    private final int checkers;
+    private final int sideCount;
+    private final int threads;
+    
+    // Checker counts and pip count of every side, by rank
+    private final int[][] sides;
+    private final int[] pips;
+    
+    // Sides by pip count
+    private final int[][] byPips;
+    
+    // Distinct results of every play of each roll from each side, indexed by
+    // side * 21 + roll; empty when the roll cannot be played
+    private final int[][] successors;
+    
+    // Fixed-point win probability of every position for the side on roll
+    private final char[] table;
+    
+    /**
+     * Create a generator
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @param threads the number of threads
+     */
+    public TwoSidedBearoffGenerator(int points, int checkers, int threads) {
+        if (!TwoSidedBearoff.fits(points, checkers)) {
+            throw new IllegalArgumentException("Unsupported bearoff size " + points + "x" + checkers);
+        }
+        this.points = points;
+        this.checkers = checkers;
+        this.sideCount = TwoSidedBearoff.sideCount(points, checkers);
+        this.threads = threads;
+        this.sides = new int[sideCount][];
+        this.pips = new int[sideCount];
+        enumerate(new int[points], 0, 0);
+        
+        // Bucket the sides by pip count
+        int[] fill = new int[points * checkers + 1];
+        for (int pip : pips) {
+            fill[pip]++;
+        }
+        this.byPips = new int[fill.length][];
+        for (int p = 0; p < fill.length; p++) {
+            byPips[p] = new int[fill[p]];
+            fill[p] = 0;
+        }
+        for (int rank = 0; rank < sideCount; rank++) {
+            byPips[pips[rank]][fill[pips[rank]]++] = rank;
+        }
+        
+        this.successors = new int[sideCount * ROLLS][];
+        this.table = new char[sideCount * sideCount];
+    }
+    
+    /**
+     * Fill in the table
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void generate() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // The plays from each side don't depend on the other side
+            AtomicInteger next = new AtomicInteger();
+            runAll(executor, () -> {
+                int[] counts = new int[points];
+                int rank;
+                while ((rank = next.getAndIncrement()) < sideCount) {
+                    System.arraycopy(sides[rank], 0, counts, 0, points);
+                    findSuccessors(rank, counts);
+                }
+                return null;
+            });
+            
+            // With every checker off the side on roll has already won
+            for (int other = 0; other < sideCount; other++) {
+                table[TwoSidedBearoff.index(0, other, sideCount)] = TwoSidedBearoff.ONE;
+            }
+            for (int total = 1; total <= 2 * points * checkers; total++) {
+                int pipTotal = total;
+                AtomicInteger nextSide = new AtomicInteger(1);
+                runAll(executor, () -> {
+                    int a;
+                    while ((a = nextSide.getAndIncrement()) < sideCount) {
+                        int otherPips = pipTotal - pips[a];
+                        if (otherPips >= 1 && otherPips < byPips.length) {
+                            for (int b : byPips[otherPips]) {
+                                if (b >= a) {
+                                    solvePair(a, b);
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Run a task on every thread and wait for them all
+     * @param executor the threads
+     * @param task the task
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private void runAll(ExecutorService executor, Callable<Void> task) throws InterruptedException {
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(task));
+        }
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generator thread failed", e.getCause());
+        }
+    }
+    
+    /**
+     * Solve a position and its mirror image, whose successors are already known
+     * @param a one side
+     * @param b the other side
+     */
+    private void solvePair(int a, int b) {
+        // Each chance is stuck * (1 - mirror's chance) + moved, where only the unplayable
+        // rolls lead back to the mirror image
+        double stuckA = 0.0;
+        double movedA = 0.0;
+        double stuckB = 0.0;
+        double movedB = 0.0;
+        int roll = 0;
+        for (int d1 = 1; d1 <= 6; d1++) {
+            for (int d2 = d1; d2 <= 6; d2++, roll++) {
+                double probability = d1 == d2 ? 1.0 / 36.0 : 2.0 / 36.0;
+                int[] fromA = successors[a * ROLLS + roll];
+                int[] fromB = successors[b * ROLLS + roll];
+                if (fromA.length == 0) {
+                    stuckA += probability;
+                } else {
+                    movedA += probability * bestPlay(fromA, b);
+                }
+                if (fromB.length == 0) {
+                    stuckB += probability;
+                } else {
+                    movedB += probability * bestPlay(fromB, a);
+                }
+            }
+        }
+        
+        if (a == b) {
+            double chance = (stuckA + movedA) / (1.0 + stuckA);
+            table[TwoSidedBearoff.index(a, a, sideCount)] = toFixed(chance);
+            return;
+        }
+        double chanceA = (stuckA + movedA - stuckA * stuckB - stuckA * movedB) / (1.0 - stuckA * stuckB);
+        double chanceB = stuckB + movedB - stuckB * chanceA;
+        table[TwoSidedBearoff.index(a, b, sideCount)] = toFixed(chanceA);
+        table[TwoSidedBearoff.index(b, a, sideCount)] = toFixed(chanceB);
+    }
+    
+    /**
+     * Find the best result of a roll
+     * @param results the sides the roll's plays lead to
+     * @param other the other side, on roll after the play
+     * @return the mover's chance of winning after the best play
+     */
+    private double bestPlay(int[] results, int other) {
+        double best = 0.0;
+        for (int result : results) {
+            // Bearing off the last checker wins outright
+            double chance = result == 0
+                ? 1.0
+                : 1.0 - table[TwoSidedBearoff.index(other, result, sideCount)] / (double) TwoSidedBearoff.ONE;
+            best = Math.max(best, chance);
+        }
+        return best;
+    }
+    
+    /**
+     * Convert a probability to fixed point
+     * @param probability the probability
+     * @return the nearest fixed-point value
+     */
+    private static char toFixed(double probability) {
+        return (char) Math.round(Math.min(1.0, Math.max(0.0, probability)) * TwoSidedBearoff.ONE);
+    }
+    
+    /**
+     * Find the distinct results of every roll from a side
+     * @param rank the side
+     * @param counts its checker counts (restored before returning)
+     */
+    private void findSuccessors(int rank, int[] counts) {
+        int roll = 0;
+        List<Integer> results = new ArrayList<>();
+        for (int d1 = 1; d1 <= 6; d1++) {
+            for (int d2 = d1; d2 <= 6; d2++, roll++) {
+                results.clear();
+                if (d1 == d2) {
+                    playDoubles(counts, d1, 4, points, results);
+                } else {
+                    playOrdered(counts, d1, d2, results);
+                    playOrdered(counts, d2, d1, results);
+                }
+                successors[rank * ROLLS + roll] = results.stream()
+                    .mapToInt(Integer::intValue).sorted().distinct().toArray();
+            }
+        }
+    }
+    
+    /**
+     * Collect the results of playing one die and then the other
+     * @param counts the side (restored before returning)
+     * @param first the die played first
+     * @param second the die played second
+     * @param results receives the ranks of the results; nothing if the first die cannot be played
+     */
+    private void playOrdered(int[] counts, int first, int second, List<Integer> results) {
+        for (int from = first; from <= points; from++) {
+            if (counts[from - 1] == 0) {
+                continue;
+            }
+            moveChecker(counts, from, first, 1);
+            boolean moved = false;
+            for (int next = second; next <= points; next++) {
+                if (counts[next - 1] == 0) {
+                    continue;
+                }
+                moveChecker(counts, next, second, 1);
+                results.add(TwoSidedBearoff.rankSide(counts));
+                moveChecker(counts, next, second, -1);
+                moved = true;
+            }
+            if (!moved) {
+                // The second die cannot be played: the play ends here
+                results.add(TwoSidedBearoff.rankSide(counts));
+            }
+            moveChecker(counts, from, first, -1);
+        }
+    }
+    
+    /**
+     * Collect the results of the remaining moves of a double. Moves are made in
+     * non-increasing order of source point, which reaches every distinct result.
+     * @param counts the side (restored before returning)
+     * @param die the die value
+     * @param remaining the number of moves left
+     * @param maxFrom the highest source point allowed
+     * @param results receives the ranks of the results; nothing if no move at all was possible
+     */
+    private void playDoubles(int[] counts, int die, int remaining, int maxFrom, List<Integer> results) {
+        if (remaining == 0) {
+            results.add(TwoSidedBearoff.rankSide(counts));
+            return;
+        }
+        boolean moved = false;
+        for (int from = maxFrom; from >= die; from--) {
+            if (counts[from - 1] == 0) {
+                continue;
+            }
+            moveChecker(counts, from, die, 1);
+            playDoubles(counts, die, remaining - 1, from, results);
+            moveChecker(counts, from, die, -1);
+            moved = true;
+        }
+        if (!moved && remaining < 4 && !canMove(counts, die)) {
+            // No further move possible: the play ends here. A move left only further
+            // back belongs to a play reached in another order.
+            results.add(TwoSidedBearoff.rankSide(counts));
+        }
+    }
+    
+    /**
+     * Check whether any checker can be moved by a die
+     * @param counts the side
+     * @param die the die value
+     * @return true if a checker is at least the die's distance from home
+     */
+    private boolean canMove(int[] counts, int die) {
+        for (int from = die; from <= points; from++) {
+            if (counts[from - 1] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Move (or undo moving) a checker by a die, bearing it off when it lands exactly home
+     * @param counts the side
+     * @param from the source distance
+     * @param die the die value
+     * @param direction 1 to make the move, -1 to undo it
+     */
+    private static void moveChecker(int[] counts, int from, int die, int direction) {
+        counts[from - 1] -= direction;
+        if (from > die) {
+            counts[from - die - 1] += direction;
+        }
+    }
+    
+    /**
+     * Recursively enumerate all sides
+     * @param counts the partial side
+     * @param point the next point to fill
+     * @param used the checkers placed so far
+     */
+    private void enumerate(int[] counts, int point, int used) {
+        if (point == points) {
+            int rank = TwoSidedBearoff.rankSide(counts);
+            sides[rank] = counts.clone();
+            for (int i = 0; i < points; i++) {
+                pips[rank] += counts[i] * (i + 1);
+            }
+            return;
+        }
+        for (int c = 0; c + used <= checkers; c++) {
+            counts[point] = c;
+            enumerate(counts, point + 1, used + c);
+        }
+        counts[point] = 0;
+    }
+    
+    /**
+     * Generate a database and write it
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int points = 6;
+        int checkers = 6;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--points":
+                    points = Integer.parseInt(args[++i]);
+                    break;
+                case "--checkers":
+                    checkers = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (output == null) {
+            output = "bearoff-" + points + "x" + checkers + ".db";
+        }
+        
+        long start = System.nanoTime();
+        TwoSidedBearoffGenerator generator = new TwoSidedBearoffGenerator(points, checkers, threads);
+        generator.generate();
+        TwoSidedBearoff.write(Paths.get(output), points, checkers, generator.table);
+        System.out.printf("%dx%d: %d positions per side, %.1f s, written to %s%n", points, checkers,
+            generator.sideCount, (System.nanoTime() - start) / 1e9, output);
+    }
+}
\ No newline at end of file
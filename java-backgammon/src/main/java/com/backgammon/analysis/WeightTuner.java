@@ -0,0 +1,287 @@
+package com.backgammon.analysis;
+
+import com.backgammon.model.AI;
+import com.backgammon.model.HeuristicWeights;
+import com.backgammon.model.PlayerColor;
+import com.backgammon.model.PositionClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the {@link HeuristicWeights} by self-play with simultaneous perturbation
+ * stochastic approximation (SPSA).
+ *
+ * Each iteration perturbs every tuned weight at once, by plus or minus {@code c_k} times
+ * its scale with a random sign, and plays the two perturbed vectors against each other.
+ * The match score estimates the gradient along the perturbation, and the weights step
+ * that way by {@code a_k}; both gains decay with Spall's standard exponents. A weight's
+ * scale is its starting magnitude, at least {@link #MIN_SCALE}, so large and small
+ * weights move in proportion.
+ *
+ * The two candidates always play with common random numbers: mirrored pairs on the same
+ * dice, sides swapped, so the luck of the dice cancels and only the difference in play
+ * is measured. The pairs of an iteration run in parallel on all threads. At the end the
+ * tuned vector plays the starting vector on fresh dice, and the stronger of the two is
+ * written to the output file, which the AI loads with {@code -Dbackgammon.weights}.
+ *
+ * The weights only choose the AI's moves at a search depth of one ply. Deeper and timed
+ * searches score their leaves with the {@link com.backgammon.model.PositionEvaluator},
+ * which has no weights, so the tuner refuses to run with {@code -Dbackgammon.searchDepth}
+ * above one, where the candidates would play identically.
+ *
+ * Usage: {@code WeightTuner [--iterations N] [--pairs N] [--verifyPairs N] [--a A]
+ * [--c C] [--classes contact,crashed,backgame] [--start FILE] [--threads N] [--seed N]
+ * [--output FILE]}
+ */
+public class WeightTuner {
+    // Spall's recommended decay exponents for the step and perturbation gains
+    private static final double ALPHA = 0.602;
+    private static final double GAMMA = 0.101;
+    
+    // Smallest scale of a weight, so weights starting at zero can still move
+    private static final double MIN_SCALE = 10.0;
+    
+    private final double[] scale;
+    private final boolean[] tuned;
+    private final int iterations;
+    private final int pairs;
+    private final double a;
+    private final double c;
+    private final int threads;
+    private final long seed;
+    
+    // Current estimate
+    private final double[] theta;
+    
+    /**
+     * Create a tuner
+     * @param start the weights to start from
+     * @param classes the classes whose weights are tuned; the others stay as they start
+     * @param iterations the number of SPSA iterations
+     * @param pairs the number of mirrored game pairs per iteration
+     * @param a the step gain, in units of each weight's scale
+     * @param c the perturbation gain, in units of each weight's scale
+     * @param threads the number of games played at once
+     * @param seed the seed of the perturbations and the dice
+     * @throws IllegalStateException if {@code -Dbackgammon.searchDepth} is above one
+     */
+    public WeightTuner(HeuristicWeights start, List<PositionClass> classes, int iterations, int pairs, double a,
+                       double c, int threads, long seed) {
+        if (Integer.getInteger("backgammon.searchDepth", 1) > 1) {
+            throw new IllegalStateException("The heuristic weights only apply at a search depth of one ply");
+        }
+        this.theta = start.toVector();
+        this.scale = new double[theta.length];
+        this.tuned = new boolean[theta.length];
+        PositionClass[] vectorClasses = HeuristicWeights.getClasses();
+        int features = theta.length / vectorClasses.length;
+        for (int i = 0; i < theta.length; i++) {
+            scale[i] = Math.max(MIN_SCALE, Math.abs(theta[i]));
+            tuned[i] = classes.contains(vectorClasses[i / features]);
+        }
+        this.iterations = iterations;
+        this.pairs = pairs;
+        this.a = a;
+        this.c = c;
+        this.threads = threads;
+        this.seed = seed;
+    }
+    
+    /**
+     * Run every iteration
+     * @return the tuned weights
+     * @throws InterruptedException if the tuning is interrupted
+     */
+    public HeuristicWeights tune() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Random random = new Random(seed);
+        
+        // Stability constant: a tenth of the run, so the first steps are not too large
+        double stability = iterations / 10.0;
+        try {
+            for (int k = 0; k < iterations; k++) {
+                double ak = a / Math.pow(k + 1 + stability, ALPHA);
+                double ck = c / Math.pow(k + 1, GAMMA);
+                
+                // Perturb every tuned weight at once, with a random sign each
+                double[] delta = new double[theta.length];
+                double[] plus = theta.clone();
+                double[] minus = theta.clone();
+                for (int i = 0; i < theta.length; i++) {
+                    if (tuned[i]) {
+                        delta[i] = random.nextBoolean() ? 1.0 : -1.0;
+                        plus[i] += ck * scale[i] * delta[i];
+                        minus[i] -= ck * scale[i] * delta[i];
+                    }
+                }
+                
+                // The score of plus over minus estimates the gradient along delta
+                long pairSeed = seed + (long) k * pairs;
+                double score = match(executor, plus, minus, pairSeed, pairs);
+                for (int i = 0; i < theta.length; i++) {
+                    if (tuned[i]) {
+                        theta[i] += ak * scale[i] * (2 * score - 1) / (2 * ck * delta[i]);
+                    }
+                }
+                System.err.printf(Locale.ROOT, "iteration %d: score %.3f, step %.3g%n", k + 1, score,
+                    ak * Math.abs(2 * score - 1) / (2 * ck));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new HeuristicWeights(theta);
+    }
+    
+    /**
+     * Play two weight vectors against each other
+     * @param first the first vector
+     * @param second the second vector
+     * @param firstSeed the dice seed of the first pair
+     * @param pairs the number of mirrored pairs
+     * @return the first vector's mean score per game, from 0 to 1
+     * @throws InterruptedException if the match is interrupted
+     */
+    public double match(double[] first, double[] second, long firstSeed, int pairs) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return match(executor, first, second, firstSeed, pairs);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Play two weight vectors against each other on an executor
+     * @param executor the executor to play on
+     * @param first the first vector
+     * @param second the second vector
+     * @param firstSeed the dice seed of the first pair
+     * @param pairs the number of mirrored pairs
+     * @return the first vector's mean score per game, from 0 to 1
+     * @throws InterruptedException if the match is interrupted
+     */
+    private static double match(ExecutorService executor, double[] first, double[] second, long firstSeed,
+                                int pairs) throws InterruptedException {
+        HeuristicWeights one = new HeuristicWeights(first);
+        HeuristicWeights two = new HeuristicWeights(second);
+        List<Future<Double>> results = new ArrayList<>(pairs);
+        for (int p = 0; p < pairs; p++) {
+            long pairSeed = firstSeed + p;
+            results.add(executor.submit(() -> playPair(one, two, pairSeed)));
+        }
+        
+        double total = 0;
+        try {
+            for (Future<Double> result : results) {
+                total += result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tuning game failed", e.getCause());
+        }
+        return total / pairs;
+    }
+    
+    /**
+     * Play both games of a pair with the same dice
+     * @param one the first weights
+     * @param two the second weights
+     * @param pairSeed the seed of the dice
+     * @return the first weights' pair score, from 0 to 1
+     */
+    private static double playPair(HeuristicWeights one, HeuristicWeights two, long pairSeed) {
+        PlayerColor first = Tournament.playGame(new AI(PlayerColor.WHITE, one), new AI(PlayerColor.BLACK, two),
+            pairSeed);
+        PlayerColor second = Tournament.playGame(new AI(PlayerColor.WHITE, two), new AI(PlayerColor.BLACK, one),
+            pairSeed);
+        return (Tournament.points(first, PlayerColor.WHITE) + Tournament.points(second, PlayerColor.BLACK)) / 2;
+    }
+    
+    /**
+     * Tune the weights and write the better of the tuned and starting vectors
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int iterations = 100;
+        int pairs = 200;
+        int verifyPairs = 2000;
+        double a = 0.5;
+        double c = 0.1;
+        List<PositionClass> classes = List.of(PositionClass.CONTACT);
+        HeuristicWeights start = HeuristicWeights.getDefault();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1L;
+        Path output = Paths.get("weights.properties");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--pairs":
+                    pairs = Integer.parseInt(args[++i]);
+                    break;
+                case "--verifyPairs":
+                    verifyPairs = Integer.parseInt(args[++i]);
+                    break;
+                case "--a":
+                    a = Double.parseDouble(args[++i]);
+                    break;
+                case "--c":
+                    c = Double.parseDouble(args[++i]);
+                    break;
+                case "--classes":
+                    classes = new ArrayList<>();
+                    for (String name : args[++i].split(",")) {
+                        classes.add(PositionClass.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "--start":
+                    try (InputStream in = Files.newInputStream(Paths.get(args[++i]))) {
+                        start = HeuristicWeights.read(in);
+                    }
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--output":
+                    output = Paths.get(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        long begin = System.nanoTime();
+        WeightTuner tuner = new WeightTuner(start, classes, iterations, pairs, a, c, threads, seed);
+        HeuristicWeights tuned = tuner.tune();
+        
+        // Check the result on dice no iteration has seen
+        long verifySeed = seed + (long) iterations * pairs;
+        double score = tuner.match(tuned.toVector(), start.toVector(), verifySeed, verifyPairs);
+        HeuristicWeights best = score >= 0.5 ? tuned : start;
+        String summary = String.format(Locale.ROOT, "SPSA, %d iterations of %d pairs: tuned scores %.3f over %d pairs "
+            + "against the start", iterations, pairs, score, verifyPairs);
+        best.write(output, summary);
+        
+        System.out.println(summary);
+        for (int i = 0; i < HeuristicWeights.SIZE; i++) {
+            System.out.printf(Locale.ROOT, "%s = %.1f (start %.1f)%n", HeuristicWeights.name(i),
+                tuned.toVector()[i], start.toVector()[i]);
+        }
+        System.out.printf(Locale.ROOT, "%s weights written to %s in %.0f s%n", best == tuned ? "Tuned" : "Starting",
+            output, (System.nanoTime() - begin) / 1e9);
+    }
+}
\ No newline at end of file
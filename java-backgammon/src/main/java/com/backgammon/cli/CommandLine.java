@@ -0,0 +1,610 @@
+package com.backgammon.cli;
+
+import com.backgammon.analysis.ArchiveAnalyzer;
+import com.backgammon.model.AI;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.EvaluationCache;
+import com.backgammon.model.ExpectiminimaxSearch;
+import com.backgammon.model.FastMoveGenerator;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameRecord;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.MoveValidator;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayerColor;
+import com.backgammon.model.Variant;
+import com.backgammon.server.EngineServer;
+import com.backgammon.server.SpectatorHub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Headless subcommands for batch work. Nothing here touches Swing or AWT, so the
+ * commands start quickly and run without a display. Results are streamed to standard
+ * output as one JSON object per line; diagnostics go to standard error.
+ *
+ * <pre>
+ * analyze [--depth N] [--time MS] [--cache FILE] [FILE]   analyze "positionId white|black DD" lines (stdin if no file)
+ * selfplay [--games N] [--seed N] [--depth N] [--variant NAME] [--records]
+ * bench [--positions N] [--seed N] [--depth N]
+ * archive [--depth N] [--threads N] [--blunder X] FILE...
+ * serve [--port N] [--threads N] [--queue N] [--sessions N] [--spectators N]
+ * </pre>
+ */
+public class CommandLine {
+    // Exit codes
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final int USAGE = 2;
+    
+    // Games longer than this are abandoned as unfinished
+    private static final int MAX_TURNS = 1000;
+    
+    // Minimum time spent timing each benchmark
+    private static final long BENCH_NANOS = 500_000_000L;
+    
+    private final PrintStream out;
+    private final PrintStream err;
+    
+    /**
+     * A position with the player on roll and their dice
+     */
+    private static class Position {
+        private final Board board;
+        private final PlayerColor color;
+        private final Dice dice;
+        
+        Position(Board board, PlayerColor color, Dice dice) {
+            this.board = board;
+            this.color = color;
+            this.dice = dice;
+        }
+    }
+    
+    /**
+     * Create a command line writing to the given streams
+     * @param out the stream for result records
+     * @param err the stream for diagnostics
+     */
+    public CommandLine(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+    
+    /**
+     * Run a subcommand
+     * @param args the subcommand and its options
+     * @param in the standard input, read by commands without an input file
+     * @return the exit code
+     */
+    public int run(String[] args, InputStream in) {
+        if (args.length == 0) {
+            usage();
+            return USAGE;
+        }
+        String[] options = new String[args.length - 1];
+        System.arraycopy(args, 1, options, 0, options.length);
+        try {
+            switch (args[0]) {
+                case "analyze":
+                    return analyze(options, in);
+                case "selfplay":
+                    return selfPlay(options);
+                case "bench":
+                    return bench(options);
+                case "archive":
+                    return archive(options);
+                case "serve":
+                    return serve(options);
+                case "help":
+                case "--help":
+                    usage();
+                    return OK;
+                default:
+                    err.println("Unknown command " + args[0]);
+                    usage();
+                    return USAGE;
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return USAGE;
+        } catch (IOException e) {
+            err.println("I/O error: " + e.getMessage());
+            return FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+    }
+    
+    /**
+     * Print the usage summary
+     */
+    private void usage() {
+        err.println("Usage: backgammon <command> [options]");
+        err.println("  analyze [--depth N] [--time MS] [--cache FILE] [FILE]   analyze \"positionId white|black DD\" lines");
+        err.println("  selfplay [--games N] [--seed N] [--depth N] [--variant NAME] [--records]");
+        err.println("  bench [--positions N] [--seed N] [--depth N]");
+        err.println("  archive [--depth N] [--threads N] [--blunder X] FILE...");
+        err.println("  serve [--port N] [--threads N] [--queue N] [--sessions N] [--spectators N]   run the HTTP engine service");
+        err.println("With no command the graphical game starts.");
+    }
+    
+    /**
+     * Analyze positions read line by line, writing one record per position. Blank lines
+     * and lines starting with {@code #} are skipped; a bad line produces an error record
+     * and the analysis continues.
+     * @param options the command options
+     * @param in the standard input
+     * @return the exit code
+     * @throws IOException if the input cannot be read
+     */
+    private int analyze(String[] options, InputStream in) throws IOException {
+        int depth = 2;
+        long timeMillis = 0;
+        String file = null;
+        String cacheFile = null;
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "--depth":
+                    depth = intOption(options, ++i);
+                    break;
+                case "--time":
+                    timeMillis = intOption(options, ++i);
+                    break;
+                case "--cache":
+                    if (++i >= options.length) {
+                        throw new IllegalArgumentException("Missing value for --cache");
+                    }
+                    cacheFile = options[i];
+                    break;
+                default:
+                    if (options[i].startsWith("--") || file != null) {
+                        throw new IllegalArgumentException("Unknown option " + options[i]);
+                    }
+                    file = options[i];
+            }
+        }
+        
+        // A time limit searches as deep as it can, up to the anytime limit
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch(timeMillis > 0 ? AI.MAX_ANYTIME_DEPTH : depth);
+        int errors = 0;
+        try (EvaluationCache cache = cacheFile == null ? EvaluationCache.getDefault()
+                : new EvaluationCache(Paths.get(cacheFile), EvaluationCache.DEFAULT_MAX_BYTES);
+             BufferedReader reader = file == null
+                ? new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            search.setCache(cache);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                String[] fields = line.split("\\s+");
+                Position position;
+                try {
+                    position = parsePosition(fields);
+                } catch (IllegalArgumentException e) {
+                    errors++;
+                    emit(new JsonLine().put("position", fields[0]).put("error", e.getMessage()));
+                    continue;
+                }
+                
+                long start = System.nanoTime();
+                Play play = timeMillis > 0
+                    ? search.searchUntil(position.board, position.color, position.dice,
+                        start + timeMillis * 1_000_000L)
+                    : search.search(position.board, position.color, position.dice);
+                long nanos = System.nanoTime() - start;
+                
+                emit(new JsonLine()
+                    .put("position", fields[0])
+                    .put("player", name(position.color))
+                    .put("dice", fields[2])
+                    .put("moves", play.getMoves())
+                    .put("equity", search.getValue())
+                    .put("depth", search.getCompletedDepth())
+                    .put("nodes", search.getNodeCount())
+                    .put("millis", nanos / 1e6));
+            }
+        }
+        return errors == 0 ? OK : FAILED;
+    }
+    
+    /**
+     * Parse the fields of an analysis line
+     * @param fields the position ID, the player on roll and the two dice
+     * @return the position
+     * @throws IllegalArgumentException if a field is invalid
+     */
+    private static Position parsePosition(String[] fields) {
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("Expected \"positionId white|black DD\"");
+        }
+        Board board = Board.fromPositionId(fields[0]);
+        PlayerColor color;
+        if (fields[1].equalsIgnoreCase("white")) {
+            color = PlayerColor.WHITE;
+        } else if (fields[1].equalsIgnoreCase("black")) {
+            color = PlayerColor.BLACK;
+        } else {
+            throw new IllegalArgumentException("Unknown player " + fields[1]);
+        }
+        if (!fields[2].matches("[1-6][1-6]")) {
+            throw new IllegalArgumentException("Invalid dice " + fields[2]);
+        }
+        Dice dice = new Dice();
+        dice.setValues(fields[2].charAt(0) - '0', fields[2].charAt(1) - '0');
+        return new Position(board, color, dice);
+    }
+    
+    /**
+     * Play AI-vs-AI games, writing one record per game. With {@code --records} only the
+     * {@link GameRecord} lines are written, ready to be read back as an archive.
+     * @param options the command options
+     * @return the exit code
+     */
+    private int selfPlay(String[] options) {
+        int games = 10;
+        long seed = 1L;
+        int depth = 1;
+        Variant variant = Variant.STANDARD;
+        boolean recordsOnly = false;
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "--games":
+                    games = intOption(options, ++i);
+                    break;
+                case "--seed":
+                    seed = longOption(options, ++i);
+                    break;
+                case "--depth":
+                    depth = intOption(options, ++i);
+                    break;
+                case "--variant":
+                    if (++i >= options.length) {
+                        throw new IllegalArgumentException("Missing value for --variant");
+                    }
+                    variant = Variant.fromName(options[i]);
+                    break;
+                case "--records":
+                    recordsOnly = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + options[i]);
+            }
+        }
+        
+        AI white = new AI(PlayerColor.WHITE);
+        AI black = new AI(PlayerColor.BLACK);
+        white.setSearchDepth(depth);
+        black.setSearchDepth(depth);
+        for (int game = 0; game < games; game++) {
+            long gameSeed = seed + game;
+            long start = System.nanoTime();
+            GameRecord record = playGame(variant, white, black, new Random(gameSeed), null);
+            long nanos = System.nanoTime() - start;
+            
+            if (recordsOnly) {
+                out.println(record.format());
+                out.flush();
+            } else {
+                emit(new JsonLine()
+                    .put("game", game + 1)
+                    .put("seed", gameSeed)
+                    .put("winner", record.getWinner() == null ? null : name(record.getWinner()))
+                    .put("turns", record.getTurns().size())
+                    .put("millis", nanos / 1e6)
+                    .put("record", record.format()));
+            }
+        }
+        return OK;
+    }
+    
+    /**
+     * Time move generation and search on positions from seeded self-play, writing one
+     * record per benchmark. Move generation is timed both as lists of moves and packed
+     * into a reused buffer, with the bytes the benchmark thread allocated per generated
+     * move.
+     * @param options the command options
+     * @return the exit code
+     */
+    private int bench(String[] options) {
+        int count = 200;
+        long seed = 1L;
+        int depth = 2;
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "--positions":
+                    count = intOption(options, ++i);
+                    break;
+                case "--seed":
+                    seed = longOption(options, ++i);
+                    break;
+                case "--depth":
+                    depth = intOption(options, ++i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + options[i]);
+            }
+        }
+        
+        List<Position> positions = new ArrayList<>();
+        AI white = new AI(PlayerColor.WHITE);
+        AI black = new AI(PlayerColor.BLACK);
+        Random random = new Random(seed);
+        while (positions.size() < count) {
+            playGame(Variant.STANDARD, white, black, random, positions);
+        }
+        positions = positions.subList(0, count);
+        
+        // Move generation: repeat the suite until the time is long enough to measure
+        MoveValidator validator = new MoveValidator();
+        long calls = 0;
+        long moves = 0;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        long nanos;
+        do {
+            for (Position position : positions) {
+                moves += validator.getPossibleMoves(position.color, position.board, position.dice).size();
+            }
+            calls += positions.size();
+            nanos = System.nanoTime() - start;
+        } while (nanos < BENCH_NANOS);
+        allocated = allocatedBytes() - allocated;
+        emit(new JsonLine()
+            .put("bench", "movegen")
+            .put("positions", positions.size())
+            .put("calls", calls)
+            .put("moves", moves)
+            .put("nsPerCall", (double) nanos / calls)
+            .put("bytesPerMove", (double) allocated / moves));
+        
+        // The same, packed into one buffer that every call reuses
+        int[] buffer = new int[FastMoveGenerator.MAX_MOVES];
+        calls = 0;
+        moves = 0;
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        do {
+            for (Position position : positions) {
+                moves += validator.getPossibleMoves(position.color, position.board, position.dice, buffer);
+            }
+            calls += positions.size();
+            nanos = System.nanoTime() - start;
+        } while (nanos < BENCH_NANOS);
+        allocated = allocatedBytes() - allocated;
+        emit(new JsonLine()
+            .put("bench", "movegen-packed")
+            .put("positions", positions.size())
+            .put("calls", calls)
+            .put("moves", moves)
+            .put("nsPerCall", (double) nanos / calls)
+            .put("bytesPerMove", (double) allocated / moves));
+        
+        // Search: one pass over the suite at the given depth
+        ExpectiminimaxSearch search = new ExpectiminimaxSearch(depth);
+        long nodes = 0;
+        start = System.nanoTime();
+        for (Position position : positions) {
+            search.search(position.board, position.color, position.dice);
+            nodes += search.getNodeCount();
+        }
+        nanos = System.nanoTime() - start;
+        emit(new JsonLine()
+            .put("bench", "search")
+            .put("depth", depth)
+            .put("positions", positions.size())
+            .put("nodes", nodes)
+            .put("millis", nanos / 1e6)
+            .put("nodesPerSecond", nodes * 1e9 / nanos));
+        return OK;
+    }
+    
+    /**
+     * Get the number of bytes the current thread has allocated so far
+     * @return the byte count, or 0 if the JVM does not measure allocation
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+        }
+        return 0L;
+    }
+    
+    /**
+     * Analyze archives of game records with {@link ArchiveAnalyzer}
+     * @param options the command options
+     * @return the exit code
+     * @throws IOException if an archive cannot be read
+     * @throws InterruptedException if the analysis is interrupted
+     */
+    private int archive(String[] options) throws IOException, InterruptedException {
+        int depth = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double blunder = ArchiveAnalyzer.DEFAULT_BLUNDER_THRESHOLD;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "--depth":
+                    depth = intOption(options, ++i);
+                    break;
+                case "--threads":
+                    threads = intOption(options, ++i);
+                    break;
+                case "--blunder":
+                    if (++i >= options.length) {
+                        throw new IllegalArgumentException("Missing value for --blunder");
+                    }
+                    try {
+                        blunder = Double.parseDouble(options[i]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value for --blunder: " + options[i]);
+                    }
+                    break;
+                default:
+                    if (options[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + options[i]);
+                    }
+                    files.add(Paths.get(options[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No archive files given");
+        }
+        
+        ArchiveAnalyzer analyzer = new ArchiveAnalyzer(depth, threads, blunder, out);
+        analyzer.run(files);
+        return analyzer.getInvalidGames() == 0 ? OK : FAILED;
+    }
+    
+    /**
+     * Run the HTTP engine service until the process is stopped
+     * @param options the command options
+     * @return the exit code, once interrupted
+     * @throws IOException if the port cannot be bound
+     * @throws InterruptedException if the service is interrupted
+     */
+    private int serve(String[] options) throws IOException, InterruptedException {
+        int port = EngineServer.DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = EngineServer.DEFAULT_QUEUE;
+        int sessions = EngineServer.DEFAULT_MAX_SESSIONS;
+        int spectators = SpectatorHub.DEFAULT_MAX_SPECTATORS;
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "--port":
+                    port = intOption(options, ++i);
+                    break;
+                case "--threads":
+                    threads = intOption(options, ++i);
+                    break;
+                case "--queue":
+                    queue = intOption(options, ++i);
+                    break;
+                case "--sessions":
+                    sessions = intOption(options, ++i);
+                    break;
+                case "--spectators":
+                    spectators = intOption(options, ++i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + options[i]);
+            }
+        }
+        
+        EngineServer server = new EngineServer(port, threads, queue, sessions, spectators);
+        server.start();
+        emit(new JsonLine().put("type", "listening").put("port", server.getPort()).put("threads", threads));
+        Thread.currentThread().join();
+        return OK;
+    }
+    
+    /**
+     * Play one game from the starting position
+     * @param variant the variant, which gives the starting position
+     * @param white the AI playing white
+     * @param black the AI playing black
+     * @param random the source of the dice
+     * @param positions if not null, receives every position in which a player has a move
+     * @return the record of the game
+     */
+    private static GameRecord playGame(Variant variant, AI white, AI black, Random random,
+                                       List<Position> positions) {
+        GameRecord record = new GameRecord();
+        GameLogic game = new GameLogic(new Board(variant), PlayerColor.WHITE, new Dice(random));
+        for (int turn = 0; turn < MAX_TURNS && game.getGameState() == GameState.PLAYING; turn++) {
+            PlayerColor player = game.getCurrentPlayer();
+            AI ai = player == PlayerColor.WHITE ? white : black;
+            int die1 = random.nextInt(6) + 1;
+            int die2 = random.nextInt(6) + 1;
+            game.rollDice(die1, die2);
+            if (positions != null && game.getCurrentPlayer() == player) {
+                positions.add(new Position(game.getBoard().clone(), player, game.getDice().copy()));
+            }
+            
+            List<Move> moves = new ArrayList<>();
+            while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player) {
+                Move move = ai.getBestMove(game.getBoard(), game.getDice());
+                if (move == null || !game.makeMove(move)) {
+                    game.endTurn();
+                    break;
+                }
+                moves.add(move);
+            }
+            record.addTurn(new GameRecord.Turn(player, die1, die2, moves));
+        }
+        record.setWinner(game.getWinner());
+        return record;
+    }
+    
+    /**
+     * Write a record and flush it so readers see it at once
+     * @param line the record
+     */
+    private void emit(JsonLine line) {
+        out.println(line);
+        out.flush();
+    }
+    
+    /**
+     * Get the record name of a player
+     * @param color the player color
+     * @return "white" or "black"
+     */
+    private static String name(PlayerColor color) {
+        return color == PlayerColor.WHITE ? "white" : "black";
+    }
+    
+    /**
+     * Read an integer option value
+     * @param options the options
+     * @param index the index of the value
+     * @return the value
+     */
+    private static int intOption(String[] options, int index) {
+        return (int) longOption(options, index);
+    }
+    
+    /**
+     * Read a long option value
+     * @param options the options
+     * @param index the index of the value
+     * @return the value
+     */
+    private static long longOption(String[] options, int index) {
+        if (index >= options.length) {
+            throw new IllegalArgumentException("Missing value for " + options[index - 1]);
+        }
+        try {
+            return Long.parseLong(options[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + options[index - 1] + ": " + options[index]);
+        }
+    }
+    
+    /**
+     * Run a subcommand and exit with its code
+     */
+    public static void main(String[] args) {
+        System.exit(new CommandLine(System.out, System.err).run(args, System.in));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.backgammon.cli;
+
+import com.backgammon.model.Move;
+
+import java.util.List;
+
+/**
+ * Builds one JSON object for a line-delimited record stream
+ */
+public class JsonLine {
+    private final StringBuilder sb = new StringBuilder("{");
+    
+    /**
+     * Add a string field
+     * @param key the field name
+     * @param value the value, or null
+     * @return this line
+     */
+    public JsonLine put(String key, String value) {
+        key(key);
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+    
+    /**
+     * Add an integer field
+     * @param key the field name
+     * @param value the value
+     * @return this line
+     */
+    public JsonLine put(String key, long value) {
+        key(key);
+        sb.append(value);
+        return this;
+    }
+    
+    /**
+     * Add a number field; NaN and infinities are written as null
+     * @param key the field name
+     * @param value the value
+     * @return this line
+     */
+    public JsonLine put(String key, double value) {
+        key(key);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else {
+            sb.append(value);
+        }
+        return this;
+    }
+    
+    /**
+     * Add a boolean field
+     * @param key the field name
+     * @param value the value
+     * @return this line
+     */
+    public JsonLine put(String key, boolean value) {
+        key(key);
+        sb.append(value);
+        return this;
+    }
+    
+    /**
+     * Add a list of moves, as an array of [from, to] pairs
+     * @param key the field name
+     * @param moves the moves
+     * @return this line
+     */
+    public JsonLine put(String key, List<Move> moves) {
+        key(key);
+        sb.append('[');
+        for (int i = 0; i < moves.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(moves.get(i).getFrom()).append(',').append(moves.get(i).getTo()).append(']');
+        }
+        sb.append(']');
+        return this;
+    }
+    
+    /**
+     * Add an array of integers
+     * @param key the field name
+     * @param values the values
+     * @return this line
+     */
+    public JsonLine put(String key, int[] values) {
+        key(key);
+        sb.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        sb.append(']');
+        return this;
+    }
+    
+    /**
+     * Add a nested object
+     * @param key the field name
+     * @param value the object
+     * @return this line
+     */
+    public JsonLine put(String key, JsonLine value) {
+        key(key);
+        sb.append(value);
+        return this;
+    }
+    
+    /**
+     * Add an array of nested objects
+     * @param key the field name
+     * @param values the objects
+     * @return this line
+     */
+    public JsonLine putArray(String key, List<JsonLine> values) {
+        key(key);
+        sb.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values.get(i));
+        }
+        sb.append(']');
+        return this;
+    }
+    
+    /**
+     * Write a field name and separator
+     * @param key the field name
+     */
+    private void key(String key) {
+        if (sb.length() > 1) {
+            sb.append(',');
+        }
+        quote(key);
+        sb.append(':');
+    }
+    
+    /**
+     * Write a quoted, escaped string
+     * @param value the string
+     */
+    private void quote(String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+    
+    @Override
+    public String toString() {
+        return sb + "}";
+    }
+}
\ No newline at end of file
@@ -18,6 +18,9 @@ public class GameController {
     // AI player (if enabled)
     private AI ai;
     
+    // Searches the AI's replies while the human thinks (if the AI searches)
+    private Ponderer ponderer;
+    
     // Whether AI mode is enabled
     private boolean aiMode;
     
@@ -44,9 +47,19 @@ public class GameController {
         gameLogic.startGame();
         this.aiMode = aiMode;
         
+        if (ponderer != null) {
+            ponderer.close();
+            ponderer = null;
+        }
         if (aiMode) {
             // AI always plays as black
             this.ai = new AI(PlayerColor.BLACK);
+            
+            // Only a searching AI has anything to think about in advance
+            if (ai.getSearchDepth() > 1) {
+                ponderer = new Ponderer(PlayerColor.BLACK, ai.getSearchDepth());
+                ai.setPonderer(ponderer);
+            }
         } else {
             this.ai = null;
         }
@@ -69,6 +82,8 @@ public class GameController {
         // If AI's turn, make AI move after a short delay
         if (aiMode && gameLogic.getCurrentPlayer() == PlayerColor.BLACK) {
             makeAIMove();
+        } else {
+            ponder();
         }
         
         updateView();
@@ -101,9 +116,11 @@ public class GameController {
                 // Successful move
                 gameView.playMoveSound();
                 
-                // If it's now AI's turn, make AI move
+                // If it's now AI's turn, make AI move; otherwise think on from the new position
                 if (aiMode && gameLogic.getCurrentPlayer() == PlayerColor.BLACK) {
                     makeAIMove();
+                } else {
+                    ponder();
                 }
             }
             
@@ -119,13 +136,7 @@ public class GameController {
             selectedPoint = pointIndex;
             
             // Highlight possible moves from this point
-            List<Move> possibleMoves = gameLogic.getPossibleMoves();
-            List<Integer> validDestinations = possibleMoves.stream()
-                .filter(move -> move.getFrom() == pointIndex)
-                .map(Move::getTo)
-                .toList();
-            
-            gameView.highlightPoints(pointIndex, validDestinations);
+            gameView.highlightPoints(pointIndex, gameLogic.getDestinations(pointIndex));
         }
     }
     
@@ -155,13 +166,7 @@ public class GameController {
             selectedPoint = (color == PlayerColor.WHITE) ? Board.WHITE_BAR : Board.BLACK_BAR;
             
             // Highlight possible moves from the bar
-            List<Move> possibleMoves = gameLogic.getPossibleMoves();
-            List<Integer> validDestinations = possibleMoves.stream()
-                .filter(move -> move.getFrom() == selectedPoint)
-                .map(Move::getTo)
-                .toList();
-            
-            gameView.highlightPoints(selectedPoint, validDestinations);
+            gameView.highlightPoints(selectedPoint, gameLogic.getDestinations(selectedPoint));
         }
     }
     
@@ -197,13 +202,18 @@ public class GameController {
             return;
         }
         
+        // The human is done, so the AI's own search gets the CPU
+        if (ponderer != null) {
+            ponderer.stop();
+        }
+        
         // Roll dice for AI if not already rolled
         if (!gameLogic.getDice().hasAvailableMoves()) {
             gameLogic.rollDice();
             gameView.updateDice(gameLogic.getDice().getValues(), gameLogic.getDice().getUsed());
         }
         
-        // Make a move until no more moves are possible
+        // Make a move until no more moves are possible, queueing each one to be animated
         boolean madeMove;
         do {
             Move bestMove = ai.getBestMove(gameLogic.getBoard(), gameLogic.getDice());
@@ -211,19 +221,12 @@ public class GameController {
                 break;
             }
             
+            Board before = gameLogic.getBoard().clone();
             madeMove = gameLogic.makeMove(bestMove);
             if (madeMove) {
+                gameView.animateMove(before, bestMove, PlayerColor.BLACK);
                 gameView.playMoveSound();
             }
-            
-            // Brief pause between moves for clarity
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            
-            updateView();
         } while (madeMove && gameLogic.getDice().hasAvailableMoves());
         
         // End AI turn
@@ -231,9 +234,25 @@ public class GameController {
             gameLogic.endTurn();
         }
         
+        // Replies to this turn's positions can never be needed again
+        if (ponderer != null) {
+            ponderer.clear();
+        }
+        
         updateView();
     }
     
+    /**
+     * Start thinking about the AI's replies while the human considers their play, from
+     * the position and dice the human has now
+     */
+    private void ponder() {
+        if (ponderer != null && gameLogic.getGameState() == GameState.PLAYING
+                && gameLogic.getCurrentPlayer() == PlayerColor.WHITE) {
+            ponderer.ponder(gameLogic.getBoard(), gameLogic.getDice());
+        }
+    }
+    
     // Undo functionality has been removed
     
     /**
@@ -0,0 +1,134 @@
+package com.backgammon.farm;
+
+import com.backgammon.model.Board;
+import com.backgammon.model.PlayerColor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A batch of rollout trials for a worker: the position, the player on roll and the
+ * range of trial seeds to play. Trial seeds are absolute, so a batch gives the same
+ * statistics whichever worker plays it and however often it is retried.
+ */
+public class BatchRequest {
+    private final long id;
+    private final int[] position;
+    private final PlayerColor onRoll;
+    private final long firstSeed;
+    private final int trials;
+    private final boolean truncateAtRace;
+    
+    /**
+     * Create a batch
+     * @param id the batch id, echoed in the result
+     * @param position the position, as written by {@link Board#toArray()}
+     * @param onRoll the player about to roll
+     * @param firstSeed the seed of the first trial; trial i uses firstSeed + i
+     * @param trials the number of trials
+     * @param truncateAtRace whether trials stop at the first pure race
+     */
+    public BatchRequest(long id, int[] position, PlayerColor onRoll, long firstSeed, int trials,
+                        boolean truncateAtRace) {
+        this.id = id;
+        this.position = position.clone();
+        this.onRoll = onRoll;
+        this.firstSeed = firstSeed;
+        this.trials = trials;
+        this.truncateAtRace = truncateAtRace;
+    }
+    
+    /**
+     * Get the batch id
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+    
+    /**
+     * Get the position to roll out
+     * @return a new board holding the position
+     */
+    public Board getBoard() {
+        return Board.fromArray(position);
+    }
+    
+    /**
+     * Get the player about to roll
+     * @return the player on roll
+     */
+    public PlayerColor getOnRoll() {
+        return onRoll;
+    }
+    
+    /**
+     * Get the seed of the first trial
+     * @return the seed
+     */
+    public long getFirstSeed() {
+        return firstSeed;
+    }
+    
+    /**
+     * Get the number of trials
+     * @return the trial count
+     */
+    public int getTrials() {
+        return trials;
+    }
+    
+    /**
+     * Check whether trials stop at the first pure race
+     * @return true if trials are truncated
+     */
+    public boolean isTruncateAtRace() {
+        return truncateAtRace;
+    }
+    
+    /**
+     * Serialize the batch into a frame payload
+     * @return the payload
+     */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(id);
+            for (int count : position) {
+                out.writeByte(count);
+            }
+            out.writeByte(onRoll.ordinal());
+            out.writeLong(firstSeed);
+            out.writeInt(trials);
+            out.writeBoolean(truncateAtRace);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen with an in-memory stream
+        }
+    }
+    
+    /**
+     * Deserialize a batch from a frame payload
+     * @param payload the payload
+     * @return the batch
+     * @throws IOException if the payload is malformed
+     */
+    public static BatchRequest decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        int[] position = new int[Board.ENCODED_LENGTH];
+        for (int i = 0; i < position.length; i++) {
+            position[i] = in.readByte();
+        }
+        int color = in.readUnsignedByte();
+        if (color >= PlayerColor.values().length) {
+            throw new IOException("Invalid player " + color);
+        }
+        return new BatchRequest(id, position, PlayerColor.values()[color], in.readLong(), in.readInt(),
+            in.readBoolean());
+    }
+}
\ No newline at end of file
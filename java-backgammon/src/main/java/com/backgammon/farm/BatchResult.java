@@ -0,0 +1,74 @@
+package com.backgammon.farm;
+
+import com.backgammon.model.RolloutResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The partial statistics a worker sends back for one batch
+ */
+public class BatchResult {
+    private final long id;
+    private final RolloutResult result;
+    
+    /**
+     * Create a batch result
+     * @param id the id of the batch
+     * @param result the statistics of the batch's trials
+     */
+    public BatchResult(long id, RolloutResult result) {
+        this.id = id;
+        this.result = result;
+    }
+    
+    /**
+     * Get the id of the batch
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+    
+    /**
+     * Get the statistics of the batch
+     * @return the partial rollout result
+     */
+    public RolloutResult getResult() {
+        return result;
+    }
+    
+    /**
+     * Serialize the result into a frame payload
+     * @return the payload
+     */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(id);
+            out.writeLong(result.getTrials());
+            out.writeLong(result.getWins());
+            out.writeDouble(result.getEquitySum());
+            out.writeDouble(result.getEquitySumOfSquares());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen with an in-memory stream
+        }
+    }
+    
+    /**
+     * Deserialize a result from a frame payload
+     * @param payload the payload
+     * @return the result
+     * @throws IOException if the payload is malformed
+     */
+    public static BatchResult decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        return new BatchResult(id, new RolloutResult(in.readLong(), in.readLong(), in.readDouble(), in.readDouble()));
+    }
+}
\ No newline at end of file
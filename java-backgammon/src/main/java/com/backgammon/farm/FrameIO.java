@@ -0,0 +1,55 @@
+package com.backgammon.farm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * The framing of the worker protocol: every message is a 4-byte big-endian length
+ * followed by that many bytes of payload. An empty frame asks a worker to shut down.
+ *
+ * Frames work over any pair of streams, so the same protocol runs over a worker's
+ * stdin/stdout locally or over a socket to another machine.
+ */
+public final class FrameIO {
+    // Largest frame accepted, to fail fast on a corrupted stream
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+    
+    private FrameIO() {
+    }
+    
+    /**
+     * Write a frame and flush it
+     * @param out the stream to write to
+     * @param payload the payload (empty to request a shutdown)
+     * @throws IOException if the stream fails
+     */
+    public static void writeFrame(DataOutputStream out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+    
+    /**
+     * Read a frame
+     * @param in the stream to read from
+     * @return the payload, or null if the stream ended cleanly before a frame started
+     * @throws IOException if the stream fails, ends inside a frame or holds an invalid length
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,387 @@
+package com.backgammon.farm;
+
+import com.backgammon.model.Board;
+import com.backgammon.model.PlayerColor;
+import com.backgammon.model.RolloutResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinator that spreads rollouts over several worker processes.
+ *
+ * A job is split into batches of trials which are handed out to {@link RolloutWorker}
+ * processes over the {@link FrameIO} protocol on their stdin/stdout. Finished batches
+ * are kept as soon as they arrive; when a worker dies, or hangs past the batch timeout
+ * and is killed, its unfinished batch goes back on the queue and the worker is restarted.
+ * Since every trial is seeded by its number, the merged result is exactly what a
+ * single-process {@link com.backgammon.model.Rollout} with the same seed would give.
+ *
+ * Local workers get the coordinator's {@code backgammon.*} system properties, so they
+ * play with the same weights, search depth and databases. The evaluation cache is the
+ * exception: its file can only be open in one process, so workers run without it.
+ *
+ * Workers are started with a configurable command, so a command such as
+ * {@code ssh host java -cp ... com.backgammon.farm.RolloutWorker} runs them elsewhere.
+ */
+public class RolloutFarm implements AutoCloseable {
+    // Default number of trials per batch
+    public static final int DEFAULT_BATCH_SIZE = 36;
+    
+    // Times a single worker slot may be restarted during one job before it gives up
+    private static final int MAX_RESTARTS = 3;
+    
+    // Default time a worker has to return a batch, including its startup
+    public static final long DEFAULT_BATCH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    
+    // Prefix of the evaluation cache settings, which are not passed on to local workers
+    private static final String EVAL_CACHE_PROPERTY = "backgammon.evalCache";
+    
+    // The command that starts a worker
+    private final List<String> workerCommand;
+    
+    // One slot per worker; a slot holds its current process, if any
+    private final WorkerSlot[] slots;
+    
+    // Runs one thread per worker slot while a job is in progress
+    private final ExecutorService executor;
+    
+    // Kills workers that take too long over a batch
+    private final ScheduledExecutorService watchdog;
+    private volatile long batchTimeoutMillis;
+    
+    // Id of the next batch
+    private long nextBatchId;
+    
+    /**
+     * Create a farm of local worker JVMs using this JVM's class path
+     * @param workers the number of workers
+     */
+    public RolloutFarm(int workers) {
+        this(workers, localWorkerCommand());
+    }
+    
+    /**
+     * Create a farm
+     * @param workers the number of workers
+     * @param workerCommand the command that starts one worker process
+     */
+    public RolloutFarm(int workers, List<String> workerCommand) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A farm needs at least one worker");
+        }
+        this.workerCommand = new ArrayList<>(workerCommand);
+        this.slots = new WorkerSlot[workers];
+        for (int i = 0; i < workers; i++) {
+            slots[i] = new WorkerSlot(i);
+        }
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "rollout-farm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollout-farm-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchTimeoutMillis = DEFAULT_BATCH_TIMEOUT_MILLIS;
+    }
+    
+    /**
+     * Set how long a worker may take over one batch before it is killed and the batch
+     * handed out again
+     * @param batchTimeoutMillis the timeout in milliseconds, including a new worker's startup
+     */
+    public void setBatchTimeoutMillis(long batchTimeoutMillis) {
+        if (batchTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("The batch timeout must be positive");
+        }
+        this.batchTimeoutMillis = batchTimeoutMillis;
+    }
+    
+    /**
+     * Build the command that starts a worker JVM with this JVM's class path, engine
+     * settings and assertion status
+     * @return the command
+     */
+    public static List<String> localWorkerCommand() {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (RolloutFarm.class.desiredAssertionStatus()) {
+            command.add("-ea");
+        }
+        
+        // Every engine setting except the cache, whose file this process may hold
+        Properties properties = System.getProperties();
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            if (name.startsWith("backgammon.") && !name.startsWith(EVAL_CACHE_PROPERTY)) {
+                command.add("-D" + name + "=" + properties.getProperty(name));
+            }
+        }
+        
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RolloutWorker.class.getName());
+        return command;
+    }
+    
+    /**
+     * Roll out a position
+     * @param board the position (not modified)
+     * @param onRoll the player about to roll
+     * @param trials the number of trials
+     * @param seed the seed of the first trial
+     * @param truncateAtRace whether trials stop at the first pure race
+     * @return the merged results for the player on roll
+     */
+    public RolloutResult rollout(Board board, PlayerColor onRoll, int trials, long seed, boolean truncateAtRace) {
+        List<Board> positions = new ArrayList<>();
+        positions.add(board);
+        return rolloutAll(positions, onRoll, trials, seed, truncateAtRace, DEFAULT_BATCH_SIZE).get(0);
+    }
+    
+    /**
+     * Roll out several positions as one job, all with the same seeds
+     * @param positions the positions (not modified)
+     * @param onRoll the player about to roll in every position
+     * @param trials the number of trials per position
+     * @param seed the seed of the first trial
+     * @param truncateAtRace whether trials stop at the first pure race
+     * @param batchSize the number of trials per batch
+     * @return the merged results, in the order of the positions
+     * @throws IllegalStateException if every worker failed
+     */
+    public synchronized List<RolloutResult> rolloutAll(List<Board> positions, PlayerColor onRoll, int trials,
+                                                       long seed, boolean truncateAtRace, int batchSize) {
+        // Split the job into batches, remembering which position each belongs to
+        LinkedBlockingQueue<BatchRequest> pending = new LinkedBlockingQueue<>();
+        Map<Long, Integer> positionOf = new ConcurrentHashMap<>();
+        for (int p = 0; p < positions.size(); p++) {
+            int[] position = positions.get(p).toArray();
+            for (int start = 0; start < trials; start += batchSize) {
+                long id = nextBatchId++;
+                pending.add(new BatchRequest(id, position, onRoll, seed + start,
+                    Math.min(batchSize, trials - start), truncateAtRace));
+                positionOf.put(id, p);
+            }
+        }
+        
+        // Finished batches, kept as they arrive
+        Map<Long, RolloutResult> finished = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(positionOf.size());
+        AtomicInteger liveWorkers = new AtomicInteger(slots.length);
+        for (WorkerSlot slot : slots) {
+            executor.execute(() -> slot.work(pending, finished, done, liveWorkers));
+        }
+        
+        try {
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                if (liveWorkers.get() == 0) {
+                    throw new IllegalStateException("All rollout workers failed with "
+                        + done.getCount() + " batches left");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for rollout workers", e);
+        } finally {
+            // Let idle worker threads return
+            pending.clear();
+        }
+        
+        List<RolloutResult> results = new ArrayList<>();
+        for (int p = 0; p < positions.size(); p++) {
+            results.add(new RolloutResult());
+        }
+        for (Map.Entry<Long, RolloutResult> entry : finished.entrySet()) {
+            results.get(positionOf.get(entry.getKey())).merge(entry.getValue());
+        }
+        return results;
+    }
+    
+    /**
+     * Get the number of workers
+     * @return the worker count
+     */
+    public int getWorkerCount() {
+        return slots.length;
+    }
+    
+    /**
+     * Ask every worker to shut down and stop the coordinator threads
+     */
+    @Override
+    public synchronized void close() {
+        for (WorkerSlot slot : slots) {
+            slot.stop();
+        }
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+    
+    /**
+     * One worker process and the streams to it, restarted when it fails
+     */
+    private class WorkerSlot {
+        private final int index;
+        private Process process;
+        private DataOutputStream out;
+        private DataInputStream in;
+        
+        WorkerSlot(int index) {
+            this.index = index;
+        }
+        
+        /**
+         * Hand batches to the worker until the job is done, restarting it on failure
+         * @param pending the batches still to play
+         * @param finished the results of finished batches
+         * @param done counted down once per finished batch
+         * @param liveWorkers decremented if this slot gives up
+         */
+        void work(LinkedBlockingQueue<BatchRequest> pending, Map<Long, RolloutResult> finished,
+                  CountDownLatch done, AtomicInteger liveWorkers) {
+            int restarts = 0;
+            while (done.getCount() > 0) {
+                BatchRequest batch;
+                try {
+                    batch = pending.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (batch == null) {
+                    continue;
+                }
+                
+                try {
+                    BatchResult result = send(batch);
+                    if (finished.putIfAbsent(result.getId(), result.getResult()) == null) {
+                        done.countDown();
+                    }
+                } catch (IOException e) {
+                    // The worker died, hung or garbled the stream: requeue the batch and start a new worker
+                    pending.add(batch);
+                    destroy();
+                    if (++restarts > MAX_RESTARTS) {
+                        System.err.println("Rollout worker " + index + " failed too often: " + e.getMessage());
+                        liveWorkers.decrementAndGet();
+                        return;
+                    }
+                    System.err.println("Restarting rollout worker " + index + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        /**
+         * Send a batch to the worker, starting it if needed, and wait for the result. A
+         * worker that has not answered within the batch timeout is killed, which ends
+         * the wait.
+         * @param batch the batch
+         * @return the worker's result
+         * @throws IOException if the worker fails or times out
+         */
+        private BatchResult send(BatchRequest batch) throws IOException {
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+            Process worker = process;
+            long timeoutMillis = batchTimeoutMillis;
+            AtomicBoolean timedOut = new AtomicBoolean();
+            ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+                timedOut.set(true);
+                worker.destroyForcibly();
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            
+            byte[] frame;
+            try {
+                FrameIO.writeFrame(out, batch.encode());
+                frame = FrameIO.readFrame(in);
+            } catch (IOException e) {
+                throw timedOut.get() ? timeout(batch, timeoutMillis) : e;
+            } finally {
+                deadline.cancel(false);
+            }
+            if (timedOut.get()) {
+                throw timeout(batch, timeoutMillis);
+            }
+            if (frame == null) {
+                throw new IOException("worker closed its output");
+            }
+            BatchResult result = BatchResult.decode(frame);
+            if (result.getId() != batch.getId()) {
+                throw new IOException("expected batch " + batch.getId() + ", got " + result.getId());
+            }
+            return result;
+        }
+        
+        /**
+         * Describe a batch the worker did not finish in time
+         * @param batch the batch
+         * @param timeoutMillis the timeout it exceeded
+         * @return the exception to report
+         */
+        private IOException timeout(BatchRequest batch, long timeoutMillis) {
+            return new IOException("no result for batch " + batch.getId() + " within " + timeoutMillis + " ms");
+        }
+        
+        /**
+         * Start the worker process
+         * @throws IOException if it cannot be started
+         */
+        private void start() throws IOException {
+            destroy();
+            ProcessBuilder builder = new ProcessBuilder(workerCommand);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = builder.start();
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+        
+        /**
+         * Ask the worker to shut down
+         */
+        void stop() {
+            if (process != null && process.isAlive()) {
+                try {
+                    FrameIO.writeFrame(out, new byte[0]);
+                    process.waitFor(1, TimeUnit.SECONDS);
+                } catch (IOException e) {
+                    // Already gone
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            destroy();
+        }
+        
+        /**
+         * Kill the worker process, if any
+         */
+        private void destroy() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.backgammon.farm;
+
+import com.backgammon.model.Rollout;
+import com.backgammon.model.RolloutResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * A rollout worker: reads {@link BatchRequest} frames, plays the trials and writes a
+ * {@link BatchResult} frame for each batch. It stops at the end of its input or on
+ * an empty frame.
+ *
+ * Run as a process, it talks over stdin/stdout; anything else the engine prints goes
+ * to stderr so it cannot corrupt the protocol.
+ */
+public class RolloutWorker {
+    private final Rollout fullRollout;
+    private final Rollout truncatedRollout;
+    
+    /**
+     * Create a new worker
+     */
+    public RolloutWorker() {
+        this.fullRollout = new Rollout(false);
+        this.truncatedRollout = new Rollout(true);
+    }
+    
+    /**
+     * Serve batches until the input ends or a shutdown frame arrives
+     * @param input the stream batches arrive on
+     * @param output the stream results are written to
+     * @throws IOException if a stream fails
+     */
+    public void serve(InputStream input, OutputStream output) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        
+        byte[] frame;
+        while ((frame = FrameIO.readFrame(in)) != null && frame.length > 0) {
+            BatchRequest batch = BatchRequest.decode(frame);
+            FrameIO.writeFrame(out, new BatchResult(batch.getId(), play(batch)).encode());
+        }
+    }
+    
+    /**
+     * Play the trials of a batch
+     * @param batch the batch
+     * @return the statistics of the batch
+     */
+    RolloutResult play(BatchRequest batch) {
+        Rollout rollout = batch.isTruncateAtRace() ? truncatedRollout : fullRollout;
+        return rollout.rollout(batch.getBoard(), batch.getOnRoll(), batch.getTrials(), batch.getFirstSeed());
+    }
+    
+    /**
+     * Run a worker over stdin/stdout
+     */
+    public static void main(String[] args) throws IOException {
+        // Keep the protocol stream to ourselves
+        OutputStream protocol = new FileOutputStream(FileDescriptor.out);
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        
+        new RolloutWorker().serve(System.in, protocol);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.backgammon.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing event counter that stays cheap under contention
+ */
+public class Counter {
+    // The name the counter is reported under
+    private final String name;
+    
+    // The running total
+    private final LongAdder total;
+    
+    /**
+     * Create a new counter
+     * @param name the name the counter is reported under
+     */
+    public Counter(String name) {
+        this.name = name;
+        this.total = new LongAdder();
+    }
+    
+    /**
+     * Count a single event
+     */
+    public void increment() {
+        total.increment();
+    }
+    
+    /**
+     * Count several events at once
+     * @param count the number of events
+     */
+    public void add(long count) {
+        total.add(count);
+    }
+    
+    /**
+     * Get the number of events counted so far
+     * @return the total count
+     */
+    public long getCount() {
+        return total.sum();
+    }
+    
+    /**
+     * Reset the counter to zero
+     */
+    public void reset() {
+        total.reset();
+    }
+    
+    /**
+     * Get the name of this counter
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public String toString() {
+        return name + ": " + getCount();
+    }
+}
\ No newline at end of file
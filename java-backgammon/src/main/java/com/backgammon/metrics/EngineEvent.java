@@ -0,0 +1,41 @@
+package com.backgammon.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class for the engine's Java Flight Recorder events.
+ *
+ * Every event records the hash of the position it worked on, how many candidate
+ * moves were involved and a depth whose meaning depends on the event type. The
+ * duration is recorded by JFR itself between {@link #begin()} and {@link #commit()}.
+ */
+@Category("Backgammon")
+@StackTrace(false)
+public abstract class EngineEvent extends Event {
+    @Label("Position Hash")
+    @Description("Zobrist hash of the position the event worked on")
+    long positionHash;
+    
+    @Label("Candidate Count")
+    @Description("Number of candidate moves involved")
+    int candidateCount;
+    
+    @Label("Depth")
+    int depth;
+    
+    /**
+     * Fill in the event fields before committing
+     * @param positionHash the hash of the position
+     * @param candidateCount the number of candidate moves
+     * @param depth the depth value for this event type
+     */
+    public void set(long positionHash, int candidateCount, int depth) {
+        this.positionHash = positionHash;
+        this.candidateCount = candidateCount;
+        this.depth = depth;
+    }
+}
\ No newline at end of file
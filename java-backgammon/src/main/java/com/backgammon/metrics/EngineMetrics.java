@@ -0,0 +1,110 @@
+package com.backgammon.metrics;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * JMX view over the {@link Metrics} registry
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+    // The name the MBean is registered under
+    public static final ObjectName OBJECT_NAME = createObjectName();
+    
+    @Override
+    public long getMoveGenerationCount() {
+        return Metrics.MOVE_GENERATION.getCount();
+    }
+    
+    @Override
+    public double getMoveGenerationMeanMicros() {
+        return Metrics.MOVE_GENERATION.getMean() / 1_000.0;
+    }
+    
+    @Override
+    public double getMoveGenerationP99Micros() {
+        return Metrics.MOVE_GENERATION.getPercentile(99) / 1_000.0;
+    }
+    
+    @Override
+    public long getAiDecisionCount() {
+        return Metrics.AI_DECISION.getCount();
+    }
+    
+    @Override
+    public double getAiDecisionMeanMillis() {
+        return Metrics.AI_DECISION.getMean() / 1_000_000.0;
+    }
+    
+    @Override
+    public double getAiDecisionP99Millis() {
+        return Metrics.AI_DECISION.getPercentile(99) / 1_000_000.0;
+    }
+    
+    @Override
+    public long getPositionsEvaluated() {
+        return Metrics.POSITIONS_EVALUATED.getCount();
+    }
+    
+    @Override
+    public double getPositionsEvaluatedPerSecond() {
+        return Metrics.ratePerSecond(Metrics.POSITIONS_EVALUATED);
+    }
+    
+    @Override
+    public long getGamesCompleted() {
+        return Metrics.GAMES_COMPLETED.getCount();
+    }
+    
+    @Override
+    public double getGamesPerSecond() {
+        return Metrics.ratePerSecond(Metrics.GAMES_COMPLETED);
+    }
+    
+    @Override
+    public double getPaintMeanMillis() {
+        return Metrics.PAINT.getMean() / 1_000_000.0;
+    }
+    
+    @Override
+    public double getPaintP99Millis() {
+        return Metrics.PAINT.getPercentile(99) / 1_000_000.0;
+    }
+    
+    @Override
+    public double getFramesPerSecond() {
+        double mean = Metrics.FRAME_INTERVAL.getMean();
+        return mean <= 0 ? 0.0 : 1_000_000_000.0 / mean;
+    }
+    
+    @Override
+    public double getFrameIntervalP99Millis() {
+        return Metrics.FRAME_INTERVAL.getPercentile(99) / 1_000_000.0;
+    }
+    
+    @Override
+    public long getAnimationsSkipped() {
+        return Metrics.ANIMATIONS_SKIPPED.getCount();
+    }
+    
+    @Override
+    public String dump() {
+        return Metrics.dump();
+    }
+    
+    @Override
+    public void reset() {
+        Metrics.reset();
+    }
+    
+    /**
+     * Build the MBean object name
+     * @return the object name
+     */
+    private static ObjectName createObjectName() {
+        try {
+            return new ObjectName("com.backgammon:type=EngineMetrics");
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.backgammon.metrics;
+
+/**
+ * JMX management interface for the engine metrics
+ */
+public interface EngineMetricsMBean {
+    /**
+     * Get the number of move generation calls
+     * @return the call count
+     */
+    long getMoveGenerationCount();
+    
+    /**
+     * Get the mean move generation latency
+     * @return the mean latency in microseconds
+     */
+    double getMoveGenerationMeanMicros();
+    
+    /**
+     * Get the 99th percentile move generation latency
+     * @return the latency in microseconds
+     */
+    double getMoveGenerationP99Micros();
+    
+    /**
+     * Get the number of AI decisions
+     * @return the decision count
+     */
+    long getAiDecisionCount();
+    
+    /**
+     * Get the mean AI decision time
+     * @return the mean time in milliseconds
+     */
+    double getAiDecisionMeanMillis();
+    
+    /**
+     * Get the 99th percentile AI decision time
+     * @return the time in milliseconds
+     */
+    double getAiDecisionP99Millis();
+    
+    /**
+     * Get the number of positions the AI has evaluated
+     * @return the evaluation count
+     */
+    long getPositionsEvaluated();
+    
+    /**
+     * Get the rate at which the AI evaluates positions
+     * @return positions per second
+     */
+    double getPositionsEvaluatedPerSecond();
+    
+    /**
+     * Get the number of completed games
+     * @return the game count
+     */
+    long getGamesCompleted();
+    
+    /**
+     * Get the rate at which games are completed
+     * @return games per second
+     */
+    double getGamesPerSecond();
+    
+    /**
+     * Get the mean time spent painting the board
+     * @return the mean time in milliseconds
+     */
+    double getPaintMeanMillis();
+    
+    /**
+     * Get the 99th percentile time spent painting the board
+     * @return the time in milliseconds
+     */
+    double getPaintP99Millis();
+    
+    /**
+     * Get the rate at which animation frames are drawn
+     * @return frames per second, from the mean time between frames
+     */
+    double getFramesPerSecond();
+    
+    /**
+     * Get the 99th percentile time between animation frames
+     * @return the time in milliseconds
+     */
+    double getFrameIntervalP99Millis();
+    
+    /**
+     * Get the number of checker animations skipped because the view fell behind
+     * @return the skipped count
+     */
+    long getAnimationsSkipped();
+    
+    /**
+     * Get a plain-text report of all metrics
+     * @return the report
+     */
+    String dump();
+    
+    /**
+     * Reset all metrics
+     */
+    void reset();
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.backgammon.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted around each move and turn change in the game logic.
+ * The candidate count is the number of moves applied (0 when a move is rejected),
+ * and the depth is the number of moves played so far in the turn.
+ */
+@Name("com.backgammon.GameAction")
+@Label("Game Action")
+@Description("A move or end of turn applied by the game logic")
+public class GameActionEvent extends EngineEvent {
+    @Label("Action")
+    String action;
+    
+    /**
+     * Create a new game action event
+     * @param action the name of the action, e.g. "makeMove" or "endTurn"
+     */
+    public GameActionEvent(String action) {
+        this.action = action;
+    }
+}
\ No newline at end of file
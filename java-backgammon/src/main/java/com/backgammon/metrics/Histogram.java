@@ -0,0 +1,182 @@
+package com.backgammon.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values (usually nanoseconds).
+ *
+ * Buckets are laid out log-linearly like an HDR histogram: every power of two is
+ * split into 32 linear sub-buckets, so a bucket is at most 1/32 (about 3%) of its
+ * lowest value wide over the whole range of a long.
+ */
+public class Histogram {
+    // Number of bits of precision kept within each power of two; the top bit is always
+    // set, so a power of two is split into half the sub-bucket count
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    
+    // Values below this are counted exactly, one bucket per value
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT;
+    private static final int BUCKET_COUNT =
+        LINEAR_LIMIT + (63 - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKET_COUNT;
+    
+    // The name the histogram is reported under
+    private final String name;
+    
+    // Per-bucket counts
+    private final AtomicLongArray counts;
+    
+    // Summary statistics
+    private final LongAdder totalCount;
+    private final LongAdder totalSum;
+    private final LongAccumulator maxValue;
+    
+    /**
+     * Create a new histogram
+     * @param name the name the histogram is reported under
+     */
+    public Histogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new LongAdder();
+        this.totalSum = new LongAdder();
+        this.maxValue = new LongAccumulator(Math::max, 0);
+    }
+    
+    /**
+     * Record a value
+     * @param value the value to record; negative values are recorded as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalSum.add(value);
+        maxValue.accumulate(value);
+    }
+    
+    /**
+     * Record the time elapsed since a start timestamp taken with {@link System#nanoTime()}
+     * @param startNanos the start timestamp
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Get the number of recorded values
+     * @return the count
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+    
+    /**
+     * Get the mean of the recorded values
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : (double) totalSum.sum() / count;
+    }
+    
+    /**
+     * Get the largest recorded value
+     * @return the maximum
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+    
+    /**
+     * Get the value at a given percentile
+     * @param percentile the percentile, from 0 to 100
+     * @return the highest value of the bucket holding that percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        
+        long target = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketHighValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+    
+    /**
+     * Reset all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalSum.reset();
+        maxValue.reset();
+    }
+    
+    /**
+     * Get the name of this histogram
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * Calculate the bucket a value falls into
+     * @param value the non-negative value
+     * @return the bucket index
+     */
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        int mantissa = (int) (value >>> shift); // In [HALF_SUB_BUCKET_COUNT, SUB_BUCKET_COUNT)
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+            + (mantissa - HALF_SUB_BUCKET_COUNT);
+    }
+    
+    /**
+     * Calculate the highest value that falls into a bucket
+     * @param index the bucket index
+     * @return the highest value of the bucket
+     */
+    static long bucketHighValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        
+        int offset = index - LINEAR_LIMIT;
+        int exponent = offset / HALF_SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        long mantissa = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        long high = ((mantissa + 1) << shift) - 1;
+        return high < 0 ? Long.MAX_VALUE : high;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d mean=%.0f p50=%d p99=%d max=%d",
+            name, getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,165 @@
+package com.backgammon.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the engine's built-in metrics.
+ *
+ * Metrics are switched on with {@code -Dbackgammon.metrics=true}. The flag is read once
+ * into a constant, so when it is off the JIT folds every {@code if (Metrics.ENABLED)}
+ * guard away and the instrumented hot paths cost nothing. When it is on the metrics
+ * are published as the {@code com.backgammon:type=EngineMetrics} MBean, and
+ * {@code -Dbackgammon.metrics.dumpInterval=<seconds>} additionally prints a text
+ * report to standard error at that interval.
+ */
+public final class Metrics {
+    // Whether metrics are collected at all
+    public static final boolean ENABLED = Boolean.getBoolean("backgammon.metrics");
+    
+    // Latency of MoveValidator.getPossibleMoves, in nanoseconds
+    public static final Histogram MOVE_GENERATION = new Histogram("moveGeneration.nanos");
+    
+    // Time the AI takes to choose a move, in nanoseconds
+    public static final Histogram AI_DECISION = new Histogram("aiDecision.nanos");
+    
+    // Time spent painting the Swing board, in nanoseconds
+    public static final Histogram PAINT = new Histogram("paint.nanos");
+    
+    // Time between animation frames of the Swing board, in nanoseconds
+    public static final Histogram FRAME_INTERVAL = new Histogram("frameInterval.nanos");
+    
+    // Time the engine service takes to answer a request, in nanoseconds
+    public static final Histogram SERVER_REQUEST = new Histogram("serverRequest.nanos");
+    
+    // Number of positions scored by the AI
+    public static final Counter POSITIONS_EVALUATED = new Counter("positionsEvaluated");
+    
+    // Number of games played to completion
+    public static final Counter GAMES_COMPLETED = new Counter("gamesCompleted");
+    
+    // Number of checker animations skipped because the view fell behind
+    public static final Counter ANIMATIONS_SKIPPED = new Counter("animationsSkipped");
+    
+    // Number of spectators dropped for falling too far behind
+    public static final Counter SPECTATORS_DROPPED = new Counter("spectatorsDropped");
+    
+    // All registered metrics, in report order
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    
+    // Start of the current measurement window, used for rates
+    private static volatile long windowStartNanos = System.nanoTime();
+    
+    static {
+        HISTOGRAMS.add(MOVE_GENERATION);
+        HISTOGRAMS.add(AI_DECISION);
+        HISTOGRAMS.add(PAINT);
+        HISTOGRAMS.add(FRAME_INTERVAL);
+        HISTOGRAMS.add(SERVER_REQUEST);
+        COUNTERS.add(POSITIONS_EVALUATED);
+        COUNTERS.add(GAMES_COMPLETED);
+        COUNTERS.add(ANIMATIONS_SKIPPED);
+        COUNTERS.add(SPECTATORS_DROPPED);
+        
+        if (ENABLED) {
+            registerMBean();
+            long interval = Long.getLong("backgammon.metrics.dumpInterval", 0L);
+            if (interval > 0) {
+                startReporter(interval, System.err);
+            }
+        }
+    }
+    
+    private Metrics() {
+    }
+    
+    /**
+     * Get all registered histograms
+     * @return the histograms, in report order
+     */
+    public static List<Histogram> getHistograms() {
+        return Collections.unmodifiableList(HISTOGRAMS);
+    }
+    
+    /**
+     * Get all registered counters
+     * @return the counters, in report order
+     */
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(COUNTERS);
+    }
+    
+    /**
+     * Calculate the per-second rate of a counter over the current measurement window
+     * @param counter the counter
+     * @return events per second since the last reset
+     */
+    public static double ratePerSecond(Counter counter) {
+        long elapsed = System.nanoTime() - windowStartNanos;
+        return elapsed <= 0 ? 0.0 : counter.getCount() * 1_000_000_000.0 / elapsed;
+    }
+    
+    /**
+     * Reset every metric and start a new measurement window
+     */
+    public static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+        windowStartNanos = System.nanoTime();
+    }
+    
+    /**
+     * Build a plain-text report of all metrics
+     * @return the report, one metric per line
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            sb.append(histogram).append("\n");
+        }
+        for (Counter counter : COUNTERS) {
+            sb.append(String.format("%s: count=%d rate=%.1f/s%n",
+                counter.getName(), counter.getCount(), ratePerSecond(counter)));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Print the report periodically on a daemon thread
+     * @param intervalSeconds the time between reports
+     * @param out where to print the report
+     */
+    public static void startReporter(long intervalSeconds, PrintStream out) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> out.print(dump()),
+            intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Publish the metrics on the platform MBean server
+     */
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new EngineMetrics(), EngineMetrics.OBJECT_NAME);
+        } catch (Exception e) {
+            // Metrics still work without JMX, for example when a second instance runs in the same JVM
+            System.err.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
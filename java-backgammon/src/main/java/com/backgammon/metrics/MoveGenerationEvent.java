@@ -0,0 +1,14 @@
+package com.backgammon.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted around each legal move generation. The depth is the number of unused dice.
+ */
+@Name("com.backgammon.MoveGeneration")
+@Label("Move Generation")
+@Description("Generation of the legal moves for a position and dice")
+public class MoveGenerationEvent extends EngineEvent {
+}
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.backgammon.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted around each paint of the Swing board.
+ * The candidate count is the number of highlighted destinations; the depth is unused.
+ */
+@Name("com.backgammon.Paint")
+@Label("Board Paint")
+@Description("Painting of the board component")
+public class PaintEvent extends EngineEvent {
+}
\ No newline at end of file
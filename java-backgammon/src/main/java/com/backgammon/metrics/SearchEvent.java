@@ -0,0 +1,14 @@
+package com.backgammon.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted around each AI move decision. The depth is the number of plies searched.
+ */
+@Name("com.backgammon.Search")
+@Label("AI Search")
+@Description("AI choosing a move")
+public class SearchEvent extends EngineEvent {
+}
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.backgammon.model;
 
+import com.backgammon.metrics.Metrics;
+import com.backgammon.metrics.SearchEvent;
+
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -10,14 +12,150 @@ import java.util.List;
 public class AI {
     private final MoveValidator moveValidator;
     private final PlayerColor aiColor;
+    private final OpeningBook openingBook;
+    
+    // Heuristic for each class of contact position, indexed by class ordinal
+    private final HeuristicEvaluator[] heuristicEvaluators;
+    
+    // Race evaluator, created on the first race position since it builds the bearoff database
+    private RaceEvaluator raceEvaluator;
+    
+    // Reusable buffers for batch evaluation
+    private final FeatureMatrix moveFeatures;
+    private final FeatureMatrix raceFeatures;
+    private double[] scores;
+    
+    // Deepest search tried by a decision with a time budget
+    public static final int MAX_ANYTIME_DEPTH = 6;
+    
+    // Search depth in plies; 1 scores single moves with the batch evaluators
+    private int searchDepth;
+    private ExpectiminimaxSearch search;
+    
+    // Search used for decisions with a time budget, created on first use
+    private ExpectiminimaxSearch anytimeSearch;
+    
+    // Persistent evaluations checked before searching, or null
+    private EvaluationCache evaluationCache;
+    
+    // Plays searched in advance on the opponent's time, or null
+    private Ponderer ponderer;
+    
+    // Exact equities of a solved variant, or null; positions it covers are not searched
+    private EquityDatabase equityDatabase;
+    private PlayGenerator playGenerator;
+    
+    // Exact winning chances of bearoffs, or null; positions it covers are not searched either
+    private TwoSidedBearoff bearoffDatabase;
+    
+    // Remaining moves of the play chosen by the last search, and the position they continue from
+    private final List<Move> plannedMoves;
+    private long plannedHash;
+    
+    // Number of candidate moves considered by the last decision, and the depth it reached
+    private int lastCandidateCount;
+    private int lastDepth;
     
     /**
-     * Create a new AI player
+     * Create a new AI player with the default heuristic weights
      * @param aiColor the color the AI will play as
      */
     public AI(PlayerColor aiColor) {
+        this(aiColor, HeuristicWeights.getDefault());
+    }
+    
+    /**
+     * Create a new AI player
+     * @param aiColor the color the AI will play as
+     * @param weights the heuristic weights to score moves with; they only decide the play
+     *                at a search depth of one ply, since deeper and timed searches value
+     *                positions with the {@link PositionEvaluator}
+     */
+    public AI(PlayerColor aiColor, HeuristicWeights weights) {
         this.moveValidator = new MoveValidator();
         this.aiColor = aiColor;
+        this.openingBook = OpeningBook.getDefault();
+        this.heuristicEvaluators = new HeuristicEvaluator[PositionClass.values().length];
+        for (PositionClass positionClass : PositionClass.values()) {
+            heuristicEvaluators[positionClass.ordinal()] = HeuristicEvaluator.forClass(positionClass, weights);
+        }
+        this.moveFeatures = new FeatureMatrix(HeuristicEvaluator.FEATURE_COUNT);
+        this.raceFeatures = new FeatureMatrix(RaceEvaluator.FEATURE_COUNT);
+        this.scores = new double[32];
+        this.plannedMoves = new ArrayList<>();
+        this.evaluationCache = EvaluationCache.getDefault();
+        this.equityDatabase = EquityDatabase.getDefault();
+        this.bearoffDatabase = TwoSidedBearoff.getDefault();
+        setSearchDepth(Integer.getInteger("backgammon.searchDepth", 1));
+    }
+    
+    /**
+     * Set how deep the AI searches
+     * @param plies the search depth in plies; 1 picks each move with the heuristic alone,
+     *              higher depths search complete plays with {@link ExpectiminimaxSearch}
+     */
+    public void setSearchDepth(int plies) {
+        if (plies < 1) {
+            throw new IllegalArgumentException("Search depth must be at least one ply");
+        }
+        this.searchDepth = plies;
+        this.search = plies > 1 ? new ExpectiminimaxSearch(plies) : null;
+        if (search != null) {
+            search.setCache(evaluationCache);
+        }
+        this.plannedMoves.clear();
+    }
+    
+    /**
+     * Set the persistent cache the searches check before searching and store their
+     * results in; by default the one named by {@code -Dbackgammon.evalCache}
+     * @param cache the cache, or null for none
+     */
+    public void setEvaluationCache(EvaluationCache cache) {
+        this.evaluationCache = cache;
+        if (search != null) {
+            search.setCache(cache);
+        }
+        if (anytimeSearch != null) {
+            anytimeSearch.setCache(cache);
+        }
+    }
+    
+    /**
+     * Set the exact equities the AI plays from in the positions they cover; by default
+     * the database named by {@code -Dbackgammon.equityDb}
+     * @param database the database, or null for none
+     */
+    public void setEquityDatabase(EquityDatabase database) {
+        this.equityDatabase = database;
+        this.plannedMoves.clear();
+    }
+    
+    /**
+     * Set the exact bearoff chances the AI plays from in the bearoffs they cover; by
+     * default the database named by {@code -Dbackgammon.bearoffDb}
+     * @param database the database, or null for none
+     */
+    public void setBearoffDatabase(TwoSidedBearoff database) {
+        this.bearoffDatabase = database;
+        this.plannedMoves.clear();
+    }
+    
+    /**
+     * Set the ponderer whose replies, searched on the opponent's time, are played
+     * without searching again
+     * @param ponderer the ponderer, or null for none
+     */
+    public void setPonderer(Ponderer ponderer) {
+        this.ponderer = ponderer;
+    }
+    
+    /**
+     * Get how deep the AI searches
+     * @return the search depth in plies
+     */
+    public int getSearchDepth() {
+        return searchDepth;
     }
     
     /**
@@ -27,123 +165,228 @@ public class AI {
      * @return the best move, or null if no moves are possible
      */
     public Move getBestMove(Board board, Dice dice) {
+        return decide(board, dice, false, 0L);
+    }
+    
+    /**
+     * Get the best move the AI can find within a time budget. The AI searches complete
+     * plays, one ply deeper at a time, and returns the first move of the best play of
+     * the deepest search that finished in time. Later moves of the same play are then
+     * returned at once.
+     * @param board the current board state
+     * @param dice the current dice
+     * @param timeBudgetMillis the time allowed for the decision, in milliseconds
+     * @return the best move, or null if no moves are possible
+     */
+    public Move getBestMove(Board board, Dice dice, long timeBudgetMillis) {
+        return decide(board, dice, true, System.nanoTime() + timeBudgetMillis * 1_000_000L);
+    }
+    
+    /**
+     * Make a decision, recording its metrics and flight recorder event
+     * @param board the current board state
+     * @param dice the current dice
+     * @param timed whether the decision has a deadline
+     * @param deadline the {@link System#nanoTime()} value by which to decide, if timed
+     * @return the best move, or null if no moves are possible
+     */
+    private Move decide(Board board, Dice dice, boolean timed, long deadline) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        
+        lastDepth = timed ? 0 : searchDepth;
+        Move bestMove = chooseMove(board, dice, timed, deadline);
+        
+        if (Metrics.ENABLED) {
+            Metrics.AI_DECISION.recordSince(start);
+        }
+        if (event.shouldCommit()) {
+            event.set(board.positionHash(), lastCandidateCount, lastDepth);
+            event.commit();
+        }
+        return bestMove;
+    }
+    
+    /**
+     * Choose the highest-scoring move
+     * @param board the current board state
+     * @param dice the current dice
+     * @param timed whether the decision has a deadline
+     * @param deadline the {@link System#nanoTime()} value by which to decide, if timed
+     * @return the best move, or null if no moves are possible
+     */
+    private Move chooseMove(Board board, Dice dice, boolean timed, long deadline) {
         // Get all possible moves
         List<Move> possibleMoves = moveValidator.getPossibleMoves(aiColor, board, dice);
+        lastCandidateCount = possibleMoves.size();
         
         if (possibleMoves.isEmpty()) {
             return null;
         }
         
-        // Score each move
-        List<ScoredMove> scoredMoves = new ArrayList<>();
-        for (Move move : possibleMoves) {
-            int score = evaluateMove(move, board, dice);
-            scoredMoves.add(new ScoredMove(move, score));
+        // Solved variants and bearoffs are played perfectly, whatever the search settings
+        if ((equityDatabase != null && equityDatabase.covers(board))
+                || (bearoffDatabase != null && bearoffDatabase.covers(board))) {
+            return searchMove(possibleMoves, board, dice, null, 0L);
+        }
+        
+        // Early in the game the opening book already knows the best play
+        Move bookMove = openingBook.lookup(board, dice);
+        if (bookMove != null && possibleMoves.contains(bookMove)) {
+            return bookMove;
         }
         
-        // Sort by score (highest first)
-        scoredMoves.sort(Comparator.comparingInt(ScoredMove::getScore).reversed());
+        // Deeper searches plan the whole play at once
+        if (timed) {
+            if (anytimeSearch == null) {
+                anytimeSearch = new ExpectiminimaxSearch(MAX_ANYTIME_DEPTH);
+                anytimeSearch.setCache(evaluationCache);
+            }
+            return searchMove(possibleMoves, board, dice, anytimeSearch, deadline);
+        }
+        if (search != null) {
+            return searchMove(possibleMoves, board, dice, search, 0L);
+        }
         
-        // Return the highest-scoring move
-        return scoredMoves.get(0).getMove();
+        // Score all candidates together and return the highest-scoring move
+        double[] candidateScores = evaluateBatch(possibleMoves, board);
+        int best = 0;
+        for (int i = 1; i < possibleMoves.size(); i++) {
+            if (candidateScores[i] > candidateScores[best]) {
+                best = i;
+            }
+        }
+        return possibleMoves.get(best);
     }
     
     /**
-     * Evaluate a move and assign a score
-     * @param move the move to evaluate
+     * Return the next move of the play chosen by the search, searching again when the
+     * position is not the one the current plan continues from
+     * @param possibleMoves the legal moves
      * @param board the current board state
      * @param dice the current dice
-     * @return the score (higher is better)
+     * @param search the search to plan with, or null to plan from the exact databases
+     * @param deadline the {@link System#nanoTime()} value by which to decide, for the anytime search
+     * @return the move to make
      */
-    private int evaluateMove(Move move, Board board, Dice dice) {
-        int score = 0;
-        
-        // Prioritize moves:
-        // 1. Getting off the bar
-        // 2. Bearing off checkers
-        // 3. Hitting opponent blots
-        // 4. Making points (building stacks)
-        // 5. Moving out of opponent's home board
-        // 6. Avoiding leaving blots
-        
-        // Getting off the bar is highest priority
-        if (move.getFrom() == Board.BLACK_BAR || move.getFrom() == Board.WHITE_BAR) {
-            score += 100;
-            
-            // Entering on a safe point (own checkers) is even better
-            Point destPoint = board.getPoint(move.getTo());
-            if (destPoint.hasColor(aiColor)) {
-                score += 50;
+    private Move searchMove(List<Move> possibleMoves, Board board, Dice dice, ExpectiminimaxSearch search,
+                            long deadline) {
+        if (plannedMoves.isEmpty() || plannedHash != board.positionHash()
+                || !possibleMoves.contains(plannedMoves.get(0))) {
+            plannedMoves.clear();
+            Play play = search != null && ponderer != null ? ponderer.lookup(board, dice) : null;
+            if (play != null) {
+                // Already searched while the opponent was thinking
+                lastDepth = ponderer.getPlies();
+            } else {
+                if (search == null) {
+                    play = bestDatabasePlay(board, dice);
+                } else if (search == anytimeSearch) {
+                    play = search.searchUntil(board, aiColor, dice, deadline);
+                } else {
+                    play = search.search(board, aiColor, dice);
+                }
+                lastDepth = search == null ? 0 : search.getCompletedDepth();
             }
-            
-            // Hitting an opponent's blot is also good
-            if (destPoint.hasColor(aiColor.opposite()) && destPoint.getCount() == 1) {
-                score += 40;
+            plannedMoves.addAll(play.getMoves());
+            if (plannedMoves.isEmpty()) {
+                return possibleMoves.get(0);
             }
         }
         
-        // Bearing off is very good
-        if (move.getTo() == Board.BLACK_HOME || move.getTo() == Board.WHITE_HOME) {
-            score += 90;
-        }
-        
-        // Hitting opponent blots
-        Point destPoint = board.getPoint(move.getTo());
-        if (destPoint != null && destPoint.hasColor(aiColor.opposite()) && destPoint.getCount() == 1) {
-            score += 80;
-            
-            // Hitting in opponent's home board is even better
-            if ((aiColor == PlayerColor.WHITE && move.getTo() >= 0 && move.getTo() <= 5) ||
-                (aiColor == PlayerColor.BLACK && move.getTo() >= 18 && move.getTo() <= 23)) {
-                score += 20;
-            }
+        Move move = plannedMoves.remove(0);
+        Board after = board.clone();
+        after.applyMove(move, aiColor);
+        plannedHash = after.positionHash();
+        return move;
+    }
+    
+    /**
+     * Find the play whose result has the best exact equity. Each result is one lookup,
+     * so the whole decision is linear in the number of plays.
+     * @param board the current board state, covered by one of the exact databases
+     * @param dice the current dice
+     * @return the best play
+     */
+    private Play bestDatabasePlay(Board board, Dice dice) {
+        if (playGenerator == null) {
+            playGenerator = new PlayGenerator();
         }
-        
-        // Making a point (building a stack on a point we already occupy)
-        if (destPoint != null && destPoint.hasColor(aiColor)) {
-            score += 60;
-            
-            // Making a point in our home board is even better
-            if ((aiColor == PlayerColor.WHITE && move.getTo() >= 18 && move.getTo() <= 23) ||
-                (aiColor == PlayerColor.BLACK && move.getTo() >= 0 && move.getTo() <= 5)) {
-                score += 20;
+        Play best = null;
+        double bestEquity = 0.0;
+        for (Play play : playGenerator.generate(aiColor, board, dice)) {
+            // The opponent is on roll after the play, unless it won the game
+            Board result = play.getResult();
+            double equity = result.hasWon(aiColor)
+                ? PositionEvaluator.MAX_EQUITY
+                : -exactEquity(result, aiColor.opposite());
+            if (best == null || equity > bestEquity) {
+                best = play;
+                bestEquity = equity;
             }
         }
-        
-        // Moving out of opponent's home board
-        if ((aiColor == PlayerColor.WHITE && move.getFrom() >= 0 && move.getFrom() <= 5) ||
-            (aiColor == PlayerColor.BLACK && move.getFrom() >= 18 && move.getFrom() <= 23)) {
-            score += 30;
-        }
-        
-        // Avoid leaving blots
-        Point sourcePoint = board.getPoint(move.getFrom());
-        if (sourcePoint != null && sourcePoint.getCount() == 2) {
-            // Moving would leave a blot, which is risky
-            score -= 20;
+        return best;
+    }
+    
+    /**
+     * Look up the exact equity of a position covered by one of the databases. Plays
+     * never leave a database: the equity database keeps the number of checkers and
+     * bearoffs only get smaller.
+     * @param board the position
+     * @param onRoll the player about to roll
+     * @return the equity for that player
+     */
+    private double exactEquity(Board board, PlayerColor onRoll) {
+        if (equityDatabase != null && equityDatabase.covers(board)) {
+            return equityDatabase.getEquity(board, onRoll);
         }
-        
-        return score;
+        // Without gammons the equity is the winning chance less the losing chance
+        return 2 * bearoffDatabase.getWinProbability(board, onRoll) - 1;
     }
     
     /**
-     * Inner class to associate a move with its score
+     * Score all candidate moves for a roll in one batch.
+     * The position is classified first: contact positions are scored with the heuristic
+     * weighted for their class (plain contact, crashed board or backgame), and races
+     * and bearoffs skip the heuristic for the cheaper race evaluator on the resulting
+     * positions.
+     * @param candidates the candidate moves
+     * @param board the current board state
+     * @return one score per candidate (higher is better); the array is reused by the next call
      */
-    private static class ScoredMove {
-        private final Move move;
-        private final int score;
+    public double[] evaluateBatch(List<Move> candidates, Board board) {
+        if (Metrics.ENABLED) {
+            Metrics.POSITIONS_EVALUATED.add(candidates.size());
+        }
+        if (scores.length < candidates.size()) {
+            scores = new double[Math.max(candidates.size(), scores.length * 2)];
+        }
         
-        public ScoredMove(Move move, int score) {
-            this.move = move;
-            this.score = score;
+        PositionClass positionClass = PositionClassifier.classify(board, aiColor);
+        if (positionClass != PositionClass.RACE && positionClass != PositionClass.BEAROFF) {
+            HeuristicEvaluator.encode(candidates, board, aiColor, moveFeatures);
+            heuristicEvaluators[positionClass.ordinal()].evaluateBatch(moveFeatures, scores);
+            return scores;
         }
         
-        public Move getMove() {
-            return move;
+        // Once the checkers are past each other, only the race matters
+        if (raceEvaluator == null) {
+            raceEvaluator = new RaceEvaluator();
+        }
+        List<Board> positions = new ArrayList<>(candidates.size());
+        for (Move move : candidates) {
+            Board after = board.clone();
+            after.applyMove(move, aiColor);
+            positions.add(after);
         }
         
-        public int getScore() {
-            return score;
+        // The opponent is on roll after the move; fewer crossovers break ties
+        raceEvaluator.encode(positions, aiColor.opposite(), raceFeatures);
+        raceEvaluator.evaluateBatch(raceFeatures, scores);
+        for (int i = 0; i < candidates.size(); i++) {
+            scores[i] = -scores[i] - 1e-9 * raceFeatures.get(i, RaceEvaluator.CROSSOVERS);
         }
+        return scores;
     }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.backgammon.model;
 
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * Represents the backgammon board
@@ -14,6 +16,16 @@ public class Board {
     public static final int BLACK_HOME = -2;
     public static final int CHECKERS_PER_PLAYER = 15;
     
+    // Layout of the array written by toArray(): the 24 points, then the bar and home counts
+    public static final int ENCODED_WHITE_BAR = 24;
+    public static final int ENCODED_BLACK_BAR = 25;
+    public static final int ENCODED_WHITE_HOME = 26;
+    public static final int ENCODED_BLACK_HOME = 27;
+    public static final int ENCODED_LENGTH = 28;
+    
+    // Zobrist keys for the position hash, indexed by color, slot (24 points, bar, home) and count
+    private static final long[][][] ZOBRIST = createZobristKeys();
+    
     // The points on the board
     private Map<Integer, Point> points;
     
@@ -23,10 +35,40 @@ public class Board {
     // The home (holds checkers that have been borne off)
     private Map<PlayerColor, Integer> home;
     
+    // Checkers each player has, borne off or not
+    private final int checkersPerPlayer;
+    
+    // Pip counts, occupied-point masks and made-point masks indexed by color ordinal,
+    // kept up to date on every change so they never need a rescan of the points
+    private final int[] pipCounts = new int[2];
+    private final int[] occupiedMasks = new int[2];
+    private final int[] madeMasks = new int[2];
+    
+    // Zobrist hash of the position, kept up to date on every change
+    private long hash;
+    
     /**
      * Create a new board with the initial setup
      */
     public Board() {
+        this(Variant.STANDARD);
+    }
+    
+    /**
+     * Create a new board with the starting position of a variant
+     * @param variant the variant
+     */
+    public Board(Variant variant) {
+        this(variant.getCheckers());
+        setupInitialPosition(variant);
+    }
+    
+    /**
+     * Create a new empty board
+     * @param checkersPerPlayer the number of checkers each player has
+     */
+    private Board(int checkersPerPlayer) {
+        this.checkersPerPlayer = checkersPerPlayer;
         points = new HashMap<>();
         bar = new HashMap<>();
         home = new HashMap<>();
@@ -39,28 +81,23 @@ public class Board {
         
         // Create all 24 points
         for (int i = 0; i < 24; i++) {
-            points.put(i, new Point(i));
+            Point point = new Point(i);
+            point.board = this;
+            points.put(i, point);
         }
-        
-        // Set up the initial positions
-        setupInitialPosition();
     }
     
     /**
-     * Initialize the board with the standard backgammon starting position
+     * Initialize the board with a variant's starting position. Black's checkers mirror
+     * white's, so in the standard game white has 2 on point 24, 5 on 13, 3 on 8 and 5 on 6.
+     * @param variant the variant
      */
-    private void setupInitialPosition() {
-        // White checkers
-        addCheckers(0, PlayerColor.BLACK, 2);   // Point 1: 2 black checkers (fixed)
-        addCheckers(5, PlayerColor.WHITE, 5);   // Point 6: 5 white checkers
-        addCheckers(7, PlayerColor.WHITE, 3);   // Point 8: 3 white checkers
-        addCheckers(11, PlayerColor.BLACK, 5);  // Point 12: 5 black checkers (fixed)
-        
-        // Black checkers 
-        addCheckers(12, PlayerColor.WHITE, 5);  // Point 13: 5 white checkers (fixed)
-        addCheckers(16, PlayerColor.BLACK, 3);  // Point 17: 3 black checkers
-        addCheckers(18, PlayerColor.BLACK, 5);  // Point 19: 5 black checkers
-        addCheckers(23, PlayerColor.WHITE, 2);  // Point 24: 2 white checkers (fixed)
+    private void setupInitialPosition(Variant variant) {
+        int[] layout = variant.getLayout();
+        for (int i = 0; i < layout.length; i += 2) {
+            addCheckers(layout[i], PlayerColor.WHITE, layout[i + 1]);
+            addCheckers(23 - layout[i], PlayerColor.BLACK, layout[i + 1]);
+        }
     }
     
     /**
@@ -99,7 +136,7 @@ public class Board {
      * @param color the color of the checker
      */
     public void addToBar(PlayerColor color) {
-        bar.put(color, bar.get(color) + 1);
+        setBarCount(color, bar.get(color) + 1);
     }
     
     /**
@@ -111,7 +148,7 @@ public class Board {
         if (bar.get(color) <= 0) {
             throw new IllegalStateException("No " + color + " checkers on the bar");
         }
-        bar.put(color, bar.get(color) - 1);
+        setBarCount(color, bar.get(color) - 1);
     }
     
     /**
@@ -128,7 +165,178 @@ public class Board {
      * @param color the color of the checker
      */
     public void addToHome(PlayerColor color) {
-        home.put(color, home.get(color) + 1);
+        setHomeCount(color, home.get(color) + 1);
+    }
+    
+    /**
+     * Move a checker, hitting an opponent's blot on the destination if there is one.
+     * The move is not validated.
+     * @param move the move to make
+     * @param color the color of the player making the move
+     */
+    public void applyMove(Move move, PlayerColor color) {
+        int from = move.getFrom();
+        int to = move.getTo();
+        
+        if (from == WHITE_BAR) {
+            // White coming in from the bar
+            removeFromBar(PlayerColor.WHITE);
+            moveChecker(null, points.get(to), PlayerColor.WHITE);
+        } else if (from == BLACK_BAR) {
+            // Black coming in from the bar
+            removeFromBar(PlayerColor.BLACK);
+            moveChecker(null, points.get(to), PlayerColor.BLACK);
+        } else if (to == WHITE_HOME) {
+            // White bearing off
+            moveChecker(points.get(from), null, PlayerColor.WHITE);
+            addToHome(PlayerColor.WHITE);
+        } else if (to == BLACK_HOME) {
+            // Black bearing off
+            moveChecker(points.get(from), null, PlayerColor.BLACK);
+            addToHome(PlayerColor.BLACK);
+        } else {
+            // Regular move
+            moveChecker(points.get(from), points.get(to), color);
+        }
+    }
+    
+    /**
+     * Move a checker from one point to another
+     * @param from the source point (null if from bar)
+     * @param to the destination point (null if bearing off)
+     * @param color the color of the checker
+     */
+    private void moveChecker(Point from, Point to, PlayerColor color) {
+        // Remove from source point
+        if (from != null) {
+            from.removeChecker();
+        }
+        
+        // Add to destination point (if not bearing off)
+        if (to != null) {
+            // Check if hitting an opponent's blot
+            if (to.hasColor(color.opposite()) && to.getCount() == 1) {
+                // Remove opponent's checker and add to bar
+                to.removeChecker();
+                addToBar(color.opposite());
+            }
+            
+            // Add the player's checker
+            to.addChecker(color);
+        }
+    }
+    
+    /**
+     * Get the pip count of a player: the total number of pips their checkers still
+     * have to travel to be borne off. Kept up to date incrementally, so this is O(1).
+     * @param color the player color
+     * @return the pip count
+     */
+    public int getPipCount(PlayerColor color) {
+        return pipCounts[color.ordinal()];
+    }
+    
+    /**
+     * Get the points occupied by a player as a bit mask (bit i set for point index i)
+     * @param color the player color
+     * @return the occupied-point mask
+     */
+    public int getOccupiedMask(PlayerColor color) {
+        return occupiedMasks[color.ordinal()];
+    }
+    
+    /**
+     * Get the points a player has made (two or more checkers) as a bit mask
+     * @param color the player color
+     * @return the made-point mask
+     */
+    public int getMadeMask(PlayerColor color) {
+        return madeMasks[color.ordinal()];
+    }
+    
+    /**
+     * Check if the two sides can still hit each other.
+     * There is no contact once every white checker is past every black checker.
+     * @return true if the position still has contact, false if it is a pure race
+     */
+    public boolean hasContact() {
+        if (bar.get(PlayerColor.WHITE) > 0 || bar.get(PlayerColor.BLACK) > 0) {
+            return true;
+        }
+        
+        int whiteMask = occupiedMasks[PlayerColor.WHITE.ordinal()];
+        int blackMask = occupiedMasks[PlayerColor.BLACK.ordinal()];
+        if (whiteMask == 0 || blackMask == 0) {
+            return false;
+        }
+        
+        // White moves down and black moves up, so compare white's rearmost checker
+        // (highest point) with black's rearmost checker (lowest point)
+        int whiteBack = 31 - Integer.numberOfLeadingZeros(whiteMask);
+        int blackBack = Integer.numberOfTrailingZeros(blackMask);
+        return whiteBack > blackBack;
+    }
+    
+    /**
+     * Get the number of pips a checker on a point still has to travel
+     * @param color the color of the checker
+     * @param pointIndex the index of the point
+     * @return the distance to bear off
+     */
+    public static int pipDistance(PlayerColor color, int pointIndex) {
+        return color == PlayerColor.WHITE ? pointIndex + 1 : 24 - pointIndex;
+    }
+    
+    /**
+     * Update the tracked pip counts, masks and hash after a point has changed
+     * @param index the index of the point
+     * @param previousColor the color before the change
+     * @param previousCount the count before the change
+     * @param newColor the color after the change
+     * @param newCount the count after the change
+     */
+    void pointChanged(int index, PlayerColor previousColor, int previousCount,
+                      PlayerColor newColor, int newCount) {
+        int bit = 1 << index;
+        if (previousColor != null && previousCount > 0) {
+            int c = previousColor.ordinal();
+            pipCounts[c] -= previousCount * pipDistance(previousColor, index);
+            occupiedMasks[c] &= ~bit;
+            madeMasks[c] &= ~bit;
+            hash ^= ZOBRIST[c][index][previousCount];
+        }
+        if (newColor != null && newCount > 0) {
+            int c = newColor.ordinal();
+            pipCounts[c] += newCount * pipDistance(newColor, index);
+            occupiedMasks[c] |= bit;
+            if (newCount >= 2) {
+                madeMasks[c] |= bit;
+            }
+            hash ^= ZOBRIST[c][index][newCount];
+        }
+    }
+    
+    /**
+     * Set the number of checkers on the bar, keeping the tracked state up to date
+     * @param color the player color
+     * @param count the new count
+     */
+    private void setBarCount(PlayerColor color, int count) {
+        int c = color.ordinal();
+        int previous = bar.put(color, count);
+        pipCounts[c] += (count - previous) * 25;
+        hash ^= ZOBRIST[c][24][previous] ^ ZOBRIST[c][24][count];
+    }
+    
+    /**
+     * Set the number of checkers borne off, keeping the tracked state up to date
+     * @param color the player color
+     * @param count the new count
+     */
+    private void setHomeCount(PlayerColor color, int count) {
+        int c = color.ordinal();
+        int previous = home.put(color, count);
+        hash ^= ZOBRIST[c][25][previous] ^ ZOBRIST[c][25][count];
     }
     
     /**
@@ -194,20 +402,144 @@ public class Board {
      * @return true if the player has won, false otherwise
      */
     public boolean hasWon(PlayerColor color) {
-        return home.get(color) == CHECKERS_PER_PLAYER;
+        return home.get(color) == checkersPerPlayer;
     }
     
     /**
-     * Clone this board
-     * @return a new board with the same state
+     * Get the number of checkers each player has, borne off or not
+     * @return {@link #CHECKERS_PER_PLAYER} in the standard game, fewer in some variants
      */
-    public Board clone() {
-        Board newBoard = new Board();
+    public int getCheckersPerPlayer() {
+        return checkersPerPlayer;
+    }
+    
+    /**
+     * Calculate a 64-bit hash of the position.
+     * The hash only depends on where the checkers are, so it is stable across runs
+     * and equal positions always hash equally. It is kept up to date incrementally.
+     * @return the position hash
+     */
+    public long positionHash() {
+        return hash;
+    }
+    
+    /**
+     * Write the position as an array of counts: indexes 0-23 hold the checkers on each
+     * point (positive for white, negative for black), followed by
+     * {@link #ENCODED_WHITE_BAR}, {@link #ENCODED_BLACK_BAR}, {@link #ENCODED_WHITE_HOME}
+     * and {@link #ENCODED_BLACK_HOME}
+     * @return the encoded position, {@link #ENCODED_LENGTH} values long
+     */
+    public int[] toArray() {
+        int[] encoded = new int[ENCODED_LENGTH];
+        for (int i = 0; i < 24; i++) {
+            Point point = points.get(i);
+            encoded[i] = point.hasColor(PlayerColor.WHITE) ? point.getCount() : -point.getCount();
+        }
+        encoded[ENCODED_WHITE_BAR] = bar.get(PlayerColor.WHITE);
+        encoded[ENCODED_BLACK_BAR] = bar.get(PlayerColor.BLACK);
+        encoded[ENCODED_WHITE_HOME] = home.get(PlayerColor.WHITE);
+        encoded[ENCODED_BLACK_HOME] = home.get(PlayerColor.BLACK);
+        return encoded;
+    }
+    
+    /**
+     * Create a board from a position written by {@link #toArray()}
+     * @param encoded the encoded position
+     * @return the board
+     * @throws IllegalArgumentException if the encoding is malformed, or the sides do not
+     *         have the same number of checkers as each other and as some {@link Variant}
+     */
+    public static Board fromArray(int[] encoded) {
+        if (encoded.length != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Expected " + ENCODED_LENGTH + " values, got " + encoded.length);
+        }
         
-        // Clear the new board's initial setup
+        // Count the checkers first, since the board is created for their number
+        int white = encoded[ENCODED_WHITE_BAR] + encoded[ENCODED_WHITE_HOME];
+        int black = encoded[ENCODED_BLACK_BAR] + encoded[ENCODED_BLACK_HOME];
         for (int i = 0; i < 24; i++) {
-            newBoard.points.get(i).clear();
+            if (encoded[i] > 0) {
+                white += encoded[i];
+            } else {
+                black -= encoded[i];
+            }
+        }
+        if (white != black || Variant.forCheckers(white) == null
+                || encoded[ENCODED_WHITE_BAR] < 0 || encoded[ENCODED_BLACK_BAR] < 0
+                || encoded[ENCODED_WHITE_HOME] < 0 || encoded[ENCODED_BLACK_HOME] < 0) {
+            throw new IllegalArgumentException("Each side must have the checkers of a variant, such as "
+                + CHECKERS_PER_PLAYER);
+        }
+        
+        Board board = new Board(white);
+        for (int i = 0; i < 24; i++) {
+            if (encoded[i] > 0) {
+                board.addCheckers(i, PlayerColor.WHITE, encoded[i]);
+            } else if (encoded[i] < 0) {
+                board.addCheckers(i, PlayerColor.BLACK, -encoded[i]);
+            }
+        }
+        
+        board.setBarCount(PlayerColor.WHITE, encoded[ENCODED_WHITE_BAR]);
+        board.setBarCount(PlayerColor.BLACK, encoded[ENCODED_BLACK_BAR]);
+        board.setHomeCount(PlayerColor.WHITE, encoded[ENCODED_WHITE_HOME]);
+        board.setHomeCount(PlayerColor.BLACK, encoded[ENCODED_BLACK_HOME]);
+        return board;
+    }
+    
+    /**
+     * Get a compact text ID of the position: the {@link #toArray()} encoding, one byte
+     * per value, in URL-safe Base64 without padding
+     * @return the position ID
+     */
+    public String toPositionId() {
+        int[] encoded = toArray();
+        byte[] bytes = new byte[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            bytes[i] = (byte) encoded[i];
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+    
+    /**
+     * Create a board from a position ID written by {@link #toPositionId()}
+     * @param positionId the position ID
+     * @return the board
+     * @throws IllegalArgumentException if the ID is not a valid position
+     */
+    public static Board fromPositionId(String positionId) {
+        byte[] bytes = Base64.getUrlDecoder().decode(positionId);
+        int[] encoded = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            encoded[i] = bytes[i];
+        }
+        return fromArray(encoded);
+    }
+    
+    /**
+     * Create the Zobrist keys from a fixed seed
+     * @return the keys, indexed by color, slot and count
+     */
+    private static long[][][] createZobristKeys() {
+        SplittableRandom random = new SplittableRandom(0x6A09E667F3BCC909L);
+        long[][][] keys = new long[2][26][CHECKERS_PER_PLAYER + 1];
+        for (int color = 0; color < 2; color++) {
+            for (int slot = 0; slot < 26; slot++) {
+                for (int count = 1; count <= CHECKERS_PER_PLAYER; count++) {
+                    keys[color][slot][count] = random.nextLong();
+                }
+            }
         }
+        return keys;
+    }
+    
+    /**
+     * Clone this board
+     * @return a new board with the same state
+     */
+    public Board clone() {
+        Board newBoard = new Board(checkersPerPlayer);
         
         // Copy the state from this board
         for (int i = 0; i < 24; i++) {
@@ -222,10 +554,10 @@ public class Board {
         }
         
         // Copy the bar and home
-        newBoard.bar.put(PlayerColor.WHITE, bar.get(PlayerColor.WHITE));
-        newBoard.bar.put(PlayerColor.BLACK, bar.get(PlayerColor.BLACK));
-        newBoard.home.put(PlayerColor.WHITE, home.get(PlayerColor.WHITE));
-        newBoard.home.put(PlayerColor.BLACK, home.get(PlayerColor.BLACK));
+        newBoard.setBarCount(PlayerColor.WHITE, bar.get(PlayerColor.WHITE));
+        newBoard.setBarCount(PlayerColor.BLACK, bar.get(PlayerColor.BLACK));
+        newBoard.setHomeCount(PlayerColor.WHITE, home.get(PlayerColor.WHITE));
+        newBoard.setHomeCount(PlayerColor.BLACK, home.get(PlayerColor.BLACK));
         
         return newBoard;
     }
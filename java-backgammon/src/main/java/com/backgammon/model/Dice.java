@@ -19,7 +19,15 @@ public class Dice {
      * Create a new pair of dice
      */
     public Dice() {
-        this.random = new Random();
+        this(new Random());
+    }
+    
+    /**
+     * Create a new pair of dice with a given source of randomness
+     * @param random the random number generator to roll with
+     */
+    public Dice(Random random) {
+        this.random = random;
         this.values = new ArrayList<>();
         this.used = new ArrayList<>();
     }
@@ -28,11 +36,19 @@ public class Dice {
      * Roll the dice
      */
     public void roll() {
-        values.clear();
-        used.clear();
-        
         int die1 = random.nextInt(6) + 1;
         int die2 = random.nextInt(6) + 1;
+        setValues(die1, die2);
+    }
+    
+    /**
+     * Set the dice to a specific roll, with all dice unused
+     * @param die1 the value of the first die
+     * @param die2 the value of the second die
+     */
+    public void setValues(int die1, int die2) {
+        values.clear();
+        used.clear();
         
         // If doubles, player gets 4 moves with the same value
         if (die1 == die2) {
@@ -134,6 +150,53 @@ public class Dice {
         return availableValues;
     }
     
+    /**
+     * Get the distinct unused die values, in the order the dice are listed, without
+     * allocating
+     * @return the first value in the low three bits and the second, or 0 if there is
+     *         none, in the next three bits; 0 if every die is used
+     */
+    public int getDistinctAvailableValues() {
+        int first = 0;
+        for (int i = 0; i < values.size(); i++) {
+            if (!used.get(i)) {
+                int value = values.get(i);
+                if (first == 0) {
+                    first = value;
+                } else if (value != first) {
+                    return first | value << 3;
+                }
+            }
+        }
+        return first;
+    }
+    
+    /**
+     * Get a compact key for the unused dice: the number of unused dice of each value,
+     * three bits per value. Dice with the same unused values have the same key.
+     * @return the key
+     */
+    public int getAvailableKey() {
+        int key = 0;
+        for (int i = 0; i < values.size(); i++) {
+            if (!used.get(i)) {
+                key += 1 << (3 * (values.get(i) - 1));
+            }
+        }
+        return key;
+    }
+    
+    /**
+     * Copy these dice, sharing the same random number generator
+     * @return a new pair of dice with the same values and used flags
+     */
+    public Dice copy() {
+        Dice copy = new Dice(random);
+        copy.values.addAll(values);
+        copy.used.addAll(used);
+        return copy;
+    }
+    
     /**
      * Reset the dice (all dice unused)
      */
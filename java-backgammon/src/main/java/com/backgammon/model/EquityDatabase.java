@@ -0,0 +1,300 @@
+package com.backgammon.model;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exact cubeless equities of every position of a variant played with few checkers,
+ * such as hypergammon, read from a memory-mapped file.
+ *
+ * Each side's checkers are described by their distances from being borne off: 0 once
+ * borne off, 1 to 24 on the board and 25 on the bar. A side is ranked into a dense index
+ * as a multiset of distances in the combinatorial number system, and a position is the
+ * pair (side on roll, other side), so a lookup is two ranks and one read from the
+ * mapping. The table is indexed by the number of checkers rather than the variant, and
+ * serves every starting position with that many checkers.
+ *
+ * Files are written by {@code com.backgammon.analysis.EquityDatabaseSolver}. The
+ * default database is opened from the file named by {@code -Dbackgammon.equityDb}.
+ */
+public class EquityDatabase implements AutoCloseable {
+    // Distances a checker can be at: borne off, the 24 points and the bar
+    public static final int SLOTS = 26;
+    public static final int BAR_DISTANCE = 25;
+    
+    // Most checkers per side a table is built for; four would need over 2 GB
+    public static final int MAX_CHECKERS = 3;
+    
+    // File format marker and version
+    private static final long MAGIC = 0x4247455155495459L; // "BGEQUITY"
+    private static final int VERSION = 1;
+    
+    // Header layout: magic, version, checkers, iterations, residual
+    static final int HEADER_SIZE = 32;
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_CHECKERS = 12;
+    private static final int HEADER_ITERATIONS = 16;
+    private static final int HEADER_RESIDUAL = 24;
+    
+    // Binomial coefficients C(n, k) for ranking sides
+    private static final int[][] BINOMIAL = createBinomials(SLOTS + MAX_CHECKERS, MAX_CHECKERS);
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int checkers;
+    private final int sideCount;
+    
+    /**
+     * Open a database file
+     * @param path the file
+     * @throws IOException if the file cannot be read or is not a complete database
+     */
+    public EquityDatabase(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.capacity() < HEADER_SIZE || header.getLong(0) != MAGIC
+                    || header.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException(path + " is not an equity database");
+            }
+            this.checkers = header.getInt(HEADER_CHECKERS);
+            if (checkers < 1 || checkers > MAX_CHECKERS) {
+                throw new IOException(path + " has an unsupported checker count " + checkers);
+            }
+            this.sideCount = sideCount(checkers);
+            long size = fileSize(checkers);
+            if (channel.size() != size) {
+                throw new IOException(path + " is " + channel.size() + " bytes, expected " + size);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Write a database file
+     * @param path the file
+     * @param checkers the number of checkers per side
+     * @param equities the equity of every position for the side on roll, indexed by {@link #index}
+     * @param iterations the number of value iterations the equities took
+     * @param residual the largest change made by the last iteration
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, int checkers, float[] equities, int iterations, double residual)
+            throws IOException {
+        long size = fileSize(checkers);
+        if (equities.length != (size - HEADER_SIZE) / Float.BYTES) {
+            throw new IllegalArgumentException("Expected " + (size - HEADER_SIZE) / Float.BYTES + " equities");
+        }
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.position(HEADER_SIZE);
+            map.asFloatBuffer().put(equities);
+            
+            // The header goes last, so an interrupted write never passes for a database
+            map.putInt(HEADER_VERSION, VERSION);
+            map.putInt(HEADER_CHECKERS, checkers);
+            map.putInt(HEADER_ITERATIONS, iterations);
+            map.putDouble(HEADER_RESIDUAL, residual);
+            map.putLong(0, MAGIC);
+            map.force();
+        }
+    }
+    
+    /**
+     * Get the default database, opened on first use
+     * @return the database named by {@code -Dbackgammon.equityDb}, or null if none is configured
+     */
+    public static EquityDatabase getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Open the default database
+     * @return the database, or null if none is configured or it cannot be opened
+     */
+    private static EquityDatabase openDefault() {
+        String path = System.getProperty("backgammon.equityDb");
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new EquityDatabase(Paths.get(path));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Check whether a position is in this database
+     * @param board the position
+     * @return true if the board has this database's number of checkers
+     */
+    public boolean covers(Board board) {
+        return board.getCheckersPerPlayer() == checkers;
+    }
+    
+    /**
+     * Look up the exact equity of a position
+     * @param board the position, which must be {@linkplain #covers covered}
+     * @param onRoll the player about to roll
+     * @return the equity for the player on roll, from -1 (certain loss) to 1 (certain win)
+     */
+    public double getEquity(Board board, PlayerColor onRoll) {
+        int index = index(rankSide(board, onRoll), rankSide(board, onRoll.opposite()), sideCount);
+        return buffer.getFloat(HEADER_SIZE + index * Float.BYTES);
+    }
+    
+    /**
+     * Get the number of checkers per side
+     * @return the checker count
+     */
+    public int getCheckers() {
+        return checkers;
+    }
+    
+    /**
+     * Get the number of value iterations the equities took
+     * @return the iteration count
+     */
+    public int getIterations() {
+        return buffer.getInt(HEADER_ITERATIONS);
+    }
+    
+    /**
+     * Get the largest change made by the solver's last iteration, a bound on how far
+     * the equities are from converged
+     * @return the residual
+     */
+    public double getResidual() {
+        return buffer.getDouble(HEADER_RESIDUAL);
+    }
+    
+    /**
+     * Get the number of ways to place one side's checkers
+     * @param checkers the number of checkers per side
+     * @return the number of distinct sides
+     */
+    public static int sideCount(int checkers) {
+        return BINOMIAL[SLOTS + checkers - 1][checkers];
+    }
+    
+    /**
+     * Get the table index of a position
+     * @param onRollRank the rank of the side on roll
+     * @param otherRank the rank of the other side
+     * @param sideCount the number of distinct sides
+     * @return the index
+     */
+    public static int index(int onRollRank, int otherRank, int sideCount) {
+        return onRollRank * sideCount + otherRank;
+    }
+    
+    /**
+     * Rank one side's checkers
+     * @param distances the distance of each checker, in non-decreasing order
+     * @return the rank, from 0 to {@link #sideCount} - 1
+     */
+    public static int rankSide(int[] distances) {
+        // Adding each checker's position makes the distances strictly increasing
+        int rank = 0;
+        for (int i = 0; i < distances.length; i++) {
+            rank += BINOMIAL[distances[i] + i][i + 1];
+        }
+        return rank;
+    }
+    
+    /**
+     * Rank one side of a board
+     * @param board the board
+     * @param color the side
+     * @return the rank
+     */
+    public static int rankSide(Board board, PlayerColor color) {
+        int[] distances = new int[board.getCheckersPerPlayer()];
+        int n = board.getHomeCount(color);
+        
+        // Points in order of increasing distance
+        for (int distance = 1; distance <= 24; distance++) {
+            int index = color == PlayerColor.WHITE ? distance - 1 : 24 - distance;
+            Point point = board.getPoint(index);
+            if (point.hasColor(color)) {
+                for (int c = 0; c < point.getCount(); c++) {
+                    distances[n++] = distance;
+                }
+            }
+        }
+        while (n < distances.length) {
+            distances[n++] = BAR_DISTANCE;
+        }
+        return rankSide(distances);
+    }
+    
+    /**
+     * Fill in the distances of the side with a given rank
+     * @param rank the rank
+     * @param distances the array to fill, one entry per checker, in non-decreasing order
+     */
+    public static void unrankSide(int rank, int[] distances) {
+        // Peel off the largest remaining binomial, last checker first
+        for (int i = distances.length - 1; i >= 0; i--) {
+            int b = i;
+            while (BINOMIAL[b + 1][i + 1] <= rank) {
+                b++;
+            }
+            rank -= BINOMIAL[b][i + 1];
+            distances[i] = b - i;
+        }
+    }
+    
+    /**
+     * Get the size of a database file
+     * @param checkers the number of checkers per side
+     * @return the size in bytes
+     */
+    private static long fileSize(int checkers) {
+        long sides = sideCount(checkers);
+        return HEADER_SIZE + sides * sides * Float.BYTES;
+    }
+    
+    /**
+     * Build Pascal's triangle
+     * @param n the largest n needed
+     * @param k the largest k needed
+     * @return the binomial coefficients C(n, k), zero where k exceeds n
+     */
+    private static int[][] createBinomials(int n, int k) {
+        int[][] c = new int[n + 1][k + 1];
+        for (int i = 0; i <= n; i++) {
+            c[i][0] = 1;
+            for (int j = 1; j <= Math.min(i, k); j++) {
+                c[i][j] = c[i - 1][j - 1] + c[i - 1][j];
+            }
+        }
+        return c;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Lazily opened default database
+     */
+    private static class DefaultHolder {
+        private static final EquityDatabase INSTANCE = openDefault();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,460 @@
+package com.backgammon.model;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent position evaluation store, shared by every search in the JVM and kept
+ * from run to run in a memory-mapped file.
+ *
+ * The file is an open-addressed hash table of fixed-size slots keyed by position hash
+ * and side to roll. Each slot holds the equity, the depth it was searched to and
+ * whether it is exact or a bound. A key may live in any of {@link #PROBE_LENGTH} slots
+ * from its home slot; when they are all taken the entry from the oldest run, then the
+ * shallowest, is evicted, so the file never grows past its size cap.
+ *
+ * Lookups read the mapping directly from any thread. Stores are queued and written by a
+ * single background thread, and dropped if the queue is full. Every slot ends with a
+ * checksum of its contents, written last: a slot torn by a crash, or read while it is
+ * being rewritten, fails the check and is treated as empty, so the file never needs
+ * repair. Only one process may have a file open at a time.
+ *
+ * Cached values are only as good as the evaluation that produced them, so the header
+ * records the {@link PositionEvaluator#fingerprint() fingerprint} of the leaf evaluation
+ * the file was written with. A file written with another evaluator version or bearoff
+ * database is cleared on opening rather than trusted.
+ *
+ * The default cache is opened from the file named by {@code -Dbackgammon.evalCache},
+ * capped at {@code -Dbackgammon.evalCache.maxMB} megabytes.
+ */
+public class EvaluationCache implements AutoCloseable {
+    // Kinds of stored value
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    
+    // Size cap used when none is given
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    
+    // File format marker and version; bump the version when the layout changes
+    private static final long MAGIC = 0x4247455643414348L; // "BGEVCACH"
+    private static final int VERSION = 6;
+    
+    // Header layout: magic, version, slot count, generation, header checksum, evaluator fingerprint
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_SLOTS = 12;
+    private static final int HEADER_GENERATION = 16;
+    private static final int HEADER_CHECKSUM = 24;
+    private static final int HEADER_FINGERPRINT = 32;
+    
+    // Slot layout: key, equity, depth and bound, generation, checksum
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_KEY = 0;
+    private static final int SLOT_EQUITY = 8;
+    private static final int SLOT_INFO = 16;
+    private static final int SLOT_GENERATION = 20;
+    private static final int SLOT_CHECKSUM = 24;
+    
+    // Number of slots a key may occupy, starting at its home slot
+    private static final int PROBE_LENGTH = 4;
+    
+    // Stores waiting for the writer thread
+    private static final int WRITE_QUEUE_CAPACITY = 4096;
+    
+    // Mixed into the key when black is on roll, since the position hash ignores the side to move
+    private static final long BLACK_TO_ROLL = 0x9E3779B97F4A7C15L;
+    
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int slotMask;
+    private final int generation;
+    private final long fingerprint;
+    
+    private final BlockingQueue<Entry> writes;
+    private final Thread writer;
+    private volatile boolean closed;
+    
+    // Statistics
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    
+    /**
+     * A cached evaluation
+     */
+    public static final class Entry {
+        private final long key;
+        private final double equity;
+        private final int depth;
+        private final int bound;
+        
+        Entry(long key, double equity, int depth, int bound) {
+            this.key = key;
+            this.equity = equity;
+            this.depth = depth;
+            this.bound = bound;
+        }
+        
+        /**
+         * Get the equity, from the point of view of the player on roll
+         * @return the equity
+         */
+        public double getEquity() {
+            return equity;
+        }
+        
+        /**
+         * Get the depth the equity was searched to
+         * @return the depth in plies
+         */
+        public int getDepth() {
+            return depth;
+        }
+        
+        /**
+         * Get whether the equity is exact or a bound
+         * @return {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+         */
+        public int getBound() {
+            return bound;
+        }
+    }
+    
+    /**
+     * Open a cache file, creating it if it does not exist. A file with a different size,
+     * version or evaluator fingerprint, or a damaged header, is cleared.
+     * @param path the cache file
+     * @param maxBytes the size cap of the file
+     * @throws IOException if the file cannot be opened or is in use by another process
+     */
+    public EvaluationCache(Path path, long maxBytes) throws IOException {
+        // The largest power-of-two slot count that fits under the cap
+        long slots = Long.highestOneBit(Math.max(PROBE_LENGTH, (maxBytes - HEADER_SIZE) / SLOT_SIZE));
+        if (slots > Integer.MAX_VALUE / SLOT_SIZE) {
+            slots = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+        }
+        long size = HEADER_SIZE + slots * SLOT_SIZE;
+        
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            this.lock = channel.tryLock();
+            if (lock == null) {
+                throw new IOException("Evaluation cache " + path + " is in use by another process");
+            }
+            
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                channel.truncate(0);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.slotMask = (int) slots - 1;
+            this.fingerprint = PositionEvaluator.fingerprint();
+            
+            // Start a new generation so this run's entries outlive older ones
+            if (valid && buffer.getLong(0) == MAGIC && buffer.getInt(HEADER_VERSION) == VERSION
+                    && buffer.getInt(HEADER_SLOTS) == slots && buffer.getLong(HEADER_FINGERPRINT) == fingerprint
+                    && buffer.getLong(HEADER_CHECKSUM) == headerChecksum(buffer.getInt(HEADER_GENERATION))) {
+                this.generation = buffer.getInt(HEADER_GENERATION) + 1;
+            } else {
+                for (long offset = 0; offset < size; offset += 8) {
+                    buffer.putLong((int) offset, 0L);
+                }
+                this.generation = 1;
+            }
+            writeHeader();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        
+        this.writes = new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY);
+        this.writer = new Thread(this::writeLoop, "evaluation-cache-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Get the default cache, opened on first use
+     * @return the cache named by {@code -Dbackgammon.evalCache}, or null if none is configured
+     */
+    public static EvaluationCache getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Open the default cache and close it when the JVM exits
+     * @return the cache, or null if none is configured or it cannot be opened
+     */
+    private static EvaluationCache openDefault() {
+        String path = System.getProperty("backgammon.evalCache");
+        if (path == null) {
+            return null;
+        }
+        long maxBytes = Long.getLong("backgammon.evalCache.maxMB", DEFAULT_MAX_BYTES >> 20) << 20;
+        try {
+            EvaluationCache cache = new EvaluationCache(Paths.get(path), maxBytes);
+            Runtime.getRuntime().addShutdownHook(new Thread(cache::close, "evaluation-cache-close"));
+            return cache;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Get the cache key of a position
+     * @param board the position
+     * @param onRoll the player on roll
+     * @return the key
+     */
+    public static long key(Board board, PlayerColor onRoll) {
+        return onRoll == PlayerColor.BLACK ? board.positionHash() ^ BLACK_TO_ROLL : board.positionHash();
+    }
+    
+    /**
+     * Look up a position
+     * @param key the position key
+     * @return the cached evaluation, or null if the position is not cached
+     */
+    public Entry get(long key) {
+        int home = (int) key & slotMask;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int offset = slotOffset((home + i) & slotMask);
+            if (buffer.getLong(offset + SLOT_KEY) != key) {
+                continue;
+            }
+            
+            // Read every field once, then check they belong together
+            long equityBits = buffer.getLong(offset + SLOT_EQUITY);
+            int info = buffer.getInt(offset + SLOT_INFO);
+            int slotGeneration = buffer.getInt(offset + SLOT_GENERATION);
+            long checksum = buffer.getLong(offset + SLOT_CHECKSUM);
+            if (checksum == slotChecksum(key, equityBits, info, slotGeneration)) {
+                hits.incrementAndGet();
+                return new Entry(key, Double.longBitsToDouble(equityBits), info >>> 2, info & 3);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * Queue an evaluation to be stored. The store happens in the background, and is
+     * skipped if the writer is too far behind or the cache is closed.
+     * @param key the position key
+     * @param equity the equity, from the point of view of the player on roll
+     * @param depth the depth the equity was searched to
+     * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+     */
+    public void put(long key, double equity, int depth, int bound) {
+        if (closed || !writes.offer(new Entry(key, equity, depth, bound))) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Store queued evaluations until the cache is closed
+     */
+    private void writeLoop() {
+        try {
+            while (!closed || !writes.isEmpty()) {
+                Entry entry = writes.poll(100, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    store(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Write an evaluation into the table. An existing entry for the key is replaced
+     * unless it was searched deeper; otherwise the first free or damaged slot is used,
+     * and failing that the entry from the oldest generation, then the shallowest, is evicted.
+     * @param entry the evaluation
+     */
+    private void store(Entry entry) {
+        int home = (int) entry.key & slotMask;
+        int victim = -1;
+        long victimPriority = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_LENGTH; i++) {
+            int slot = (home + i) & slotMask;
+            int offset = slotOffset(slot);
+            long key = buffer.getLong(offset + SLOT_KEY);
+            long equityBits = buffer.getLong(offset + SLOT_EQUITY);
+            int info = buffer.getInt(offset + SLOT_INFO);
+            int slotGeneration = buffer.getInt(offset + SLOT_GENERATION);
+            if (buffer.getLong(offset + SLOT_CHECKSUM) != slotChecksum(key, equityBits, info, slotGeneration)) {
+                // Free or damaged
+                victim = slot;
+                break;
+            }
+            if (key == entry.key) {
+                if ((info >>> 2) > entry.depth) {
+                    return;
+                }
+                victim = slot;
+                break;
+            }
+            long priority = ((long) slotGeneration << 32) | (info >>> 2);
+            if (priority < victimPriority) {
+                victimPriority = priority;
+                victim = slot;
+            }
+        }
+        
+        // The checksum goes last, so a slot is never valid with half-written contents
+        int offset = slotOffset(victim);
+        long equityBits = Double.doubleToLongBits(entry.equity);
+        int info = (entry.depth << 2) | entry.bound;
+        buffer.putLong(offset + SLOT_CHECKSUM, 0L);
+        buffer.putLong(offset + SLOT_KEY, entry.key);
+        buffer.putLong(offset + SLOT_EQUITY, equityBits);
+        buffer.putInt(offset + SLOT_INFO, info);
+        buffer.putInt(offset + SLOT_GENERATION, generation);
+        buffer.putLong(offset + SLOT_CHECKSUM, slotChecksum(entry.key, equityBits, info, generation));
+        stores.incrementAndGet();
+    }
+    
+    /**
+     * Write the header for the current generation
+     */
+    private void writeHeader() {
+        buffer.putLong(HEADER_CHECKSUM, 0L);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_SLOTS, slotMask + 1);
+        buffer.putInt(HEADER_GENERATION, generation);
+        buffer.putLong(HEADER_FINGERPRINT, fingerprint);
+        buffer.putLong(HEADER_CHECKSUM, headerChecksum(generation));
+    }
+    
+    /**
+     * Get the byte offset of a slot
+     * @param slot the slot index
+     * @return the offset in the file
+     */
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+    
+    /**
+     * Checksum the header fields
+     * @param headerGeneration the generation stored in the header
+     * @return the checksum
+     */
+    private long headerChecksum(int headerGeneration) {
+        return mix(mix(mix(MAGIC ^ VERSION) ^ ((long) (slotMask + 1) << 32 | headerGeneration)) ^ fingerprint);
+    }
+    
+    /**
+     * Checksum the fields of a slot. An all-zero slot never passes.
+     * @param key the key
+     * @param equityBits the equity bits
+     * @param info the depth and bound
+     * @param slotGeneration the generation that wrote the slot
+     * @return the checksum
+     */
+    private static long slotChecksum(long key, long equityBits, int info, int slotGeneration) {
+        long h = mix(key ^ MAGIC);
+        h = mix(h ^ equityBits);
+        return mix(h ^ ((long) info << 32 | (slotGeneration & 0xFFFFFFFFL))) | 1L;
+    }
+    
+    /**
+     * Scramble the bits of a value (the SplitMix64 finalizer)
+     * @param z the value
+     * @return the scrambled value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Get the number of lookups that found an entry
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * Get the number of lookups that found nothing
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * Get the number of evaluations written to the file
+     * @return the store count
+     */
+    public long getStores() {
+        return stores.get();
+    }
+    
+    /**
+     * Get the number of evaluations dropped because the writer was behind or the cache closed
+     * @return the dropped count
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+    
+    /**
+     * Get the number of slots in the table
+     * @return the capacity in entries
+     */
+    public int getCapacity() {
+        return slotMask + 1;
+    }
+    
+    /**
+     * Finish the queued stores, flush the file and release it
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writer.join();
+            buffer.force();
+            lock.release();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Holder for the lazily opened default cache
+     */
+    private static class DefaultHolder {
+        private static final EvaluationCache INSTANCE = openDefault();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,456 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Fixed-depth expectiminimax search over complete plays and dice rolls.
+ *
+ * The search alternates max nodes (choosing a play for a roll) with chance nodes
+ * (averaging over the 21 distinct rolls of the player about to move), counting depth
+ * in plies. Values are kept in negamax form, always from the point of view of the
+ * player to move, and leaves are scored with the {@link PositionEvaluator}.
+ *
+ * With pruning enabled, chance nodes use Star2: every roll is first probed by fully
+ * searching only its best-ordered play, which gives a lower bound for that roll; the
+ * rolls are then searched in turn with windows derived from the known bounds (Star1),
+ * stopping as soon as the weighted average is known to fall outside the parent's
+ * window. Max nodes use ordinary alpha-beta, with plays ordered by the cheap
+ * {@link HeuristicEvaluator} score. Pruning never changes the value of the root.
+ */
+public class ExpectiminimaxSearch {
+    // Window used when nothing is known about a value
+    private static final double NO_BOUND = Double.POSITIVE_INFINITY;
+    
+    // The clock is read once every this many nodes (a power of two, minus one)
+    private static final long CLOCK_CHECK_MASK = 15;
+    
+    // Thrown from deep inside the search when the deadline passes
+    private static final DeadlineExceeded TIMEOUT = new DeadlineExceeded();
+    
+    private final PlayGenerator playGenerator;
+    private final PositionEvaluator evaluator;
+    private final HeuristicEvaluator heuristic;
+    
+    // The search depth in plies (1 chooses the play with the best static evaluation)
+    private final int plies;
+    
+    // Whether chance and max nodes are pruned
+    private final boolean pruning;
+    
+    // The dice for each of the 21 distinct rolls, and their probabilities
+    private final Dice[] rolls;
+    private final double[] probabilities;
+    
+    // Persistent store of the root children's values, or null
+    private EvaluationCache cache;
+    
+    // Statistics of the last search
+    private long nodeCount;
+    private double value;
+    private int completedDepth;
+    
+    // System.nanoTime() value at which the running search stops, if it has a deadline
+    private boolean hasDeadline;
+    private long deadline;
+    
+    // Checked with the clock; a timed search also stops once it returns true
+    private BooleanSupplier stopCondition = () -> false;
+    
+    /**
+     * Create a pruned search
+     * @param plies the search depth in plies
+     */
+    public ExpectiminimaxSearch(int plies) {
+        this(plies, true);
+    }
+    
+    /**
+     * Create a search
+     * @param plies the search depth in plies
+     * @param pruning whether to use Star1/Star2 and alpha-beta pruning
+     */
+    public ExpectiminimaxSearch(int plies, boolean pruning) {
+        if (plies < 1) {
+            throw new IllegalArgumentException("Search depth must be at least one ply");
+        }
+        this.playGenerator = new PlayGenerator();
+        this.evaluator = new PositionEvaluator();
+        this.heuristic = new HeuristicEvaluator();
+        this.plies = plies;
+        this.pruning = pruning;
+        this.rolls = new Dice[21];
+        this.probabilities = new double[21];
+        
+        int i = 0;
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = die1; die2 <= 6; die2++) {
+                rolls[i] = new Dice();
+                rolls[i].setValues(die1, die2);
+                probabilities[i] = OneSidedBearoff.ROLL_PROBABILITY[die1 - 1][die2 - 1];
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * Find the best play for a roll
+     * @param board the current board state (not modified)
+     * @param color the player to move
+     * @param dice the roll
+     * @return the best play; an empty play if no move is possible
+     */
+    public Play search(Board board, PlayerColor color, Dice dice) {
+        nodeCount = 1;
+        hasDeadline = false;
+        List<Play> plays = orderedPlays(board, color, dice);
+        Play best = searchRoot(plays, color, plies);
+        completedDepth = plies;
+        return best;
+    }
+    
+    /**
+     * Find the best play for a roll within a time limit, by iterative deepening: the
+     * search is repeated one ply deeper at a time, up to this search's depth, and the
+     * play of the deepest search that finished before the deadline is returned. The
+     * 1-ply search always finishes, so there is always a play to return.
+     * @param board the current board state (not modified)
+     * @param color the player to move
+     * @param dice the roll
+     * @param deadlineNanos the {@link System#nanoTime()} value at which to stop
+     * @return the best play found in time; an empty play if no move is possible
+     */
+    public Play searchUntil(Board board, PlayerColor color, Dice dice, long deadlineNanos) {
+        nodeCount = 1;
+        hasDeadline = false;
+        List<Play> plays = new ArrayList<>(orderedPlays(board, color, dice));
+        Play best = searchRoot(plays, color, 1);
+        double bestValue = value;
+        completedDepth = 1;
+        
+        hasDeadline = true;
+        deadline = deadlineNanos;
+        try {
+            for (int depth = 2; depth <= plies && plays.size() > 1; depth++) {
+                // Try the previous best play first so the deeper search prunes more
+                plays.remove(best);
+                plays.add(0, best);
+                best = searchRoot(plays, color, depth);
+                bestValue = value;
+                completedDepth = depth;
+            }
+        } catch (DeadlineExceeded e) {
+            // Keep the play of the last finished depth
+        } finally {
+            hasDeadline = false;
+        }
+        value = bestValue;
+        return best;
+    }
+    
+    /**
+     * Value a play that has already been made, searched to the same depth as the plays
+     * compared by {@link #search(Board, PlayerColor, Dice)}
+     * @param result the position after the play
+     * @param color the player who made the play
+     * @return the value for that player
+     */
+    public double evaluatePlay(Board result, PlayerColor color) {
+        nodeCount = 1;
+        hasDeadline = false;
+        double bound = pruning ? PositionEvaluator.MAX_EQUITY + 1.0 : NO_BOUND;
+        return -cachedChanceNode(result, color.opposite(), plies - 1, -bound, bound);
+    }
+    
+    /**
+     * Search every play of the root
+     * @param plays the plays, best-ordered first
+     * @param color the player to move
+     * @param depth the depth in plies
+     * @return the best play; its value is stored in {@link #value}
+     */
+    private Play searchRoot(List<Play> plays, PlayerColor color, int depth) {
+        Play best = plays.get(0);
+        double alpha = pruning ? PositionEvaluator.MIN_EQUITY - 1.0 : -NO_BOUND;
+        double beta = pruning ? PositionEvaluator.MAX_EQUITY : NO_BOUND;
+        for (Play play : plays) {
+            double v = -cachedChanceNode(play.getResult(), color.opposite(), depth - 1, -beta, -alpha);
+            if (v > alpha) {
+                alpha = v;
+                best = play;
+            }
+        }
+        value = alpha;
+        return best;
+    }
+    
+    /**
+     * Value a root child, looking it up in the evaluation cache first and storing the
+     * result for later searches. Static evaluations are not worth caching.
+     * @param board the position after the play
+     * @param onRoll the player to roll next
+     * @param depth the remaining depth in plies
+     * @param alpha the lower bound of the window
+     * @param beta the upper bound of the window
+     * @return the value for the player on roll, clamped to the window
+     */
+    private double cachedChanceNode(Board board, PlayerColor onRoll, int depth, double alpha, double beta) {
+        if (cache == null || depth < 1) {
+            return chanceNode(board, onRoll, depth, alpha, beta);
+        }
+        
+        long key = EvaluationCache.key(board, onRoll);
+        EvaluationCache.Entry entry = cache.get(key);
+        if (entry != null && entry.getDepth() >= depth) {
+            double equity = entry.getEquity();
+            if (entry.getBound() == EvaluationCache.EXACT) {
+                return Math.max(alpha, Math.min(beta, equity));
+            }
+            if (entry.getBound() == EvaluationCache.LOWER_BOUND && equity >= beta) {
+                return beta;
+            }
+            if (entry.getBound() == EvaluationCache.UPPER_BOUND && equity <= alpha) {
+                return alpha;
+            }
+        }
+        
+        // Fail-hard: values on the edge of the window are only bounds
+        double v = chanceNode(board, onRoll, depth, alpha, beta);
+        int bound = v <= alpha ? EvaluationCache.UPPER_BOUND
+            : v >= beta ? EvaluationCache.LOWER_BOUND : EvaluationCache.EXACT;
+        cache.put(key, v, depth, bound);
+        return v;
+    }
+    
+    /**
+     * Use a persistent cache for the values of the positions after each root play
+     * @param cache the cache, or null for none
+     */
+    public void setCache(EvaluationCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * Set a condition that stops a timed search early, as if its deadline had passed.
+     * It is checked as often as the clock, so it may be changed from another thread to
+     * abandon a search at once.
+     * @param stopCondition returns true when the running search should stop
+     */
+    public void setStopCondition(BooleanSupplier stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+    
+    /**
+     * Get the number of nodes visited by the last search
+     * @return the node count
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+    
+    /**
+     * Get the value of the play chosen by the last search
+     * @return the equity for the player who moved
+     */
+    public double getValue() {
+        return value;
+    }
+    
+    /**
+     * Get the depth of the deepest search that finished in the last call
+     * @return the depth in plies
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+    
+    /**
+     * Get the search depth
+     * @return the depth in plies
+     */
+    public int getPlies() {
+        return plies;
+    }
+    
+    /**
+     * Check whether this search prunes
+     * @return true if Star1/Star2 and alpha-beta pruning are used
+     */
+    public boolean isPruning() {
+        return pruning;
+    }
+    
+    /**
+     * Evaluate a position before the player to move has rolled
+     * @param board the position
+     * @param onRoll the player about to roll
+     * @param depth the remaining depth in plies
+     * @param alpha the lower bound of the window
+     * @param beta the upper bound of the window
+     * @return the value for the player on roll (clamped to the window when pruning)
+     */
+    private double chanceNode(Board board, PlayerColor onRoll, int depth, double alpha, double beta) {
+        countNode();
+        if (depth == 0 || board.hasWon(onRoll.opposite())) {
+            return evaluator.evaluate(board, onRoll);
+        }
+        
+        if (!pruning) {
+            double sum = 0;
+            for (int i = 0; i < rolls.length; i++) {
+                List<Play> plays = orderedPlays(board, onRoll, rolls[i]);
+                sum += probabilities[i] * maxNode(plays, onRoll, depth, -NO_BOUND, NO_BOUND, 0, 0);
+            }
+            return sum;
+        }
+        
+        // Star2 probing: the best-ordered play of each roll is a lower bound for that roll
+        List<List<Play>> plays = new ArrayList<>(rolls.length);
+        double[] lower = new double[rolls.length];
+        double lowerSum = 0;
+        for (int i = 0; i < rolls.length; i++) {
+            plays.add(orderedPlays(board, onRoll, rolls[i]));
+            lower[i] = -chanceNode(plays.get(i).get(0).getResult(), onRoll.opposite(), depth - 1,
+                -PositionEvaluator.MAX_EQUITY, -PositionEvaluator.MIN_EQUITY);
+            lowerSum += probabilities[i] * lower[i];
+        }
+        if (lowerSum >= beta) {
+            return beta;
+        }
+        
+        // Star1: search each roll with the window that could still change the outcome
+        double sum = 0;
+        double upperRest = PositionEvaluator.MAX_EQUITY;
+        double lowerRest = lowerSum;
+        for (int i = 0; i < rolls.length; i++) {
+            double p = probabilities[i];
+            upperRest -= p * PositionEvaluator.MAX_EQUITY;
+            lowerRest -= p * lower[i];
+            double childAlpha = (alpha - sum - upperRest) / p;
+            double childBeta = (beta - sum - lowerRest) / p;
+            
+            double v = maxNode(plays.get(i), onRoll, depth,
+                Math.max(childAlpha, PositionEvaluator.MIN_EQUITY),
+                Math.min(childBeta, PositionEvaluator.MAX_EQUITY), 1, lower[i]);
+            if (v <= childAlpha) {
+                return alpha;
+            }
+            if (v >= childBeta) {
+                return beta;
+            }
+            sum += p * v;
+        }
+        return sum;
+    }
+    
+    /**
+     * Choose the best play for a roll
+     * @param plays the plays for the roll, best-ordered first
+     * @param color the player to move
+     * @param depth the remaining depth in plies
+     * @param alpha the lower bound of the window
+     * @param beta the upper bound of the window
+     * @param start the number of plays already searched
+     * @param best the best value of the plays already searched
+     * @return the value for the player to move (clamped to the window)
+     */
+    private double maxNode(List<Play> plays, PlayerColor color, int depth, double alpha, double beta,
+                           int start, double best) {
+        countNode();
+        if (start > 0) {
+            if (best >= beta) {
+                return beta;
+            }
+            alpha = Math.max(alpha, best);
+        }
+        
+        for (int i = start; i < plays.size(); i++) {
+            double v = -chanceNode(plays.get(i).getResult(), color.opposite(), depth - 1, -beta, -alpha);
+            if (v >= beta) {
+                return beta;
+            }
+            if (v > alpha) {
+                alpha = v;
+            }
+        }
+        return alpha;
+    }
+    
+    /**
+     * Count a node, and abandon the search if its deadline has passed or it was stopped
+     */
+    private void countNode() {
+        nodeCount++;
+        if (hasDeadline && (nodeCount & CLOCK_CHECK_MASK) == 0
+                && (System.nanoTime() - deadline > 0 || stopCondition.getAsBoolean())) {
+            throw TIMEOUT;
+        }
+    }
+    
+    /**
+     * Generate the plays for a roll, ordered by the heuristic score of their moves
+     * @param board the position
+     * @param color the player to move
+     * @param dice the roll
+     * @return the plays, most promising first
+     */
+    private List<Play> orderedPlays(Board board, PlayerColor color, Dice dice) {
+        List<Play> plays = playGenerator.generate(color, board, dice);
+        if (plays.size() == 1) {
+            return plays;
+        }
+        
+        double[] scores = new double[plays.size()];
+        for (int i = 0; i < plays.size(); i++) {
+            scores[i] = heuristicScore(plays.get(i), board, color);
+        }
+        
+        // Stable insertion sort, highest score first
+        List<Play> ordered = new ArrayList<>(plays.size());
+        List<Double> orderedScores = new ArrayList<>(plays.size());
+        for (int i = 0; i < plays.size(); i++) {
+            int at = orderedScores.size();
+            while (at > 0 && orderedScores.get(at - 1) < scores[i]) {
+                at--;
+            }
+            ordered.add(at, plays.get(i));
+            orderedScores.add(at, scores[i]);
+        }
+        return ordered;
+    }
+    
+    /**
+     * Score a play by replaying its moves through the heuristic
+     * @param play the play
+     * @param board the position before the play
+     * @param color the player making the play
+     * @return the sum of the heuristic scores of the moves
+     */
+    private double heuristicScore(Play play, Board board, PlayerColor color) {
+        double score = 0;
+        Board step = board;
+        for (int i = 0; i < play.getMoves().size(); i++) {
+            Move move = play.getMoves().get(i);
+            score += heuristic.score(move, step, color);
+            if (i < play.getMoves().size() - 1) {
+                if (step == board) {
+                    step = board.clone();
+                }
+                step.applyMove(move, color);
+            }
+        }
+        return score;
+    }
+    
+    /**
+     * Unwinds an unfinished search; shared and without a stack trace, so throwing it is cheap
+     */
+    private static class DeadlineExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        DeadlineExceeded() {
+            super("Search deadline passed", null, false, false);
+        }
+    }
+}
\ No newline at end of file
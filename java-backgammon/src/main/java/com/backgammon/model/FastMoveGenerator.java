@@ -0,0 +1,179 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fast single-move generator working on the board's occupancy masks.
+ *
+ * For each die the points a player can move from are found with one shift and mask:
+ * a source is movable when it holds the player's checkers and the point a die away is
+ * not blocked (made by the opponent). Destinations come from precomputed
+ * (source, die) and bar-entry tables, and bear-off eligibility from the same masks,
+ * so nothing rescans the board. The rules are exactly those of {@link MoveValidator}:
+ * the moves are the same, in the same order, without the validator's duplicates.
+ *
+ * The moves can be written as packed ints ({@link Move#pack(int, int)}) into a buffer the
+ * caller owns and reuses, which allocates nothing; the list form wraps that with the
+ * interned {@link Move} instances.
+ */
+public class FastMoveGenerator implements MoveGenerator {
+    // Most single moves a position can have: two dice from each of at most 15 points
+    public static final int MAX_MOVES = 2 * Board.CHECKERS_PER_PLAYER;
+    
+    // All 24 points
+    private static final int ALL_POINTS = (1 << 24) - 1;
+    
+    // Home board masks (bit i set for point index i), indexed by color ordinal
+    private static final int[] HOME_BOARD = {0x00003F, 0xFC0000};
+    
+    // Destination of a checker moved from a point by a die, or -1 if it leaves the board,
+    // indexed as [color ordinal][source point][die]
+    private static final int[][][] DESTINATION = createDestinations();
+    
+    // Point a checker enters on from the bar with a die, indexed as [color ordinal][die]
+    private static final int[][] ENTRY = createEntries();
+    
+    /**
+     * Generate all legal single moves for a player
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @return the legal moves
+     */
+    @Override
+    public List<Move> generate(PlayerColor playerColor, Board board, Dice dice) {
+        int[] packed = new int[MAX_MOVES];
+        int count = generate(playerColor, board, dice, packed);
+        List<Move> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moves.add(Move.of(packed[i]));
+        }
+        return moves;
+    }
+    
+    /**
+     * Generate all legal single moves for a player into a buffer, without allocating
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @param moves the buffer to write the packed moves to, at least {@link #MAX_MOVES} long
+     * @return the number of moves written
+     */
+    public int generate(PlayerColor playerColor, Board board, Dice dice, int[] moves) {
+        int count = 0;
+        int diceKey = dice.getAvailableKey();
+        if (diceKey == 0) {
+            return count;
+        }
+        
+        // The distinct unused die values, in the order the dice are listed
+        int distinct = dice.getDistinctAvailableValues();
+        int firstDie = distinct & 7;
+        int secondDie = distinct >>> 3;
+        
+        int c = playerColor.ordinal();
+        int open = ~board.getMadeMask(playerColor.opposite()) & ALL_POINTS;
+        
+        // Checkers on the bar must enter first, on the lowest entry point first
+        if (board.getBarCount(playerColor) > 0) {
+            int bar = playerColor == PlayerColor.WHITE ? Board.WHITE_BAR : Board.BLACK_BAR;
+            for (int step = 0; step < 6; step++) {
+                int die = playerColor == PlayerColor.WHITE ? 6 - step : step + 1;
+                int to = ENTRY[c][die];
+                if (isAvailable(diceKey, die) && (open & (1 << to)) != 0) {
+                    moves[count++] = Move.pack(bar, to);
+                }
+            }
+            return count;
+        }
+        
+        int own = board.getOccupiedMask(playerColor);
+        int firstMovable = movable(playerColor, own, open, firstDie);
+        int secondMovable = secondDie == 0 ? 0 : movable(playerColor, own, open, secondDie);
+        boolean bearingOff = (own & ~HOME_BOARD[c]) == 0;
+        int home = playerColor == PlayerColor.WHITE ? Board.WHITE_HOME : Board.BLACK_HOME;
+        
+        int sources = own;
+        while (sources != 0) {
+            int from = Integer.numberOfTrailingZeros(sources);
+            sources &= sources - 1;
+            boolean borneOff = false;
+            
+            for (int d = 0; d < 2; d++) {
+                int die = d == 0 ? firstDie : secondDie;
+                if (die == 0) {
+                    break;
+                }
+                int to = DESTINATION[c][from][die];
+                if (to >= 0) {
+                    if (((d == 0 ? firstMovable : secondMovable) & (1 << from)) != 0) {
+                        moves[count++] = Move.pack(from, to);
+                    }
+                } else if (bearingOff && !borneOff && isAvailable(diceKey, Board.pipDistance(playerColor, from))) {
+                    // Bearing off needs the exact die, whichever die reached past the edge
+                    moves[count++] = Move.pack(from, home);
+                    borneOff = true;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Find the points a player can move from with a die, ignoring bear-offs
+     * @param playerColor the player's color
+     * @param own the points the player occupies
+     * @param open the points not blocked by the opponent
+     * @param die the die value
+     * @return the movable source points as a mask
+     */
+    private static int movable(PlayerColor playerColor, int own, int open, int die) {
+        if (playerColor == PlayerColor.WHITE) {
+            // White moves towards index 0: source i is movable if i - die is open
+            return own & (open << die) & ALL_POINTS;
+        }
+        // Black moves towards index 23: source i is movable if i + die is open
+        return own & (open >>> die);
+    }
+    
+    /**
+     * Check whether a die value is unused
+     * @param diceKey the key of the unused dice, from {@link Dice#getAvailableKey()}
+     * @param die the die value
+     * @return true if a die with that value is unused
+     */
+    private static boolean isAvailable(int diceKey, int die) {
+        return die >= 1 && die <= 6 && ((diceKey >>> (3 * (die - 1))) & 7) != 0;
+    }
+    
+    /**
+     * Build the (source, die) destination table
+     * @return the destinations, indexed as [color ordinal][source point][die]
+     */
+    private static int[][][] createDestinations() {
+        int[][][] table = new int[2][24][7];
+        for (int from = 0; from < 24; from++) {
+            for (int die = 1; die <= 6; die++) {
+                int white = from - die;
+                int black = from + die;
+                table[PlayerColor.WHITE.ordinal()][from][die] = white >= 0 ? white : -1;
+                table[PlayerColor.BLACK.ordinal()][from][die] = black <= 23 ? black : -1;
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * Build the bar entry table
+     * @return the entry points, indexed as [color ordinal][die]
+     */
+    private static int[][] createEntries() {
+        int[][] table = new int[2][7];
+        for (int die = 1; die <= 6; die++) {
+            table[PlayerColor.WHITE.ordinal()][die] = 24 - die;
+            table[PlayerColor.BLACK.ordinal()][die] = die - 1;
+        }
+        return table;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.backgammon.model;
+
+import java.util.Arrays;
+
+/**
+ * A reusable row-major matrix of features, one row per candidate.
+ *
+ * All rows live in a single primitive array so a batch of candidates can be scored
+ * in one sequential pass without allocating an object per candidate.
+ */
+public class FeatureMatrix {
+    // The feature values, row after row
+    private double[] values;
+    
+    // The number of features per row
+    private final int columns;
+    
+    // The number of rows in use
+    private int rows;
+    
+    /**
+     * Create an empty matrix
+     * @param columns the number of features per row
+     */
+    public FeatureMatrix(int columns) {
+        this.columns = columns;
+        this.values = new double[columns * 16];
+        this.rows = 0;
+    }
+    
+    /**
+     * Clear the matrix and make room for a number of rows
+     * @param rows the number of rows to hold
+     */
+    public void reset(int rows) {
+        int size = rows * columns;
+        if (values.length < size) {
+            values = new double[Math.max(size, values.length * 2)];
+        } else {
+            Arrays.fill(values, 0, size, 0.0);
+        }
+        this.rows = rows;
+    }
+    
+    /**
+     * Get the number of rows in use
+     * @return the row count
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Get the number of features per row
+     * @return the column count
+     */
+    public int getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Get the backing array; row {@code r} starts at {@code r * getColumns()}
+     * @return the feature values
+     */
+    public double[] getValues() {
+        return values;
+    }
+    
+    /**
+     * Set a feature value
+     * @param row the row
+     * @param column the feature
+     * @param value the value
+     */
+    public void set(int row, int column, double value) {
+        values[row * columns + column] = value;
+    }
+    
+    /**
+     * Get a feature value
+     * @param row the row
+     * @param column the feature
+     * @return the value
+     */
+    public double get(int row, int column) {
+        return values[row * columns + column];
+    }
+}
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.backgammon.model;
 
+import com.backgammon.metrics.GameActionEvent;
+import com.backgammon.metrics.Metrics;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,6 +10,9 @@ import java.util.List;
  * Contains the core game logic for backgammon
  */
 public class GameLogic {
+    // The variant, which decides the starting position
+    private final Variant variant;
+    
     // The board
     private Board board;
     
@@ -28,11 +34,23 @@ public class GameLogic {
     // List of moves played in the current turn
     private List<Move> movesPlayed;
     
+    // Legal moves of the last state they were generated for
+    private LegalMoves legalMoves;
+    
     /**
      * Create a new game
      */
     public GameLogic() {
-        this.board = new Board();
+        this(Variant.STANDARD);
+    }
+    
+    /**
+     * Create a new game of a variant
+     * @param variant the variant
+     */
+    public GameLogic(Variant variant) {
+        this.variant = variant;
+        this.board = new Board(variant);
         this.dice = new Dice();
         this.moveValidator = new MoveValidator();
         this.gameState = GameState.INITIAL;
@@ -41,11 +59,31 @@ public class GameLogic {
         this.movesPlayed = new ArrayList<>();
     }
     
+    /**
+     * Create a game that continues from a given position
+     * @param board the position to play from
+     * @param currentPlayer the player about to roll
+     * @param dice the dice to play with
+     */
+    public GameLogic(Board board, PlayerColor currentPlayer, Dice dice) {
+        this.variant = Variant.forCheckers(board.getCheckersPerPlayer());
+        this.board = board;
+        this.dice = dice;
+        this.moveValidator = new MoveValidator();
+        this.gameState = GameState.PLAYING;
+        this.currentPlayer = currentPlayer;
+        this.winner = null;
+        this.movesPlayed = new ArrayList<>();
+        
+        // The position may already be decided
+        checkGameOver();
+    }
+    
     /**
      * Start a new game
      */
     public void startGame() {
-        this.board = new Board(); // Reset the board
+        this.board = new Board(variant); // Reset the board
         this.dice.reset();  // Clear the dice
         this.gameState = GameState.PLAYING;
         this.currentPlayer = PlayerColor.WHITE;
@@ -63,11 +101,33 @@ public class GameLogic {
         }
         
         dice.roll();
+        return startTurn();
+    }
+    
+    /**
+     * Set the dice of the current player to a given roll, as when replaying a recorded game
+     * @param die1 the value of the first die
+     * @param die2 the value of the second die
+     * @return the dice values
+     */
+    public List<Integer> rollDice(int die1, int die2) {
+        if (gameState != GameState.PLAYING) {
+            throw new IllegalStateException("Cannot roll dice when game is not in progress");
+        }
+        
+        dice.setValues(die1, die2);
+        return startTurn();
+    }
+    
+    /**
+     * Start the current player's turn with the dice just rolled
+     * @return the dice values
+     */
+    private List<Integer> startTurn() {
         movesPlayed.clear();
         
         // Check if the player has any legal moves with these dice
-        List<Move> possibleMoves = moveValidator.getPossibleMoves(currentPlayer, board, dice);
-        if (possibleMoves.isEmpty()) {
+        if (getLegalMoves().isEmpty()) {
             // No legal moves, end the turn
             endTurn();
         }
@@ -81,12 +141,30 @@ public class GameLogic {
      * @return true if the move was made successfully, false otherwise
      */
     public boolean makeMove(Move move) {
+        GameActionEvent event = new GameActionEvent("makeMove");
+        event.begin();
+        
+        boolean moveMade = applyMove(move);
+        
+        if (event.shouldCommit()) {
+            event.set(board.positionHash(), moveMade ? 1 : 0, movesPlayed.size());
+            event.commit();
+        }
+        return moveMade;
+    }
+    
+    /**
+     * Validate and apply a move
+     * @param move the move to make
+     * @return true if the move was made successfully, false otherwise
+     */
+    private boolean applyMove(Move move) {
         if (gameState != GameState.PLAYING) {
             return false;
         }
         
         // Check if the move is valid
-        if (!moveValidator.isValidMove(move.getFrom(), move.getTo(), currentPlayer, board, dice)) {
+        if (!getLegalMoves().contains(move)) {
             return false;
         }
         
@@ -103,26 +181,7 @@ public class GameLogic {
         }
         
         // Move the checker
-        if (from == Board.WHITE_BAR) {
-            // White coming in from the bar
-            board.removeFromBar(PlayerColor.WHITE);
-            makeCheckersMove(null, board.getPoint(to), PlayerColor.WHITE);
-        } else if (from == Board.BLACK_BAR) {
-            // Black coming in from the bar
-            board.removeFromBar(PlayerColor.BLACK);
-            makeCheckersMove(null, board.getPoint(to), PlayerColor.BLACK);
-        } else if (to == Board.WHITE_HOME) {
-            // White bearing off
-            makeCheckersMove(board.getPoint(from), null, PlayerColor.WHITE);
-            board.addToHome(PlayerColor.WHITE);
-        } else if (to == Board.BLACK_HOME) {
-            // Black bearing off
-            makeCheckersMove(board.getPoint(from), null, PlayerColor.BLACK);
-            board.addToHome(PlayerColor.BLACK);
-        } else {
-            // Regular move
-            makeCheckersMove(board.getPoint(from), board.getPoint(to), currentPlayer);
-        }
+        board.applyMove(move, currentPlayer);
         
         // Add the move to the list of moves played
         movesPlayed.add(move);
@@ -131,7 +190,7 @@ public class GameLogic {
         checkGameOver();
         
         // Check if the player has any more moves available
-        if (!dice.hasAvailableMoves() || moveValidator.getPossibleMoves(currentPlayer, board, dice).isEmpty()) {
+        if (!dice.hasAvailableMoves() || getLegalMoves().isEmpty()) {
             endTurn();
         }
         
@@ -164,42 +223,25 @@ public class GameLogic {
         }
     }
     
-    /**
-     * Move a checker from one point to another
-     * @param from the source point (null if from bar)
-     * @param to the destination point (null if bearing off)
-     * @param playerColor the player's color
-     */
-    private void makeCheckersMove(Point from, Point to, PlayerColor playerColor) {
-        // Remove from source point
-        if (from != null) {
-            from.removeChecker();
-        }
-        
-        // Add to destination point (if not bearing off)
-        if (to != null) {
-            // Check if hitting an opponent's blot
-            if (to.hasColor(playerColor.opposite()) && to.getCount() == 1) {
-                // Remove opponent's checker and add to bar
-                to.removeChecker();
-                board.addToBar(playerColor.opposite());
-            }
-            
-            // Add the player's checker
-            to.addChecker(playerColor);
-        }
-    }
-    
     /**
      * End the current player's turn
      */
     public void endTurn() {
+        GameActionEvent event = new GameActionEvent("endTurn");
+        event.begin();
+        int movesThisTurn = movesPlayed.size();
+        
         // Clear dice and moves
         dice.reset();
         movesPlayed.clear();
         
         // Switch to the other player
         currentPlayer = currentPlayer.opposite();
+        
+        if (event.shouldCommit()) {
+            event.set(board.positionHash(), 0, movesThisTurn);
+            event.commit();
+        }
     }
     
     // Undo functionality has been removed
@@ -208,6 +250,11 @@ public class GameLogic {
      * Check if the game is over
      */
     private void checkGameOver() {
+        if (Metrics.ENABLED && gameState == GameState.PLAYING
+                && (board.hasWon(PlayerColor.WHITE) || board.hasWon(PlayerColor.BLACK))) {
+            Metrics.GAMES_COMPLETED.increment();
+        }
+        
         // Check if white has won
         if (board.hasWon(PlayerColor.WHITE)) {
             gameState = GameState.ENDED;
@@ -230,7 +277,41 @@ public class GameLogic {
             return new ArrayList<>();
         }
         
-        return moveValidator.getPossibleMoves(currentPlayer, board, dice);
+        return new ArrayList<>(getLegalMoves().getMoves());
+    }
+    
+    /**
+     * Get the legal destinations from a point for the current player
+     * @param from the source point index, or the current player's bar index
+     * @return the destinations (unmodifiable, empty if there is no legal move from the point)
+     */
+    public List<Integer> getDestinations(int from) {
+        if (gameState != GameState.PLAYING || !dice.hasAvailableMoves()) {
+            return new ArrayList<>();
+        }
+        
+        return getLegalMoves().getDestinations(from);
+    }
+    
+    /**
+     * Get the legal moves of the current state, generating them only when the board,
+     * the dice or the player to move have changed since the last call
+     * @return the legal moves
+     */
+    public LegalMoves getLegalMoves() {
+        if (legalMoves == null || !legalMoves.matches(currentPlayer, board, dice)) {
+            legalMoves = new LegalMoves(currentPlayer, board, dice,
+                moveValidator.getPossibleMoves(currentPlayer, board, dice));
+        }
+        return legalMoves;
+    }
+    
+    /**
+     * Get the variant being played
+     * @return the variant; for a game continued from a position, the first variant with its number of checkers
+     */
+    public Variant getVariant() {
+        return variant;
     }
     
     /**
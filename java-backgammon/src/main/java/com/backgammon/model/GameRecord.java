@@ -0,0 +1,252 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The record of a game from the starting position: every turn's roll and moves, and the winner.
+ *
+ * A record is written as one line of space-separated turns followed by the result, for example
+ * {@code W31:7/4,5/4 B64:0/6,11/15 W22:- =W}. Each turn is the player ({@code W} or {@code B}),
+ * the two dice, and the moves as {@code from/to} point indices, or {@code -} if the player could
+ * not move. The result is {@code =W}, {@code =B}, or {@code =?} for an unfinished game.
+ * The line may start with the players' names, as {@code W=alice B=bob}; names contain no spaces.
+ */
+public class GameRecord {
+    /**
+     * One turn of a game
+     */
+    public static class Turn {
+        private final PlayerColor player;
+        private final int die1;
+        private final int die2;
+        private final List<Move> moves;
+        
+        /**
+         * Create a new turn
+         * @param player the player on roll
+         * @param die1 the value of the first die
+         * @param die2 the value of the second die
+         * @param moves the moves played, in order
+         */
+        public Turn(PlayerColor player, int die1, int die2, List<Move> moves) {
+            this.player = player;
+            this.die1 = die1;
+            this.die2 = die2;
+            this.moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        }
+        
+        /**
+         * Get the player on roll
+         * @return the player
+         */
+        public PlayerColor getPlayer() {
+            return player;
+        }
+        
+        /**
+         * Get the value of the first die
+         * @return the die value
+         */
+        public int getDie1() {
+            return die1;
+        }
+        
+        /**
+         * Get the value of the second die
+         * @return the die value
+         */
+        public int getDie2() {
+            return die2;
+        }
+        
+        /**
+         * Get the moves played
+         * @return the moves, in order; empty if the player could not move
+         */
+        public List<Move> getMoves() {
+            return moves;
+        }
+    }
+    
+    private final List<Turn> turns = new ArrayList<>();
+    
+    // The players' names, or null if not recorded
+    private String whiteName;
+    private String blackName;
+    
+    // The winner, or null if the game is unfinished
+    private PlayerColor winner;
+    
+    /**
+     * Add a turn to the record
+     * @param turn the turn
+     */
+    public void addTurn(Turn turn) {
+        turns.add(turn);
+    }
+    
+    /**
+     * Get the turns of the game
+     * @return the turns, in order
+     */
+    public List<Turn> getTurns() {
+        return Collections.unmodifiableList(turns);
+    }
+    
+    /**
+     * Get the winner of the game
+     * @return the winner, or null if the game is unfinished
+     */
+    public PlayerColor getWinner() {
+        return winner;
+    }
+    
+    /**
+     * Set the winner of the game
+     * @param winner the winner, or null if the game is unfinished
+     */
+    public void setWinner(PlayerColor winner) {
+        this.winner = winner;
+    }
+    
+    /**
+     * Get the name of a player
+     * @param color the player color
+     * @return the name, or null if not recorded
+     */
+    public String getName(PlayerColor color) {
+        return color == PlayerColor.WHITE ? whiteName : blackName;
+    }
+    
+    /**
+     * Set the name of a player
+     * @param color the player color
+     * @param name the name, without spaces, or null if not recorded
+     */
+    public void setName(PlayerColor color, String name) {
+        if (name != null && (name.isEmpty() || name.matches(".*\\s.*"))) {
+            throw new IllegalArgumentException("Invalid player name: \"" + name + "\"");
+        }
+        if (color == PlayerColor.WHITE) {
+            whiteName = name;
+        } else {
+            blackName = name;
+        }
+    }
+    
+    /**
+     * Write the record as one line
+     * @return the record line
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        if (whiteName != null) {
+            sb.append("W=").append(whiteName).append(' ');
+        }
+        if (blackName != null) {
+            sb.append("B=").append(blackName).append(' ');
+        }
+        for (Turn turn : turns) {
+            sb.append(symbol(turn.player)).append(turn.die1).append(turn.die2).append(':');
+            if (turn.moves.isEmpty()) {
+                sb.append('-');
+            }
+            for (int i = 0; i < turn.moves.size(); i++) {
+                Move move = turn.moves.get(i);
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(move.getFrom()).append('/').append(move.getTo());
+            }
+            sb.append(' ');
+        }
+        sb.append('=').append(winner == null ? '?' : symbol(winner));
+        return sb.toString();
+    }
+    
+    /**
+     * Read a record line written by {@link #format()}
+     * @param line the record line
+     * @return the record
+     * @throws IllegalArgumentException if the line is not a valid record
+     */
+    public static GameRecord parse(String line) {
+        GameRecord record = new GameRecord();
+        String[] tokens = line.trim().split("\\s+");
+        String result = tokens[tokens.length - 1];
+        if (result.length() != 2 || result.charAt(0) != '=') {
+            throw new IllegalArgumentException("Missing result in record: " + result);
+        }
+        record.winner = result.charAt(1) == '?' ? null : player(result.charAt(1));
+        
+        for (int t = 0; t < tokens.length - 1; t++) {
+            String token = tokens[t];
+            if (token.length() > 2 && token.charAt(1) == '=') {
+                record.setName(player(token.charAt(0)), token.substring(2));
+                continue;
+            }
+            if (token.length() < 5 || token.charAt(3) != ':') {
+                throw new IllegalArgumentException("Malformed turn in record: " + token);
+            }
+            PlayerColor player = player(token.charAt(0));
+            int die1 = die(token.charAt(1));
+            int die2 = die(token.charAt(2));
+            List<Move> moves = new ArrayList<>();
+            String body = token.substring(4);
+            if (!body.equals("-")) {
+                for (String move : body.split(",")) {
+                    int slash = move.indexOf('/');
+                    if (slash < 0) {
+                        throw new IllegalArgumentException("Malformed move in record: " + move);
+                    }
+                    try {
+                        moves.add(new Move(Integer.parseInt(move.substring(0, slash)),
+                            Integer.parseInt(move.substring(slash + 1))));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Malformed move in record: " + move, e);
+                    }
+                }
+            }
+            record.addTurn(new Turn(player, die1, die2, moves));
+        }
+        return record;
+    }
+    
+    /**
+     * Get the record symbol of a player
+     * @param color the player color
+     * @return {@code W} or {@code B}
+     */
+    private static char symbol(PlayerColor color) {
+        return color == PlayerColor.WHITE ? 'W' : 'B';
+    }
+    
+    /**
+     * Read a player symbol
+     * @param symbol {@code W} or {@code B}
+     * @return the player color
+     */
+    private static PlayerColor player(char symbol) {
+        if (symbol == 'W') {
+            return PlayerColor.WHITE;
+        }
+        if (symbol == 'B') {
+            return PlayerColor.BLACK;
+        }
+        throw new IllegalArgumentException("Unknown player in record: " + symbol);
+    }
+    
+    /**
+     * Read a die value
+     * @param digit the die digit
+     * @return the die value
+     */
+    private static int die(char digit) {
+        if (digit < '1' || digit > '6') {
+            throw new IllegalArgumentException("Invalid die in record: " + digit);
+        }
+        return digit - '0';
+    }
+}
\ No newline at end of file
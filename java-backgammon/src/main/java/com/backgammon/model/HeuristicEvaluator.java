@@ -0,0 +1,230 @@
+package com.backgammon.model;
+
+import java.util.List;
+
+/**
+ * The AI's heuristic move scoring, expressed as a weighted sum of move features.
+ *
+ * Candidates are encoded into a {@link FeatureMatrix} and scored together with
+ * {@link #evaluateBatch(FeatureMatrix, double[])}, a single pass over one primitive array.
+ */
+public class HeuristicEvaluator {
+    // Feature columns
+    public static final int FROM_BAR = 0;              // Getting off the bar
+    public static final int BAR_ENTRY_ON_OWN_POINT = 1; // Entering on a point we already hold
+    public static final int BAR_ENTRY_HIT = 2;          // Entering by hitting a blot
+    public static final int BEAR_OFF = 3;               // Bearing a checker off
+    public static final int HIT = 4;                    // Hitting an opponent blot
+    public static final int HIT_IN_HOME_BOARD = 5;      // Hitting in the home board bonus
+    public static final int MAKE_POINT = 6;             // Adding to a point we already hold
+    public static final int MAKE_HOME_POINT = 7;        // Making a point in the home board bonus
+    public static final int ESCAPE = 8;                 // Moving out of the opponent's home board
+    public static final int LEAVE_BLOT = 9;             // Share of rolls hitting a blot the move leaves
+    public static final int FEATURE_COUNT = 10;
+    
+    // Feature names, as used in weights files
+    public static final String[] FEATURE_NAMES = {"fromBar", "barEntryOnOwnPoint", "barEntryHit", "bearOff",
+        "hit", "hitInHomeBoard", "makePoint", "makeHomePoint", "escape", "leaveBlot"};
+    
+    private final double[] weights;
+    
+    // Reusable one-row matrix for scoring single moves
+    private final FeatureMatrix single;
+    
+    /**
+     * Create an evaluator with the default contact weights, from {@link HeuristicWeights#getDefault()}
+     */
+    public HeuristicEvaluator() {
+        this(HeuristicWeights.getDefault().forClass(PositionClass.CONTACT));
+    }
+    
+    /**
+     * Create an evaluator with custom weights
+     * @param weights one weight per feature
+     */
+    public HeuristicEvaluator(double[] weights) {
+        if (weights.length != FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + FEATURE_COUNT + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+        this.single = new FeatureMatrix(FEATURE_COUNT);
+    }
+    
+    /**
+     * Create an evaluator with the default weights suited to a class of position
+     * @param positionClass the class of the positions it will score; races and bearoffs
+     *                      use the contact weights, as they are normally handed to the
+     *                      {@link RaceEvaluator}
+     * @return the evaluator
+     */
+    public static HeuristicEvaluator forClass(PositionClass positionClass) {
+        return forClass(positionClass, HeuristicWeights.getDefault());
+    }
+    
+    /**
+     * Create an evaluator with the weights for a class of position from a parameter vector
+     * @param positionClass the class of the positions it will score
+     * @param weights the parameter vector
+     * @return the evaluator
+     */
+    public static HeuristicEvaluator forClass(PositionClass positionClass, HeuristicWeights weights) {
+        return new HeuristicEvaluator(weights.forClass(positionClass));
+    }
+    
+    /**
+     * Encode candidate moves into a feature matrix, one row per move
+     * @param moves the candidate moves
+     * @param board the current board state
+     * @param color the player making the moves
+     * @param matrix the matrix to fill (reset to the number of moves)
+     */
+    public static void encode(List<Move> moves, Board board, PlayerColor color, FeatureMatrix matrix) {
+        matrix.reset(moves.size());
+        for (int row = 0; row < moves.size(); row++) {
+            encode(moves.get(row), board, color, matrix, row);
+        }
+    }
+    
+    /**
+     * Encode one candidate move
+     * @param move the move
+     * @param board the current board state
+     * @param color the player making the move
+     * @param matrix the matrix to write to
+     * @param row the row to write
+     */
+    static void encode(Move move, Board board, PlayerColor color, FeatureMatrix matrix, int row) {
+        int from = move.getFrom();
+        int to = move.getTo();
+        Point destPoint = board.getPoint(to);
+        
+        if (from == Board.BLACK_BAR || from == Board.WHITE_BAR) {
+            matrix.set(row, FROM_BAR, 1);
+            if (destPoint.hasColor(color)) {
+                matrix.set(row, BAR_ENTRY_ON_OWN_POINT, 1);
+            }
+            if (destPoint.hasColor(color.opposite()) && destPoint.getCount() == 1) {
+                matrix.set(row, BAR_ENTRY_HIT, 1);
+            }
+        }
+        
+        if (to == Board.BLACK_HOME || to == Board.WHITE_HOME) {
+            matrix.set(row, BEAR_OFF, 1);
+        }
+        
+        if (destPoint != null && destPoint.hasColor(color.opposite()) && destPoint.getCount() == 1) {
+            matrix.set(row, HIT, 1);
+            if ((color == PlayerColor.WHITE && to >= 0 && to <= 5) ||
+                (color == PlayerColor.BLACK && to >= 18 && to <= 23)) {
+                matrix.set(row, HIT_IN_HOME_BOARD, 1);
+            }
+        }
+        
+        if (destPoint != null && destPoint.hasColor(color)) {
+            matrix.set(row, MAKE_POINT, 1);
+            if ((color == PlayerColor.WHITE && to >= 18 && to <= 23) ||
+                (color == PlayerColor.BLACK && to >= 0 && to <= 5)) {
+                matrix.set(row, MAKE_HOME_POINT, 1);
+            }
+        }
+        
+        if ((color == PlayerColor.WHITE && from >= 0 && from <= 5) ||
+            (color == PlayerColor.BLACK && from >= 18 && from <= 23)) {
+            matrix.set(row, ESCAPE, 1);
+        }
+        
+        Point sourcePoint = board.getPoint(from);
+        boolean breaksPoint = sourcePoint != null && sourcePoint.getCount() == 2;
+        boolean hit = destPoint != null && destPoint.hasColor(color.opposite()) && destPoint.getCount() == 1;
+        boolean landsAlone = destPoint != null && (destPoint.getCount() == 0 || hit);
+        if (breaksPoint || landsAlone) {
+            matrix.set(row, LEAVE_BLOT, exposure(board, color, from, to, breaksPoint, landsAlone, hit));
+        }
+    }
+    
+    /**
+     * Measure the risk of the blots a move leaves: the exact share of the opponent's 36
+     * rolls that hit one of them. The position after the move is described to the
+     * {@link ShotTable} as adjusted masks, so nothing is copied.
+     * @param board the current board state
+     * @param color the player making the move
+     * @param from the source point index
+     * @param to the destination point index
+     * @param breaksPoint whether a blot is left on the source point
+     * @param landsAlone whether the moved checker is a blot on the destination
+     * @param hit whether the move hits
+     * @return the share of rolls that hit, from 0 to 1
+     */
+    private static double exposure(Board board, PlayerColor color, int from, int to, boolean breaksPoint,
+                                   boolean landsAlone, boolean hit) {
+        PlayerColor opponent = color.opposite();
+        int made = board.getMadeMask(color);
+        int shooters = board.getOccupiedMask(opponent);
+        int onBar = board.getBarCount(opponent);
+        if (breaksPoint) {
+            made &= ~(1 << from);
+        }
+        if (to >= 0 && to <= 23 && board.getPoint(to).hasColor(color) && board.getPoint(to).getCount() == 1) {
+            made |= 1 << to;
+        }
+        if (hit) {
+            // The hit checker leaves the point and must enter before anything else moves
+            shooters &= ~(1 << to);
+            onBar++;
+        }
+        
+        long rolls = 0;
+        if (breaksPoint) {
+            rolls |= ShotTable.hittingRolls(from, color, shooters, made, onBar);
+        }
+        if (landsAlone) {
+            rolls |= ShotTable.hittingRolls(to, color, shooters, made, onBar);
+        }
+        return Long.bitCount(rolls) / (double) ShotTable.ROLLS;
+    }
+    
+    /**
+     * Score every row of a feature matrix in one pass
+     * @param matrix the encoded candidates
+     * @param scores receives one score per row (higher is better)
+     */
+    public void evaluateBatch(FeatureMatrix matrix, double[] scores) {
+        double[] values = matrix.getValues();
+        int rows = matrix.getRows();
+        int offset = 0;
+        for (int row = 0; row < rows; row++) {
+            double score = 0;
+            for (int f = 0; f < FEATURE_COUNT; f++) {
+                score += weights[f] * values[offset + f];
+            }
+            scores[row] = score;
+            offset += FEATURE_COUNT;
+        }
+    }
+    
+    /**
+     * Score a single move
+     * @param move the move
+     * @param board the current board state
+     * @param color the player making the move
+     * @return the score (higher is better)
+     */
+    public double score(Move move, Board board, PlayerColor color) {
+        single.reset(1);
+        encode(move, board, color, single, 0);
+        double[] values = single.getValues();
+        double score = 0;
+        for (int f = 0; f < FEATURE_COUNT; f++) {
+            score += weights[f] * values[f];
+        }
+        return score;
+    }
+    
+    /**
+     * Get the weights of this evaluator
+     * @return a copy of the weights
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.backgammon.model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * The parameter vector of the AI's heuristic: one weight per {@link HeuristicEvaluator}
+ * feature for each class of contact position that has its own weights.
+ *
+ * The vector can be flattened for an optimizer ({@link #toVector()}) and kept in a
+ * properties file, one {@code class.feature=weight} line per parameter. The default
+ * weights are read at startup from the file named by {@code -Dbackgammon.weights}, or
+ * the {@code /weights.properties} resource, and fall back to the built-in values.
+ *
+ * The weights score candidate moves, so they decide the AI's play only at a search depth
+ * of one ply. Deeper and timed searches value positions with the {@link PositionEvaluator},
+ * and order their plays with the default weights, so a custom vector does not change
+ * what they choose.
+ */
+public final class HeuristicWeights {
+    // The classes with weights of their own, in vector order; the rest use CONTACT's
+    private static final PositionClass[] CLASSES = {PositionClass.CONTACT, PositionClass.CRASHED,
+        PositionClass.BACKGAME};
+    
+    // Number of parameters in the vector
+    public static final int SIZE = CLASSES.length * HeuristicEvaluator.FEATURE_COUNT;
+    
+    // Built-in weights; the blot weight is per unit of hit probability
+    private static final double[] CONTACT_WEIGHTS = {100, 50, 40, 90, 80, 20, 60, 20, 30, -400};
+    
+    // Weights once the home board has crashed: a hit checker can no longer be contained,
+    // so hitting and home points count for little next to getting the back checkers out
+    private static final double[] CRASHED_WEIGHTS = {100, 50, 40, 90, 40, 0, 60, 0, 60, -600};
+    
+    // Weights for a backgame: the anchors are kept, late shots are hit, and being hit
+    // costs little since it preserves timing
+    private static final double[] BACKGAME_WEIGHTS = {100, 60, 40, 90, 100, 40, 60, 30, -20, -100};
+    
+    // Built-in vector
+    private static final HeuristicWeights BUILT_IN = new HeuristicWeights(
+        concat(CONTACT_WEIGHTS, CRASHED_WEIGHTS, BACKGAME_WEIGHTS));
+    
+    private final double[] vector;
+    
+    /**
+     * Create weights from a flat vector
+     * @param vector {@link #SIZE} weights, class by class in the order of {@link #getClasses()}
+     */
+    public HeuristicWeights(double[] vector) {
+        if (vector.length != SIZE) {
+            throw new IllegalArgumentException("Expected " + SIZE + " weights, got " + vector.length);
+        }
+        this.vector = vector.clone();
+    }
+    
+    /**
+     * Get the built-in weights
+     * @return the weights
+     */
+    public static HeuristicWeights builtIn() {
+        return BUILT_IN;
+    }
+    
+    /**
+     * Get the default weights, loaded on first use
+     * @return the weights from {@code -Dbackgammon.weights} or the {@code /weights.properties}
+     *         resource, or the built-in weights if neither is available
+     */
+    public static HeuristicWeights getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Get the classes that have weights of their own
+     * @return the classes, in vector order
+     */
+    public static PositionClass[] getClasses() {
+        return CLASSES.clone();
+    }
+    
+    /**
+     * Get the weights for a class of position
+     * @param positionClass the class; classes without weights of their own use the contact weights
+     * @return one weight per feature (a copy)
+     */
+    public double[] forClass(PositionClass positionClass) {
+        int offset = 0;
+        for (int c = 0; c < CLASSES.length; c++) {
+            if (CLASSES[c] == positionClass) {
+                offset = c * HeuristicEvaluator.FEATURE_COUNT;
+            }
+        }
+        double[] weights = new double[HeuristicEvaluator.FEATURE_COUNT];
+        System.arraycopy(vector, offset, weights, 0, weights.length);
+        return weights;
+    }
+    
+    /**
+     * Flatten the weights for an optimizer
+     * @return the vector (a copy)
+     */
+    public double[] toVector() {
+        return vector.clone();
+    }
+    
+    /**
+     * Read weights from a properties file. Parameters missing from the file keep their
+     * built-in values, so a file can set just a few.
+     * @param in the properties
+     * @return the weights
+     * @throws IOException if the file cannot be read or a weight is not a number
+     */
+    public static HeuristicWeights read(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        double[] values = BUILT_IN.toVector();
+        for (int i = 0; i < SIZE; i++) {
+            String value = properties.getProperty(name(i));
+            if (value != null) {
+                try {
+                    values[i] = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Weight " + name(i) + " is not a number: " + value, e);
+                }
+            }
+        }
+        return new HeuristicWeights(values);
+    }
+    
+    /**
+     * Write the weights as a properties file
+     * @param path the file
+     * @param comment a comment for the top of the file, or null
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path, String comment) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (comment != null) {
+            sb.append("# ").append(comment).append('\n');
+        }
+        for (int i = 0; i < SIZE; i++) {
+            sb.append(name(i)).append('=').append(vector[i]).append('\n');
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+    
+    /**
+     * Get the name of a parameter in a weights file
+     * @param index the index in the vector
+     * @return the name, such as {@code contact.leaveBlot}
+     */
+    public static String name(int index) {
+        PositionClass positionClass = CLASSES[index / HeuristicEvaluator.FEATURE_COUNT];
+        return positionClass.name().toLowerCase(Locale.ROOT) + "."
+            + HeuristicEvaluator.FEATURE_NAMES[index % HeuristicEvaluator.FEATURE_COUNT];
+    }
+    
+    /**
+     * Load the default weights
+     * @return the weights
+     */
+    private static HeuristicWeights loadDefault() {
+        String path = System.getProperty("backgammon.weights");
+        try (InputStream in = path != null
+                ? new FileInputStream(path)
+                : HeuristicWeights.class.getResourceAsStream("/weights.properties")) {
+            return in == null ? BUILT_IN : read(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return BUILT_IN;
+        }
+    }
+    
+    /**
+     * Join arrays
+     * @param parts the arrays
+     * @return one array holding them all, in order
+     */
+    private static double[] concat(double[]... parts) {
+        double[] all = new double[SIZE];
+        int offset = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, all, offset, part.length);
+            offset += part.length;
+        }
+        return all;
+    }
+    
+    /**
+     * Lazily loaded default weights
+     */
+    private static class DefaultHolder {
+        private static final HeuristicWeights INSTANCE = loadDefault();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The legal moves for one (player, position, remaining dice) state, indexed by source.
+ *
+ * The set is computed once by {@link GameLogic} and reused until the board or the
+ * dice change, which it detects from the position hash and the key of the available
+ * dice. Looking up the destinations from a point is a constant-time array access.
+ */
+public class LegalMoves {
+    // Index of the bar in the per-source table; points use their own index
+    private static final int BAR_SLOT = 24;
+    
+    // The state the moves were generated for
+    private final PlayerColor player;
+    private final long positionHash;
+    private final int diceKey;
+    
+    // All legal moves, in generation order
+    private final List<Move> moves;
+    
+    // Legal destinations for each source slot
+    private final List<List<Integer>> destinations;
+    
+    /**
+     * Index the legal moves of a state
+     * @param player the player to move
+     * @param board the board the moves were generated for
+     * @param dice the dice the moves were generated for
+     * @param moves the legal moves
+     */
+    LegalMoves(PlayerColor player, Board board, Dice dice, List<Move> moves) {
+        this.player = player;
+        this.positionHash = board.positionHash();
+        this.diceKey = dice.getAvailableKey();
+        
+        List<Move> distinct = new ArrayList<>();
+        List<List<Integer>> bySource = new ArrayList<>();
+        for (int i = 0; i <= BAR_SLOT; i++) {
+            bySource.add(new ArrayList<>());
+        }
+        for (Move move : moves) {
+            List<Integer> targets = bySource.get(slot(move.getFrom()));
+            if (!targets.contains(move.getTo())) {
+                targets.add(move.getTo());
+                distinct.add(move);
+            }
+        }
+        for (int i = 0; i <= BAR_SLOT; i++) {
+            bySource.set(i, Collections.unmodifiableList(bySource.get(i)));
+        }
+        
+        this.moves = Collections.unmodifiableList(distinct);
+        this.destinations = bySource;
+    }
+    
+    /**
+     * Check whether these moves are still the legal moves of a state
+     * @param player the player to move
+     * @param board the current board
+     * @param dice the current dice
+     * @return true if the state is the one the moves were generated for
+     */
+    boolean matches(PlayerColor player, Board board, Dice dice) {
+        return this.player == player && positionHash == board.positionHash() && diceKey == dice.getAvailableKey();
+    }
+    
+    /**
+     * Get all legal moves, without duplicates
+     * @return the moves (unmodifiable)
+     */
+    public List<Move> getMoves() {
+        return moves;
+    }
+    
+    /**
+     * Get the legal destinations from a point or the bar
+     * @param from the source point index, or the player's bar index
+     * @return the destinations (unmodifiable, empty if the source has no legal move)
+     */
+    public List<Integer> getDestinations(int from) {
+        int slot = slot(from);
+        return slot < 0 ? Collections.emptyList() : destinations.get(slot);
+    }
+    
+    /**
+     * Check whether a move is legal
+     * @param move the move
+     * @return true if the move is one of the legal moves
+     */
+    public boolean contains(Move move) {
+        return getDestinations(move.getFrom()).contains(move.getTo());
+    }
+    
+    /**
+     * Check whether there is no legal move
+     * @return true if the player cannot move
+     */
+    public boolean isEmpty() {
+        return moves.isEmpty();
+    }
+    
+    /**
+     * Map a source index to its slot in the per-source table
+     * @param from the source point index
+     * @return the slot, or -1 if the index is not a source
+     */
+    private int slot(int from) {
+        if (from >= 0 && from < 24) {
+            return from;
+        }
+        if ((player == PlayerColor.WHITE && from == Board.WHITE_BAR)
+                || (player == PlayerColor.BLACK && from == Board.BLACK_BAR)) {
+            return BAR_SLOT;
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -1,9 +1,23 @@
 package com.backgammon.model;
 
 /**
- * Represents a move from one point to another
+ * Represents a move from one point to another.
+ *
+ * A move can also be packed into an int, for move buffers that are filled without
+ * allocating: the source and destination, each offset to be non-negative, in five bits
+ * apiece. {@link #of(int)} turns a packed move back into a shared, interned instance.
  */
 public class Move {
+    // Offset that makes every point index, bar and home (-2 to 25) non-negative
+    private static final int INDEX_OFFSET = 2;
+    
+    // Bits per index in a packed move
+    private static final int INDEX_BITS = 5;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    
+    // Interned moves, indexed by packed value
+    private static final Move[] INTERNED = createInterned();
+    
     // The index of the source point
     private final int from;
     
@@ -20,6 +34,61 @@ public class Move {
         this.to = to;
     }
     
+    /**
+     * Get the interned move for a source and destination
+     * @param from the source point index
+     * @param to the destination point index
+     * @return the shared instance
+     */
+    public static Move of(int from, int to) {
+        return INTERNED[pack(from, to)];
+    }
+    
+    /**
+     * Get the interned move for a packed move
+     * @param packed the packed move, from {@link #pack(int, int)}
+     * @return the shared instance
+     */
+    public static Move of(int packed) {
+        return INTERNED[packed];
+    }
+    
+    /**
+     * Pack a move into an int
+     * @param from the source point index
+     * @param to the destination point index
+     * @return the packed move
+     */
+    public static int pack(int from, int to) {
+        return (from + INDEX_OFFSET) << INDEX_BITS | (to + INDEX_OFFSET);
+    }
+    
+    /**
+     * Get the source of a packed move
+     * @param packed the packed move
+     * @return the source point index
+     */
+    public static int unpackFrom(int packed) {
+        return (packed >>> INDEX_BITS) - INDEX_OFFSET;
+    }
+    
+    /**
+     * Get the destination of a packed move
+     * @param packed the packed move
+     * @return the destination point index
+     */
+    public static int unpackTo(int packed) {
+        return (packed & INDEX_MASK) - INDEX_OFFSET;
+    }
+    
+    /**
+     * Pack this move into an int
+     * @return the packed move
+     */
+    public int pack() {
+        return pack(from, to);
+    }
+    
     /**
      * Get the source point index
      * @return the source index
@@ -36,6 +105,24 @@ public class Move {
         return to;
     }
     
+    /**
+     * Calculate the die value this move uses
+     * @param playerColor the player making the move
+     * @return the die value needed for the move
+     */
+    public int getDieValue(PlayerColor playerColor) {
+        if (playerColor == PlayerColor.WHITE) {
+            if (from == Board.WHITE_BAR) {
+                return 24 - to;
+            }
+            return to == Board.WHITE_HOME ? from + 1 : from - to;
+        }
+        if (from == Board.BLACK_BAR) {
+            return to + 1;
+        }
+        return to == Board.BLACK_HOME ? 24 - from : to - from;
+    }
+    
     @Override
     public String toString() {
         return "Move from " + from + " to " + to;
@@ -54,4 +141,20 @@ public class Move {
     public int hashCode() {
         return 31 * from + to;
     }
+    
+    /**
+     * Create every move that can be packed
+     * @return the moves, indexed by packed value
+     */
+    private static Move[] createInterned() {
+        int indexes = Board.WHITE_HOME + INDEX_OFFSET + 1;
+        Move[] moves = new Move[pack(Board.WHITE_HOME, Board.WHITE_HOME) + 1];
+        for (int from = 0; from < indexes; from++) {
+            for (int to = 0; to < indexes; to++) {
+                int packed = pack(from - INDEX_OFFSET, to - INDEX_OFFSET);
+                moves[packed] = new Move(from - INDEX_OFFSET, to - INDEX_OFFSET);
+            }
+        }
+        return moves;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.backgammon.model;
+
+import java.util.List;
+
+/**
+ * Generates the legal single moves of a position. Implementations must follow the
+ * rules of {@link MoveValidator} exactly: the same moves, in the same order, without
+ * duplicates.
+ */
+public interface MoveGenerator {
+    /**
+     * Generate all legal single moves for a player
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @return the legal moves
+     */
+    List<Move> generate(PlayerColor playerColor, Board board, Dice dice);
+}
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.backgammon.model;
 
+import com.backgammon.metrics.Metrics;
+import com.backgammon.metrics.MoveGenerationEvent;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,6 +10,9 @@ import java.util.List;
  * Validates and generates possible moves based on the current board state and dice
  */
 public class MoveValidator {
+    // Mask-based generator used for the possible moves
+    private final FastMoveGenerator fastGenerator = new FastMoveGenerator();
+    
     /**
      * Check if a move is valid
      * @param from the source point index
@@ -40,6 +46,10 @@ public class MoveValidator {
         
         // For bar moves
         if (from == Board.WHITE_BAR) {
+            // Only white can enter from white's bar, and only with a checker there
+            if (playerColor != PlayerColor.WHITE || board.getBarCount(PlayerColor.WHITE) == 0) {
+                return false;
+            }
             // White must enter on points 19-24
             if (to < 18 || to > 23) {
                 return false;
@@ -50,6 +60,10 @@ public class MoveValidator {
                 return false;
             }
         } else if (from == Board.BLACK_BAR) {
+            // Only black can enter from black's bar, and only with a checker there
+            if (playerColor != PlayerColor.BLACK || board.getBarCount(PlayerColor.BLACK) == 0) {
+                return false;
+            }
             // Black must enter on points 1-6
             if (to < 0 || to > 5) {
                 return false;
@@ -145,18 +159,86 @@ public class MoveValidator {
      * @return a list of all possible moves
      */
     public List<Move> getPossibleMoves(PlayerColor playerColor, Board board, Dice dice) {
+        int[] packed = new int[FastMoveGenerator.MAX_MOVES];
+        return toMoves(packed, getPossibleMoves(playerColor, board, dice, packed));
+    }
+    
+    /**
+     * Get all possible moves for a player as packed ints ({@link Move#pack(int, int)}),
+     * written into a buffer the caller owns and reuses. Nothing is allocated per move;
+     * {@link Move#of(int)} gives the interned move for each entry.
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @param moves the buffer to write to, at least {@link FastMoveGenerator#MAX_MOVES} long
+     * @return the number of moves written
+     */
+    public int getPossibleMoves(PlayerColor playerColor, Board board, Dice dice, int[] moves) {
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        
+        int count = fastGenerator.generate(playerColor, board, dice, moves);
+        assert toMoves(moves, count).equals(getReferenceMoves(playerColor, board, dice))
+            : "Fast move generator disagrees with the validator on " + board + " " + dice;
+        
+        if (Metrics.ENABLED) {
+            Metrics.MOVE_GENERATION.recordSince(start);
+        }
+        if (event.shouldCommit()) {
+            event.set(board.positionHash(), count, dice.getAvailableMoveCount());
+            event.commit();
+        }
+        return count;
+    }
+    
+    /**
+     * Turn packed moves into a list of interned moves
+     * @param moves the packed moves
+     * @param count the number of moves
+     * @return the moves
+     */
+    private static List<Move> toMoves(int[] moves, int count) {
+        List<Move> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(Move.of(moves[i]));
+        }
+        return list;
+    }
+    
+    /**
+     * Generate all possible moves for a player the slow way, by validating every
+     * (source, die) pair. This is the reference that faster {@link MoveGenerator}s are
+     * checked against.
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @return the legal moves, without duplicates
+     */
+    public List<Move> getReferenceMoves(PlayerColor playerColor, Board board, Dice dice) {
+        return distinct(generatePossibleMoves(playerColor, board, dice));
+    }
+    
+    /**
+     * Generate all possible moves for a player by validating every (source, die) pair.
+     * This is the reference the fast generator is checked against when assertions are on.
+     * @param playerColor the player's color
+     * @param board the current board state
+     * @param dice the current dice
+     * @return a list of all possible moves
+     */
+    private List<Move> generatePossibleMoves(PlayerColor playerColor, Board board, Dice dice) {
         List<Move> possibleMoves = new ArrayList<>();
         
         // If player has checkers on the bar, they must move them first
         if (board.getBarCount(playerColor) > 0) {
             int barIndex = (playerColor == PlayerColor.WHITE) ? Board.WHITE_BAR : Board.BLACK_BAR;
-            int[] entryPoints = (playerColor == PlayerColor.WHITE) 
-                ? new int[]{18, 19, 20, 21, 22, 23} // White enters on points 19-24
-                : new int[]{0, 1, 2, 3, 4, 5}; // Black enters on points 1-6
+            // White enters on points 19-24, black on points 1-6
+            int firstEntry = (playerColor == PlayerColor.WHITE) ? 18 : 0;
             
-            for (int point : entryPoints) {
+            for (int point = firstEntry; point < firstEntry + 6; point++) {
                 if (isValidMove(barIndex, point, playerColor, board, dice)) {
-                    possibleMoves.add(new Move(barIndex, point));
+                    possibleMoves.add(Move.of(barIndex, point));
                 }
             }
             
@@ -164,11 +246,12 @@ public class MoveValidator {
         }
         
         // Get possible moves from each point
+        List<Integer> dieValues = dice.getAvailableValues();
         for (int i = 0; i < 24; i++) {
             Point point = board.getPoint(i);
             if (point != null && point.hasColor(playerColor)) {
                 // For each die value, check if a move is possible
-                for (int dieValue : dice.getAvailableValues()) {
+                for (int dieValue : dieValues) {
                     int to;
                     if (playerColor == PlayerColor.WHITE) {
                         to = i - dieValue;
@@ -187,7 +270,7 @@ public class MoveValidator {
                     // Check if the move is valid
                     if ((to >= 0 && to <= 23) || to == Board.WHITE_HOME || to == Board.BLACK_HOME) {
                         if (isValidMove(i, to, playerColor, board, dice)) {
-                            possibleMoves.add(new Move(i, to));
+                            possibleMoves.add(Move.of(i, to));
                         }
                     }
                 }
@@ -197,6 +280,21 @@ public class MoveValidator {
         return possibleMoves;
     }
     
+    /**
+     * Remove repeated moves, keeping the first occurrence of each
+     * @param moves the moves
+     * @return the distinct moves, in their original order
+     */
+    private static List<Move> distinct(List<Move> moves) {
+        List<Move> distinct = new ArrayList<>();
+        for (Move move : moves) {
+            if (!distinct.contains(move)) {
+                distinct.add(move);
+            }
+        }
+        return distinct;
+    }
+    
     /**
      * Calculate the die value needed for a move
      * @param from the source point index
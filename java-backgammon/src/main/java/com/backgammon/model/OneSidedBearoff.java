@@ -0,0 +1,403 @@
+package com.backgammon.model;
+
+/**
+ * One-sided bearoff database: the expected number of rolls a player needs to bear off
+ * all checkers from a home board position, ignoring the opponent.
+ *
+ * Positions are the checker counts on the points at distance 1..{@code points} from
+ * home, with at most {@code checkers} checkers in total. Each position is ranked into
+ * a dense index and the table is filled by dynamic programming in order of increasing
+ * pip count, following the same bear-off rule as {@link MoveValidator}: a checker can
+ * only be borne off with the exact die.
+ */
+public class OneSidedBearoff {
+    // Probability of each of the 21 distinct rolls, indexed as [die1 - 1][die2 - 1] with die1 <= die2
+    static final double[][] ROLL_PROBABILITY = createRollProbabilities();
+    
+    // The number of home board points covered
+    private final int points;
+    
+    // The maximum number of checkers covered
+    private final int checkers;
+    
+    // Binomial coefficients used for ranking positions
+    private final int[][] binomial;
+    
+    // Expected number of rolls to bear off, indexed by position rank
+    private final double[] expectedRolls;
+    
+    /**
+     * Build a database
+     * @param points the number of home board points covered (at most 6)
+     * @param checkers the maximum number of checkers covered
+     */
+    public OneSidedBearoff(int points, int checkers) {
+        if (points < 1 || points > 6 || checkers < 1) {
+            throw new IllegalArgumentException("Unsupported bearoff size " + points + "x" + checkers);
+        }
+        this.points = points;
+        this.checkers = checkers;
+        this.binomial = createBinomials(points + checkers);
+        this.expectedRolls = new double[binomial[points + checkers][points]];
+        build();
+    }
+    
+    /**
+     * Get the database for the full home board, built on first use
+     * @return the 6-point, 15-checker database
+     */
+    public static OneSidedBearoff getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Get the number of positions in this database
+     * @return the position count
+     */
+    public int size() {
+        return expectedRolls.length;
+    }
+    
+    /**
+     * Get the number of home board points covered
+     * @return the point count
+     */
+    public int getPoints() {
+        return points;
+    }
+    
+    /**
+     * Get the maximum number of checkers covered
+     * @return the checker count
+     */
+    public int getCheckers() {
+        return checkers;
+    }
+    
+    /**
+     * Get the expected number of rolls to bear off a position
+     * @param counts the checker counts at distance 1..points (index 0 is the point nearest home)
+     * @return the expected number of rolls
+     */
+    public double getExpectedRolls(int[] counts) {
+        return expectedRolls[rank(counts)];
+    }
+    
+    /**
+     * Get the expected number of rolls for a player to bear off on a board
+     * @param board the board
+     * @param color the player
+     * @return the expected number of rolls, or -1 if the position is not covered
+     */
+    public double getExpectedRolls(Board board, PlayerColor color) {
+        int[] counts = toCounts(board, color);
+        return counts == null ? -1 : getExpectedRolls(counts);
+    }
+    
+    /**
+     * Extract a player's home board counts from a board
+     * @param board the board
+     * @param color the player
+     * @return the counts at distance 1..points, or null if the position is not covered
+     */
+    int[] toCounts(Board board, PlayerColor color) {
+        return toCounts(board, color, points, checkers);
+    }
+    
+    /**
+     * Extract a player's home board counts from a board
+     * @param board the board
+     * @param color the player
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @return the counts at distance 1..points, or null if the position is not covered
+     */
+    static int[] toCounts(Board board, PlayerColor color, int points, int checkers) {
+        if (board.getBarCount(color) > 0) {
+            return null;
+        }
+        
+        int[] counts = new int[points];
+        int total = 0;
+        int mask = board.getOccupiedMask(color);
+        while (mask != 0) {
+            int index = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int distance = Board.pipDistance(color, index);
+            if (distance > points) {
+                return null;
+            }
+            int count = board.getPoint(index).getCount();
+            counts[distance - 1] = count;
+            total += count;
+        }
+        return total <= checkers ? counts : null;
+    }
+    
+    /**
+     * Rank a position into a dense index.
+     * The position is written as a bit string with, for each point, one bit per
+     * checker followed by a separator; the rank is that of the separator positions
+     * in the combinatorial number system.
+     * @param counts the checker counts at distance 1..points
+     * @return the index
+     */
+    int rank(int[] counts) {
+        return rank(counts, binomial);
+    }
+    
+    /**
+     * Rank a position into a dense index, as {@link #rank(int[])} does
+     * @param counts the checker counts at distance 1..points
+     * @param binomial binomial coefficients up to C(points + checkers, points)
+     * @return the index
+     */
+    static int rank(int[] counts, int[][] binomial) {
+        int rank = 0;
+        int position = 0;
+        for (int i = 0; i < counts.length; i++) {
+            position += counts[i];
+            rank += binomial[position][i + 1];
+            position++;
+        }
+        return rank;
+    }
+    
+    /**
+     * Fill in the table in order of increasing pip count
+     */
+    private void build() {
+        // Enumerate every position and bucket the ranks by pip count
+        int maxPips = checkers * points;
+        int[][] byPips = new int[maxPips + 1][];
+        int[] fill = new int[maxPips + 1];
+        int[][] all = new int[expectedRolls.length][];
+        enumerate(new int[points], 0, 0, all);
+        for (int[] counts : all) {
+            fill[pips(counts)]++;
+        }
+        for (int p = 0; p <= maxPips; p++) {
+            byPips[p] = new int[fill[p]];
+            fill[p] = 0;
+        }
+        for (int r = 0; r < all.length; r++) {
+            int p = pips(all[r]);
+            byPips[p][fill[p]++] = r;
+        }
+        
+        int[] work = new int[points];
+        for (int p = 1; p <= maxPips; p++) {
+            for (int r : byPips[p]) {
+                System.arraycopy(all[r], 0, work, 0, points);
+                expectedRolls[r] = solve(work, r);
+            }
+        }
+    }
+    
+    /**
+     * Calculate the expected rolls for one position whose successors are already known
+     * @param counts the position (restored before returning)
+     * @param rank the rank of the position
+     * @return the expected number of rolls
+     */
+    private double solve(int[] counts, int rank) {
+        double total = 1.0;
+        double stuck = 0.0;
+        for (int d1 = 1; d1 <= 6; d1++) {
+            for (int d2 = d1; d2 <= 6; d2++) {
+                double best = bestAfterRoll(counts, d1, d2);
+                if (Double.isNaN(best)) {
+                    // No legal move: the position repeats
+                    stuck += ROLL_PROBABILITY[d1 - 1][d2 - 1];
+                } else {
+                    total += ROLL_PROBABILITY[d1 - 1][d2 - 1] * best;
+                }
+            }
+        }
+        return total / (1.0 - stuck);
+    }
+    
+    /**
+     * Find the lowest expected rolls reachable with a roll
+     * @param counts the position (restored before returning)
+     * @param d1 the first die
+     * @param d2 the second die
+     * @return the best value, or NaN if no checker can move
+     */
+    private double bestAfterRoll(int[] counts, int d1, int d2) {
+        if (d1 == d2) {
+            return bestDoubles(counts, d1, 4, points, true);
+        }
+        double first = bestOrdered(counts, d1, d2);
+        double second = bestOrdered(counts, d2, d1);
+        if (Double.isNaN(first)) {
+            return second;
+        }
+        if (Double.isNaN(second)) {
+            return first;
+        }
+        return Math.min(first, second);
+    }
+    
+    /**
+     * Find the best play using one die and then the other
+     * @param counts the position (restored before returning)
+     * @param first the die played first
+     * @param second the die played second
+     * @return the best value, or NaN if the first die cannot be played
+     */
+    private double bestOrdered(int[] counts, int first, int second) {
+        double best = Double.NaN;
+        for (int from = 1; from <= points; from++) {
+            if (counts[from - 1] == 0 || from < first) {
+                continue;
+            }
+            moveChecker(counts, from, first, 1);
+            double value = bestSingle(counts, second);
+            moveChecker(counts, from, first, -1);
+            if (Double.isNaN(best) || value < best) {
+                best = value;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Find the best play of a single die, or the position itself if it cannot be played
+     * @param counts the position (restored before returning)
+     * @param die the die
+     * @return the best value
+     */
+    private double bestSingle(int[] counts, int die) {
+        double best = Double.NaN;
+        for (int from = die; from <= points; from++) {
+            if (counts[from - 1] == 0) {
+                continue;
+            }
+            moveChecker(counts, from, die, 1);
+            double value = expectedRolls[rank(counts)];
+            moveChecker(counts, from, die, -1);
+            if (Double.isNaN(best) || value < best) {
+                best = value;
+            }
+        }
+        return Double.isNaN(best) ? expectedRolls[rank(counts)] : best;
+    }
+    
+    /**
+     * Find the best play of the remaining moves of a double. Moves are generated in
+     * non-increasing order of source point, which reaches every distinct result once.
+     * @param counts the position (restored before returning)
+     * @param die the die value
+     * @param remaining the number of moves left
+     * @param maxFrom the highest source point allowed
+     * @param first whether no move has been made yet
+     * @return the best value, or NaN if no move at all was possible
+     */
+    private double bestDoubles(int[] counts, int die, int remaining, int maxFrom, boolean first) {
+        if (remaining == 0) {
+            return expectedRolls[rank(counts)];
+        }
+        double best = Double.NaN;
+        for (int from = maxFrom; from >= die; from--) {
+            if (counts[from - 1] == 0) {
+                continue;
+            }
+            moveChecker(counts, from, die, 1);
+            double value = bestDoubles(counts, die, remaining - 1, from, false);
+            moveChecker(counts, from, die, -1);
+            if (Double.isNaN(best) || value < best) {
+                best = value;
+            }
+        }
+        if (Double.isNaN(best) && !first) {
+            // No further move possible: the play ends here
+            return expectedRolls[rank(counts)];
+        }
+        return best;
+    }
+    
+    /**
+     * Move (or undo moving) a checker by a die, bearing it off when it lands exactly home
+     * @param counts the position
+     * @param from the source distance
+     * @param die the die value
+     * @param direction 1 to make the move, -1 to undo it
+     */
+    private static void moveChecker(int[] counts, int from, int die, int direction) {
+        counts[from - 1] -= direction;
+        if (from > die) {
+            counts[from - die - 1] += direction;
+        }
+    }
+    
+    /**
+     * Recursively enumerate all positions
+     * @param counts the partial position
+     * @param point the next point to fill
+     * @param used the checkers placed so far
+     * @param out the positions, indexed by rank
+     */
+    private void enumerate(int[] counts, int point, int used, int[][] out) {
+        if (point == points) {
+            out[rank(counts)] = counts.clone();
+            return;
+        }
+        for (int c = 0; c + used <= checkers; c++) {
+            counts[point] = c;
+            enumerate(counts, point + 1, used + c, out);
+        }
+        counts[point] = 0;
+    }
+    
+    /**
+     * Calculate the pip count of a position
+     * @param counts the checker counts at distance 1..points
+     * @return the pip count
+     */
+    private static int pips(int[] counts) {
+        int pips = 0;
+        for (int i = 0; i < counts.length; i++) {
+            pips += counts[i] * (i + 1);
+        }
+        return pips;
+    }
+    
+    /**
+     * Build Pascal's triangle
+     * @param n the largest n needed
+     * @return the binomial coefficients C(n, k)
+     */
+    static int[][] createBinomials(int n) {
+        int[][] c = new int[n + 1][];
+        for (int i = 0; i <= n; i++) {
+            c[i] = new int[i + 2];
+            c[i][0] = 1;
+            for (int k = 1; k <= i; k++) {
+                c[i][k] = c[i - 1][k - 1] + (k < c[i - 1].length ? c[i - 1][k] : 0);
+            }
+        }
+        return c;
+    }
+    
+    /**
+     * Build the probabilities of the 21 distinct rolls
+     * @return the probabilities, indexed as [die1 - 1][die2 - 1] with die1 <= die2
+     */
+    private static double[][] createRollProbabilities() {
+        double[][] p = new double[6][6];
+        for (int d1 = 1; d1 <= 6; d1++) {
+            for (int d2 = d1; d2 <= 6; d2++) {
+                p[d1 - 1][d2 - 1] = d1 == d2 ? 1.0 / 36.0 : 2.0 / 36.0;
+            }
+        }
+        return p;
+    }
+    
+    /**
+     * Lazily built default database
+     */
+    private static class DefaultHolder {
+        private static final OneSidedBearoff INSTANCE = new OneSidedBearoff(6, Board.CHECKERS_PER_PLAYER);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.backgammon.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Precomputed best moves for the first plies of the game.
+ *
+ * Entries map a position hash and the unused dice to the checker move to make, so a
+ * play of several checkers is stored as one entry per step. The table is kept as
+ * parallel primitive arrays sorted by key and searched with a binary search. The
+ * default book is read lazily from the {@code /openingbook.bin} resource, or from the
+ * file named by {@code -Dbackgammon.openingBook}; it is generated offline by
+ * {@code com.backgammon.analysis.OpeningBookGenerator}.
+ */
+public class OpeningBook {
+    // File format marker and version
+    private static final int MAGIC = 0x42474F42; // "BGOB"
+    private static final int VERSION = 1;
+    
+    // An empty book, used when no book is available
+    private static final OpeningBook EMPTY = new OpeningBook(new long[0], new int[0], new short[0]);
+    
+    // Sorted keys and the packed moves they map to
+    private final long[] hashes;
+    private final int[] diceKeys;
+    private final short[] moves;
+    
+    /**
+     * Create a book from sorted entries
+     * @param hashes the position hashes, sorted together with the dice keys
+     * @param diceKeys the unused dice keys
+     * @param moves the packed moves
+     */
+    private OpeningBook(long[] hashes, int[] diceKeys, short[] moves) {
+        this.hashes = hashes;
+        this.diceKeys = diceKeys;
+        this.moves = moves;
+    }
+    
+    /**
+     * Get the default book, loaded on first use
+     * @return the default book, empty if none is available
+     */
+    public static OpeningBook getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Look up the book move for a position
+     * @param board the current board state
+     * @param dice the current dice
+     * @return the book move, or null if the position is not in the book
+     */
+    public Move lookup(Board board, Dice dice) {
+        if (hashes.length == 0) {
+            return null;
+        }
+        
+        long hash = board.positionHash();
+        int diceKey = dice.getAvailableKey();
+        int low = 0;
+        int high = hashes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(hashes[mid], diceKeys[mid], hash, diceKey);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return unpackMove(moves[mid]);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Get the number of entries in the book
+     * @return the entry count
+     */
+    public int size() {
+        return hashes.length;
+    }
+    
+    /**
+     * Write a book
+     * @param entries the moves keyed by {@link #key(long, int)}
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public static void write(Map<Key, Move> entries, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(entries.size());
+        for (Map.Entry<Key, Move> entry : new TreeMap<>(entries).entrySet()) {
+            data.writeLong(entry.getKey().hash);
+            data.writeInt(entry.getKey().diceKey);
+            data.writeShort(packMove(entry.getValue()));
+        }
+        data.flush();
+    }
+    
+    /**
+     * Read a book
+     * @param in the stream to read from
+     * @return the book
+     * @throws IOException if reading fails or the data is not a book
+     */
+    public static OpeningBook read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not an opening book");
+        }
+        
+        int size = data.readInt();
+        long[] hashes = new long[size];
+        int[] diceKeys = new int[size];
+        short[] moves = new short[size];
+        for (int i = 0; i < size; i++) {
+            hashes[i] = data.readLong();
+            diceKeys[i] = data.readInt();
+            moves[i] = data.readShort();
+            if (i > 0 && compare(hashes[i - 1], diceKeys[i - 1], hashes[i], diceKeys[i]) >= 0) {
+                throw new IOException("Opening book entries are not sorted");
+            }
+        }
+        return new OpeningBook(hashes, diceKeys, moves);
+    }
+    
+    /**
+     * Create the key for a book entry
+     * @param hash the position hash
+     * @param diceKey the unused dice key
+     * @return the key
+     */
+    public static Key key(long hash, int diceKey) {
+        return new Key(hash, diceKey);
+    }
+    
+    /**
+     * Compare two keys
+     */
+    private static int compare(long hash1, int diceKey1, long hash2, int diceKey2) {
+        int cmp = Long.compare(hash1, hash2);
+        return cmp != 0 ? cmp : Integer.compare(diceKey1, diceKey2);
+    }
+    
+    /**
+     * Pack a move into a short, one byte per point index
+     */
+    private static short packMove(Move move) {
+        return (short) (((move.getFrom() & 0xFF) << 8) | (move.getTo() & 0xFF));
+    }
+    
+    /**
+     * Unpack a move packed by {@link #packMove(Move)}
+     */
+    private static Move unpackMove(short packed) {
+        return new Move((byte) (packed >> 8), (byte) packed);
+    }
+    
+    /**
+     * Load the default book
+     * @return the book, or an empty book if none is available
+     */
+    private static OpeningBook loadDefault() {
+        String path = System.getProperty("backgammon.openingBook");
+        try (InputStream in = path != null
+                ? new FileInputStream(path)
+                : OpeningBook.class.getResourceAsStream("/openingbook.bin")) {
+            return in == null ? EMPTY : read(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return EMPTY;
+        }
+    }
+    
+    /**
+     * Key of a book entry: a position hash and the unused dice
+     */
+    public static final class Key implements Comparable<Key> {
+        private final long hash;
+        private final int diceKey;
+        
+        private Key(long hash, int diceKey) {
+            this.hash = hash;
+            this.diceKey = diceKey;
+        }
+        
+        @Override
+        public int compareTo(Key other) {
+            return compare(hash, diceKey, other.hash, other.diceKey);
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return hash == other.hash && diceKey == other.diceKey;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(hash) + diceKey;
+        }
+    }
+    
+    /**
+     * Lazily loaded default book
+     */
+    private static class DefaultHolder {
+        private static final OpeningBook INSTANCE = loadDefault();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A complete play for one roll: the sequence of checker moves and the position it leads to
+ */
+public class Play {
+    // The moves, in the order they are made
+    private final List<Move> moves;
+    
+    // The position after all the moves
+    private final Board result;
+    
+    /**
+     * Create a new play
+     * @param moves the moves, in the order they are made
+     * @param result the position after all the moves
+     */
+    public Play(List<Move> moves, Board result) {
+        this.moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        this.result = result;
+    }
+    
+    /**
+     * Get the moves of this play
+     * @return the moves, in the order they are made
+     */
+    public List<Move> getMoves() {
+        return moves;
+    }
+    
+    /**
+     * Get the first move of this play
+     * @return the first move, or null if the play has no moves
+     */
+    public Move getFirstMove() {
+        return moves.isEmpty() ? null : moves.get(0);
+    }
+    
+    /**
+     * Get the position after this play
+     * @return the resulting board; callers must not modify it
+     */
+    public Board getResult() {
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return "Play " + moves;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates every distinct complete play for a roll.
+ *
+ * A play keeps moving checkers, one legal move at a time as defined by
+ * {@link MoveValidator}, until the dice are used up or no legal move is left. Plays
+ * that lead to the same position are only returned once.
+ *
+ * Single moves are generated packed into one reusable buffer per move of the play, so
+ * the search allocates no {@link Move}s of its own.
+ */
+public class PlayGenerator {
+    // Most moves in one play, from a double
+    private static final int MAX_PLAY_MOVES = 4;
+    
+    private final MoveValidator moveValidator;
+    
+    /**
+     * Create a new play generator
+     */
+    public PlayGenerator() {
+        this.moveValidator = new MoveValidator();
+    }
+    
+    /**
+     * Generate all distinct plays for a player
+     * @param playerColor the player's color
+     * @param board the current board state (not modified)
+     * @param dice the current dice (not modified)
+     * @return the plays; a single empty play if no move is possible
+     */
+    public List<Play> generate(PlayerColor playerColor, Board board, Dice dice) {
+        List<Play> plays = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        Set<Long> results = new HashSet<>();
+        int[][] buffers = new int[MAX_PLAY_MOVES + 1][FastMoveGenerator.MAX_MOVES];
+        extend(playerColor, board, dice, new ArrayList<>(), buffers, visited, results, plays);
+        return plays;
+    }
+    
+    /**
+     * Extend a partial play by every legal next move
+     * @param playerColor the player's color
+     * @param board the position after the partial play
+     * @param dice the dice left after the partial play
+     * @param moves the moves of the partial play
+     * @param buffers the packed move buffers, one per move of the play
+     * @param visited the (position, dice) states already expanded
+     * @param results the hashes of the positions already returned
+     * @param plays the list to add finished plays to
+     */
+    private void extend(PlayerColor playerColor, Board board, Dice dice, List<Move> moves, int[][] buffers,
+                        Set<Long> visited, Set<Long> results, List<Play> plays) {
+        int[] possibleMoves = buffers[moves.size()];
+        int count = dice.hasAvailableMoves()
+            ? moveValidator.getPossibleMoves(playerColor, board, dice, possibleMoves)
+            : 0;
+        
+        if (count == 0) {
+            if (results.add(board.positionHash())) {
+                plays.add(new Play(moves, board));
+            }
+            return;
+        }
+        
+        for (int i = 0; i < count; i++) {
+            Move move = Move.of(possibleMoves[i]);
+            Dice nextDice = dice.copy();
+            nextDice.useDie(move.getDieValue(playerColor));
+            Board nextBoard = board.clone();
+            nextBoard.applyMove(move, playerColor);
+            
+            // Different move orders often reach the same intermediate state
+            long state = nextBoard.positionHash() ^ (nextDice.getAvailableKey() * 0x9E3779B97F4A7C15L);
+            if (!visited.add(state)) {
+                continue;
+            }
+            
+            moves.add(move);
+            extend(playerColor, nextBoard, nextDice, moves, buffers, visited, results, plays);
+            moves.remove(moves.size() - 1);
+        }
+    }
+}
\ No newline at end of file
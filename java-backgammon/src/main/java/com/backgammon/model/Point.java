@@ -13,6 +13,9 @@ public class Point {
     // The number of checkers on this point
     private int count;
     
+    // The board this point belongs to, notified of every change (null if detached)
+    Board board;
+    
     /**
      * Create a new point with the given index
      * @param index the index of the point on the board (1-24)
@@ -54,6 +57,9 @@ public class Point {
      *                                  to a point with multiple checkers
      */
     public void addChecker(PlayerColor color) {
+        PlayerColor previousColor = this.color;
+        int previousCount = this.count;
+        
         // If the point is empty, set the color
         if (count == 0) {
             this.color = color;
@@ -72,6 +78,7 @@ public class Point {
         }
         
         this.count++;
+        notifyBoard(previousColor, previousCount);
     }
     
     /**
@@ -84,6 +91,7 @@ public class Point {
             throw new IllegalStateException("Cannot remove checker from empty point " + index);
         }
         
+        int previousCount = count;
         count--;
         
         PlayerColor removedColor = color;
@@ -93,6 +101,7 @@ public class Point {
             color = null;
         }
         
+        notifyBoard(removedColor, previousCount);
         return removedColor;
     }
     
@@ -100,8 +109,23 @@ public class Point {
      * Clear all checkers from this point
      */
     public void clear() {
+        PlayerColor previousColor = color;
+        int previousCount = count;
+        
         count = 0;
         color = null;
+        notifyBoard(previousColor, previousCount);
+    }
+    
+    /**
+     * Tell the owning board that this point has changed
+     * @param previousColor the color before the change
+     * @param previousCount the count before the change
+     */
+    private void notifyBoard(PlayerColor previousColor, int previousCount) {
+        if (board != null) {
+            board.pointChanged(index, previousColor, previousCount, color, count);
+        }
     }
     
     /**
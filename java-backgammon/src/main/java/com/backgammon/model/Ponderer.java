@@ -0,0 +1,231 @@
+package com.backgammon.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thinks on the opponent's time: while a human considers their play, the AI's replies
+ * are searched in the background so they are ready the moment the human ends the turn.
+ *
+ * The human's likeliest plays are the ones that score best for the human with the
+ * {@link PositionEvaluator}. For each, the AI's best play is searched for all 21 rolls
+ * and stored by (resulting position, roll), which is exactly what the AI looks up when
+ * its turn starts. Entries stay valid whatever the human does, since they are keyed by
+ * position; {@link #ponder} just moves the work on to the position the human has reached.
+ *
+ * The work runs on one low-priority daemon thread. Any new call to {@link #ponder} or
+ * {@link #stop} abandons the search in progress at once, and after each search the
+ * thread sleeps long enough to keep its share of a core to {@code -Dbackgammon.ponderCpu}
+ * (0.5 by default), so the user interface stays smooth.
+ */
+public class Ponderer implements AutoCloseable {
+    // Number of the human's plays whose replies are searched, likeliest first
+    private static final int LIKELY_PLAYS = 3;
+    
+    // Effectively no deadline; the search is stopped through stop() instead
+    private static final long NO_DEADLINE_NANOS = TimeUnit.HOURS.toNanos(1);
+    
+    private final PlayerColor aiColor;
+    private final ExpectiminimaxSearch search;
+    private final PlayGenerator playGenerator;
+    private final PositionEvaluator evaluator;
+    private final double cpuShare;
+    
+    // The 21 distinct rolls
+    private final Dice[] rolls;
+    
+    // Searched replies, by position and roll
+    private final Map<Long, Play> replies;
+    
+    // Incremented by every request, so stale work notices it has been superseded
+    private final AtomicLong generation;
+    private final ExecutorService executor;
+    
+    // The request being worked on, and the thread working on it, woken early when stopped
+    private volatile long current;
+    private volatile Thread worker;
+    
+    /**
+     * Create a ponderer for an AI
+     * @param aiColor the AI's color
+     * @param plies the AI's search depth, so the pondered plays are the ones it would choose
+     */
+    public Ponderer(PlayerColor aiColor, int plies) {
+        this.aiColor = aiColor;
+        this.search = new ExpectiminimaxSearch(plies);
+        this.playGenerator = new PlayGenerator();
+        this.evaluator = new PositionEvaluator();
+        this.cpuShare = Math.max(0.05, Math.min(1.0, Double.parseDouble(
+            System.getProperty("backgammon.ponderCpu", "0.5"))));
+        this.rolls = new Dice[21];
+        int i = 0;
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = die1; die2 <= 6; die2++) {
+                rolls[i] = new Dice();
+                rolls[i].setValues(die1, die2);
+                i++;
+            }
+        }
+        this.replies = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
+        this.search.setStopCondition(() -> generation.get() != current);
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ponderer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+    
+    /**
+     * Start thinking about the AI's replies to the human's position, abandoning any
+     * earlier request
+     * @param board the current position (copied)
+     * @param dice the human's dice, with the moves made so far used (copied)
+     */
+    public void ponder(Board board, Dice dice) {
+        long request = stop();
+        Board position = board.clone();
+        Dice remaining = dice.copy();
+        executor.execute(() -> run(request, position, remaining));
+    }
+    
+    /**
+     * Abandon the work in progress, keeping the replies found so far
+     * @return the generation of the abandoned work's successor
+     */
+    public long stop() {
+        long request = generation.incrementAndGet();
+        LockSupport.unpark(worker);
+        return request;
+    }
+    
+    /**
+     * Forget every reply, for a new game
+     */
+    public void clear() {
+        stop();
+        replies.clear();
+    }
+    
+    /**
+     * Look up the pondered reply for a roll
+     * @param board the position the AI is to play from
+     * @param dice the AI's dice
+     * @return the best play found in advance, or null if it was not pondered
+     */
+    public Play lookup(Board board, Dice dice) {
+        return replies.get(key(board, dice));
+    }
+    
+    /**
+     * Get the depth the replies are searched to
+     * @return the search depth in plies
+     */
+    public int getPlies() {
+        return search.getPlies();
+    }
+    
+    /**
+     * Get the number of replies found
+     * @return the reply count
+     */
+    public int size() {
+        return replies.size();
+    }
+    
+    /**
+     * Search the replies to the likeliest plays until done or superseded
+     * @param request the generation of this request
+     * @param board the human's position
+     * @param dice the human's remaining dice
+     */
+    private void run(long request, Board board, Dice dice) {
+        current = request;
+        worker = Thread.currentThread();
+        PlayerColor human = aiColor.opposite();
+        for (Board result : likelyResults(board, human, dice)) {
+            if (result.hasWon(human)) {
+                continue;
+            }
+            for (Dice roll : rolls) {
+                long key = key(result, roll);
+                if (replies.containsKey(key)) {
+                    continue;
+                }
+                if (generation.get() != request) {
+                    return;
+                }
+                
+                long start = System.nanoTime();
+                Play play = search.searchUntil(result, aiColor, roll, start + NO_DEADLINE_NANOS);
+                if (generation.get() != request) {
+                    return;
+                }
+                if (search.getCompletedDepth() == search.getPlies()) {
+                    replies.put(key, play);
+                }
+                
+                // Keep to the CPU share by resting in proportion to the time worked
+                long rest = (long) ((System.nanoTime() - start) * (1.0 - cpuShare) / cpuShare);
+                long wake = System.nanoTime() + rest;
+                while (generation.get() == request && wake - System.nanoTime() > 0) {
+                    LockSupport.parkNanos(wake - System.nanoTime());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Find the positions the human's likeliest plays lead to
+     * @param board the human's position
+     * @param human the human's color
+     * @param dice the human's remaining dice
+     * @return the resulting positions, likeliest first
+     */
+    private List<Board> likelyResults(Board board, PlayerColor human, Dice dice) {
+        List<Play> plays = playGenerator.generate(human, board, dice);
+        double[] values = new double[plays.size()];
+        for (int i = 0; i < plays.size(); i++) {
+            // The AI is on roll after the play, so the human's value is the negation
+            values[i] = -evaluator.evaluate(plays.get(i).getResult(), aiColor);
+        }
+        
+        List<Board> results = new ArrayList<>(LIKELY_PLAYS);
+        boolean[] taken = new boolean[plays.size()];
+        while (results.size() < Math.min(LIKELY_PLAYS, plays.size())) {
+            int best = -1;
+            for (int i = 0; i < plays.size(); i++) {
+                if (!taken[i] && (best < 0 || values[i] > values[best])) {
+                    best = i;
+                }
+            }
+            taken[best] = true;
+            results.add(plays.get(best).getResult());
+        }
+        return results;
+    }
+    
+    /**
+     * Key a reply by position and roll
+     * @param board the position the AI plays from
+     * @param dice the AI's dice
+     * @return the key
+     */
+    private static long key(Board board, Dice dice) {
+        return board.positionHash() ^ (dice.getAvailableKey() * 0x9E3779B97F4A7C15L);
+    }
+    
+    @Override
+    public void close() {
+        stop();
+        executor.shutdownNow();
+    }
+}
\ No newline at end of file
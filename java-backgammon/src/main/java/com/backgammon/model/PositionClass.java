@@ -0,0 +1,22 @@
+package com.backgammon.model;
+
+/**
+ * Enum representing the kinds of position that are evaluated differently, as found by
+ * {@link PositionClassifier}
+ */
+public enum PositionClass {
+    // The checkers can still hit each other
+    CONTACT,
+    
+    // The checkers are past each other
+    RACE,
+    
+    // Contact, but the side's home board has collapsed onto its lowest points
+    CRASHED,
+    
+    // Every checker of both sides is in its home board
+    BEAROFF,
+    
+    // Contact, with the side far behind in the race and holding points in the opponent's home board
+    BACKGAME
+}
\ No newline at end of file
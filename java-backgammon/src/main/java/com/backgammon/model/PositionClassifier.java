@@ -0,0 +1,82 @@
+package com.backgammon.model;
+
+/**
+ * Sorts positions into the {@link PositionClass}es that are evaluated differently.
+ *
+ * Classification only reads the board's incrementally maintained masks and counts, so
+ * it is cheap enough to run on every position an evaluator sees. Crashed and backgame
+ * positions are judged from one side's point of view: the side that is about to move.
+ */
+public final class PositionClassifier {
+    // Home board masks (bit i set for point index i)
+    private static final int WHITE_HOME_BOARD = 0x00003F;
+    private static final int BLACK_HOME_BOARD = 0xFC0000;
+    
+    // The two deepest points of each home board, where a crashed board piles up
+    private static final int WHITE_DEEP_POINTS = 0x000003;
+    private static final int BLACK_DEEP_POINTS = 0xC00000;
+    
+    // A board is crashed once at most this share of the checkers is still in play
+    private static final double CRASHED_IN_PLAY = 0.4;
+    
+    // A backgame holds this many points in the opponent's home board, this far behind
+    private static final int BACKGAME_ANCHORS = 2;
+    private static final int BACKGAME_DEFICIT = 50;
+    
+    private PositionClassifier() {
+    }
+    
+    /**
+     * Classify a position
+     * @param board the board
+     * @param color the side whose position is judged
+     * @return the class of the position
+     */
+    public static PositionClass classify(Board board, PlayerColor color) {
+        if (!board.hasContact()) {
+            return board.allCheckersInHomeboard(PlayerColor.WHITE) && board.allCheckersInHomeboard(PlayerColor.BLACK)
+                ? PositionClass.BEAROFF
+                : PositionClass.RACE;
+        }
+        if (isCrashed(board, color)) {
+            return PositionClass.CRASHED;
+        }
+        if (isBackgame(board, color)) {
+            return PositionClass.BACKGAME;
+        }
+        return PositionClass.CONTACT;
+    }
+    
+    /**
+     * Check whether a side's home board has crashed: almost all its checkers are borne
+     * off or piled on its two deepest points, so it can no longer keep a position
+     * @param board the board
+     * @param color the side
+     * @return true if the side has few checkers left in play
+     */
+    static boolean isCrashed(Board board, PlayerColor color) {
+        int deep = board.getOccupiedMask(color) & (color == PlayerColor.WHITE ? WHITE_DEEP_POINTS : BLACK_DEEP_POINTS);
+        int outOfPlay = board.getHomeCount(color);
+        while (deep != 0) {
+            int index = Integer.numberOfTrailingZeros(deep);
+            deep &= deep - 1;
+            outOfPlay += board.getPoint(index).getCount();
+        }
+        int inPlay = board.getCheckersPerPlayer() - outOfPlay;
+        return inPlay <= CRASHED_IN_PLAY * board.getCheckersPerPlayer();
+    }
+    
+    /**
+     * Check whether a side is playing a backgame: holding points in the opponent's home
+     * board while far behind in the race
+     * @param board the board
+     * @param color the side
+     * @return true if the side is playing a backgame
+     */
+    static boolean isBackgame(Board board, PlayerColor color) {
+        int opponentHome = color == PlayerColor.WHITE ? BLACK_HOME_BOARD : WHITE_HOME_BOARD;
+        int anchors = Integer.bitCount(board.getMadeMask(color) & opponentHome);
+        return anchors >= BACKGAME_ANCHORS
+            && board.getPipCount(color) - board.getPipCount(color.opposite()) >= BACKGAME_DEFICIT;
+    }
+}
\ No newline at end of file
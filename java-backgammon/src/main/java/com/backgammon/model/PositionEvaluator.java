@@ -0,0 +1,105 @@
+package com.backgammon.model;
+
+/**
+ * Static evaluation of a position for search, bounded to the equity range [-1, 1].
+ *
+ * Each position is routed by its {@link PositionClass}. Races and bearoffs are handed
+ * to the {@link RaceEvaluator}. Contact positions are treated as a race in which each
+ * side's pip count is adjusted for its structure: blots and checkers on the bar cost
+ * pips, made points (especially in the home board) save them. A crashed home board no
+ * longer earns its bonus, and a backgame's anchors in the opponent's home board are
+ * worth pips of their own. The bounds are what lets the search prune chance nodes.
+ */
+public class PositionEvaluator {
+    // Lowest and highest possible evaluation
+    public static final double MIN_EQUITY = -1.0;
+    public static final double MAX_EQUITY = 1.0;
+    
+    // Version of the values this evaluator gives; bump it whenever they change, so that
+    // stored evaluations searched with the old values are thrown away
+    public static final int VERSION = 1;
+    
+    // Pip adjustments for contact positions
+    private static final double BLOT_PENALTY = 4.0;
+    private static final double BAR_PENALTY = 8.0;
+    private static final double MADE_POINT_BONUS = 1.0;
+    private static final double HOME_POINT_BONUS = 3.0;
+    private static final double ANCHOR_BONUS = 6.0;
+    
+    // Home board masks (bit i set for point index i)
+    private static final int WHITE_HOME_BOARD = 0x00003F;
+    private static final int BLACK_HOME_BOARD = 0xFC0000;
+    
+    // Race evaluator; creating it builds the bearoff database once per JVM, so that a
+    // search never stalls on it the first time it reaches a race
+    private final RaceEvaluator raceEvaluator;
+    
+    /**
+     * Create a position evaluator
+     */
+    public PositionEvaluator() {
+        this.raceEvaluator = new RaceEvaluator();
+    }
+    
+    /**
+     * Identify the values the evaluator gives: its version and the two-sided bearoff
+     * database its race evaluator reads, if any
+     * @return a value that changes whenever the evaluations may
+     */
+    public static long fingerprint() {
+        TwoSidedBearoff database = TwoSidedBearoff.getDefault();
+        int bearoff = database == null ? 0 : database.getPoints() << 8 | database.getCheckers();
+        return (long) VERSION << 32 | bearoff;
+    }
+    
+    /**
+     * Evaluate a position
+     * @param board the board
+     * @param onRoll the player about to roll
+     * @return the equity for the player on roll, from {@link #MIN_EQUITY} to {@link #MAX_EQUITY}
+     */
+    public double evaluate(Board board, PlayerColor onRoll) {
+        if (board.hasWon(onRoll)) {
+            return MAX_EQUITY;
+        }
+        if (board.hasWon(onRoll.opposite())) {
+            return MIN_EQUITY;
+        }
+        
+        PositionClass positionClass = PositionClassifier.classify(board, onRoll);
+        if (positionClass == PositionClass.RACE || positionClass == PositionClass.BEAROFF) {
+            return raceEvaluator.evaluate(board, onRoll);
+        }
+        
+        double rolls = adjustedPipCount(board, onRoll) / RaceEvaluator.PIPS_PER_ROLL;
+        double opponentRolls = adjustedPipCount(board, onRoll.opposite()) / RaceEvaluator.PIPS_PER_ROLL;
+        return 2.0 * RaceEvaluator.winProbability(rolls, opponentRolls) - 1.0;
+    }
+    
+    /**
+     * Calculate a player's pip count adjusted for the structure of their position
+     * @param board the board
+     * @param color the player
+     * @return the adjusted pip count (at least one pip)
+     */
+    private static double adjustedPipCount(Board board, PlayerColor color) {
+        int made = board.getMadeMask(color);
+        int blots = board.getOccupiedMask(color) & ~made;
+        int homeBoard = color == PlayerColor.WHITE ? WHITE_HOME_BOARD : BLACK_HOME_BOARD;
+        
+        double pips = board.getPipCount(color)
+            + BLOT_PENALTY * Integer.bitCount(blots)
+            + BAR_PENALTY * board.getBarCount(color)
+            - MADE_POINT_BONUS * Integer.bitCount(made);
+        
+        // Each side's structure is judged by its own class
+        if (!PositionClassifier.isCrashed(board, color)) {
+            pips -= HOME_POINT_BONUS * Integer.bitCount(made & homeBoard);
+        }
+        if (PositionClassifier.isBackgame(board, color)) {
+            int opponentHome = color == PlayerColor.WHITE ? BLACK_HOME_BOARD : WHITE_HOME_BOARD;
+            pips -= ANCHOR_BONUS * Integer.bitCount(made & opponentHome);
+        }
+        return Math.max(1.0, pips);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.backgammon.model;
+
+import java.util.List;
+
+/**
+ * Evaluator for pure races, where the two sides can no longer hit each other.
+ *
+ * Each side is measured by its effective pip count: the raw pip count plus an
+ * estimate of the pips that will be wasted bearing off. Once all of a side's
+ * checkers are home, the one-sided bearoff database gives the exact expected number
+ * of rolls instead. The two counts are turned into a winning chance with a normal
+ * approximation of the number of rolls each side still needs. Once both sides are in a
+ * position covered by the two-sided bearoff database, its exact chance is used.
+ */
+public class RaceEvaluator {
+    // Average number of pips moved per roll
+    public static final double PIPS_PER_ROLL = 49.0 / 6.0;
+    
+    // Feature columns used by the batch API
+    public static final int EFFECTIVE_PIPS = 0;          // Effective pip count of the player on roll
+    public static final int OPPONENT_EFFECTIVE_PIPS = 1; // Effective pip count of the opponent
+    public static final int CROSSOVERS = 2;              // Crossovers left for the player who just moved
+    public static final int EXACT_WIN = 3;               // Exact winning chance of the player on roll, or -1
+    public static final int FEATURE_COUNT = 4;
+    
+    // Variance of the number of rolls needed, per roll (squared coefficient of variation of a roll)
+    private static final double ROLL_VARIANCE = 0.28;
+    
+    // Bearoff database used once all checkers are home (null to always estimate)
+    private final OneSidedBearoff bearoff;
+    
+    // Exact chances used once both sides are covered (null for none)
+    private final TwoSidedBearoff twoSided;
+    
+    /**
+     * Create a race evaluator backed by the default bearoff databases
+     */
+    public RaceEvaluator() {
+        this(OneSidedBearoff.getDefault(), TwoSidedBearoff.getDefault());
+    }
+    
+    /**
+     * Create a race evaluator without exact two-sided chances
+     * @param bearoff the bearoff database, or null to always estimate wastage
+     */
+    public RaceEvaluator(OneSidedBearoff bearoff) {
+        this(bearoff, null);
+    }
+    
+    /**
+     * Create a race evaluator
+     * @param bearoff the bearoff database, or null to always estimate wastage
+     * @param twoSided the two-sided bearoff database, or null to always estimate
+     */
+    public RaceEvaluator(OneSidedBearoff bearoff, TwoSidedBearoff twoSided) {
+        this.bearoff = bearoff;
+        this.twoSided = twoSided;
+    }
+    
+    /**
+     * Evaluate a race position
+     * @param board the board
+     * @param onRoll the player about to roll
+     * @return the cubeless equity for the player on roll, from -1 to 1
+     */
+    public double evaluate(Board board, PlayerColor onRoll) {
+        return 2.0 * winProbability(board, onRoll) - 1.0;
+    }
+    
+    /**
+     * Encode candidate race positions into a feature matrix, one row per position
+     * @param positions the positions, each with the same player about to roll
+     * @param onRoll the player about to roll
+     * @param matrix the matrix to fill (reset to the number of positions)
+     */
+    public void encode(List<Board> positions, PlayerColor onRoll, FeatureMatrix matrix) {
+        matrix.reset(positions.size());
+        for (int row = 0; row < positions.size(); row++) {
+            Board board = positions.get(row);
+            matrix.set(row, EFFECTIVE_PIPS, board.hasWon(onRoll) ? 0 : effectivePipCount(board, onRoll));
+            matrix.set(row, OPPONENT_EFFECTIVE_PIPS,
+                board.hasWon(onRoll.opposite()) ? 0 : effectivePipCount(board, onRoll.opposite()));
+            matrix.set(row, CROSSOVERS, crossovers(board, onRoll.opposite()));
+            matrix.set(row, EXACT_WIN, twoSided == null ? -1 : twoSided.getWinProbability(board, onRoll));
+        }
+    }
+    
+    /**
+     * Evaluate every row of an encoded feature matrix in one pass
+     * @param matrix the encoded positions
+     * @param equities receives the cubeless equity of each position for the player on roll
+     */
+    public void evaluateBatch(FeatureMatrix matrix, double[] equities) {
+        double[] values = matrix.getValues();
+        int rows = matrix.getRows();
+        int columns = matrix.getColumns();
+        for (int row = 0, offset = 0; row < rows; row++, offset += columns) {
+            double pips = values[offset + EFFECTIVE_PIPS];
+            double opponentPips = values[offset + OPPONENT_EFFECTIVE_PIPS];
+            double probability;
+            if (values[offset + EXACT_WIN] >= 0) {
+                probability = values[offset + EXACT_WIN];
+            } else if (pips == 0) {
+                probability = 1.0;
+            } else if (opponentPips == 0) {
+                probability = 0.0;
+            } else {
+                probability = winProbability(pips / PIPS_PER_ROLL, opponentPips / PIPS_PER_ROLL);
+            }
+            equities[row] = 2.0 * probability - 1.0;
+        }
+    }
+    
+    /**
+     * Estimate the chance that the player on roll wins the race, exactly once both
+     * sides are covered by the two-sided bearoff database
+     * @param board the board
+     * @param onRoll the player about to roll
+     * @return the winning probability
+     */
+    public double winProbability(Board board, PlayerColor onRoll) {
+        if (board.hasWon(onRoll)) {
+            return 1.0;
+        }
+        if (board.hasWon(onRoll.opposite())) {
+            return 0.0;
+        }
+        if (twoSided != null) {
+            double exact = twoSided.getWinProbability(board, onRoll);
+            if (exact >= 0) {
+                return exact;
+            }
+        }
+        
+        double rolls = effectivePipCount(board, onRoll) / PIPS_PER_ROLL;
+        double opponentRolls = effectivePipCount(board, onRoll.opposite()) / PIPS_PER_ROLL;
+        return winProbability(rolls, opponentRolls);
+    }
+    
+    /**
+     * Estimate the chance of winning a race from the rolls each side needs
+     * @param rolls the expected rolls the player on roll needs
+     * @param opponentRolls the expected rolls the opponent needs
+     * @return the winning probability of the player on roll
+     */
+    static double winProbability(double rolls, double opponentRolls) {
+        // Finishing in the same number of rolls wins for the player on roll
+        double lead = opponentRolls - rolls + 0.5;
+        double deviation = Math.sqrt(ROLL_VARIANCE * (rolls + opponentRolls) + 0.25);
+        return normalCdf(lead / deviation);
+    }
+    
+    /**
+     * Calculate a player's effective pip count
+     * @param board the board
+     * @param color the player
+     * @return the expected rolls to bear off times the average roll when known,
+     *         otherwise the pip count plus the estimated wastage
+     */
+    public double effectivePipCount(Board board, PlayerColor color) {
+        if (bearoff != null) {
+            double rolls = bearoff.getExpectedRolls(board, color);
+            if (rolls >= 0) {
+                return rolls * PIPS_PER_ROLL;
+            }
+        }
+        return board.getPipCount(color) + wastage(board, color);
+    }
+    
+    /**
+     * Estimate the pips a player will waste bearing off: checkers stacked deep in the
+     * home board waste more of each roll than checkers spread over the higher points
+     * @param board the board
+     * @param color the player
+     * @return the estimated wastage in pips
+     */
+    public double wastage(Board board, PlayerColor color) {
+        double wastage = 5.0;
+        int occupiedHomePoints = 0;
+        for (int distance = 1; distance <= 6; distance++) {
+            int index = color == PlayerColor.WHITE ? distance - 1 : 24 - distance;
+            Point point = board.getPoint(index);
+            if (!point.hasColor(color)) {
+                continue;
+            }
+            occupiedHomePoints++;
+            if (distance <= 3) {
+                wastage += point.getCount() * (4 - distance) * 0.5;
+            }
+            if (point.getCount() > 3) {
+                wastage += (point.getCount() - 3) * 0.5;
+            }
+        }
+        
+        // Gaps in the home board waste rolls that cannot be played exactly
+        wastage += (6 - occupiedHomePoints) * 0.5;
+        return wastage;
+    }
+    
+    /**
+     * Count the quadrant crossings a player's checkers still have to make to get home
+     * @param board the board
+     * @param color the player
+     * @return the number of crossovers
+     */
+    public int crossovers(Board board, PlayerColor color) {
+        int crossovers = board.getBarCount(color) * 4;
+        int mask = board.getOccupiedMask(color);
+        while (mask != 0) {
+            int index = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int quadrant = (Board.pipDistance(color, index) - 1) / 6;
+            crossovers += quadrant * board.getPoint(index).getCount();
+        }
+        return crossovers;
+    }
+    
+    /**
+     * Standard normal cumulative distribution function
+     * @param z the argument
+     * @return the probability that a standard normal variable is below z
+     */
+    static double normalCdf(double z) {
+        // Abramowitz and Stegun 7.1.26
+        double t = 1.0 / (1.0 + 0.3275911 * Math.abs(z) / Math.sqrt(2.0));
+        double poly = t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+            + t * (-1.453152027 + t * 1.061405429))));
+        double erf = 1.0 - poly * Math.exp(-z * z / 2.0);
+        return z >= 0 ? 0.5 * (1.0 + erf) : 0.5 * (1.0 - erf);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.backgammon.model;
+
+import java.util.Random;
+
+/**
+ * Monte Carlo rollouts: plays a position out many times with the AI on both sides.
+ *
+ * Trial {@code i} rolls its dice from a generator seeded with {@code seed + i}, so
+ * rollouts of different candidate positions with the same seed see the same dice
+ * (common random numbers), which makes their comparison much less noisy.
+ */
+public class Rollout {
+    // Safety limit on the length of a single trial
+    private static final int MAX_TURNS = 1000;
+    
+    // Whether to stop a trial at the first pure race and score it with the race evaluator
+    private final boolean truncateAtRace;
+    
+    // Used for truncated trials, created on first use
+    private RaceEvaluator raceEvaluator;
+    
+    /**
+     * Create a rollout that plays every trial to the end
+     */
+    public Rollout() {
+        this(false);
+    }
+    
+    /**
+     * Create a rollout
+     * @param truncateAtRace whether to score trials with the race evaluator once contact is broken
+     */
+    public Rollout(boolean truncateAtRace) {
+        this.truncateAtRace = truncateAtRace;
+    }
+    
+    /**
+     * Roll out a position
+     * @param board the position (not modified)
+     * @param onRoll the player about to roll
+     * @param trials the number of games to play
+     * @param seed the seed of the first trial
+     * @return the accumulated results for the player on roll
+     */
+    public RolloutResult rollout(Board board, PlayerColor onRoll, int trials, long seed) {
+        RolloutResult result = new RolloutResult();
+        for (int i = 0; i < trials; i++) {
+            result.addTrial(playTrial(board, onRoll, seed + i));
+        }
+        return result;
+    }
+    
+    /**
+     * Play one trial
+     * @param board the starting position (not modified)
+     * @param onRoll the player about to roll
+     * @param seed the seed for the dice
+     * @return the outcome for the player on roll: 1 for a win, -1 for a loss,
+     *         or the race evaluator's equity if the trial was truncated
+     */
+    public double playTrial(Board board, PlayerColor onRoll, long seed) {
+        GameLogic game = new GameLogic(board.clone(), onRoll, new Dice(new Random(seed)));
+        AI white = new AI(PlayerColor.WHITE);
+        AI black = new AI(PlayerColor.BLACK);
+        
+        for (int turn = 0; turn < MAX_TURNS && game.getGameState() == GameState.PLAYING; turn++) {
+            PlayerColor player = game.getCurrentPlayer();
+            
+            if (truncateAtRace && !game.getBoard().hasContact()) {
+                if (raceEvaluator == null) {
+                    raceEvaluator = new RaceEvaluator();
+                }
+                double equity = raceEvaluator.evaluate(game.getBoard(), player);
+                return player == onRoll ? equity : -equity;
+            }
+            
+            playTurn(game, player == PlayerColor.WHITE ? white : black);
+        }
+        
+        if (game.getWinner() == null) {
+            return 0.0;
+        }
+        return game.getWinner() == onRoll ? 1.0 : -1.0;
+    }
+    
+    /**
+     * Roll and play the current player's turn with the AI
+     * @param game the game
+     * @param ai the AI for the current player
+     */
+    static void playTurn(GameLogic game, AI ai) {
+        PlayerColor player = game.getCurrentPlayer();
+        game.rollDice();
+        
+        while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player) {
+            Move move = ai.getBestMove(game.getBoard(), game.getDice());
+            if (move == null || !game.makeMove(move)) {
+                game.endTurn();
+                break;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.backgammon.model;
+
+/**
+ * Accumulated statistics of rollout trials, from the point of view of the player on roll.
+ * Partial results of the same rollout can be merged.
+ */
+public class RolloutResult {
+    // Number of trials played
+    private long trials;
+    
+    // Number of trials won by the player on roll
+    private long wins;
+    
+    // Sum and sum of squares of the trial equities, for the mean and its standard error
+    private double equitySum;
+    private double equitySumOfSquares;
+    
+    /**
+     * Create an empty result
+     */
+    public RolloutResult() {
+    }
+    
+    /**
+     * Create a result from previously accumulated statistics
+     * @param trials the number of trials
+     * @param wins the number of wins
+     * @param equitySum the sum of the trial equities
+     * @param equitySumOfSquares the sum of the squared trial equities
+     */
+    public RolloutResult(long trials, long wins, double equitySum, double equitySumOfSquares) {
+        this.trials = trials;
+        this.wins = wins;
+        this.equitySum = equitySum;
+        this.equitySumOfSquares = equitySumOfSquares;
+    }
+    
+    /**
+     * Add the outcome of one trial
+     * @param equity the equity of the trial for the player on roll, from -1 to 1
+     */
+    public void addTrial(double equity) {
+        trials++;
+        if (equity > 0) {
+            wins++;
+        }
+        equitySum += equity;
+        equitySumOfSquares += equity * equity;
+    }
+    
+    /**
+     * Merge another partial result into this one
+     * @param other the other result
+     */
+    public void merge(RolloutResult other) {
+        trials += other.trials;
+        wins += other.wins;
+        equitySum += other.equitySum;
+        equitySumOfSquares += other.equitySumOfSquares;
+    }
+    
+    /**
+     * Get the number of trials
+     * @return the trial count
+     */
+    public long getTrials() {
+        return trials;
+    }
+    
+    /**
+     * Get the number of trials won by the player on roll
+     * @return the win count
+     */
+    public long getWins() {
+        return wins;
+    }
+    
+    /**
+     * Get the sum of the trial equities
+     * @return the sum
+     */
+    public double getEquitySum() {
+        return equitySum;
+    }
+    
+    /**
+     * Get the sum of the squared trial equities
+     * @return the sum of squares
+     */
+    public double getEquitySumOfSquares() {
+        return equitySumOfSquares;
+    }
+    
+    /**
+     * Get the mean equity for the player on roll
+     * @return the mean equity, or 0 if no trials were played
+     */
+    public double getEquity() {
+        return trials == 0 ? 0.0 : equitySum / trials;
+    }
+    
+    /**
+     * Get the standard error of the mean equity
+     * @return the standard error, or 0 with fewer than two trials
+     */
+    public double getStandardError() {
+        if (trials < 2) {
+            return 0.0;
+        }
+        double mean = getEquity();
+        double variance = (equitySumOfSquares - trials * mean * mean) / (trials - 1);
+        return Math.sqrt(Math.max(0.0, variance) / trials);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("equity=%.4f se=%.4f trials=%d wins=%d",
+            getEquity(), getStandardError(), trials, wins);
+    }
+}
\ No newline at end of file
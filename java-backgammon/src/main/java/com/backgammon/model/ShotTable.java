@@ -0,0 +1,263 @@
+package com.backgammon.model;
+
+/**
+ * Counts the exact shots at a blot: how many of the 36 rolls let the opponent hit it.
+ *
+ * For every roll a table lists the distances it can hit at and, for a distance reached
+ * with more than one die, the intermediate distances the hitting checker lands on, which
+ * must not be points made by the blot's owner. Counting the shots at a blot then takes
+ * two masks relative to the blot, the opponent's checkers and the blocks by distance,
+ * and one pass over the table, with no move generation.
+ *
+ * Rolls are ordered, so a non-double counts twice. When the opponent has checkers on the
+ * bar they must enter first, so the rolls are worked out one by one instead: a single
+ * checker on the bar uses one die to enter and leaves the other die, or the rest of a
+ * double, free to hit from anywhere, including from its entry point; with more checkers
+ * on the bar fewer moves are left over, and with two against a non-double only an
+ * entering checker can hit.
+ */
+public final class ShotTable {
+    // Number of rolls, counting 1-2 and 2-1 separately
+    public static final int ROLLS = 36;
+    
+    // All 36 rolls as a mask
+    private static final long ALL_ROLLS = (1L << ROLLS) - 1;
+    
+    // Distance of each way to hit, and the intermediate distances it must find open,
+    // indexed as [roll][path] with roll = 6 * (die1 - 1) + (die2 - 1)
+    private static final int[][] PATH_DISTANCE = new int[ROLLS][];
+    private static final int[][] PATH_OPEN = new int[ROLLS][];
+    
+    static {
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = 1; die2 <= 6; die2++) {
+                int roll = 6 * (die1 - 1) + (die2 - 1);
+                if (die1 == die2) {
+                    // A double hits at up to four times the die, landing on every multiple below
+                    int paths = Math.min(4, 24 / die1);
+                    PATH_DISTANCE[roll] = new int[paths];
+                    PATH_OPEN[roll] = new int[paths];
+                    int open = 0;
+                    for (int k = 1; k <= paths; k++) {
+                        PATH_DISTANCE[roll][k - 1] = k * die1;
+                        PATH_OPEN[roll][k - 1] = open;
+                        open |= 1 << (k * die1);
+                    }
+                } else {
+                    // Either die directly, or both with the first move landing a die short
+                    PATH_DISTANCE[roll] = new int[] {die1, die2, die1 + die2, die1 + die2};
+                    PATH_OPEN[roll] = new int[] {0, 0, 1 << die2, 1 << die1};
+                }
+            }
+        }
+    }
+    
+    private ShotTable() {
+    }
+    
+    /**
+     * Count the rolls that hit a blot
+     * @param board the board
+     * @param pointIndex the point holding the blot
+     * @return the number of rolls out of {@link #ROLLS} that hit it, or 0 if the point
+     *         does not hold a blot
+     */
+    public static int countShots(Board board, int pointIndex) {
+        return Long.bitCount(hittingRolls(board, pointIndex));
+    }
+    
+    /**
+     * Count the rolls that hit at least one blot of a player
+     * @param board the board
+     * @param color the player whose blots are counted
+     * @return the number of rolls out of {@link #ROLLS} that hit one or more of them
+     */
+    public static int countShots(Board board, PlayerColor color) {
+        int blots = board.getOccupiedMask(color) & ~board.getMadeMask(color);
+        long rolls = 0;
+        while (blots != 0 && rolls != ALL_ROLLS) {
+            int pointIndex = Integer.numberOfTrailingZeros(blots);
+            blots &= blots - 1;
+            rolls |= hittingRolls(board, pointIndex);
+        }
+        return Long.bitCount(rolls);
+    }
+    
+    /**
+     * Find the rolls that hit a blot
+     * @param board the board
+     * @param pointIndex the point holding the blot
+     * @return bit r set for each roll r, numbered as in the table, that hits it
+     */
+    public static long hittingRolls(Board board, int pointIndex) {
+        Point point = board.getPoint(pointIndex);
+        if (point == null || point.getCount() != 1) {
+            return 0L;
+        }
+        PlayerColor owner = point.getColor();
+        PlayerColor hitter = owner.opposite();
+        return hittingRolls(pointIndex, owner, board.getOccupiedMask(hitter), board.getMadeMask(owner),
+            board.getBarCount(hitter));
+    }
+    
+    /**
+     * Find the rolls that hit a blot, given the board as masks. This lets a caller ask
+     * about the position after a move without making it.
+     * @param pointIndex the point holding the blot
+     * @param owner the blot's owner
+     * @param hitterOccupied the points the opponent occupies
+     * @param ownerMade the points the owner has made
+     * @param hitterOnBar the number of the opponent's checkers on the bar
+     * @return bit r set for each roll r, numbered as in the table, that hits it
+     */
+    public static long hittingRolls(int pointIndex, PlayerColor owner, int hitterOccupied, int ownerMade,
+                                    int hitterOnBar) {
+        PlayerColor hitter = owner.opposite();
+        
+        // Masks by distance from the blot, in the direction the hitter comes from
+        int shooters;
+        int blocked;
+        int barDistance;
+        if (hitter == PlayerColor.WHITE) {
+            // White moves towards index 0, so it shoots from the higher points
+            shooters = hitterOccupied >>> pointIndex;
+            blocked = ownerMade >>> pointIndex;
+            barDistance = 24 - pointIndex;
+        } else {
+            // Black moves towards index 23, so it shoots from the lower points
+            shooters = Integer.reverse(hitterOccupied) >>> (31 - pointIndex);
+            blocked = Integer.reverse(ownerMade) >>> (31 - pointIndex);
+            barDistance = pointIndex + 1;
+        }
+        if (hitterOnBar > 0) {
+            return hittingRollsFromBar(barDistance, Math.min(hitterOnBar, 4), shooters, blocked,
+                entryBlocks(hitter, ownerMade));
+        }
+        
+        long rolls = 0;
+        for (int roll = 0; roll < ROLLS; roll++) {
+            int[] distances = PATH_DISTANCE[roll];
+            int[] open = PATH_OPEN[roll];
+            for (int path = 0; path < distances.length; path++) {
+                if ((shooters & (1 << distances[path])) != 0 && (blocked & open[path]) == 0) {
+                    rolls |= 1L << roll;
+                    break;
+                }
+            }
+        }
+        return rolls;
+    }
+    
+    /**
+     * Find the rolls that hit a blot while the opponent has checkers to enter
+     * @param barDistance the distance from the bar to the blot
+     * @param onBar the number of checkers on the bar, at most four
+     * @param shooters the opponent's checkers on the board, by distance from the blot
+     * @param blocked the owner's made points, by distance from the blot
+     * @param entryBlocked bit d set when the owner has made the point a die of d enters on
+     * @return bit r set for each roll r, numbered as in the table, that hits it
+     */
+    private static long hittingRollsFromBar(int barDistance, int onBar, int shooters, int blocked,
+                                            int entryBlocked) {
+        long rolls = 0;
+        for (int die1 = 1; die1 <= 6; die1++) {
+            for (int die2 = 1; die2 <= 6; die2++) {
+                boolean hits;
+                if (die1 == die2) {
+                    hits = doubleHitsFromBar(die1, barDistance, onBar, shooters, blocked, entryBlocked);
+                } else if (onBar > 1) {
+                    // Both dice enter, so only an entering checker can hit
+                    hits = barDistance == die1 || barDistance == die2;
+                } else {
+                    // One die enters and the other is free, in either order
+                    hits = entersThenHits(die1, die2, barDistance, shooters, entryBlocked)
+                        || entersThenHits(die2, die1, barDistance, shooters, entryBlocked);
+                }
+                if (hits) {
+                    rolls |= 1L << (6 * (die1 - 1) + (die2 - 1));
+                }
+            }
+        }
+        return rolls;
+    }
+    
+    /**
+     * Check whether a non-double hits when its first die enters the only checker on the bar
+     * @param enter the die that enters
+     * @param other the die left to play
+     * @param barDistance the distance from the bar to the blot
+     * @param shooters the opponent's checkers on the board, by distance from the blot
+     * @param entryBlocked bit d set when a die of d cannot enter
+     * @return true if the roll hits
+     */
+    private static boolean entersThenHits(int enter, int other, int barDistance, int shooters, int entryBlocked) {
+        if ((entryBlocked & (1 << enter)) != 0) {
+            return false;
+        }
+        if (barDistance == enter) {
+            return true;
+        }
+        
+        // The entered checker joins the shooters when it lands short of the blot
+        int entered = barDistance - enter;
+        if (entered > 0) {
+            shooters |= 1 << entered;
+        }
+        return (shooters & (1 << other)) != 0;
+    }
+    
+    /**
+     * Check whether a double hits after entering every checker on the bar
+     * @param die the value of the double
+     * @param barDistance the distance from the bar to the blot
+     * @param onBar the number of checkers on the bar, at most four
+     * @param shooters the opponent's checkers on the board, by distance from the blot
+     * @param blocked the owner's made points, by distance from the blot
+     * @param entryBlocked bit d set when a die of d cannot enter
+     * @return true if the roll hits
+     */
+    private static boolean doubleHitsFromBar(int die, int barDistance, int onBar, int shooters, int blocked,
+                                             int entryBlocked) {
+        if ((entryBlocked & (1 << die)) != 0) {
+            return false;
+        }
+        int free = 4 - onBar;
+        
+        // An entered checker goes on with the free moves, landing on every multiple
+        for (int k = 1; k <= free + 1 && k * die <= barDistance; k++) {
+            if (k * die == barDistance) {
+                return true;
+            }
+            if (k > 1 && (blocked & (1 << (barDistance - k * die))) != 0) {
+                break;
+            }
+        }
+        
+        // Checkers already on the board hit with the free moves alone
+        int[] distances = PATH_DISTANCE[7 * (die - 1)];
+        int[] open = PATH_OPEN[7 * (die - 1)];
+        for (int path = 0; path < Math.min(free, distances.length); path++) {
+            if ((shooters & (1 << distances[path])) != 0 && (blocked & open[path]) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Find the entry points the owner has made
+     * @param hitter the player entering
+     * @param ownerMade the points the owner has made
+     * @return bit d set when a die of d cannot enter
+     */
+    private static int entryBlocks(PlayerColor hitter, int ownerMade) {
+        int blocks = 0;
+        for (int die = 1; die <= 6; die++) {
+            int entry = hitter == PlayerColor.WHITE ? 24 - die : die - 1;
+            if ((ownerMade & (1 << entry)) != 0) {
+                blocks |= 1 << die;
+            }
+        }
+        return blocks;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.backgammon.model;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Two-sided bearoff database: the exact cubeless chance that the player on roll wins
+ * once both players have all their remaining checkers in their home boards, read from
+ * a memory-mapped file.
+ *
+ * Each side is ranked as in {@link OneSidedBearoff}, by its checker counts on the points
+ * at distance 1..{@code points} with at most {@code checkers} checkers, and a position is
+ * the pair (side on roll, other side), so a lookup is two ranks and one read from the
+ * mapping. Probabilities are stored in 16-bit fixed point as fractions of {@link #ONE}.
+ *
+ * Files are written by {@code com.backgammon.analysis.TwoSidedBearoffGenerator}. The
+ * default database is opened from the file named by {@code -Dbackgammon.bearoffDb}.
+ */
+public class TwoSidedBearoff implements AutoCloseable {
+    // Largest database shape: the whole home board and a full set of checkers
+    public static final int MAX_POINTS = 6;
+    public static final int MAX_CHECKERS = Board.CHECKERS_PER_PLAYER;
+    
+    // Fixed-point value of a certain win
+    public static final int ONE = 0xFFFF;
+    
+    // File format marker and version
+    private static final long MAGIC = 0x4247424541524F46L; // "BGBEAROF"
+    private static final int VERSION = 1;
+    
+    // Header layout: magic, version, points, checkers
+    static final int HEADER_SIZE = 24;
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_POINTS = 12;
+    private static final int HEADER_CHECKERS = 16;
+    
+    // Binomial coefficients for ranking sides of every supported shape
+    private static final int[][] BINOMIAL = OneSidedBearoff.createBinomials(MAX_POINTS + MAX_CHECKERS);
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int points;
+    private final int checkers;
+    private final int sideCount;
+    
+    /**
+     * Open a database file
+     * @param path the file
+     * @throws IOException if the file cannot be read or is not a complete database
+     */
+    public TwoSidedBearoff(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.capacity() < HEADER_SIZE || header.getLong(0) != MAGIC
+                    || header.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException(path + " is not a bearoff database");
+            }
+            this.points = header.getInt(HEADER_POINTS);
+            this.checkers = header.getInt(HEADER_CHECKERS);
+            if (!fits(points, checkers)) {
+                throw new IOException(path + " has an unsupported size " + points + "x" + checkers);
+            }
+            this.sideCount = sideCount(points, checkers);
+            long size = fileSize(points, checkers);
+            if (channel.size() != size) {
+                throw new IOException(path + " is " + channel.size() + " bytes, expected " + size);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Write a database file
+     * @param path the file
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @param table the fixed-point win probability of every position for the side on roll,
+     *              indexed by {@link #index}
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, int points, int checkers, char[] table) throws IOException {
+        long size = fileSize(points, checkers);
+        if (table.length != (size - HEADER_SIZE) / Character.BYTES) {
+            throw new IllegalArgumentException("Expected " + (size - HEADER_SIZE) / Character.BYTES + " entries");
+        }
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.position(HEADER_SIZE);
+            map.asCharBuffer().put(table);
+            
+            // The header goes last, so an interrupted write never passes for a database
+            map.putInt(HEADER_VERSION, VERSION);
+            map.putInt(HEADER_POINTS, points);
+            map.putInt(HEADER_CHECKERS, checkers);
+            map.putLong(0, MAGIC);
+            map.force();
+        }
+    }
+    
+    /**
+     * Get the default database, opened on first use
+     * @return the database named by {@code -Dbackgammon.bearoffDb}, or null if none is configured
+     */
+    public static TwoSidedBearoff getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+    
+    /**
+     * Open the default database
+     * @return the database, or null if none is configured or it cannot be opened
+     */
+    private static TwoSidedBearoff openDefault() {
+        String path = System.getProperty("backgammon.bearoffDb");
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new TwoSidedBearoff(Paths.get(path));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Check whether a position is in this database
+     * @param board the position
+     * @return true if both players have all their remaining checkers within the covered points
+     */
+    public boolean covers(Board board) {
+        return OneSidedBearoff.toCounts(board, PlayerColor.WHITE, points, checkers) != null
+            && OneSidedBearoff.toCounts(board, PlayerColor.BLACK, points, checkers) != null;
+    }
+    
+    /**
+     * Look up the exact chance that the player on roll wins
+     * @param board the position
+     * @param onRoll the player about to roll
+     * @return the winning probability, or -1 if the position is not covered
+     */
+    public double getWinProbability(Board board, PlayerColor onRoll) {
+        int[] counts = OneSidedBearoff.toCounts(board, onRoll, points, checkers);
+        int[] otherCounts = OneSidedBearoff.toCounts(board, onRoll.opposite(), points, checkers);
+        if (counts == null || otherCounts == null) {
+            return -1;
+        }
+        return getWinProbability(rankSide(counts), rankSide(otherCounts));
+    }
+    
+    /**
+     * Look up the exact chance that the player on roll wins
+     * @param onRollRank the rank of the side on roll
+     * @param otherRank the rank of the other side
+     * @return the winning probability
+     */
+    public double getWinProbability(int onRollRank, int otherRank) {
+        int index = index(onRollRank, otherRank, sideCount);
+        return buffer.getChar(HEADER_SIZE + index * Character.BYTES) / (double) ONE;
+    }
+    
+    /**
+     * Get the number of home board points covered
+     * @return the point count
+     */
+    public int getPoints() {
+        return points;
+    }
+    
+    /**
+     * Get the maximum number of checkers covered
+     * @return the checker count
+     */
+    public int getCheckers() {
+        return checkers;
+    }
+    
+    /**
+     * Check whether a database shape is supported: the table must fit in one mapping
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @return true if a database of that shape can be built and opened
+     */
+    public static boolean fits(int points, int checkers) {
+        return points >= 1 && points <= MAX_POINTS && checkers >= 1 && checkers <= MAX_CHECKERS
+            && fileSize(points, checkers) <= Integer.MAX_VALUE;
+    }
+    
+    /**
+     * Get the number of ways to place one side's checkers
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @return the number of distinct sides, including the one with every checker off
+     */
+    public static int sideCount(int points, int checkers) {
+        return BINOMIAL[points + checkers][points];
+    }
+    
+    /**
+     * Get the table index of a position
+     * @param onRollRank the rank of the side on roll
+     * @param otherRank the rank of the other side
+     * @param sideCount the number of distinct sides
+     * @return the index
+     */
+    public static int index(int onRollRank, int otherRank, int sideCount) {
+        return onRollRank * sideCount + otherRank;
+    }
+    
+    /**
+     * Rank one side's checkers; the side with every checker off has rank 0
+     * @param counts the checker counts at distance 1..points
+     * @return the rank, from 0 to {@link #sideCount} - 1
+     */
+    public static int rankSide(int[] counts) {
+        return OneSidedBearoff.rank(counts, BINOMIAL);
+    }
+    
+    /**
+     * Get the size of a database file
+     * @param points the number of home board points covered
+     * @param checkers the maximum number of checkers covered
+     * @return the size in bytes
+     */
+    private static long fileSize(int points, int checkers) {
+        long sides = sideCount(points, checkers);
+        return HEADER_SIZE + sides * sides * Character.BYTES;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Lazily opened default database
+     */
+    private static class DefaultHolder {
+        private static final TwoSidedBearoff INSTANCE = openDefault();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.backgammon.model;
+
+/**
+ * Enum representing the game variants, which differ only in their starting position.
+ * Each layout is given for white as (point index, count) pairs; black's is its mirror
+ * image.
+ */
+public enum Variant {
+    STANDARD("standard", new int[]{5, 5, 7, 3, 12, 5, 23, 2}),
+    NACKGAMMON("nackgammon", new int[]{5, 4, 7, 3, 12, 4, 22, 2, 23, 2}),
+    HYPERGAMMON("hypergammon", new int[]{21, 1, 22, 1, 23, 1});
+    
+    private final String name;
+    private final int[] layout;
+    private final int checkers;
+    
+    Variant(String name, int[] layout) {
+        this.name = name;
+        this.layout = layout;
+        int total = 0;
+        for (int i = 1; i < layout.length; i += 2) {
+            total += layout[i];
+        }
+        this.checkers = total;
+    }
+    
+    /**
+     * Get the number of checkers each player starts with
+     * @return the checker count
+     */
+    public int getCheckers() {
+        return checkers;
+    }
+    
+    /**
+     * Get the starting position of white's checkers
+     * @return (point index, count) pairs
+     */
+    int[] getLayout() {
+        return layout;
+    }
+    
+    /**
+     * Find a variant by name
+     * @param name the name, such as "hypergammon"
+     * @return the variant
+     * @throws IllegalArgumentException if there is no such variant
+     */
+    public static Variant fromName(String name) {
+        for (Variant variant : values()) {
+            if (variant.name.equalsIgnoreCase(name)) {
+                return variant;
+            }
+        }
+        throw new IllegalArgumentException("Unknown variant " + name);
+    }
+    
+    /**
+     * Find the first variant played with a number of checkers
+     * @param checkers the checker count
+     * @return the variant, or null if none is played with that many checkers
+     */
+    public static Variant forCheckers(int checkers) {
+        for (Variant variant : values()) {
+            if (variant.checkers == checkers) {
+                return variant;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
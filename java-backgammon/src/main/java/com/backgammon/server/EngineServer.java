@@ -0,0 +1,859 @@
+package com.backgammon.server;
+
+import com.backgammon.cli.JsonLine;
+import com.backgammon.metrics.Metrics;
+import com.backgammon.model.AI;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.EvaluationCache;
+import com.backgammon.model.ExpectiminimaxSearch;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.Play;
+import com.backgammon.model.PlayerColor;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP service exposing {@link GameLogic} and the {@link AI} as JSON, for the web client.
+ *
+ * Requests are handled by a fixed pool of threads fed by a bounded queue. A request
+ * that finds the queue full is passed to a separate refusing thread, which answers it
+ * 503 at once, so neither the heap nor the server's dispatcher ever waits on overload.
+ * Requests for one game are batched by its {@link Session}.
+ *
+ * <pre>
+ * GET    /api/health
+ * POST   /api/analyze                   {"position", "player", "dice", "depth"?, "timeMillis"?}
+ * POST   /api/sessions                  start a game
+ * GET    /api/sessions/{id}             the game's state
+ * DELETE /api/sessions/{id}
+ * POST   /api/sessions/{id}/roll        {"dice": [d1, d2]}? rolls at random without dice
+ * GET    /api/sessions/{id}/moves       the legal moves
+ * POST   /api/sessions/{id}/move        {"from", "to"}
+ * POST   /api/sessions/{id}/end         end the turn
+ * POST   /api/sessions/{id}/ai          {"depth"?, "timeMillis"?} the AI plays the player on roll's turn
+ * POST   /api/sessions/{id}/reset       start a new game in the session
+ * POST   /api/sessions/{id}/batch       {"ops": [{"op": "roll"|"move"|"end"|"ai"|"reset"|"state", ...}]}
+ * GET    /api/sessions/{id}/watch       server-sent events of every change, see {@link SpectatorChannel}
+ * </pre>
+ *
+ * Errors are answered as {@code {"error": message}} with status 400 for a bad request,
+ * 404 for an unknown session, 409 for an action the game does not allow, 503 when the
+ * request queue, the session table or the spectator limit is full, and 500 for anything
+ * else.
+ *
+ * Usage: {@code EngineServer [--port N] [--threads N] [--queue N] [--sessions N] [--spectators N]}
+ */
+public class EngineServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_QUEUE = 256;
+    public static final int DEFAULT_MAX_SESSIONS = 10_000;
+    
+    // Largest request body accepted, in bytes
+    private static final int MAX_BODY = 64 * 1024;
+    
+    // Limits on the work one request may ask of the AI
+    private static final int MAX_DEPTH = 4;
+    private static final long MAX_TIME_MILLIS = 10_000L;
+    private static final int MAX_BATCH = 64;
+    
+    // Threads answering the requests a full queue refused
+    private static final int REFUSER_THREADS = 2;
+    
+    // Sessions idle this long are expired, checked this often and whenever the session table is full
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(30);
+    private static final long EVICTION_INTERVAL_SECONDS = 60L;
+    
+    private static final String PREFIX = "/api/";
+    
+    static {
+        // Send small responses at once instead of holding them back for the client's
+        // delayed ACK, which costs each request about 40 ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService refuser;
+    private final ScheduledExecutorService evictor;
+    private final ConcurrentHashMap<String, Session> sessions;
+    private final int maxSessions;
+    private final SecureRandom idSource;
+    private final SpectatorHub hub;
+    
+    // Set on a refusing thread while it answers a request the full queue refused
+    private final ThreadLocal<Boolean> refusing;
+    
+    // Per-thread searches for stateless analysis, by depth; index 0 is the anytime search
+    private final ThreadLocal<ExpectiminimaxSearch[]> searches;
+    private final EvaluationCache cache;
+    
+    /**
+     * Create a server; it does not accept requests until {@link #start()}
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of request threads
+     * @param queueCapacity the number of requests that may wait for a thread
+     * @param maxSessions the number of games kept at once
+     * @param maxSpectators the number of spectator streams served at once
+     * @throws IOException if the port cannot be bound
+     */
+    public EngineServer(int port, int threads, int queueCapacity, int maxSessions, int maxSpectators)
+            throws IOException {
+        this.sessions = new ConcurrentHashMap<>();
+        this.maxSessions = maxSessions;
+        this.idSource = new SecureRandom();
+        this.hub = new SpectatorHub(maxSpectators);
+        this.searches = ThreadLocal.withInitial(() -> new ExpectiminimaxSearch[MAX_DEPTH + 1]);
+        this.cache = EvaluationCache.getDefault();
+        this.refusing = ThreadLocal.withInitial(() -> Boolean.FALSE);
+        
+        // Refusing costs a 503 of a few bytes, so a couple of threads keep up with any
+        // overload; they are separate from the dispatcher, which hands work off and never waits
+        AtomicInteger refuserCount = new AtomicInteger();
+        this.refuser = Executors.newFixedThreadPool(REFUSER_THREADS, r -> {
+            Thread thread = new Thread(r, "engine-server-refuser-" + refuserCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // A full queue passes the request straight to the refusing threads; once the
+        // server is stopping the request is dropped with its connection
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "engine-server-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, (r, pool) -> {
+                try {
+                    refuser.execute(() -> {
+                        refusing.set(Boolean.TRUE);
+                        try {
+                            r.run();
+                        } finally {
+                            refusing.set(Boolean.FALSE);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Stopping; the connection is closed with the server
+                }
+            });
+        
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "engine-server-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        this.server = HttpServer.create(new InetSocketAddress(port), queueCapacity);
+        this.server.setExecutor(executor);
+        this.server.createContext(PREFIX, this::handle);
+    }
+    
+    /**
+     * Start accepting requests
+     */
+    public void start() {
+        server.start();
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS,
+            TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Stop accepting requests and shut the request threads down
+     * @param delaySeconds the time allowed for requests in progress to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdownNow();
+        refuser.shutdownNow();
+        evictor.shutdownNow();
+        hub.stop();
+    }
+    
+    /**
+     * Get the port the server listens on
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Get the number of games in progress
+     * @return the session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Get the hub streaming games to spectators
+     * @return the hub
+     */
+    public SpectatorHub getSpectatorHub() {
+        return hub;
+    }
+    
+    /**
+     * Handle one request, answering errors as JSON
+     * @param exchange the request
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        boolean handedOff = false;
+        try {
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Access-Control-Allow-Origin", "*");
+            if (exchange.getRequestMethod().equals("OPTIONS")) {
+                headers.set("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS");
+                headers.set("Access-Control-Allow-Headers", "Content-Type");
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            
+            int status = 200;
+            JsonLine response;
+            try {
+                if (refusing.get()) {
+                    throw new OverloadedException("Server overloaded");
+                }
+                response = route(exchange);
+                if (response == null) {
+                    // A spectator stream, now owned by its writer thread
+                    handedOff = true;
+                    return;
+                }
+            } catch (NotFoundException e) {
+                status = 404;
+                response = new JsonLine().put("error", e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = new JsonLine().put("error", e.getMessage());
+            } catch (RuleViolationException e) {
+                status = 409;
+                response = new JsonLine().put("error", e.getMessage());
+            } catch (OverloadedException e) {
+                status = 503;
+                response = new JsonLine().put("error", e.getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                response = new JsonLine().put("error", "Internal error: " + e);
+            }
+            send(exchange, status, response);
+        } finally {
+            if (!handedOff) {
+                exchange.close();
+                if (Metrics.ENABLED) {
+                    Metrics.SERVER_REQUEST.recordSince(start);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Dispatch a request to its endpoint
+     * @param exchange the request
+     * @return the response, or null if the exchange was handed to a spectator stream
+     * @throws IOException if the body cannot be read
+     */
+    private JsonLine route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring(PREFIX.length()).split("/");
+        
+        if (path.length == 1 && path[0].equals("health") && method.equals("GET")) {
+            return new JsonLine().put("status", "ok").put("sessions", sessions.size());
+        }
+        if (path.length == 1 && path[0].equals("analyze") && method.equals("POST")) {
+            return analyze(readBody(exchange));
+        }
+        if (path.length == 0 || !path[0].equals("sessions")) {
+            throw new NotFoundException("No such endpoint");
+        }
+        if (path.length == 1 && method.equals("POST")) {
+            return createSession();
+        }
+        if (path.length < 2) {
+            throw new NotFoundException("No such endpoint");
+        }
+        
+        Session session = sessions.get(path[1]);
+        if (session == null) {
+            throw new NotFoundException("No such session");
+        }
+        String action = path.length == 2 ? "" : path[2];
+        if (path.length > 3) {
+            throw new NotFoundException("No such endpoint");
+        }
+        
+        switch (method + " " + action) {
+            case "GET ":
+                return session.execute(EngineServer::state);
+            case "DELETE ":
+                sessions.remove(session.getId());
+                close(session);
+                return new JsonLine().put("session", session.getId()).put("deleted", true);
+            case "GET moves":
+                return session.execute(s -> new JsonLine().put("moves", s.getGame().getPossibleMoves()));
+            case "POST roll":
+            case "POST move":
+            case "POST end":
+            case "POST ai":
+            case "POST reset": {
+                Map<String, Object> body = readBody(exchange);
+                return session.execute(s -> {
+                    JsonLine result = apply(s, action, body);
+                    return result.put("state", state(s));
+                });
+            }
+            case "POST batch":
+                return batch(session, readBody(exchange));
+            case "GET watch":
+                hub.watch(exchange, session, lastEventId(exchange));
+                return null;
+            default:
+                throw new NotFoundException("No such endpoint");
+        }
+    }
+    
+    /**
+     * Start a new game
+     * @return the game's state
+     */
+    private JsonLine createSession() {
+        if (sessions.size() >= maxSessions) {
+            evictIdle();
+            if (sessions.size() >= maxSessions) {
+                throw new OverloadedException("Too many sessions");
+            }
+        }
+        
+        String id;
+        Session session;
+        do {
+            id = Long.toHexString(idSource.nextLong() & Long.MAX_VALUE);
+            session = new Session(id);
+        } while (sessions.putIfAbsent(id, session) != null);
+        return session.execute(EngineServer::state);
+    }
+    
+    /**
+     * Remove the sessions that have been idle too long, closing their spectator streams
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            if (now - session.getLastAccessNanos() > IDLE_NANOS && sessions.remove(session.getId(), session)) {
+                close(session);
+            }
+        }
+    }
+    
+    /**
+     * Release a removed session's spectator channel
+     * @param session the session
+     */
+    private static void close(Session session) {
+        session.execute(s -> {
+            s.closeChannel();
+            return null;
+        });
+    }
+    
+    /**
+     * Run a list of operations on a game in one request. The operations run in order and
+     * stop at the first that fails; its error is reported in its result.
+     * @param session the game
+     * @param body the request, with the operations in {@code ops}
+     * @return the result of each operation that ran, and the final state
+     */
+    private JsonLine batch(Session session, Map<String, Object> body) {
+        Object ops = body.get("ops");
+        if (!(ops instanceof List) || ((List<?>) ops).size() > MAX_BATCH) {
+            throw new IllegalArgumentException("Expected up to " + MAX_BATCH + " operations in \"ops\"");
+        }
+        
+        return session.execute(s -> {
+            List<JsonLine> results = new ArrayList<>();
+            for (Object op : (List<?>) ops) {
+                if (!(op instanceof Map)) {
+                    results.add(new JsonLine().put("error", "Expected an operation object"));
+                    break;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> fields = (Map<String, Object>) op;
+                try {
+                    String name = String.valueOf(fields.get("op"));
+                    results.add(name.equals("state") ? state(s) : apply(s, name, fields));
+                } catch (IllegalArgumentException | RuleViolationException e) {
+                    results.add(new JsonLine().put("error", e.getMessage()));
+                    break;
+                }
+            }
+            return new JsonLine().putArray("results", results).put("state", state(s));
+        });
+    }
+    
+    /**
+     * Apply one game action; runs inside the session
+     * @param session the game
+     * @param action "roll", "move", "end", "ai" or "reset"
+     * @param fields the action's parameters
+     * @return the action's result
+     * @throws IllegalArgumentException if a parameter is invalid
+     * @throws RuleViolationException if the game does not allow the action
+     */
+    private static JsonLine apply(Session session, String action, Map<String, Object> fields) {
+        GameLogic game = session.getGame();
+        if (action.equals("reset")) {
+            game.startGame();
+            session.publish("reset", null);
+            return new JsonLine().put("reset", true);
+        }
+        if (game.getGameState() != GameState.PLAYING) {
+            throw new RuleViolationException("The game is over");
+        }
+        boolean rolled = !game.getDice().getValues().isEmpty();
+        PlayerColor player = game.getCurrentPlayer();
+        
+        switch (action) {
+            case "roll": {
+                if (rolled) {
+                    throw new RuleViolationException("The dice have already been rolled");
+                }
+                int[] roll = fields.get("dice") == null ? randomRoll() : parseDice(fields.get("dice"));
+                game.rollDice(roll[0], roll[1]);
+                session.publish("roll", null);
+                return new JsonLine().put("dice", roll);
+            }
+            case "move": {
+                if (!rolled) {
+                    throw new RuleViolationException("Roll the dice first");
+                }
+                Move move = Move.of(intField(fields, "from", Board.BLACK_HOME, Board.WHITE_HOME),
+                    intField(fields, "to", Board.BLACK_HOME, Board.WHITE_HOME));
+                if (!game.makeMove(move)) {
+                    throw new RuleViolationException("Illegal move " + move);
+                }
+                session.publish("move", move);
+                return new JsonLine().put("moved", true);
+            }
+            case "end":
+                if (!rolled) {
+                    throw new RuleViolationException("Roll the dice first");
+                }
+                game.endTurn();
+                session.publish("end", null);
+                return new JsonLine().put("ended", true);
+            case "ai": {
+                AI ai = session.getAI(player);
+                if (fields.containsKey("depth")) {
+                    int depth = intField(fields, "depth", 1, MAX_DEPTH);
+                    if (depth != ai.getSearchDepth()) {
+                        ai.setSearchDepth(depth);
+                    }
+                }
+                long timeMillis = fields.containsKey("timeMillis")
+                    ? intField(fields, "timeMillis", 1, (int) MAX_TIME_MILLIS) : 0L;
+                
+                // Roll for the AI if its turn has not started, then play the whole turn
+                int[] dice;
+                if (rolled) {
+                    dice = toArray(game.getDice().getValues());
+                } else {
+                    dice = randomRoll();
+                    game.rollDice(dice[0], dice[1]);
+                    session.publish("roll", null);
+                }
+                List<Move> moves = new ArrayList<>();
+                while (game.getGameState() == GameState.PLAYING && game.getCurrentPlayer() == player) {
+                    Move move = timeMillis > 0 ? ai.getBestMove(game.getBoard(), game.getDice(), timeMillis)
+                        : ai.getBestMove(game.getBoard(), game.getDice());
+                    if (move == null || !game.makeMove(move)) {
+                        game.endTurn();
+                        session.publish("end", null);
+                        break;
+                    }
+                    session.publish("move", move);
+                    moves.add(move);
+                }
+                return new JsonLine().put("player", name(player)).put("dice", dice).put("moves", moves);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown operation " + action);
+        }
+    }
+    
+    /**
+     * Describe a game's state; runs inside the session
+     * @param session the game
+     * @return the state
+     */
+    static JsonLine state(Session session) {
+        GameLogic game = session.getGame();
+        return state(session.getId(), game.getBoard(), game.getCurrentPlayer(), game.getGameState(), game.getWinner(),
+            game.getDice(), game.getPossibleMoves());
+    }
+    
+    /**
+     * Describe a game's state from its parts
+     * @param sessionId the session ID
+     * @param board the board
+     * @param player the player on roll
+     * @param gameState whether the game is still being played
+     * @param winner the winner, or null
+     * @param dice the dice
+     * @param moves the legal moves
+     * @return the state
+     */
+    static JsonLine state(String sessionId, Board board, PlayerColor player, GameState gameState, PlayerColor winner,
+                          Dice dice, List<Move> moves) {
+        JsonLine state = new JsonLine()
+            .put("session", sessionId)
+            .put("position", board.toPositionId())
+            .put("board", board.toArray());
+        return progress(state, player, gameState, winner, dice).put("moves", moves);
+    }
+    
+    /**
+     * Add the turn's progress to a record: the player on roll, the stage of the turn,
+     * the winner and the dice
+     * @param line the record
+     * @param game the game
+     * @return the record
+     */
+    static JsonLine progress(JsonLine line, GameLogic game) {
+        return progress(line, game.getCurrentPlayer(), game.getGameState(), game.getWinner(), game.getDice());
+    }
+    
+    /**
+     * Add the turn's progress to a record from the game's parts
+     * @param line the record
+     * @param player the player on roll
+     * @param gameState whether the game is still being played
+     * @param winner the winner, or null
+     * @param dice the dice
+     * @return the record
+     */
+    private static JsonLine progress(JsonLine line, PlayerColor player, GameState gameState, PlayerColor winner,
+                                     Dice dice) {
+        List<Boolean> used = dice.getUsed();
+        int[] usedFlags = new int[used.size()];
+        for (int i = 0; i < usedFlags.length; i++) {
+            usedFlags[i] = used.get(i) ? 1 : 0;
+        }
+        
+        return line
+            .put("player", name(player))
+            .put("state", gameState != GameState.PLAYING ? "ended" : dice.getValues().isEmpty() ? "roll" : "move")
+            .put("winner", winner == null ? null : name(winner))
+            .put("dice", toArray(dice.getValues()))
+            .put("used", usedFlags);
+    }
+    
+    /**
+     * Analyze a position without a session
+     * @param body the position ID, the player on roll, the dice and optionally the search
+     *             depth or a time budget
+     * @return the best play and its equity
+     */
+    private JsonLine analyze(Map<String, Object> body) {
+        Object positionId = body.get("position");
+        if (!(positionId instanceof String)) {
+            throw new IllegalArgumentException("Expected a position ID in \"position\"");
+        }
+        Board board = Board.fromPositionId((String) positionId);
+        PlayerColor color = parsePlayer(body.get("player"));
+        int[] roll = parseDice(body.get("dice"));
+        Dice dice = new Dice();
+        dice.setValues(roll[0], roll[1]);
+        int depth = body.containsKey("depth") ? intField(body, "depth", 1, MAX_DEPTH) : 1;
+        long timeMillis = body.containsKey("timeMillis") ? intField(body, "timeMillis", 1, (int) MAX_TIME_MILLIS) : 0L;
+        
+        // Each request thread keeps its own searches, so their tables are reused without locking
+        ExpectiminimaxSearch[] threadSearches = searches.get();
+        int index = timeMillis > 0 ? 0 : depth;
+        if (threadSearches[index] == null) {
+            threadSearches[index] = new ExpectiminimaxSearch(timeMillis > 0 ? AI.MAX_ANYTIME_DEPTH : depth);
+            threadSearches[index].setCache(cache);
+        }
+        ExpectiminimaxSearch search = threadSearches[index];
+        
+        long start = System.nanoTime();
+        Play play = timeMillis > 0
+            ? search.searchUntil(board, color, dice, start + timeMillis * 1_000_000L)
+            : search.search(board, color, dice);
+        long nanos = System.nanoTime() - start;
+        
+        return new JsonLine()
+            .put("position", (String) positionId)
+            .put("player", name(color))
+            .put("dice", roll)
+            .put("moves", play.getMoves())
+            .put("equity", search.getValue())
+            .put("depth", search.getCompletedDepth())
+            .put("nodes", search.getNodeCount())
+            .put("millis", nanos / 1e6);
+    }
+    
+    /**
+     * Read a request body as a JSON object
+     * @param exchange the request
+     * @return the object; empty if there is no body
+     * @throws IOException if the body cannot be read
+     * @throws IllegalArgumentException if the body is too large or not a JSON object
+     */
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY) {
+                    throw new IllegalArgumentException("Request body too large");
+                }
+            }
+        }
+        return JsonReader.parseObject(body.toString(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Read the ID of the last event a reconnecting spectator saw
+     * @param exchange the request
+     * @return the event ID, or -1 if there is none
+     */
+    private static long lastEventId(HttpExchange exchange) {
+        String id = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (id == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(id.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+    
+    /**
+     * Write a JSON response
+     * @param exchange the request
+     * @param status the HTTP status
+     * @param response the response body
+     */
+    private static void send(HttpExchange exchange, int status, JsonLine response) throws IOException {
+        byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    /**
+     * Read an integer field
+     * @param fields the object
+     * @param key the field name
+     * @param min the smallest allowed value
+     * @param max the largest allowed value
+     * @return the value
+     * @throws IllegalArgumentException if the field is missing, not an integer or out of range
+     */
+    private static int intField(Map<String, Object> fields, String key, int min, int max) {
+        Object value = fields.get(key);
+        if (!isIntegral(value)) {
+            throw new IllegalArgumentException("Expected an integer in \"" + key + "\"");
+        }
+        double number = ((Number) value).doubleValue();
+        if (number < min || number > max) {
+            throw new IllegalArgumentException("\"" + key + "\" must be from " + min + " to " + max);
+        }
+        return (int) number;
+    }
+    
+    /**
+     * Check that a field value is a whole number, whatever type the parser gave it
+     * @param value the field value
+     * @return whether the value is a number with no fractional part
+     */
+    private static boolean isIntegral(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            return !Double.isInfinite(number) && number % 1 == 0;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros().scale() <= 0;
+        }
+        return value instanceof Number;
+    }
+    
+    /**
+     * Read a roll, given as [d1, d2] or "d1d2"
+     * @param value the field value
+     * @return the two dice
+     * @throws IllegalArgumentException if the value is not a roll
+     */
+    private static int[] parseDice(Object value) {
+        if (value instanceof String && ((String) value).matches("[1-6][1-6]")) {
+            String roll = (String) value;
+            return new int[]{roll.charAt(0) - '0', roll.charAt(1) - '0'};
+        }
+        if (value instanceof List && ((List<?>) value).size() == 2) {
+            List<?> dice = (List<?>) value;
+            int[] roll = new int[2];
+            for (int i = 0; i < 2; i++) {
+                Object die = dice.get(i);
+                if (!isIntegral(die) || ((Number) die).doubleValue() < 1 || ((Number) die).doubleValue() > 6) {
+                    throw new IllegalArgumentException("Invalid dice " + value);
+                }
+                roll[i] = ((Number) die).intValue();
+            }
+            return roll;
+        }
+        throw new IllegalArgumentException("Expected dice as [d1, d2] or \"d1d2\"");
+    }
+    
+    /**
+     * Roll two dice. The roll is made here rather than by the game so it can be reported
+     * even when the player cannot move and the turn passes at once.
+     * @return the two dice
+     */
+    private static int[] randomRoll() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new int[]{random.nextInt(6) + 1, random.nextInt(6) + 1};
+    }
+    
+    /**
+     * Read a player name
+     * @param value the field value
+     * @return the player
+     * @throws IllegalArgumentException if the value is not "white" or "black"
+     */
+    private static PlayerColor parsePlayer(Object value) {
+        if ("white".equals(value)) {
+            return PlayerColor.WHITE;
+        }
+        if ("black".equals(value)) {
+            return PlayerColor.BLACK;
+        }
+        throw new IllegalArgumentException("Expected \"white\" or \"black\" in \"player\"");
+    }
+    
+    /**
+     * Get the JSON name of a player
+     * @param color the player color
+     * @return "white" or "black"
+     */
+    private static String name(PlayerColor color) {
+        return color == PlayerColor.WHITE ? "white" : "black";
+    }
+    
+    /**
+     * Convert dice values to an array
+     * @param values the values
+     * @return the array
+     */
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+    
+    /**
+     * A request for a session or endpoint that does not exist
+     */
+    private static class NotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * A game action the rules do not allow in the current state
+     */
+    private static class RuleViolationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        RuleViolationException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * A request refused because the server is at capacity
+     */
+    static class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        OverloadedException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * Run the server until the process is stopped
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        int maxSessions = DEFAULT_MAX_SESSIONS;
+        int maxSpectators = SpectatorHub.DEFAULT_MAX_SPECTATORS;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                case "--sessions":
+                    maxSessions = Integer.parseInt(args[++i]);
+                    break;
+                case "--spectators":
+                    maxSpectators = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        
+        EngineServer server = new EngineServer(port, threads, queue, maxSessions, maxSpectators);
+        server.start();
+        System.err.println("Engine service listening on port " + server.getPort());
+    }
+}
\ No newline at end of file
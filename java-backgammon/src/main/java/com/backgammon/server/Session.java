@@ -0,0 +1,164 @@
+package com.backgammon.server;
+
+import com.backgammon.model.AI;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.Move;
+import com.backgammon.model.PlayerColor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * One game played through the engine service.
+ *
+ * Requests for the same session are batched: each request queues its operation in the
+ * session's mailbox, and whichever request thread finds the session idle runs every
+ * queued operation in one pass while the others wait for their results. The game is
+ * only ever touched by one thread at a time, without a lock being held across requests,
+ * and a burst of requests to one session costs one hand-off instead of one per request.
+ */
+public class Session {
+    private final String id;
+    private final GameLogic game;
+    
+    // AIs for each side, created on first use
+    private final AI[] ais;
+    
+    // Operations waiting to run, and whether a thread is running them
+    private final ConcurrentLinkedQueue<Runnable> mailbox;
+    private final AtomicBoolean draining;
+    
+    // Broadcast to spectators, opened by the first one
+    private SpectatorChannel channel;
+    
+    // Time of the last request, for idle expiry
+    private volatile long lastAccessNanos;
+    
+    /**
+     * Create a session with a new game
+     * @param id the session ID
+     */
+    public Session(String id) {
+        this.id = id;
+        this.game = new GameLogic();
+        this.game.startGame();
+        this.ais = new AI[PlayerColor.values().length];
+        this.mailbox = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean();
+        this.lastAccessNanos = System.nanoTime();
+    }
+    
+    /**
+     * Run an operation on the session's game, batched with the session's other pending
+     * operations
+     * @param operation the operation
+     * @return the operation's result
+     * @throws RuntimeException the exception thrown by the operation
+     */
+    public <T> T execute(Function<Session, T> operation) {
+        lastAccessNanos = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mailbox.add(() -> {
+            try {
+                result.complete(operation.apply(this));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        });
+        
+        // Run the queue if no other thread is; re-check after releasing it, since an
+        // operation queued just before the release would otherwise be stranded
+        while (!mailbox.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                Runnable next;
+                while ((next = mailbox.poll()) != null) {
+                    next.run();
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+        
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Get the session ID
+     * @return the ID
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Get the game; only to be used by an operation passed to {@link #execute}
+     * @return the game
+     */
+    public GameLogic getGame() {
+        return game;
+    }
+    
+    /**
+     * Get the AI playing a side; only to be used by an operation passed to {@link #execute}
+     * @param color the side
+     * @return the AI
+     */
+    public AI getAI(PlayerColor color) {
+        if (ais[color.ordinal()] == null) {
+            ais[color.ordinal()] = new AI(color);
+        }
+        return ais[color.ordinal()];
+    }
+    
+    /**
+     * Get the session's spectator channel, opening it if needed; only to be used by an
+     * operation passed to {@link #execute}
+     * @param hub the hub serving the spectators
+     * @return the channel
+     */
+    public SpectatorChannel openChannel(SpectatorHub hub) {
+        if (channel == null) {
+            channel = new SpectatorChannel(id, hub);
+        }
+        return channel;
+    }
+    
+    /**
+     * Tell the spectators about a change to the game; only to be used by an operation
+     * passed to {@link #execute}
+     * @param event what happened: "roll", "move", "end" or "reset"
+     * @param move the move made, for a "move" event
+     */
+    public void publish(String event, Move move) {
+        if (channel != null) {
+            channel.publish(this, event, move);
+        }
+    }
+    
+    /**
+     * End the spectators' streams; only to be used by an operation passed to {@link #execute}
+     */
+    public void closeChannel() {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Get the time of the session's last request
+     * @return the {@link System#nanoTime()} value of the last request
+     */
+    public long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+}
\ No newline at end of file
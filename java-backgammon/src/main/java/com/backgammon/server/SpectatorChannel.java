@@ -0,0 +1,266 @@
+package com.backgammon.server;
+
+import com.backgammon.cli.JsonLine;
+import com.backgammon.model.Board;
+import com.backgammon.model.Dice;
+import com.backgammon.model.GameLogic;
+import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
+import com.backgammon.model.MoveValidator;
+import com.backgammon.model.PlayerColor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The broadcast of one session's game to its spectators.
+ *
+ * Every change to the game is encoded once, as a server-sent event, into a ring of
+ * recent frames shared by all spectators. Each spectator reads the ring from its own
+ * cursor, so publishing costs the same with one spectator or thousands and never waits
+ * for any of them. A delta frame lists only the board points that changed.
+ *
+ * Spectators that join late or fall more than the ring's length behind start from a
+ * keyframe of the full state instead. Publishing only keeps a copy of the game for it;
+ * the keyframe, with the legal moves it lists, is built when a spectator first needs it
+ * and kept until the next frame, so the player's request never pays for it.
+ *
+ * Frames are published from inside the session, so there is one publisher at a time.
+ */
+public class SpectatorChannel {
+    // Number of recent frames kept; a power of two
+    static final int RING_SIZE = 256;
+    private static final int RING_MASK = RING_SIZE - 1;
+    
+    /**
+     * An encoded frame and its sequence number
+     */
+    static final class Frame {
+        final long seq;
+        final byte[] bytes;
+        
+        Frame(long seq, byte[] bytes) {
+            this.seq = seq;
+            this.bytes = bytes;
+        }
+    }
+    
+    private final String sessionId;
+    private final SpectatorHub hub;
+    
+    // Recent frames by sequence number, and the number of the next frame
+    private final AtomicReferenceArray<Frame> ring;
+    private volatile long head;
+    
+    // The game as of the last published frame, and the keyframe last built from it
+    private volatile Snapshot snapshot;
+    private volatile Frame keyframe;
+    
+    // The spectators reading this channel
+    private final Set<SpectatorHub.Spectator> spectators;
+    
+    // Whether a wake-up of the spectators is waiting for the hub
+    final AtomicBoolean signalPending;
+    
+    // The board the next delta is taken against; null when no delta can be taken
+    private int[] lastBoard;
+    
+    private volatile boolean closed;
+    
+    /**
+     * Create a channel
+     * @param sessionId the session broadcast
+     * @param hub the hub serving the spectators
+     */
+    SpectatorChannel(String sessionId, SpectatorHub hub) {
+        this.sessionId = sessionId;
+        this.hub = hub;
+        this.ring = new AtomicReferenceArray<>(RING_SIZE);
+        this.head = 1;
+        this.spectators = ConcurrentHashMap.newKeySet();
+        this.signalPending = new AtomicBoolean();
+    }
+    
+    /**
+     * Publish a change to the game; runs inside the session. With nobody watching only
+     * the sequence number advances, leaving a gap that a returning spectator fills from
+     * a keyframe.
+     * @param session the session
+     * @param event what happened: "roll", "move", "end" or "reset"
+     * @param move the move made, for a "move" event
+     */
+    void publish(Session session, String event, Move move) {
+        long seq = head;
+        if (spectators.isEmpty()) {
+            lastBoard = null;
+            ring.set((int) (seq & RING_MASK), null);
+            head = seq + 1;
+            return;
+        }
+        
+        GameLogic game = session.getGame();
+        int[] board = game.getBoard().toArray();
+        JsonLine delta;
+        if (lastBoard == null) {
+            // No baseline to take a delta against, so the frame carries the full state
+            delta = EngineServer.state(session);
+        } else {
+            // Changed points as flat (index, count) pairs of the toArray() layout
+            int[] changes = new int[2 * board.length];
+            int length = 0;
+            for (int i = 0; i < board.length; i++) {
+                if (board[i] != lastBoard[i]) {
+                    changes[length++] = i;
+                    changes[length++] = board[i];
+                }
+            }
+            delta = EngineServer.progress(new JsonLine(), game).put("changes", Arrays.copyOf(changes, length));
+        }
+        delta.put("event", event);
+        if (move != null) {
+            delta.put("from", move.getFrom()).put("to", move.getTo());
+        }
+        lastBoard = board;
+        
+        // The snapshot follows the head, so a keyframe is never ahead of the frames in the ring
+        ring.set((int) (seq & RING_MASK), encode(seq, "delta", delta));
+        head = seq + 1;
+        snapshot = new Snapshot(seq, session);
+        hub.signal(this);
+    }
+    
+    /**
+     * Add a spectator; runs inside the session, so the keyframe it starts from is
+     * consistent with the frames that follow
+     * @param session the session
+     * @param spectator the spectator
+     */
+    void subscribe(Session session, SpectatorHub.Spectator spectator) {
+        if (lastBoard == null) {
+            lastBoard = session.getGame().getBoard().toArray();
+        }
+        if (snapshot == null || snapshot.seq != head - 1) {
+            snapshot = new Snapshot(head - 1, session);
+        }
+        spectators.add(spectator);
+    }
+    
+    /**
+     * Remove a spectator
+     * @param spectator the spectator
+     */
+    void unsubscribe(SpectatorHub.Spectator spectator) {
+        spectators.remove(spectator);
+    }
+    
+    /**
+     * Close the channel, ending every spectator's stream
+     */
+    void close() {
+        closed = true;
+        hub.signal(this);
+    }
+    
+    /**
+     * Get a frame from the ring
+     * @param seq the sequence number
+     * @return the frame, or null if it was overwritten or never encoded
+     */
+    Frame frame(long seq) {
+        Frame frame = ring.get((int) (seq & RING_MASK));
+        return frame != null && frame.seq == seq ? frame : null;
+    }
+    
+    /**
+     * Get the full state as of the last published frame, building it if the game has
+     * changed since it was last built. Concurrent callers may both build it, with the
+     * same result.
+     * @return the keyframe
+     */
+    Frame getKeyframe() {
+        Snapshot latest = snapshot;
+        Frame frame = keyframe;
+        if (frame == null || frame.seq != latest.seq) {
+            frame = encode(latest.seq, "state", latest.toState(sessionId));
+            keyframe = frame;
+        }
+        return frame;
+    }
+    
+    /**
+     * Get the sequence number of the next frame to be published
+     * @return the sequence number
+     */
+    long getHead() {
+        return head;
+    }
+    
+    /**
+     * Check whether the channel has been closed
+     * @return true once closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Get the spectators reading the channel
+     * @return the spectators
+     */
+    Set<SpectatorHub.Spectator> getSpectators() {
+        return spectators;
+    }
+    
+    /**
+     * The game as of one frame, copied inside the session so the keyframe can be built
+     * later on another thread
+     */
+    private static final class Snapshot {
+        final long seq;
+        final Board board;
+        final Dice dice;
+        final PlayerColor player;
+        final GameState gameState;
+        final PlayerColor winner;
+        
+        Snapshot(long seq, Session session) {
+            GameLogic game = session.getGame();
+            this.seq = seq;
+            this.board = game.getBoard().clone();
+            this.dice = game.getDice().copy();
+            this.player = game.getCurrentPlayer();
+            this.gameState = game.getGameState();
+            this.winner = game.getWinner();
+        }
+        
+        /**
+         * Describe the state as {@link EngineServer#state(Session)} did at the frame
+         * @param sessionId the session ID
+         * @return the state
+         */
+        JsonLine toState(String sessionId) {
+            List<Move> moves = gameState == GameState.PLAYING && dice.hasAvailableMoves()
+                ? new MoveValidator().getPossibleMoves(player, board, dice) : new ArrayList<>();
+            return EngineServer.state(sessionId, board, player, gameState, winner, dice, moves);
+        }
+    }
+    
+    /**
+     * Encode a server-sent event
+     * @param seq the event ID
+     * @param type the event type
+     * @param data the event data
+     * @return the frame
+     */
+    private static Frame encode(long seq, String type, JsonLine data) {
+        data.put("seq", seq);
+        String text = "id: " + seq + "\nevent: " + type + "\ndata: " + data + "\n\n";
+        return new Frame(seq, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,518 @@
+package com.backgammon.server;
+
+import com.backgammon.metrics.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams {@link SpectatorChannel}s to their spectators as server-sent events.
+ *
+ * A small, fixed pool of writer threads, kept apart from the request threads, serves
+ * every spectator. Publishers never wake spectators themselves: they mark the channel,
+ * and the hub's signal thread queues the spectators of every marked channel for the
+ * writers once per {@link #BATCH_NANOS}, so a table with thousands of spectators costs
+ * its players no more than one with none. A writer sends every frame a spectator is
+ * behind by in a single write, so a batch costs one write per spectator however many
+ * moves it holds, and a spectator more than the ring's length behind skips to the
+ * current keyframe instead.
+ *
+ * A spectator is queued at most once and written by one writer at a time. Writes are
+ * bounded in time: the hub's watchdog drops a spectator whose write has been blocked
+ * for {@link #STALL_NANOS}, releasing its writer. Falling behind is not a reason to
+ * drop a spectator, since it may only be waiting for a writer; it resyncs instead. The
+ * watchdog also queues a heartbeat for streams that have been quiet.
+ */
+public class SpectatorHub {
+    public static final int DEFAULT_MAX_SPECTATORS = 4096;
+    
+    // Number of writer threads, whatever the number of spectators
+    public static final int DEFAULT_WRITERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    
+    // Spectators whose write has been blocked this long are dropped; short, since the
+    // write holds one of the shared writers
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(2);
+    
+    // Time between handing signalled channels to the writers, so the frames published
+    // meanwhile go to each spectator in one write
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    // Time between watchdog passes, and between heartbeats on an idle stream
+    private static final long WATCHDOG_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSED = "event: closed\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+    
+    private final int maxSpectators;
+    private final AtomicInteger spectatorCount;
+    
+    // Writer threads, and the spectators with something to write
+    private final Thread[] writers;
+    private final LinkedBlockingQueue<Spectator> ready;
+    
+    // Channels with spectators, and channels whose spectators are to be queued
+    private final Set<SpectatorChannel> channels;
+    private final ConcurrentLinkedQueue<SpectatorChannel> pending;
+    private final Thread signaller;
+    private volatile boolean stopped;
+    
+    // Totals, for reports
+    private final LongAdder resyncs;
+    private final LongAdder dropped;
+    
+    /**
+     * A spectator's stream. Only the writer holding the spectator touches its stream;
+     * the watchdog reads the cursor and write times.
+     */
+    final class Spectator {
+        private final HttpExchange exchange;
+        private final OutputStream out;
+        private final long lastEventId;
+        
+        // Set inside the session before the spectator subscribes
+        private SpectatorChannel channel;
+        
+        // Sequence number of the next frame to send; past any head until the stream starts
+        private volatile long cursor;
+        private boolean started;
+        private boolean ended;
+        
+        // When the write in progress started, or 0 between writes, and when the last one ended
+        private volatile long writeStartNanos;
+        private volatile long lastWriteNanos;
+        
+        // Whether the spectator is queued for or held by a writer
+        final AtomicBoolean queued;
+        
+        // The writer blocked in a write for this spectator; guarded by this
+        private Thread writer;
+        private boolean droppedByWatchdog;
+        
+        // Reusable buffer for coalescing frames into one write
+        private byte[] buffer;
+        
+        Spectator(HttpExchange exchange, long lastEventId) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.lastEventId = lastEventId;
+            this.cursor = Long.MAX_VALUE;
+            this.lastWriteNanos = System.nanoTime();
+            this.queued = new AtomicBoolean();
+            this.buffer = new byte[8192];
+        }
+        
+        /**
+         * Write whatever the spectator is missing, or a heartbeat if the stream has been
+         * quiet, and end the stream if the channel has closed; run by one writer at a time
+         */
+        void flush() {
+            if (ended) {
+                return;
+            }
+            try {
+                if (isDropped()) {
+                    end();
+                    return;
+                }
+                long head = channel.getHead();
+                if (!started) {
+                    // A reconnecting spectator resumes after the last event it saw, if still in the ring
+                    started = true;
+                    cursor = lastEventId + 1;
+                    if (lastEventId < 0 || !inRing(cursor, head)) {
+                        sendKeyframe(false);
+                    }
+                }
+                
+                if (cursor < head) {
+                    // Everything the spectator is behind by goes out in one write, unless
+                    // some of it has already left the ring
+                    int length = head - cursor <= SpectatorChannel.RING_SIZE ? coalesce(head) : -1;
+                    if (length < 0) {
+                        sendKeyframe(true);
+                    } else {
+                        write(buffer, length);
+                        cursor = head;
+                    }
+                } else if (System.nanoTime() - lastWriteNanos >= HEARTBEAT_NANOS) {
+                    write(HEARTBEAT, HEARTBEAT.length);
+                }
+                
+                if (channel.isClosed() && cursor >= channel.getHead()) {
+                    write(CLOSED, CLOSED.length);
+                    end();
+                }
+            } catch (IOException e) {
+                // The spectator went away or was dropped
+                end();
+            }
+        }
+        
+        /**
+         * Check whether the spectator needs a writer again after a flush
+         * @return true if frames arrived meanwhile, the channel closed or it was dropped
+         */
+        boolean hasWork() {
+            return !ended && (cursor < channel.getHead() || channel.isClosed() || isDropped());
+        }
+        
+        /**
+         * Check whether every frame from the cursor up to the head is still in the ring
+         * @param from the first frame wanted
+         * @param head the sequence number of the next frame to be published
+         * @return true if the frames can be sent as they are
+         */
+        private boolean inRing(long from, long head) {
+            if (from > head || head - from > SpectatorChannel.RING_SIZE) {
+                return false;
+            }
+            for (long seq = from; seq < head; seq++) {
+                if (channel.frame(seq) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Copy the frames from the cursor up to the head into the buffer
+         * @param head the sequence number of the next frame to be published
+         * @return the number of bytes copied, or -1 if a frame was overwritten meanwhile
+         */
+        private int coalesce(long head) {
+            int length = 0;
+            for (long seq = cursor; seq < head; seq++) {
+                SpectatorChannel.Frame frame = channel.frame(seq);
+                if (frame == null) {
+                    return -1;
+                }
+                if (length + frame.bytes.length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + frame.bytes.length));
+                }
+                System.arraycopy(frame.bytes, 0, buffer, length, frame.bytes.length);
+                length += frame.bytes.length;
+            }
+            return length;
+        }
+        
+        /**
+         * Skip to the latest keyframe
+         * @param resync whether the spectator fell behind, rather than just joined
+         */
+        private void sendKeyframe(boolean resync) throws IOException {
+            SpectatorChannel.Frame keyframe = channel.getKeyframe();
+            if (resync) {
+                resyncs.increment();
+            }
+            write(keyframe.bytes, keyframe.bytes.length);
+            cursor = keyframe.seq + 1;
+        }
+        
+        /**
+         * Write and flush bytes, recording how long the write blocks so the watchdog can
+         * break it off
+         * @param bytes the bytes
+         * @param length the number of bytes to write
+         */
+        private void write(byte[] bytes, int length) throws IOException {
+            startBlocking();
+            try {
+                out.write(bytes, 0, length);
+                out.flush();
+            } finally {
+                endBlocking();
+            }
+            lastWriteNanos = System.nanoTime();
+        }
+        
+        /**
+         * End the stream and release the spectator's place
+         */
+        private void end() {
+            ended = true;
+            channel.unsubscribe(this);
+            spectatorCount.decrementAndGet();
+            try {
+                // Closing sends the end of the chunked body, which can block like a write
+                startBlocking();
+                try {
+                    exchange.close();
+                } finally {
+                    endBlocking();
+                }
+            } catch (IOException e) {
+                // Dropped while closing; the connection is gone either way
+            }
+        }
+        
+        /**
+         * Mark the current writer as blocked on this spectator's connection
+         * @throws IOException if the spectator has already been dropped
+         */
+        private void startBlocking() throws IOException {
+            synchronized (this) {
+                if (droppedByWatchdog && !ended) {
+                    throw new IOException("Spectator dropped");
+                }
+                writer = Thread.currentThread();
+            }
+            writeStartNanos = System.nanoTime();
+        }
+        
+        /**
+         * Release the writer from this spectator's connection, clearing any interrupt
+         * meant for it so the writer's next spectator is not affected
+         */
+        private void endBlocking() {
+            writeStartNanos = 0L;
+            synchronized (this) {
+                writer = null;
+                Thread.interrupted();
+            }
+        }
+        
+        /**
+         * Check whether the watchdog has dropped the spectator
+         * @return true once dropped
+         */
+        private synchronized boolean isDropped() {
+            return droppedByWatchdog;
+        }
+        
+        /**
+         * Drop the spectator. Interrupting a writer blocked on it closes the connection's
+         * channel, which breaks the write off; the writer then ends the stream.
+         */
+        void drop() {
+            synchronized (this) {
+                if (droppedByWatchdog) {
+                    return;
+                }
+                droppedByWatchdog = true;
+                if (writer != null) {
+                    writer.interrupt();
+                }
+            }
+            dropped.increment();
+            if (Metrics.ENABLED) {
+                Metrics.SPECTATORS_DROPPED.increment();
+            }
+            schedule(this);
+        }
+    }
+    
+    /**
+     * Create a hub with the default number of writers
+     * @param maxSpectators the number of spectators served at once
+     */
+    public SpectatorHub(int maxSpectators) {
+        this(maxSpectators, DEFAULT_WRITERS);
+    }
+    
+    /**
+     * Create a hub
+     * @param maxSpectators the number of spectators served at once
+     * @param writerCount the number of writer threads
+     */
+    public SpectatorHub(int maxSpectators, int writerCount) {
+        this.maxSpectators = maxSpectators;
+        this.spectatorCount = new AtomicInteger();
+        this.ready = new LinkedBlockingQueue<>();
+        this.channels = ConcurrentHashMap.newKeySet();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.resyncs = new LongAdder();
+        this.dropped = new LongAdder();
+        this.writers = new Thread[writerCount];
+        for (int i = 0; i < writerCount; i++) {
+            writers[i] = new Thread(this::writeLoop, "spectator-writer-" + (i + 1));
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+        this.signaller = new Thread(this::signalLoop, "spectator-signaller");
+        this.signaller.setDaemon(true);
+        this.signaller.start();
+    }
+    
+    /**
+     * Start streaming a session to a spectator. The response headers are sent at once;
+     * the exchange then belongs to the hub, which closes it when the stream ends.
+     * @param exchange the request
+     * @param session the session to watch
+     * @param lastEventId the last event the spectator saw, or -1 for none
+     * @throws IOException if the response headers cannot be sent
+     * @throws EngineServer.OverloadedException if the hub is serving as many spectators as it can
+     */
+    public void watch(HttpExchange exchange, Session session, long lastEventId) throws IOException {
+        if (stopped || spectatorCount.incrementAndGet() > maxSpectators) {
+            spectatorCount.decrementAndGet();
+            throw new EngineServer.OverloadedException("Too many spectators");
+        }
+        Spectator spectator;
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            spectator = new Spectator(exchange, lastEventId);
+        } catch (IOException | RuntimeException e) {
+            spectatorCount.decrementAndGet();
+            throw e;
+        }
+        
+        SpectatorChannel channel = session.execute(s -> {
+            SpectatorChannel c = s.openChannel(this);
+            spectator.channel = c;
+            c.subscribe(s, spectator);
+            return c;
+        });
+        channels.add(channel);
+        schedule(spectator);
+    }
+    
+    /**
+     * Ask the signal thread to queue a channel's spectators for the writers in its next batch
+     * @param channel the channel
+     */
+    void signal(SpectatorChannel channel) {
+        if (channel.signalPending.compareAndSet(false, true)) {
+            pending.add(channel);
+        }
+    }
+    
+    /**
+     * Queue a spectator for a writer, unless it is already queued or being written
+     * @param spectator the spectator
+     */
+    private void schedule(Spectator spectator) {
+        if (spectator.queued.compareAndSet(false, true)) {
+            ready.add(spectator);
+        }
+    }
+    
+    /**
+     * Write to spectators as they become ready
+     */
+    private void writeLoop() {
+        while (!stopped) {
+            Spectator spectator;
+            try {
+                spectator = ready.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            spectator.flush();
+            
+            // Frames published during the flush found the spectator still queued, so signal
+            // its channel again for the next batch
+            spectator.queued.set(false);
+            if (spectator.isDropped()) {
+                schedule(spectator);
+            } else if (spectator.hasWork()) {
+                signal(spectator.channel);
+            }
+        }
+    }
+    
+    /**
+     * Queue the spectators of signalled channels once per batch, and check for stuck spectators
+     */
+    private void signalLoop() {
+        long nextWatchdog = System.nanoTime() + WATCHDOG_NANOS;
+        while (!stopped) {
+            SpectatorChannel channel;
+            while ((channel = pending.poll()) != null) {
+                channel.signalPending.set(false);
+                for (Spectator spectator : channel.getSpectators()) {
+                    schedule(spectator);
+                }
+            }
+            long now = System.nanoTime();
+            if (now - nextWatchdog >= 0) {
+                watchdog(now);
+                nextWatchdog = now + WATCHDOG_NANOS;
+            }
+            LockSupport.parkNanos(BATCH_NANOS);
+        }
+    }
+    
+    /**
+     * Drop spectators that are stuck in a write, queue heartbeats on
+     * quiet streams, and forget channels nobody watches
+     * @param now the current {@link System#nanoTime()}
+     */
+    private void watchdog(long now) {
+        for (SpectatorChannel channel : channels) {
+            for (Spectator spectator : channel.getSpectators()) {
+                long writeStart = spectator.writeStartNanos;
+                if (writeStart != 0 && now - writeStart > STALL_NANOS) {
+                    channel.unsubscribe(spectator);
+                    spectator.drop();
+                } else if (now - spectator.lastWriteNanos >= HEARTBEAT_NANOS) {
+                    schedule(spectator);
+                }
+            }
+            // A spectator may subscribe just as the channel is forgotten, so check again
+            if (channel.getSpectators().isEmpty()) {
+                channels.remove(channel);
+                if (!channel.getSpectators().isEmpty()) {
+                    channels.add(channel);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the number of spectators being served
+     * @return the spectator count
+     */
+    public int getSpectatorCount() {
+        return spectatorCount.get();
+    }
+    
+    /**
+     * Get the number of writer threads
+     * @return the writer count
+     */
+    public int getWriterCount() {
+        return writers.length;
+    }
+    
+    /**
+     * Get the number of times a spectator skipped to a keyframe after falling behind
+     * @return the resync count
+     */
+    public long getResyncs() {
+        return resyncs.sum();
+    }
+    
+    /**
+     * Get the number of spectators dropped for a write blocked too long
+     * @return the drop count
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+    
+    /**
+     * Stop the signal and writer threads; the streams end as the server closes its connections
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(signaller);
+        for (Thread writer : writers) {
+            writer.interrupt();
+        }
+    }
+}
\ No newline at end of file
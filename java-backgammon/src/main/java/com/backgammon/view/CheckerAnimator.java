@@ -0,0 +1,249 @@
+package com.backgammon.view;
+
+import com.backgammon.metrics.Metrics;
+import com.backgammon.model.Board;
+import com.backgammon.model.Move;
+import com.backgammon.model.PlayerColor;
+
+import javax.swing.Timer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Plays queued checker moves as animations, driven by a {@link Timer} on the event
+ * dispatch thread.
+ *
+ * Each move glides one checker from its source to its destination. Progress follows the
+ * clock rather than the frame count, so a late frame just jumps ahead instead of slowing
+ * the animation down. While moves are waiting, the current one runs faster, and when
+ * the backlog grows too long the oldest moves are skipped. The time between frames is
+ * recorded in {@link Metrics#FRAME_INTERVAL}. The clock starts at the first frame after
+ * the timer starts, not when the move is queued, so work still running on the event
+ * dispatch thread, such as the AI thinking, neither skips the first animation nor counts
+ * as a frame interval.
+ */
+public class CheckerAnimator {
+    // Target frame period, in milliseconds (60 frames per second)
+    public static final int FRAME_MILLIS = 16;
+    
+    // Time one move takes when nothing else is waiting, in nanoseconds
+    private static final long MOVE_NANOS = 300_000_000L;
+    
+    // Most that waiting moves can speed the current one up by
+    private static final int MAX_SPEEDUP = 4;
+    
+    // Waiting moves beyond this many are skipped
+    private static final int MAX_BACKLOG = 8;
+    
+    /**
+     * One checker move to animate
+     */
+    public static final class Animation {
+        private final Move move;
+        private final PlayerColor color;
+        private final Board base;
+        private final int fromHeight;
+        private final int toHeight;
+        
+        /**
+         * Create an animation
+         * @param before the position before the move (not modified)
+         * @param move the move
+         * @param color the color of the moving checker
+         */
+        Animation(Board before, Move move, PlayerColor color) {
+            this.move = move;
+            this.color = color;
+            this.base = before.clone();
+            this.fromHeight = height(before, move.getFrom(), color) - 1;
+            
+            // Lift the moving checker off its source
+            if (move.getFrom() == Board.WHITE_BAR || move.getFrom() == Board.BLACK_BAR) {
+                base.removeFromBar(color);
+            } else {
+                base.getPoint(move.getFrom()).removeChecker();
+            }
+            this.toHeight = height(base, move.getTo(), color);
+        }
+        
+        /**
+         * Get the number of checkers already in a place
+         * @param board the board
+         * @param index a point, bar or home index
+         * @param color the color of the bar or home
+         * @return the number of checkers there
+         */
+        private static int height(Board board, int index, PlayerColor color) {
+            if (index == Board.WHITE_BAR || index == Board.BLACK_BAR) {
+                return board.getBarCount(color);
+            }
+            if (index == Board.WHITE_HOME || index == Board.BLACK_HOME) {
+                return board.getHomeCount(color);
+            }
+            return board.getPoint(index).getCount();
+        }
+        
+        /**
+         * Get the move
+         * @return the move
+         */
+        public Move getMove() {
+            return move;
+        }
+        
+        /**
+         * Get the color of the moving checker
+         * @return the color
+         */
+        public PlayerColor getColor() {
+            return color;
+        }
+        
+        /**
+         * Get the position to draw under the moving checker: the position before the
+         * move, without the moving checker
+         * @return the board; callers must not modify it
+         */
+        public Board getBase() {
+            return base;
+        }
+        
+        /**
+         * Get the place of the moving checker in its source stack
+         * @return the number of checkers below it at the start
+         */
+        public int getFromHeight() {
+            return fromHeight;
+        }
+        
+        /**
+         * Get the place of the moving checker in its destination stack
+         * @return the number of checkers below it at the end
+         */
+        public int getToHeight() {
+            return toHeight;
+        }
+    }
+    
+    private final Timer timer;
+    private final Runnable repaint;
+    private final Deque<Animation> queue = new ArrayDeque<>();
+    
+    // The running animation, its progress from 0 to 1, and when the progress was last advanced
+    private Animation current;
+    private double progress;
+    private long lastFrameNanos;
+    
+    // Whether the timer has ticked since it was started, so lastFrameNanos is set
+    private boolean ticking;
+    
+    /**
+     * Create an animator
+     * @param repaint called on every frame, and when the animations finish
+     */
+    public CheckerAnimator(Runnable repaint) {
+        this.repaint = repaint;
+        this.timer = new Timer(FRAME_MILLIS, e -> frame());
+        timer.setCoalesce(true);
+    }
+    
+    /**
+     * Queue a move to animate
+     * @param before the position before the move (not modified)
+     * @param move the move
+     * @param color the color of the moving checker
+     */
+    public void enqueue(Board before, Move move, PlayerColor color) {
+        queue.addLast(new Animation(before, move, color));
+        while (queue.size() > MAX_BACKLOG) {
+            queue.removeFirst();
+            if (Metrics.ENABLED) {
+                Metrics.ANIMATIONS_SKIPPED.increment();
+            }
+        }
+        if (current == null) {
+            next(System.nanoTime());
+            ticking = false;
+            timer.start();
+        }
+    }
+    
+    /**
+     * Skip to the end of every queued animation
+     */
+    public void finish() {
+        if (current == null) {
+            return;
+        }
+        if (Metrics.ENABLED) {
+            Metrics.ANIMATIONS_SKIPPED.add(queue.size() + 1);
+        }
+        queue.clear();
+        current = null;
+        timer.stop();
+        repaint.run();
+    }
+    
+    /**
+     * Check whether an animation is running
+     * @return true if a checker is moving
+     */
+    public boolean isAnimating() {
+        return current != null;
+    }
+    
+    /**
+     * Get the running animation
+     * @return the animation, or null if none is running
+     */
+    public Animation getCurrent() {
+        return current;
+    }
+    
+    /**
+     * Get how far the running animation has got, eased so the checker starts and stops gently
+     * @return the progress, from 0 to 1
+     */
+    public double getProgress() {
+        return progress * progress * (3 - 2 * progress);
+    }
+    
+    /**
+     * Advance the running animation by the time since the last frame
+     */
+    private void frame() {
+        long now = System.nanoTime();
+        if (!ticking) {
+            // Start the clock; the time since the move was queued is not a frame interval
+            ticking = true;
+            lastFrameNanos = now;
+            repaint.run();
+            return;
+        }
+        long elapsed = now - lastFrameNanos;
+        lastFrameNanos = now;
+        if (Metrics.ENABLED) {
+            Metrics.FRAME_INTERVAL.record(elapsed);
+        }
+        
+        int speedup = Math.min(MAX_SPEEDUP, 1 + queue.size());
+        progress += (double) elapsed * speedup / MOVE_NANOS;
+        if (progress >= 1.0) {
+            next(now);
+        }
+        repaint.run();
+    }
+    
+    /**
+     * Start the next queued animation, or stop the timer if there is none
+     * @param now the current {@link System#nanoTime()}
+     */
+    private void next(long now) {
+        current = queue.pollFirst();
+        progress = 0.0;
+        lastFrameNanos = now;
+        if (current == null) {
+            timer.stop();
+        }
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.backgammon.view;
 
 import com.backgammon.model.Board;
 import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
 import com.backgammon.model.PlayerColor;
 
 import java.util.List;
@@ -31,6 +32,15 @@ public interface GameView {
      */
     void updateDice(List<Integer> diceValues, List<Boolean> used);
     
+    /**
+     * Show a move as an animation. Moves are played in the order they are given, and
+     * the board shows the position passed to {@link #updateBoard(Board)} once they finish.
+     * @param before the position before the move (not modified)
+     * @param move the move
+     * @param color the color of the moving checker
+     */
+    void animateMove(Board before, Move move, PlayerColor color);
+    
     /**
      * Highlight a point and its valid move destinations
      * @param pointIndex the index of the selected point
@@ -1,8 +1,11 @@
 package com.backgammon.view;
 
 import com.backgammon.controller.GameController;
+import com.backgammon.metrics.Metrics;
+import com.backgammon.metrics.PaintEvent;
 import com.backgammon.model.Board;
 import com.backgammon.model.GameState;
+import com.backgammon.model.Move;
 import com.backgammon.model.PlayerColor;
 import com.backgammon.model.Point;
 
@@ -50,6 +53,9 @@ public class SwingGameView extends JFrame implements GameView {
     private JButton endTurnButton;
     private JPanel dicePanel;
     
+    // Plays the AI's moves as animations on the board
+    private CheckerAnimator animator;
+    
     // Game state
     private List<Integer> diceValues;
     private List<Boolean> diceUsed;
@@ -80,6 +86,7 @@ public class SwingGameView extends JFrame implements GameView {
         // Create the board panel
         boardPanel = new BoardPanel();
         add(boardPanel, BorderLayout.CENTER);
+        animator = new CheckerAnimator(boardPanel::repaint);
         
         // Create the control panel
         controlPanel = new JPanel();
@@ -226,6 +233,11 @@ public class SwingGameView extends JFrame implements GameView {
         dicePanel.repaint();
     }
     
+    @Override
+    public void animateMove(Board before, Move move, PlayerColor color) {
+        animator.enqueue(before, move, color);
+    }
+    
     @Override
     public void highlightPoints(int pointIndex, List<Integer> validDestinations) {
         this.selectedPoint = pointIndex;
@@ -293,6 +305,9 @@ public class SwingGameView extends JFrame implements GameView {
          * @param y the y coordinate
          */
         private void handleClick(int x, int y) {
+            // A click shows the final position at once rather than acting on an old one
+            animator.finish();
+            
             // Check if the bar was clicked
             int barCenterX = getWidth() / 2;
             if (x >= barCenterX - 15 && x <= barCenterX + 15) {
@@ -369,6 +384,10 @@ public class SwingGameView extends JFrame implements GameView {
         
         @Override
         protected void paintComponent(Graphics g) {
+            PaintEvent event = new PaintEvent();
+            event.begin();
+            long paintStart = Metrics.ENABLED ? System.nanoTime() : 0L;
+            
             super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g;
             
@@ -388,9 +407,21 @@ public class SwingGameView extends JFrame implements GameView {
             // Draw the home areas
             drawHomeAreas(g2d);
             
-            // Draw the checkers
-            if (board != null) {
-                drawCheckers(g2d);
+            // Draw the checkers; during an animation, under the moving checker
+            CheckerAnimator.Animation animation = animator.getCurrent();
+            if (animation != null) {
+                drawCheckers(g2d, animation.getBase());
+                drawMovingChecker(g2d, animation, animator.getProgress());
+            } else if (board != null) {
+                drawCheckers(g2d, board);
+            }
+            
+            if (Metrics.ENABLED) {
+                Metrics.PAINT.recordSince(paintStart);
+            }
+            if (event.shouldCommit()) {
+                event.set(board != null ? board.positionHash() : 0L, validMoves.size(), 0);
+                event.commit();
             }
         }
         
@@ -502,40 +533,83 @@ public class SwingGameView extends JFrame implements GameView {
             g2d.drawString("HOME", 5, 20);
         }
         
+        /**
+         * Get where the stack of checkers on a point starts
+         * @param pointIndex the index of the point
+         * @return the x and y coordinates of the center of the first checker
+         */
+        private int[] getStackBase(int pointIndex) {
+            int width = getWidth();
+            int height = getHeight();
+            int pointWidth = width / 14;
+            
+            if (pointIndex < 6) {
+                // Points 1-6 (bottom right)
+                return new int[]{width / 2 + 15 + (5 - pointIndex) * pointWidth + pointWidth / 2, height - 30};
+            } else if (pointIndex < 12) {
+                // Points 7-12 (bottom left)
+                return new int[]{width / 2 - 15 - (pointIndex - 5) * pointWidth - pointWidth / 2, height - 30};
+            } else if (pointIndex < 18) {
+                // Points 13-18 (top left)
+                return new int[]{width / 2 - 15 - (17 - pointIndex) * pointWidth - pointWidth / 2, 30};
+            } else {
+                // Points 19-24 (top right)
+                return new int[]{width / 2 + 15 + (pointIndex - 18) * pointWidth + pointWidth / 2, 30};
+            }
+        }
+        
+        /**
+         * Get where a checker is drawn, matching the stacks drawn by {@link #drawCheckers}
+         * @param index a point, bar or home index
+         * @param stackHeight the number of checkers below it
+         * @return the x and y coordinates of the center of the checker
+         */
+        private int[] getCheckerLocation(int index, int stackHeight) {
+            int width = getWidth();
+            int height = getHeight();
+            int step = Math.min(stackHeight, 4) * (CHECKER_SIZE / 3);
+            if (index == Board.WHITE_BAR) {
+                return new int[]{width / 2, height - 30 - step};
+            } else if (index == Board.BLACK_BAR) {
+                return new int[]{width / 2, 30 + step};
+            } else if (index == Board.WHITE_HOME) {
+                return new int[]{width - 17, height - 30};
+            } else if (index == Board.BLACK_HOME) {
+                return new int[]{17, 30};
+            }
+            int[] base = getStackBase(index);
+            return new int[]{base[0], index < 12 ? base[1] + step : base[1] - step};
+        }
+        
+        /**
+         * Draw the checker of an animation part of the way along its move
+         * @param g2d the graphics context
+         * @param animation the animation
+         * @param progress how far the checker has moved, from 0 to 1
+         */
+        private void drawMovingChecker(Graphics2D g2d, CheckerAnimator.Animation animation, double progress) {
+            int[] from = getCheckerLocation(animation.getMove().getFrom(), animation.getFromHeight());
+            int[] to = getCheckerLocation(animation.getMove().getTo(), animation.getToHeight());
+            int x = (int) Math.round(from[0] + (to[0] - from[0]) * progress);
+            int y = (int) Math.round(from[1] + (to[1] - from[1]) * progress);
+            drawCheckersStack(g2d, x, y, animation.getColor(), 1, false);
+        }
+        
         /**
          * Draw the checkers on the board
          * @param g2d the graphics context
+         * @param board the position to draw
          */
-        private void drawCheckers(Graphics2D g2d) {
+        private void drawCheckers(Graphics2D g2d, Board board) {
             int width = getWidth();
             int height = getHeight();
-            int pointWidth = width / 14;
             
             // Draw the checkers on the points
             for (int i = 0; i < 24; i++) {
                 Point point = board.getPoint(i);
                 if (point != null && !point.isEmpty()) {
-                    // Calculate the base position for checkers on this point
-                    int x, y;
-                    if (i < 6) {
-                        // Points 1-6 (bottom right)
-                        x = width / 2 + 15 + (5 - i) * pointWidth + pointWidth / 2;
-                        y = height - 30;
-                    } else if (i < 12) {
-                        // Points 7-12 (bottom left)
-                        x = width / 2 - 15 - (i - 5) * pointWidth - pointWidth / 2;
-                        y = height - 30;
-                    } else if (i < 18) {
-                        // Points 13-18 (top left)
-                        x = width / 2 - 15 - (17 - i) * pointWidth - pointWidth / 2;
-                        y = 30;
-                    } else {
-                        // Points 19-24 (top right)
-                        x = width / 2 + 15 + (i - 18) * pointWidth + pointWidth / 2;
-                        y = 30;
-                    }
-                    
-                    drawCheckersStack(g2d, x, y, point.getColor(), point.getCount(), i < 12);
+                    int[] base = getStackBase(i);
+                    drawCheckersStack(g2d, base[0], base[1], point.getColor(), point.getCount(), i < 12);
                 }
             }
             